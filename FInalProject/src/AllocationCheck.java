@@ -0,0 +1,128 @@
+import java.lang.management.ManagementFactory;
+
+import javafx.scene.image.WritableImage;
+
+/**
+ * Checks that the steady-state game loop allocates nothing.
+ * Plays the opening battle headless with a 60 Hz clock, pressing Attack whenever the game allows it,
+ * and reads the bytes the FX thread allocated around every GameController.tick() call.
+ * Each battle runs for a fixed number of pulses, so the idle pulses after it is decided are measured too,
+ * and the pulses on which Attack is pressed are measured along with the rest.
+ * The first battles only warm up: they load classes, fill the caches and let the code compile.
+ * While the JIT is still compiling, a method it deoptimizes can allocate on the thread once, so warming up
+ * goes on until SETTLED_BATTLES battles in a row allocated nothing. Every battle plays the same pulses,
+ * so an allocation in the game loop shows up in every battle and keeps the warm-up from settling;
+ * after MAX_WARM_UP_BATTLES the check measures anyway and fails on it.
+ * After the warm-up, any pulse that allocates is printed and the check fails.
+ * <p>
+ * Started with "--alloc-check <pulses>". Needs no window: with the Monocle headless platform
+ * (-Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw) it runs on a build machine.
+ */
+public class AllocationCheck {
+    /**
+     * Battles in a row that must allocate nothing before measuring starts.
+     */
+    private static final int SETTLED_BATTLES = 4;
+
+    /**
+     * Most battles played to warm up, settled or not.
+     */
+    private static final int MAX_WARM_UP_BATTLES = 20;
+
+    /**
+     * Pulses each battle is played for before a new one starts.
+     */
+    private static final int BATTLE_PULSES = 1000;
+
+    /**
+     * Time between two ticks on the battle clock.
+     */
+    private static final long FRAME_INTERVAL = 1_000_000_000L / 60;
+
+    /**
+     * Number of pulses measured.
+     */
+    private final int pulses;
+
+    /**
+     * Start-up options; decide the map the battles are played on.
+     */
+    private final GameOptions options;
+
+    /**
+     * Creates a check.
+     * @param pulses Number of pulses to measure
+     * @param options Start-up options
+     * @throws IllegalArgumentException If pulses is not positive
+     */
+    public AllocationCheck(int pulses, GameOptions options) {
+        if (pulses <= 0) {
+            throw new IllegalArgumentException("Number of pulses must be positive: " + pulses);
+        }
+        this.pulses = pulses;
+        this.options = options;
+    }
+
+    /**
+     * Plays the warm-up battles and then battles until enough pulses were measured, and prints the result.
+     * Must be called on the FX thread.
+     * @return true if no measured pulse allocated
+     */
+    public boolean run() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        long now = 0;
+        long total = 0;
+        int measured = 0;
+        int allocatingPulses = 0;
+        boolean warmingUp = true;
+        int settledBattles = 0;
+
+        for (int battle = 0; measured < pulses; battle++) {
+            GameWorld world = new GameWorld(options.getTileMap());
+            GameController controller = new GameController(world);
+            controller.setManualPulse(true);
+            WritableImage snapshot = new WritableImage((int) world.getWidth(), (int) world.getHeight());
+            controller.initializeScene();
+            controller.startMinotaurApproach();
+            boolean battleAllocated = false;
+
+            for (int pulse = 0; pulse < BATTLE_PULSES && measured < pulses; pulse++) {
+                now += FRAME_INTERVAL;
+                long before = threads.getThreadAllocatedBytes(thread);
+                if (controller.canAttackProperty().get()) {
+                    controller.startSkeletonAttack();
+                }
+                controller.tick(now);
+                long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+                if (warmingUp) {
+                    battleAllocated |= allocated > 0;
+                } else {
+                    measured++;
+                    total += allocated;
+                    if (allocated > 0) {
+                        allocatingPulses++;
+                        System.out.printf("Battle %d, pulse %d allocated %d bytes%n", battle, pulse, allocated);
+                    }
+                }
+                // Render every pulse as a window would; the canvas would otherwise queue
+                // several frames of drawing and grow its command buffer
+                world.snapshot(null, snapshot);
+            }
+            controller.stopSimulation();
+
+            if (warmingUp) {
+                settledBattles = battleAllocated ? 0 : settledBattles + 1;
+                if (settledBattles == SETTLED_BATTLES || battle + 1 == MAX_WARM_UP_BATTLES) {
+                    warmingUp = false;
+                    System.out.printf("Warmed up over %d battles (%s)%n", battle + 1,
+                            settledBattles == SETTLED_BATTLES ? "settled" : "still allocating");
+                }
+            }
+        }
+
+        System.out.printf("Allocated %d bytes over %d pulses (%d pulses allocated)%n", total, measured, allocatingPulses);
+        return total == 0;
+    }
+}
@@ -0,0 +1,67 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event written when an AnimationController plays its last frame.
+ * Play time is measured on the game clock, so it also makes sense for offscreen replays.
+ * Off unless a recording turns it on; see FlightRecording.
+ */
+@Name("battle.AnimationClip")
+@Label("Animation Clip")
+@Category("Battle")
+@Description("An animation clip finished playing")
+@Enabled(false)
+@StackTrace(false)
+public class AnimationClipEvent extends jdk.jfr.Event {
+    /**
+     * Registered type of this event, used to check cheaply whether it is being recorded.
+     */
+    private static final EventType TYPE = EventType.getEventType(AnimationClipEvent.class);
+
+    /**
+     * Name of the clip, the directory its frames came from.
+     */
+    @Label("Clip")
+    private String clip;
+
+    /**
+     * Number of frames in the clip.
+     */
+    @Label("Frames")
+    private int frames;
+
+    /**
+     * Game time from the first frame to the last.
+     */
+    @Label("Play Time")
+    @Timespan
+    private long playTime;
+
+    /**
+     * Checks if a recording has turned this event on.
+     * @return true if finished clips should be recorded
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Writes one event for a finished clip.
+     * @param clip Clip name
+     * @param frames Number of frames in the clip
+     * @param playTime Game time the clip took, in nanoseconds
+     */
+    public static void record(String clip, int frames, long playTime) {
+        AnimationClipEvent event = new AnimationClipEvent();
+        event.clip = clip;
+        event.frames = frames;
+        event.playTime = playTime;
+        event.commit();
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * One clock for a looping animation that many entities play at once, such as the minotaurs' walk cycle.
+ * Instead of every entity keeping an AnimationController that is polled each pulse, the clock is
+ * updated once per pulse and each entity only keeps a phase offset, taken when it starts the animation.
+ * An entity's frame is then worked out when it is needed: startFrame + (ticks + phase) % frameCount.
+ * The clock advances the way an AnimationController restarted after every cycle does: one tick on the
+ * first update at least one frame duration after the last tick, and the first tick of a cycle on the
+ * update right after the cycle before it ended, so a crowd keeps the pace a single controller had.
+ */
+public class AnimationClock {
+    /**
+     * Duration in nanoseconds of each frame, the same as AnimationController's.
+     */
+    private static final long FRAME_DURATION = 50_000_000;
+
+    /**
+     * Name of the animation, reported to the flight recorder each time the clock completes a cycle.
+     */
+    private final String clipName;
+
+    /**
+     * Number of frames in one cycle.
+     */
+    private final int frameCount;
+
+    /**
+     * Index of the first frame (0 or 1 depending on sprite naming).
+     */
+    private final int startFrame;
+
+    /**
+     * Ticks since the clock was created.
+     */
+    private long ticks = 0;
+
+    /**
+     * Time stamp in nanoseconds of the latest tick, or 0 when the next cycle starts on the next update.
+     */
+    private long lastTickTime = 0;
+
+    /**
+     * Time stamp of the tick that started the current cycle, for the flight recorder.
+     */
+    private long cycleStartTime = 0;
+
+    /**
+     * Whether the latest update() advanced the clock.
+     */
+    private boolean ticked = false;
+
+    /**
+     * Creates a clock for a looping animation.
+     * @param clipName Name of the animation, used in flight recordings
+     * @param frameCount Number of frames in one cycle
+     * @param startFrame The index of the first frame (0 or 1 depending on sprite naming)
+     * @throws IllegalArgumentException If the frame count is not positive
+     */
+    public AnimationClock(String clipName, int frameCount, int startFrame) {
+        if (frameCount <= 0) {
+            throw new IllegalArgumentException("Animation needs at least one frame: " + frameCount);
+        }
+        this.clipName = clipName;
+        this.frameCount = frameCount;
+        this.startFrame = startFrame;
+    }
+
+    /**
+     * Advances the clock if a frame duration has passed since the last tick,
+     * or at once if the last tick completed a cycle.
+     * Call once per pulse, before the entities that share the clock are updated.
+     * @param now Current time in nanoseconds
+     * @return true if the clock ticked, so every entity on it moved to its next frame
+     */
+    public boolean update(long now) {
+        ticked = now - lastTickTime >= FRAME_DURATION;
+        if (!ticked) {
+            return false;
+        }
+        if (lastTickTime == 0) {
+            cycleStartTime = now;
+        }
+        ticks++;
+        lastTickTime = now;
+
+        if (ticks % frameCount == 0) {
+            if (AnimationClipEvent.isRecording()) {
+                AnimationClipEvent.record(clipName, frameCount, now - cycleStartTime);
+            }
+            lastTickTime = 0;  // Like a controller reset after its last frame, the next cycle starts right away
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the latest update() advanced the clock.
+     * @return true during the pulse the clock ticked in
+     */
+    public boolean hasTicked() {
+        return ticked;
+    }
+
+    /**
+     * Gets the number of ticks so far.
+     * @return Ticks since the clock was created
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the phase offset for an entity starting the animation now, so that it shows the first frame.
+     * @return Offset to keep and pass to frameAt(), between 0 and the frame count
+     */
+    public int getStartPhase() {
+        return (int) Math.floorMod(-ticks, (long) frameCount);
+    }
+
+    /**
+     * Works out the frame an entity shows.
+     * With a step above 1 the entity only moves on every step-th tick, skipping the frames in between,
+     * which is how far-away entities are animated at a reduced rate.
+     * @param phase The entity's phase offset, from getStartPhase()
+     * @param step Ticks each shown frame is held for; 1 shows every frame
+     * @return Frame index to draw
+     */
+    public int frameAt(int phase, int step) {
+        long elapsed = ticks + phase;
+        if (step > 1) {
+            elapsed -= elapsed % step;
+        }
+        return startFrame + (int) (elapsed % frameCount);
+    }
+
+    /**
+     * Checks if an entity's shown frame moved in the latest update().
+     * @param phase The entity's phase offset, from getStartPhase()
+     * @param step Ticks each shown frame is held for; 1 shows every frame
+     * @return true if the clock ticked and the entity's frame changed
+     */
+    public boolean isFrameChanged(int phase, int step) {
+        return ticked && (ticks + phase) % step == 0;
+    }
+
+    /**
+     * Gets how long each frame is shown at the full rate.
+     * @return Frame duration in nanoseconds
+     */
+    public long getFrameDuration() {
+        return FRAME_DURATION;
+    }
+
+    /**
+     * Gets the number of frames in one cycle.
+     * @return Frame count
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+}
@@ -41,12 +41,26 @@ public class AnimationController {
      */
     private int totalFrames;
     
+    /**
+     * Name of the animation, reported to the flight recorder when the animation completes.
+     * Example: "images/skeleton/"
+     */
+    private final String clipName;
+    
+    /**
+     * Time stamp of the first frame change since the last reset.
+     * Used to report how long the whole animation took.
+     */
+    private long clipStartTime = 0;
+    
     /**
      * Constructor to initialize an animation controller for a specific sprite.
+     * @param clipName Name of the animation, used in flight recordings
      * @param numOfFrames Total number of frames in the animation
      * @param startFrame The index of the first frame (0 or 1 depending on sprite naming)
      */
-    public AnimationController(int numOfFrames, int startFrame) {
+    public AnimationController(String clipName, int numOfFrames, int startFrame) {
+        this.clipName = clipName;
         this.totalFrames = numOfFrames;
         this.startFrame = startFrame;
         this.currentFrame = startFrame;
@@ -71,6 +85,11 @@ public class AnimationController {
             return false;
         }
         
+        // The first change after a reset starts the clip
+        if (lastFrameTime == 0) {
+            clipStartTime = currentTime;
+        }
+        
         // Move to the next frame
         currentFrame++;
         
@@ -83,6 +102,10 @@ public class AnimationController {
             // Set to last frame so it displays before stopping
             // This ensures the final frame is visible
             currentFrame = startFrame + totalFrames - 1;
+            
+            if (AnimationClipEvent.isRecording()) {
+                AnimationClipEvent.record(clipName, totalFrames, currentTime - clipStartTime);
+            }
         }
         
         // Record the time of this frame change
@@ -112,6 +135,15 @@ public class AnimationController {
         lastFrameTime = 0;
     }
     
+    /**
+     * Gets how long each frame is shown.
+     * Used to spread a walking enemy's step over the time until its next step.
+     * @return Frame duration in nanoseconds
+     */
+    public long getFrameDuration() {
+        return FRAME_DURATION;
+    }
+    
     /**
      * Gets the current frame index for rendering.
      * GameWorld uses this to know which sprite image to draw.
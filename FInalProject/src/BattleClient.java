@@ -0,0 +1,222 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client for one battle on a BattleServer, speaking its line protocol.
+ * Keeps the fields of the latest "STATE" message so a caller can decide what to do next,
+ * and can also play a whole battle by itself, attacking whenever the player may.
+ * Used by ServerLoadTest and ServerCheck, and usable in-process to drive a server from code.
+ */
+public class BattleClient implements Closeable {
+    /**
+     * Connection to the server.
+     */
+    private final Socket socket;
+
+    /**
+     * Messages from the server.
+     */
+    private final BufferedReader in;
+
+    /**
+     * Commands to the server.
+     */
+    private final Writer out;
+
+    /**
+     * Number of the session the server created for this client, from its "WELCOME" message.
+     */
+    private int sessionId = -1;
+
+    /**
+     * Whose turn it is: PLAYER, ENEMY or OVER.
+     */
+    private String turn = "";
+
+    /**
+     * Player's hit points.
+     */
+    private int playerHitPoints;
+
+    /**
+     * Hit points of the first enemy.
+     */
+    private int enemyHitPoints;
+
+    /**
+     * Whether the player may attack now.
+     */
+    private boolean attackReady;
+
+    /**
+     * Result from the "END" message: WON or LOST; null while the battle goes on.
+     */
+    private String result;
+
+    /**
+     * Connects to a server on this machine.
+     * @param port The server's port
+     * @throws IOException If the connection fails
+     */
+    public BattleClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Waits for the next message from the server and takes in what it says.
+     * @return The message, or null if the server closed the connection
+     * @throws IOException If reading fails
+     * @throws IllegalArgumentException If a STATE message is malformed
+     */
+    public String readMessage() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            return null;
+        }
+        String[] parts = line.split(" ");
+        switch (parts[0]) {
+            case "WELCOME":
+                sessionId = Integer.parseInt(parts[1]);
+                break;
+            case "STATE":
+                // STATE tick turn playerHp playerFrame ready enemyCount [hp x y action frame]...
+                if (parts.length < 7) {
+                    throw new IllegalArgumentException("Malformed state: " + line);
+                }
+                turn = parts[2];
+                playerHitPoints = Integer.parseInt(parts[3]);
+                attackReady = parts[5].equals("1");
+                enemyHitPoints = Integer.parseInt(parts[6]) > 0 ? Integer.parseInt(parts[7]) : 0;
+                break;
+            case "END":
+                result = parts[1];
+                break;
+            default:
+                break;  // Newer servers may send more
+        }
+        return line;
+    }
+
+    /**
+     * Asks the server to make the player attack.
+     * @throws IOException If sending fails
+     */
+    public void attack() throws IOException {
+        out.write("ATTACK\n");
+        out.flush();
+    }
+
+    /**
+     * Sets how long readMessage() waits for the server before it throws a SocketTimeoutException.
+     * playToEnd() sets its own.
+     * @param millis Longest wait in milliseconds, or 0 to wait forever
+     * @throws IOException If the connection is broken
+     */
+    public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    /**
+     * Plays the battle to its end, attacking each time the player becomes able to.
+     * An attack is sent again if the state has not changed after the server's buffer window,
+     * since a server too busy to tick in time drops the command and then has nothing new to send.
+     * @return "WON" or "LOST", or null if the server closed the connection first
+     * @throws IOException If the connection fails
+     */
+    public String playToEnd() throws IOException {
+        boolean attackSent = false;
+        socket.setSoTimeout((int) (InputBuffer.BUFFER_WINDOW_NANOS / 1_000_000) * 2);
+        while (result == null) {
+            try {
+                if (readMessage() == null) {
+                    break;
+                }
+            } catch (SocketTimeoutException e) {
+                attackSent = false;  // Nothing changed, so the attack was probably dropped
+            }
+            if (attackReady && !attackSent) {
+                attack();
+                attackSent = true;
+            } else if (!attackReady) {
+                attackSent = false;  // The attack started; ask again on the next turn
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the session number the server gave this client.
+     * @return Session number, or -1 before the greeting was read
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Gets whose turn it is, from the latest state.
+     * @return PLAYER, ENEMY or OVER; empty before the first state
+     */
+    public String getTurn() {
+        return turn;
+    }
+
+    /**
+     * Gets the player's hit points from the latest state.
+     * @return Player hit points
+     */
+    public int getPlayerHitPoints() {
+        return playerHitPoints;
+    }
+
+    /**
+     * Gets the first enemy's hit points from the latest state.
+     * @return Enemy hit points
+     */
+    public int getEnemyHitPoints() {
+        return enemyHitPoints;
+    }
+
+    /**
+     * Checks if the player may attack, according to the latest state.
+     * @return true if an attack would start now
+     */
+    public boolean isAttackReady() {
+        return attackReady;
+    }
+
+    /**
+     * Gets the result of the battle.
+     * @return WON or LOST, or null while the battle goes on
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Leaves the battle and closes the connection.
+     * @throws IOException If closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (result == null && !socket.isClosed()) {
+                out.write("QUIT\n");
+                out.flush();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Replays a battle offscreen and writes every rendered frame to a numbered PNG sequence.
+ * The FX thread only steps the game, renders and copies pixels out of the snapshot.
+ * PNG encoding and disk writes run on a pool of worker threads so they scale across cores.
+ */
+public class BattleExporter {
+    /**
+     * Time between two exported frames in nanoseconds.
+     * 1_000_000_000 / 60 gives footage at 60 frames per second.
+     */
+    private static final long FRAME_INTERVAL = 1_000_000_000L / 60;
+
+    /**
+     * Number of frames still recorded after one side has been defeated.
+     * Half a second of footage so the final hit is visible in the clip.
+     */
+    private static final int TAIL_FRAMES = 30;
+
+    /**
+     * Directory where the frame files are written.
+     */
+    private final Path outputDirectory;
+
+    /**
+     * Maximum number of frames recorded for one battle.
+     */
+    private final int frameLimit;
+
+    /**
+     * Number of encoder threads in the worker pool.
+     */
+    private final int encoderThreads;
+
+    /**
+     * Combat formulas the replayed battle is fought with.
+     */
+    private final CombatRules combatRules;
+
+    /**
+     * Terrain of the battlefield the replay is drawn on.
+     */
+    private final TileMap tileMap;
+
+    /**
+     * Creates an exporter configured from the command line options.
+     * @param options Parsed options holding the export directory, frame limit, thread count, rules and map
+     */
+    public BattleExporter(GameOptions options) {
+        this.outputDirectory = options.getExportDirectory();
+        this.frameLimit = options.getExportFrameLimit();
+        this.encoderThreads = options.getExportThreads();
+        this.combatRules = options.getCombatRules();
+        this.tileMap = options.getTileMap();
+    }
+
+    /**
+     * Replays one complete battle and writes it to the output directory.
+     * Must be called on the JavaFX application thread because it renders and takes snapshots.
+     * The player attacks automatically whenever the Attack button would be enabled.
+     * @return Number of frames written
+     * @throws IOException If the directory cannot be created or a frame fails to encode
+     * @throws InterruptedException If the thread is interrupted while waiting for the encoders
+     */
+    public int export() throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+
+        // The canvas never gets a window; snapshot() works on nodes outside a scene
+        GameWorld gameWorld = new GameWorld(tileMap);
+        GameController controller = new GameController(gameWorld);
+        controller.setManualPulse(true);
+        controller.setCombatRules(combatRules);
+        controller.initializeScene();
+        controller.startMinotaurApproach();
+
+        int width = (int) gameWorld.getWidth();
+        int height = (int) gameWorld.getHeight();
+        WritableImage snapshot = new WritableImage(width, height);
+
+        // Pixel buffers are recycled between the FX thread and the encoders.
+        // When every buffer is still being encoded the renderer waits, which keeps memory flat.
+        BlockingQueue<int[]> freeBuffers = new ArrayBlockingQueue<>(encoderThreads * 2);
+        for (int i = 0; i < encoderThreads * 2; i++) {
+            freeBuffers.add(new int[width * height]);
+        }
+
+        ExecutorService encoders = Executors.newFixedThreadPool(encoderThreads);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+
+        long now = 0;
+        int framesWritten = 0;
+        int tailFramesLeft = TAIL_FRAMES;
+
+        try {
+            while (framesWritten < frameLimit && tailFramesLeft > 0 && failure.get() == null) {
+                now += FRAME_INTERVAL;
+
+                // Press Attack as soon as the UI would allow it
+                if (controller.canAttackProperty().get()) {
+                    controller.startSkeletonAttack();
+                }
+                controller.tick(now);
+
+                gameWorld.snapshot(null, snapshot);
+                int[] pixels = freeBuffers.take();
+                snapshot.getPixelReader().getPixels(0, 0, width, height,
+                        PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+                int frameNumber = framesWritten++;
+                encoders.execute(() -> {
+                    try {
+                        writeFrame(pixels, width, height, frameNumber);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        freeBuffers.add(pixels);
+                    }
+                });
+
+                // Keep recording for a short while after the battle is decided
+                if (!controller.getPlayer().isAlive() || controller.areAllEnemiesDefeated()) {
+                    tailFramesLeft--;
+                }
+            }
+        } finally {
+            controller.stopSimulation();
+            encoders.shutdown();
+            encoders.awaitTermination(1, TimeUnit.HOURS);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return framesWritten;
+    }
+
+    /**
+     * Encodes one frame as a PNG file named frame_00000.png, frame_00001.png, ...
+     * Runs on an encoder thread, never on the FX thread.
+     * @param pixels ARGB pixels copied from the snapshot
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @param frameNumber Position of the frame in the sequence
+     * @throws IOException If the file cannot be written
+     */
+    private void writeFrame(int[] pixels, int width, int height, int frameNumber) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+
+        Path file = outputDirectory.resolve(String.format("frame_%05d.png", frameNumber));
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+}
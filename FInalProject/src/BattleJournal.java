@@ -0,0 +1,327 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only log of everything that happens in a battle, kept for analysis after the match.
+ * Every event is one fixed-width binary record of RECORD_BYTES:
+ * <pre>
+ *   long time      game clock of the tick the event happened in, in nanoseconds
+ *   int  sequence  number of the event in the whole battle, counting from 0; a gap means records were dropped
+ *   int  type      one of the event codes below
+ *   int  actor     journal id of the character acting (0 is the player, enemies count from 1)
+ *   int  target    journal id of the character acted on, or -1
+ *   int  value     damage for DAMAGE, hit points for SPAWN, speed for TURN, otherwise 0
+ *   int  detail    hit points left for DAMAGE, x coordinate for SPAWN, otherwise 0
+ * </pre>
+ * The thread that ticks the game only copies the record into a ring in memory, which creates no objects
+ * and never blocks. A writer thread of its own moves the records into the current segment file in batches,
+ * at least every FLUSH_INTERVAL_NANOS, and forces the segment to disk after each batch.
+ * Segments are memory-mapped files named "battle-00000.journal", "battle-00001.journal" and so on,
+ * each holding SEGMENT_RECORDS records after a header of HEADER_BYTES; a full segment is followed by a new one.
+ * Unused records at the end of the last segment are zero, so a record of type 0 ends the journal.
+ * If the writer falls so far behind that the ring is full, new records are dropped and counted,
+ * so logging never holds up a frame. BattleJournalReader reads the segments back in order.
+ */
+public class BattleJournal implements Closeable {
+    /** Event code of a character starting an attack on another. */
+    public static final int ATTACK = 1;
+
+    /** Event code of a hit landing. */
+    public static final int DAMAGE = 2;
+
+    /** Event code of a character being defeated. */
+    public static final int DEATH = 3;
+
+    /** Event code of an enemy joining the battle. */
+    public static final int SPAWN = 4;
+
+    /** Event code of a character's turn starting. */
+    public static final int TURN = 5;
+
+    /**
+     * Size of one record in bytes.
+     */
+    public static final int RECORD_BYTES = 32;
+
+    /**
+     * First four bytes of every segment, "BJNL".
+     */
+    public static final int MAGIC = 0x424A4E4C;
+
+    /**
+     * Format version written after the magic number.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the segment header: magic, version, record size and segment number, as ints.
+     */
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * Records in one segment; a segment file is 1 MB.
+     */
+    public static final int SEGMENT_RECORDS = (1024 * 1024 - HEADER_BYTES) / RECORD_BYTES;
+
+    /**
+     * Longest time records wait in the ring before the writer moves them to the segment.
+     */
+    public static final long FLUSH_INTERVAL_NANOS = 100_000_000L;
+
+    /**
+     * Records the ring holds; a power of two.
+     */
+    private static final int RING_RECORDS = 4096;
+
+    /**
+     * Number of waiting records that wakes the writer before its interval is up.
+     */
+    private static final int BATCH_RECORDS = RING_RECORDS / 4;
+
+    /**
+     * Records handed from the ticking thread to the writer.
+     */
+    private final ByteBuffer ring = ByteBuffer.allocate(RING_RECORDS * RECORD_BYTES);
+
+    /**
+     * Folder the segments are written to.
+     */
+    private final Path directory;
+
+    /**
+     * Thread moving records from the ring into the segments.
+     */
+    private final Thread writer;
+
+    /**
+     * Number of records put into the ring so far. Written by the ticking thread only;
+     * the volatile write publishes the record to the writer.
+     */
+    private volatile long head = 0;
+
+    /**
+     * Number of records the writer has taken from the ring. Written by the writer only.
+     */
+    private volatile long tail = 0;
+
+    /**
+     * Number of events appended so far, including dropped ones. Used by the ticking thread only.
+     */
+    private int eventCount = 0;
+
+    /**
+     * Cleared by close() to stop the writer once the ring is empty; later appends are dropped.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Set if a segment could not be written; records are dropped from then on.
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * Records that did not fit in the ring, came after writing failed or after close(),
+     * or were still in the ring when the writer stopped.
+     */
+    private volatile long dropped = 0;
+
+    /**
+     * Segment being filled. Used by the writer only.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * Number of the segment being filled. Used by the writer only.
+     */
+    private int segmentNumber = -1;
+
+    /**
+     * Records written to disk so far.
+     */
+    private volatile long written = 0;
+
+    /**
+     * Opens a journal in a folder and starts its writer. The first segment is created right away,
+     * so a folder that cannot be written to is reported here rather than later.
+     * Segments left in the folder by an earlier match are overwritten.
+     * @param directory Folder for the segment files; created if missing
+     * @throws IOException If the folder or the first segment cannot be created
+     */
+    public BattleJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        openSegment(0);
+
+        writer = new Thread(this::writeLoop, "battle-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Gets the file name of a segment.
+     * @param number Segment number, counting from 0
+     * @return Name such as "battle-00000.journal"
+     */
+    public static String segmentName(int number) {
+        return String.format("battle-%05d.journal", number);
+    }
+
+    /**
+     * Adds one event to the journal.
+     * Call on the thread that ticks the game. Creates no objects and never waits;
+     * if the ring is full, or the journal was closed, the record is dropped.
+     * @param time Game clock of the current tick, in nanoseconds
+     * @param type Event code, such as DAMAGE
+     * @param actor Journal id of the acting character
+     * @param target Journal id of the character acted on, or -1
+     * @param value Event value, see the record layout
+     * @param detail Event detail, see the record layout
+     */
+    public void append(long time, int type, int actor, int target, int value, int detail) {
+        int sequence = eventCount++;
+        long slot = head;
+        if (!running || failed || slot - tail >= RING_RECORDS) {
+            dropped++;
+            return;
+        }
+        int offset = (int) (slot & (RING_RECORDS - 1)) * RECORD_BYTES;
+        ring.putLong(offset, time);
+        ring.putInt(offset + 8, sequence);
+        ring.putInt(offset + 12, type);
+        ring.putInt(offset + 16, actor);
+        ring.putInt(offset + 20, target);
+        ring.putInt(offset + 24, value);
+        ring.putInt(offset + 28, detail);
+        head = slot + 1;  // Publishes the record to the writer
+
+        // A busy battle should not wait for the interval and fill the ring
+        if (slot + 1 - tail == BATCH_RECORDS) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Moves records to disk every FLUSH_INTERVAL_NANOS, or sooner when a batch is waiting,
+     * until the journal is closed and the ring is empty.
+     */
+    private void writeLoop() {
+        while (true) {
+            boolean stopping = !running;
+            try {
+                drain();
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("Battle journal stopped: " + e);
+                return;
+            }
+            if (stopping) {
+                return;
+            }
+            LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+        }
+    }
+
+    /**
+     * Copies every record in the ring to the segments and forces what was written to disk.
+     * @throws IOException If a new segment cannot be created
+     */
+    private void drain() throws IOException {
+        long end = head;
+        long next = tail;
+        if (next == end) {
+            return;
+        }
+        while (next < end) {
+            if (!segment.hasRemaining()) {
+                segment.force();
+                openSegment(segmentNumber + 1);
+            }
+            int offset = (int) (next & (RING_RECORDS - 1)) * RECORD_BYTES;
+            segment.put(segment.position(), ring, offset, RECORD_BYTES);
+            segment.position(segment.position() + RECORD_BYTES);
+            next++;
+            tail = next;  // Frees the slot for the ticking thread
+        }
+        segment.force();
+        written = end;
+    }
+
+    /**
+     * Creates and maps a segment file and writes its header.
+     * @param number Segment number
+     * @throws IOException If the file cannot be created or mapped
+     */
+    private void openSegment(int number) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(segmentName(number)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The mapping stays valid after the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) SEGMENT_RECORDS * RECORD_BYTES);
+        }
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putInt(RECORD_BYTES);
+        segment.putInt(number);
+        segmentNumber = number;
+    }
+
+    /**
+     * Gets the folder the segments are written to.
+     * @return The journal folder
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of records on disk.
+     * @return Records written
+     */
+    public long getRecordsWritten() {
+        return written;
+    }
+
+    /**
+     * Gets the number of segment files created.
+     * @return Segment count
+     */
+    public int getSegmentCount() {
+        return segmentNumber + 1;
+    }
+
+    /**
+     * Gets the number of records that were dropped because the writer fell behind or failed,
+     * or because they were appended after the journal was closed.
+     * @return Dropped records
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Writes the records still in the ring and stops the writer.
+     * Call on the thread that ticks the game, or after it has stopped; records appended
+     * later are dropped, and any the writer could not take are counted as dropped too.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Left behind by a failed writer, or published just as it took its last batch
+        dropped += head - tail;
+    }
+}
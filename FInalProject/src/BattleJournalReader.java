@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back the segments a BattleJournal wrote, from the first record to the last.
+ * Segments are opened one after the other in number order and scanned front to back,
+ * so a journal of any length is read with one segment mapped at a time.
+ * Started with "--journal-report <dir>" to print a summary of a recorded match.
+ */
+public class BattleJournalReader {
+    /**
+     * Receives the records of a journal in the order they were written.
+     */
+    public interface RecordHandler {
+        /**
+         * Handles one record. The fields are those of the BattleJournal record layout.
+         * @param time Game clock of the tick the event happened in, in nanoseconds
+         * @param sequence Number of the event in the battle; skipped numbers were dropped
+         * @param type Event code, such as BattleJournal.DAMAGE
+         * @param actor Journal id of the acting character
+         * @param target Journal id of the character acted on, or -1
+         * @param value Event value
+         * @param detail Event detail
+         */
+        void record(long time, int sequence, int type, int actor, int target, int value, int detail);
+    }
+
+    /**
+     * Folder holding the segments.
+     */
+    private final Path directory;
+
+    /**
+     * Creates a reader for a journal folder.
+     * @param directory Folder the BattleJournal wrote to
+     */
+    public BattleJournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Passes every record of the journal to a handler, segment by segment.
+     * Reading stops at the first segment that does not exist or the first empty record.
+     * @param handler Receives the records
+     * @return Number of records read
+     * @throws IOException If a segment cannot be read
+     * @throws IllegalArgumentException If a segment is not a journal segment or has the wrong number
+     */
+    public long read(RecordHandler handler) throws IOException {
+        long count = 0;
+        for (int number = 0; ; number++) {
+            Path file = directory.resolve(BattleJournal.segmentName(number));
+            if (!Files.exists(file)) {
+                return count;
+            }
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (segment.remaining() < BattleJournal.HEADER_BYTES || segment.getInt() != BattleJournal.MAGIC
+                    || segment.getInt() != BattleJournal.VERSION || segment.getInt() != BattleJournal.RECORD_BYTES
+                    || segment.getInt() != number) {
+                throw new IllegalArgumentException(file + " is not segment " + number + " of a battle journal");
+            }
+            while (segment.remaining() >= BattleJournal.RECORD_BYTES) {
+                long time = segment.getLong();
+                int sequence = segment.getInt();
+                int type = segment.getInt();
+                int actor = segment.getInt();
+                int target = segment.getInt();
+                int value = segment.getInt();
+                int detail = segment.getInt();
+                if (type == 0) {
+                    return count;  // The rest of the last segment was never written
+                }
+                handler.record(time, sequence, type, actor, target, value, detail);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Reads the whole journal and prints how the match went: how many events of each kind,
+     * how long it lasted, and the damage dealt by the player and by the enemies.
+     * @param out Where the summary is printed
+     * @throws IOException If a segment cannot be read
+     */
+    public void printSummary(PrintStream out) throws IOException {
+        Summary summary = new Summary();
+        long total = read(summary);
+        out.printf("%d records in %s%n", total, directory);
+        if (total == 0) {
+            return;
+        }
+        out.printf("%.1f s of battle, %d spawns, %d turns, %d attacks, %d hits, %d deaths%n",
+                (summary.lastTime - summary.firstTime) / 1e9, summary.counts[BattleJournal.SPAWN],
+                summary.counts[BattleJournal.TURN], summary.counts[BattleJournal.ATTACK],
+                summary.counts[BattleJournal.DAMAGE], summary.counts[BattleJournal.DEATH]);
+        out.printf("Damage dealt: player %d, enemies %d%n", summary.playerDamage, summary.enemyDamage);
+        if (summary.gaps > 0) {
+            out.printf("%d gaps in the record numbers; records were dropped while writing%n", summary.gaps);
+        }
+    }
+
+    /**
+     * Totals gathered by printSummary().
+     */
+    private static class Summary implements RecordHandler {
+        /** Records of each event code, indexed by code. */
+        final long[] counts = new long[BattleJournal.TURN + 1];
+
+        /** Game clock of the first record. */
+        long firstTime = Long.MAX_VALUE;
+
+        /** Game clock of the last record. */
+        long lastTime = Long.MIN_VALUE;
+
+        /** Hit points the player's attacks took from enemies. */
+        long playerDamage = 0;
+
+        /** Hit points the enemies' attacks took from the player. */
+        long enemyDamage = 0;
+
+        /** Sequence number the next record should have. */
+        int expectedSequence = 0;
+
+        /** Places where records are missing. */
+        int gaps = 0;
+
+        @Override
+        public void record(long time, int sequence, int type, int actor, int target, int value, int detail) {
+            if (type < counts.length) {
+                counts[type]++;
+            }
+            if (type == BattleJournal.DAMAGE) {
+                if (actor == 0) {
+                    playerDamage += value;
+                } else {
+                    enemyDamage += value;
+                }
+            }
+            if (sequence != expectedSequence) {
+                gaps++;
+            }
+            expectedSequence = sequence + 1;
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+        }
+    }
+}
@@ -0,0 +1,744 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The rules of one battle, played the same way by the drawn game (GameController) and by
+ * headless sessions on a BattleServer (BattleSession): whose turn it is, when the player and the
+ * enemies may start an attack, whether a swing connects, what an enemy's AI command does, and how
+ * enemies walk toward the player along the FlowField.
+ * Range and hits are decided with the characters' hit masks, so a headless enemy stops and misses
+ * exactly where a drawn one would. Every hit goes through the CombatRules and is reported to the
+ * flight recorder, and to a BattleJournal when one is kept.
+ * <p>
+ * Drawing, particles, input and timers stay with the caller, which ticks the battle: it takes the
+ * player's commands, hands the enemies' AI commands to applyEnemyCommand(), and advances the
+ * attacks and walks. A HitListener hears about every hit that lands.
+ * Ticked by one thread. Creates no objects while a battle is played.
+ */
+public class BattleRules {
+    /**
+     * Aura a leading enemy puts on every other enemy while it lives: a quarter more attack.
+     * Applied once per living leader, so two leaders stack.
+     */
+    public static final StatModifier LEADER_AURA =
+            new StatModifier(StatModifier.Stat.ATTACK, StatModifier.Kind.MULTIPLY, 1.25);
+
+    /**
+     * The player's character.
+     */
+    private final Player player;
+
+    /**
+     * Hit masks of the player's attack animation; its first frame is the player's idle pose.
+     */
+    private final HitMaskSource playerMasks;
+
+    /**
+     * Timing of the player's attack animation.
+     */
+    private final AnimationController playerAttack;
+
+    /**
+     * Position of the player's sprite center on the battlefield.
+     */
+    private final double playerX, playerY;
+
+    /**
+     * Directions toward the player's feet, which every enemy walks along.
+     */
+    private final FlowField flowField;
+
+    /**
+     * Every enemy in the battle; the first one is shown in the stats panel.
+     */
+    private final List<EnemyUnit> enemies = new ArrayList<>();
+
+    /**
+     * Orders the player and every enemy by speed; only the combatant at the front may act.
+     */
+    private final InitiativeScheduler initiative = new InitiativeScheduler();
+
+    /**
+     * Living enemies that lead their wave, each giving the others LEADER_AURA.
+     */
+    private final List<Enemy> leaders = new ArrayList<>();
+
+    /**
+     * Formulas that turn an attack into damage.
+     */
+    private CombatRules combatRules;
+
+    /**
+     * Source of the random roll handed to the combat rules for every attack.
+     */
+    private final Random combatRandom;
+
+    /**
+     * Told about every hit, or null.
+     */
+    private HitListener hitListener;
+
+    /**
+     * The enemy the player's current attack will hit.
+     * Chosen when the attack starts so the damage lands on the same enemy.
+     */
+    private EnemyUnit attackTarget;
+
+    /**
+     * The enemy whose attack animation is playing on the enemies' turn, or null.
+     * Only one enemy strikes per enemy turn.
+     */
+    private EnemyUnit activeAttacker;
+
+    /**
+     * Whether the player's attack animation is playing.
+     */
+    private boolean playerAttacking = false;
+
+    /**
+     * Whether the player's weapon has touched its target during the current attack animation.
+     * Damage is only dealt at the end of a swing that connected.
+     */
+    private boolean playerSwingConnected = false;
+
+    /**
+     * Whether the active attacker's weapon has touched the player during its current attack animation.
+     */
+    private boolean enemySwingConnected = false;
+
+    /**
+     * Whether an enemy chose to attack on its turn since the last finishEnemyCommands().
+     */
+    private boolean attackChosen = false;
+
+    /**
+     * Whether the player may start an attack, as decided at the end of each turn and when an enemy arrives.
+     */
+    private boolean attackReady = false;
+
+    /**
+     * Log of the battle's events, or null when none is kept.
+     */
+    private BattleJournal journal;
+
+    /**
+     * Time stamp (in nanoseconds) journal records carry; the current tick's.
+     */
+    private long journalTime = 0;
+
+    /**
+     * Id of every character in the battle in journal records: 0 for the player,
+     * and for enemies the order they joined in, counting from 1. Unlike positions in
+     * the enemy list, the ids stay the same when defeated enemies are removed.
+     */
+    private final Map<Character, Integer> journalIds = new IdentityHashMap<>();
+
+    /**
+     * Journal id the next enemy to join gets.
+     */
+    private int nextJournalId = 1;
+
+    /**
+     * Creates a battle with only the player in it, who opens the turn order.
+     * @param player The player's character
+     * @param playerMasks Hit masks of the player's attack animation
+     * @param playerAttack Timing of the player's attack animation, with playerMasks' frame numbering
+     * @param playerX X coordinate of the player's sprite center
+     * @param playerY Y coordinate of the player's sprite center
+     * @param flowField Directions toward the player's feet; only read
+     * @param combatRules Damage formulas
+     * @param combatRandom Source of the damage rolls
+     */
+    public BattleRules(Player player, HitMaskSource playerMasks, AnimationController playerAttack,
+            double playerX, double playerY, FlowField flowField, CombatRules combatRules, Random combatRandom) {
+        this.player = player;
+        this.playerMasks = playerMasks;
+        this.playerAttack = playerAttack;
+        this.playerX = playerX;
+        this.playerY = playerY;
+        this.flowField = flowField;
+        this.combatRules = combatRules;
+        this.combatRandom = combatRandom;
+        journalIds.put(player, 0);
+        initiative.add(player);
+    }
+
+    /**
+     * Puts an enemy into the battle; it joins the turn order behind the combatants already in it.
+     * @param unit The enemy
+     */
+    public void addEnemy(EnemyUnit unit) {
+        addEnemy(unit, false);
+    }
+
+    /**
+     * Puts an enemy into the battle, possibly as a leader.
+     * It gets the aura of every living leader; a leader also gives its aura to every living enemy
+     * already fighting, and takes it back when it falls.
+     * @param unit The enemy
+     * @param leader Whether it leads its wave
+     */
+    public void addEnemy(EnemyUnit unit, boolean leader) {
+        Enemy enemy = unit.getEnemy();
+        for (int i = 0; i < leaders.size(); i++) {
+            enemy.addModifier(LEADER_AURA);
+        }
+        if (leader) {
+            for (int i = 0; i < enemies.size(); i++) {
+                Enemy ally = enemies.get(i).getEnemy();
+                if (ally.isAlive()) {
+                    ally.addModifier(LEADER_AURA);
+                }
+            }
+            leaders.add(enemy);
+        }
+        enemies.add(unit);
+        initiative.add(enemy);
+        journalIds.put(enemy, nextJournalId++);
+        journal(BattleJournal.SPAWN, enemy, null, enemy.getHitPoints(), (int) unit.getX());
+    }
+
+    /**
+     * Drops defeated enemies from the list, so a long run of waves only keeps the enemies still fighting.
+     * Each one also gives back its slot on the initiative timeline, which is handed to the next enemy
+     * to spawn, so the scheduler's memory follows the live enemies rather than every spawn;
+     * this also covers enemies defeated other than by the player's attack, which does it at once.
+     * The enemy being hit or attacking right now stays until its animation ends,
+     * and the list never becomes empty because the stats panel shows its first enemy.
+     * Call while nothing else holds indices into the list, such as AI workers.
+     */
+    public void removeDefeatedEnemies() {
+        for (int i = enemies.size() - 1; i >= 0 && enemies.size() > 1; i--) {
+            EnemyUnit unit = enemies.get(i);
+            if (!unit.getEnemy().isAlive() && unit != attackTarget && unit != activeAttacker) {
+                enemies.remove(i);
+                initiative.remove(unit.getEnemy());
+                journalIds.remove(unit.getEnemy());
+            }
+        }
+    }
+
+    /**
+     * Starts the player's attack on the closest enemy in range.
+     * @return true if the attack started, false if the player cannot attack right now
+     */
+    public boolean startPlayerAttack() {
+        EnemyUnit target = findAttackTarget();
+        if (isPlayerTurn() && !playerAttacking && target != null) {
+            attackTarget = target;
+            journal(BattleJournal.ATTACK, player, target.getEnemy(), 0, 0);
+            playerAttacking = true;
+            playerSwingConnected = false;
+            playerAttack.resetAnimation();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advances the player's attack. The hit only counts if the weapon touched the target in some
+     * frame of the swing; it lands when the animation ends, and then the next combatant's turn begins.
+     * @param now Current time in nanoseconds
+     * @return true if the attack's frame changed
+     */
+    public boolean updatePlayerAttack(long now) {
+        if (!playerAttacking || !playerAttack.update(now)) {
+            return false;
+        }
+        if (!playerSwingConnected) {
+            playerSwingConnected = touches(playerMasks, playerAttack.getCurrentFrame(), playerX, playerY, false,
+                    shownMasks(attackTarget), shownFrame(attackTarget), attackTarget.getX(), attackTarget.getY(), true);
+        }
+
+        if (playerAttack.isAnimationComplete()) {
+            EnemyUnit target = attackTarget;
+            Enemy targetEnemy = target.getEnemy();
+            if (playerSwingConnected) {
+                dealDamage(player, targetEnemy);
+                if (hitListener != null) {
+                    hitListener.hit(targetEnemy, target.getX(), target.getY());
+                }
+            }
+            playerAttacking = false;
+            playerAttack.resetAnimation();
+            attackTarget = null;
+
+            // Defeated enemies leave the turn order; then the next combatant acts
+            if (!targetEnemy.isAlive()) {
+                initiative.remove(targetEnemy);
+            }
+            endTurn();
+        }
+        return true;
+    }
+
+    /**
+     * Carries out one enemy's AI command.
+     * APPROACH starts it walking unless it is in range; ATTACK starts its attack on its own turn when in range,
+     * and otherwise walks it in until a swing would touch. Defeated enemies are ignored.
+     * Call finishEnemyCommands() after the commands of one round of decisions.
+     * @param unit The enemy
+     * @param command What its AI decided
+     * @return true if the enemy started walking or attacking
+     */
+    public boolean applyEnemyCommand(EnemyUnit unit, EnemyCommand command) {
+        if (!unit.getEnemy().isAlive()) {
+            return false;
+        }
+        switch (command) {
+            case APPROACH:
+                if (!unit.isWalking() && !unit.isAttacking() && !isInAttackRange(unit)) {
+                    unit.setWalking(true);
+                    return true;
+                }
+                return false;
+            case ATTACK:
+                if (initiative.peek() == unit.getEnemy() && isInAttackRange(unit)) {
+                    attackChosen = true;
+                    return startEnemyAttack(unit);
+                }
+                if (!unit.isWalking() && !unit.isAttacking() && !isInAttackRange(unit)) {
+                    // Close enough by distance, but no swing would touch: step in until one does
+                    unit.setWalking(true);
+                    return true;
+                }
+                return false;
+            case HOLD:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Ends a round of enemy commands. If the enemy whose turn it is could not strike,
+     * the next combatant gets its turn; only decisions made for this same enemy's turn may pass it on.
+     * @param decidedFor Index of the enemy whose turn the decisions were made on, or -1 on the player's turn
+     * @return true if the turn passed
+     */
+    public boolean finishEnemyCommands(int decidedFor) {
+        boolean chosen = attackChosen;
+        attackChosen = false;
+        int active = getActiveEnemyIndex();
+        if (active >= 0 && decidedFor == active && activeAttacker == null && !chosen) {
+            endTurn();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts an enemy's attack, unless another enemy is attacking or the player is defeated.
+     * @param unit The enemy that attacks
+     * @return true if the attack started
+     */
+    private boolean startEnemyAttack(EnemyUnit unit) {
+        if (activeAttacker == null && player.isAlive()) {
+            activeAttacker = unit;
+            unit.setAttacking(true);
+            journal(BattleJournal.ATTACK, unit.getEnemy(), player, 0, 0);
+            enemySwingConnected = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lets the timed buffs and debuffs of every combatant run out.
+     * Characters with none due return at once. Call once per tick, before anyone acts.
+     * @param now Current time in nanoseconds
+     */
+    public void expireModifiers(long now) {
+        player.expireModifiers(now);
+        for (int i = 0; i < enemies.size(); i++) {
+            enemies.get(i).getEnemy().expireModifiers(now);
+        }
+    }
+
+    /**
+     * Moves a walking enemy one step along the flow field toward the player, looked up at its feet.
+     * The step is drawn as a glide over the time until the next step.
+     * It stops walking once it is in range, which lets the player attack if it is the player's turn.
+     * Call on each walk clock tick the enemy takes a step on.
+     * @param unit The walking enemy
+     * @param now Time stamp of the step in nanoseconds
+     */
+    public void stepEnemy(EnemyUnit unit, long now) {
+        double feetY = unit.getY() + GameController.MINOTAUR_FEET_OFFSET;
+        unit.stepBy(flowField.getDirectionX(unit.getX(), feetY) * GameController.WALK_STEP,
+                flowField.getDirectionY(unit.getX(), feetY) * GameController.WALK_STEP, now);
+
+        if (isInAttackRange(unit)) {
+            unit.setWalking(false);
+            if (isPlayerTurn() && !playerAttacking) {
+                attackReady = true;
+            }
+        }
+    }
+
+    /**
+     * Advances an enemy's attack on the enemies' turn. Like the player's, the hit only counts
+     * if the weapon touched the player in some frame, and lands when the animation ends.
+     * @param unit The enemy
+     * @param now Current time in nanoseconds
+     * @return true if the attack's frame changed
+     */
+    public boolean updateEnemyAttack(EnemyUnit unit, long now) {
+        if (!unit.isAttacking() || isPlayerTurn() || !unit.getAttackController().update(now)) {
+            return false;
+        }
+        if (!enemySwingConnected) {
+            enemySwingConnected = touches(unit.getAttackMasks(), unit.getAttackController().getCurrentFrame(),
+                    unit.getX(), unit.getY(), true,
+                    playerMasks, playerAttack.getCurrentFrame(), playerX, playerY, false);
+        }
+
+        if (unit.getAttackController().isAnimationComplete()) {
+            if (enemySwingConnected) {
+                dealDamage(unit.getEnemy(), player);
+                if (hitListener != null) {
+                    hitListener.hit(player, playerX, playerY);
+                }
+            }
+            unit.setAttacking(false);
+            activeAttacker = null;
+            endTurn();
+        }
+        return true;
+    }
+
+    /**
+     * Lands one attack: works out the damage with the combat rules and applies it.
+     * Each hit is also reported to the flight recorder when a recording is running.
+     * @param attacker Character making the attack
+     * @param defender Character being hit
+     */
+    private void dealDamage(Character attacker, Character defender) {
+        int damage = combatRules.damage(attacker, defender, combatRandom.nextDouble());
+        defender.takeDamage(damage);
+        if (DamageEvent.isRecording()) {
+            DamageEvent.record(describe(attacker), describe(defender), damage, defender.getHitPoints());
+        }
+        journal(BattleJournal.DAMAGE, attacker, defender, damage, defender.getHitPoints());
+        if (!defender.isAlive()) {
+            journal(BattleJournal.DEATH, defender, attacker, 0, 0);
+            // A fallen leader's aura leaves the enemies still fighting
+            if (leaders.remove(defender)) {
+                for (int i = 0; i < enemies.size(); i++) {
+                    Enemy ally = enemies.get(i).getEnemy();
+                    if (ally.isAlive()) {
+                        ally.removeModifier(LEADER_AURA);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the current combatant's turn and moves on to the next one in speed order.
+     * The player may attack if the player is next and a target is in range.
+     */
+    private void endTurn() {
+        initiative.endTurn();
+        Character next = initiative.peek();
+        if (next != null) {
+            journal(BattleJournal.TURN, next, null, next.getSpeed(), 0);
+        }
+        attackReady = isPlayerTurn() && player.isAlive() && findAttackTarget() != null;
+    }
+
+    /**
+     * Checks if an enemy is close enough to the player for combat.
+     * The distance check rules out far enemies cheaply; after that both fighters'
+     * weapons must be able to reach the other in some frame of their attack,
+     * so neither one stops where its swings could never land.
+     * Each side is one mask test against the union of its attack frames.
+     * @param unit The enemy to check
+     * @return true if within attack range, false otherwise
+     */
+    public boolean isInAttackRange(EnemyUnit unit) {
+        double distance = Math.hypot(playerX - unit.getX(), playerY - unit.getY());
+        if (distance >= GameController.ATTACK_RANGE) {  // 225 pixels is close enough for melee combat
+            return false;
+        }
+        return canReach(playerMasks, playerX, playerY, false,
+                        shownMasks(unit), shownFrame(unit), unit.getX(), unit.getY(), true)
+                && canReach(unit.getAttackMasks(), unit.getX(), unit.getY(), true,
+                        playerMasks, playerAttack.getCurrentFrame(), playerX, playerY, false);
+    }
+
+    /**
+     * Finds the closest living enemy the player can reach.
+     * @return The enemy to attack, or null if none is in range
+     */
+    public EnemyUnit findAttackTarget() {
+        EnemyUnit closest = null;
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            if (unit.getEnemy().isAlive() && isInAttackRange(unit)
+                    && (closest == null || unit.getX() < closest.getX())) {
+                closest = unit;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Checks if any frame of an attack animation touches one frame of a target.
+     * Tests the union of all attack frames at once, which touches exactly when some frame does.
+     * @param attackMasks Attack animation of the attacker
+     * @param x World X coordinate of the attacker's center
+     * @param y World Y coordinate of the attacker's center
+     * @param mirrored Whether the attacker is drawn flipped
+     * @param targetMasks Clip the target is shown with
+     * @param targetFrame Frame the target is shown with
+     * @param targetX World X coordinate of the target's center
+     * @param targetY World Y coordinate of the target's center
+     * @param targetMirrored Whether the target is drawn flipped
+     * @return true if at least one attack frame touches the target
+     */
+    private static boolean canReach(HitMaskSource attackMasks, double x, double y, boolean mirrored,
+            HitMaskSource targetMasks, int targetFrame, double targetX, double targetY, boolean targetMirrored) {
+        return overlaps(attackMasks.getUnionHitMask(mirrored), x, y,
+                targetMasks.getHitMask(targetFrame, targetMirrored), targetX, targetY);
+    }
+
+    /**
+     * Checks if two frames, drawn the way GameWorld draws them, have solid pixels in the same place.
+     * @param masksA Clip of the first character
+     * @param frameA Frame of the first character
+     * @param ax World X coordinate of the first character's center
+     * @param ay World Y coordinate of the first character's center
+     * @param mirroredA Whether the first character is drawn flipped
+     * @param masksB Clip of the second character
+     * @param frameB Frame of the second character
+     * @param bx World X coordinate of the second character's center
+     * @param by World Y coordinate of the second character's center
+     * @param mirroredB Whether the second character is drawn flipped
+     * @return true if the frames touch; false if either frame does not exist
+     */
+    private static boolean touches(HitMaskSource masksA, int frameA, double ax, double ay, boolean mirroredA,
+            HitMaskSource masksB, int frameB, double bx, double by, boolean mirroredB) {
+        return overlaps(masksA.getHitMask(frameA, mirroredA), ax, ay, masksB.getHitMask(frameB, mirroredB), bx, by);
+    }
+
+    /**
+     * Checks if two masks, each centered on a world position, have solid cells in the same place.
+     * Both are placed on a grid of hit mask cells, which at SPRITE_SCALE are the same size for every sprite,
+     * and their masks are compared box first, then row by row.
+     * @param maskA First mask
+     * @param ax World X coordinate of the first mask's center
+     * @param ay World Y coordinate of the first mask's center
+     * @param maskB Second mask
+     * @param bx World X coordinate of the second mask's center
+     * @param by World Y coordinate of the second mask's center
+     * @return true if the masks touch; false if either is null
+     */
+    private static boolean overlaps(HitMask maskA, double ax, double ay, HitMask maskB, double bx, double by) {
+        if (maskA == null || maskB == null) {
+            return false;
+        }
+
+        // Sprites are drawn centered on their position; masks are placed by their top-left corner
+        double cell = CharacterSprite.HIT_MASK_CELL * GameWorld.SPRITE_SCALE;
+        return HitMask.overlaps(maskA,
+                (int) Math.floor(ax / cell) - maskA.getWidth() / 2, (int) Math.floor(ay / cell) - maskA.getHeight() / 2,
+                maskB,
+                (int) Math.floor(bx / cell) - maskB.getWidth() / 2, (int) Math.floor(by / cell) - maskB.getHeight() / 2);
+    }
+
+    /**
+     * Gets the clip an enemy is shown with, chosen the same way as FrameState does.
+     * @param unit The enemy
+     * @return The attack masks while attacking or standing, the walk masks while walking
+     */
+    private static HitMaskSource shownMasks(EnemyUnit unit) {
+        return unit.isWalking() && !unit.isAttacking() ? unit.getWalkMasks() : unit.getAttackMasks();
+    }
+
+    /**
+     * Gets the frame an enemy is shown with, chosen the same way as FrameState does.
+     * @param unit The enemy
+     * @return The current attack or walk frame; the first attack frame while standing
+     */
+    private static int shownFrame(EnemyUnit unit) {
+        if (unit.isAttacking()) {
+            return unit.getAttackController().getCurrentFrame();
+        }
+        if (unit.isWalking()) {
+            return unit.getWalkFrame();
+        }
+        return unit.getAttackMasks().getStartIndex();
+    }
+
+    /**
+     * Adds an event to the battle journal, if one is kept. Creates no objects.
+     * @param type Event code, such as BattleJournal.DAMAGE
+     * @param actor Character acting
+     * @param target Character acted on, or null
+     * @param value Event value, see BattleJournal
+     * @param detail Event detail, see BattleJournal
+     */
+    private void journal(int type, Character actor, Character target, int value, int detail) {
+        if (journal != null) {
+            journal.append(journalTime, type, journalId(actor), journalId(target), value, detail);
+        }
+    }
+
+    /**
+     * Looks up a character's id in journal records.
+     * @param character The player, an enemy, or null
+     * @return The id, or -1 for null or a character that is not in the battle
+     */
+    private int journalId(Character character) {
+        Integer id = character == null ? null : journalIds.get(character);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Names a character for flight recordings.
+     * @param character The player or one of the enemies
+     * @return "Player", or "Enemy " followed by the enemy's position in the wave, counting from 1
+     */
+    private String describe(Character character) {
+        if (character == player) {
+            return "Player";
+        }
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.get(i).getEnemy() == character) {
+                return "Enemy " + (i + 1);
+            }
+        }
+        return character.getClass().getSimpleName();
+    }
+
+    /**
+     * Starts keeping a journal of the battle's events.
+     * The enemies already in the battle are recorded as spawns first.
+     * @param journal The journal to append to
+     */
+    public void setJournal(BattleJournal journal) {
+        this.journal = journal;
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            journal(BattleJournal.SPAWN, unit.getEnemy(), null, unit.getEnemy().getHitPoints(), (int) unit.getX());
+        }
+    }
+
+    /**
+     * Gets the battle journal.
+     * @return The journal, or null when none is kept
+     */
+    public BattleJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the time stamp the journal records made from now on carry; call at the start of each tick.
+     * @param now Time of the tick in nanoseconds
+     */
+    public void setTime(long now) {
+        journalTime = now;
+    }
+
+    /**
+     * Replaces the combat formulas used for every attack.
+     * @param combatRules The compiled rules to use
+     */
+    public void setCombatRules(CombatRules combatRules) {
+        this.combatRules = combatRules;
+    }
+
+    /**
+     * Sets who is told about every hit.
+     * @param hitListener The listener, or null
+     */
+    public void setHitListener(HitListener hitListener) {
+        this.hitListener = hitListener;
+    }
+
+    /**
+     * Checks if the player is the combatant acting now.
+     * @return true on the player's turn
+     */
+    public boolean isPlayerTurn() {
+        return initiative.peek() == player;
+    }
+
+    /**
+     * Finds the enemy unit whose turn it is.
+     * @return Index into the enemy list, or -1 on the player's turn
+     */
+    public int getActiveEnemyIndex() {
+        Character active = initiative.peek();
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.get(i).getEnemy() == active) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if every enemy has been defeated.
+     * @return true when no enemy is alive
+     */
+    public boolean areAllEnemiesDefeated() {
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.get(i).getEnemy().isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the player may start an attack, as the game logic last decided.
+     * @return true when a living enemy is in range on the player's turn
+     */
+    public boolean isAttackReady() {
+        return attackReady;
+    }
+
+    /**
+     * Checks if the player's attack animation is playing.
+     * @return true while the player attacks
+     */
+    public boolean isPlayerAttacking() {
+        return playerAttacking;
+    }
+
+    /**
+     * Checks if an enemy's attack animation is playing.
+     * @return true while an enemy attacks
+     */
+    public boolean isEnemyAttacking() {
+        return activeAttacker != null;
+    }
+
+    /**
+     * Gets the player's character.
+     * @return The player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets every enemy in the battle.
+     * @return The list of enemy units (do not modify; use addEnemy())
+     */
+    public List<EnemyUnit> getEnemies() {
+        return enemies;
+    }
+
+    /**
+     * Gets the turn order of all combatants.
+     * @return The initiative scheduler
+     */
+    public InitiativeScheduler getInitiative() {
+        return initiative;
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hosts many independent headless battles in one process and lets clients play them over a local socket.
+ * Every connection gets its own BattleSession, ticked 60 times a second by a virtual thread,
+ * and a second virtual thread reads the client's commands. Virtual threads cost a few hundred bytes
+ * while parked, and the JDK runs them on one carrier thread per core, so the number of sessions
+ * is limited by CPU time per tick rather than by threads, and it grows with the cores of the machine.
+ * <p>
+ * The protocol is plain text, one message per line, UTF-8:
+ * the server first sends "WELCOME id", then a "STATE ..." line (see BattleSession.appendState())
+ * after every tick in which something changed, and finally "END WON" or "END LOST".
+ * The client may send "ATTACK" at any time; it is buffered briefly if the player cannot attack yet.
+ * "QUIT" or closing the connection ends the session.
+ * <p>
+ * Ticks that start late are counted, so a load test shows when the box runs out of CPU.
+ */
+public class BattleServer implements Closeable {
+    /**
+     * Time between two ticks of a session: 60 ticks per second, like the game's pulses.
+     */
+    public static final long TICK_NANOS = 1_000_000_000L / 60;
+
+    /**
+     * How many connections may wait to be accepted.
+     * A load test connects thousands of clients at once.
+     */
+    private static final int ACCEPT_BACKLOG = 4096;
+
+    /**
+     * Socket the clients connect to, bound to the loopback address only.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Formulas every session deals damage with.
+     */
+    private final CombatRules combatRules;
+
+    /**
+     * Directions toward the player, built once and shared read-only by every session.
+     */
+    private final FlowField flowField;
+
+    /**
+     * Hit masks of the skeleton's attack, loaded once and shared read-only by every session.
+     */
+    private final ClipHitMasks playerMasks;
+
+    /**
+     * Hit masks of the minotaur's walk cycle, shared like the player's.
+     */
+    private final ClipHitMasks walkMasks;
+
+    /**
+     * Hit masks of the minotaur's attack, shared like the player's.
+     */
+    private final ClipHitMasks attackMasks;
+
+    /**
+     * Virtual thread accepting connections.
+     */
+    private final Thread acceptThread;
+
+    /**
+     * Number given to the next session.
+     */
+    private final AtomicInteger nextSessionId = new AtomicInteger(1);
+
+    /**
+     * Number of sessions currently running.
+     */
+    private final AtomicInteger activeSessions = new AtomicInteger(0);
+
+    /**
+     * Most sessions that ran at the same time.
+     */
+    private final AtomicInteger peakSessions = new AtomicInteger(0);
+
+    /**
+     * Number of battles that ended with a winner.
+     */
+    private final LongAdder finishedBattles = new LongAdder();
+
+    /**
+     * Ticks run by all sessions.
+     */
+    private final LongAdder ticks = new LongAdder();
+
+    /**
+     * Ticks that started more than one tick interval after they were due.
+     */
+    private final LongAdder lateTicks = new LongAdder();
+
+    /**
+     * Sum of how late every tick started, in nanoseconds.
+     */
+    private final LongAdder totalLateness = new LongAdder();
+
+    /**
+     * Latest start of any tick, in nanoseconds after it was due.
+     */
+    private final AtomicLong maxLateness = new AtomicLong(0);
+
+    /**
+     * Starts a server and begins accepting connections.
+     * @param port Port to listen on, or 0 for any free port
+     * @param combatRules Damage formulas for every session
+     * @param map Terrain the enemies walk on
+     * @throws IOException If the port cannot be opened or a sprite frame cannot be read
+     */
+    public BattleServer(int port, CombatRules combatRules, TileMap map) throws IOException {
+        this.combatRules = combatRules;
+        // The same clips GameController draws, so sessions decide range and hits like the game
+        this.playerMasks = new ClipHitMasks("images/skeleton/", "skeleton_", 12, 1, false);
+        this.walkMasks = new ClipHitMasks("images/minotaur/", "Minotaur_01_Walking_", 18, 0, true);
+        this.attackMasks = new ClipHitMasks("images/minotaur_attacking/", "Minotaur_01_Attacking_", 12, 0, true);
+        this.flowField = new FlowField(map);
+        // Every player stands on the same spot, so one field serves all sessions and is never rebuilt
+        flowField.setTarget(GameController.SKELETON_START_X,
+                GameController.SKELETON_START_Y + GameController.MINOTAUR_FEET_OFFSET);
+
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+        acceptThread = Thread.ofVirtual().name("battle-accept").start(this::acceptConnections);
+    }
+
+    /**
+     * Accepts connections until the server is closed, starting a session for each.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                int id = nextSessionId.getAndIncrement();
+                Thread.ofVirtual().name("battle-session-" + id).start(() -> runSession(socket, id));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Could not accept a connection: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays one battle for one connection, from the greeting to the result.
+     * Runs on the session's virtual thread and ticks at TICK_NANOS until the battle ends
+     * or the client leaves.
+     * @param socket The client's connection
+     * @param id Number of the session
+     */
+    private void runSession(Socket socket, int id) {
+        BattleSession session = new BattleSession(id, combatRules, flowField,
+                playerMasks, walkMasks, attackMasks, System.nanoTime() ^ id);
+        int running = activeSessions.incrementAndGet();
+        peakSessions.accumulateAndGet(running, Math::max);
+
+        try (socket) {
+            socket.setTcpNoDelay(true);  // State lines are small and must not wait for more
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            Thread reader = Thread.ofVirtual().name("battle-input-" + id).start(() -> readCommands(socket, session));
+
+            StringBuilder line = new StringBuilder(128);
+            out.write("WELCOME " + id + "\n");
+            sendState(session, line, out);
+
+            long due = System.nanoTime();
+            while (!session.isOver() && reader.isAlive()) {
+                long now = System.nanoTime();
+                recordLateness(now - due);
+                if (session.tick(now)) {
+                    sendState(session, line, out);
+                }
+
+                // Keep to the schedule; after falling far behind, start again from now instead of catching up
+                due += TICK_NANOS;
+                if (now - due > TICK_NANOS) {
+                    due = now + TICK_NANOS;
+                }
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+
+            if (session.isOver()) {
+                finishedBattles.increment();
+                out.write(session.getPlayer().isAlive() ? "END WON\n" : "END LOST\n");
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // The client went away; nothing to tell it
+        } catch (IOException e) {
+            System.err.println("Session " + id + " failed: " + e);
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the session's state to its client, and counts the commands it shows as displayed.
+     * @param session The session
+     * @param line Reused buffer for the message
+     * @param out The client's connection
+     * @throws IOException If the connection fails
+     */
+    private static void sendState(BattleSession session, StringBuilder line, Writer out) throws IOException {
+        long shown = session.getInput().getShownCount();
+        line.setLength(0);
+        session.appendState(line);
+        line.append('\n');
+        out.append(line);
+        out.flush();
+        session.getInput().markDisplayed(shown, System.nanoTime());  // Sessions tick with System.nanoTime()
+    }
+
+    /**
+     * Reads the client's commands into the session's input buffer until the client quits or disconnects.
+     * Runs on its own virtual thread, which is the buffer's only producer.
+     * @param socket The client's connection
+     * @param session The session the commands are for
+     */
+    private static void readCommands(Socket socket, BattleSession session) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                switch (line.strip()) {
+                    case "ATTACK":
+                        session.getInput().press(GameCommand.ATTACK, System.nanoTime());
+                        break;
+                    case "QUIT":
+                        return;
+                    default:
+                        break;  // Unknown commands are ignored, so newer clients still work
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed; the session ends because this thread does
+        }
+    }
+
+    /**
+     * Adds one tick's start time to the load figures.
+     * @param lateness Nanoseconds the tick started after it was due
+     */
+    private void recordLateness(long lateness) {
+        ticks.increment();
+        if (lateness > 0) {
+            totalLateness.add(lateness);
+            maxLateness.accumulateAndGet(lateness, Math::max);
+            if (lateness > TICK_NANOS) {
+                lateTicks.increment();
+            }
+        }
+    }
+
+    /**
+     * Gets the port clients connect to.
+     * @return Local port number
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of sessions running now.
+     * @return Active sessions
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Describes the load the server has handled so far, for the console.
+     * @return One line with sessions, ticks and how late ticks started
+     */
+    public String describeLoad() {
+        long tickCount = ticks.sum();
+        return String.format("%d sessions running (peak %d), %d battles finished, %d ticks,"
+                + " %.2f%% more than a tick late, average lateness %.2f ms, worst %.1f ms",
+                activeSessions.get(), peakSessions.get(), finishedBattles.sum(), tickCount,
+                tickCount == 0 ? 0 : 100.0 * lateTicks.sum() / tickCount,
+                tickCount == 0 ? 0 : totalLateness.sum() / 1e6 / tickCount,
+                maxLateness.get() / 1e6);
+    }
+
+    /**
+     * Waits until the server is closed.
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public void awaitClose() throws InterruptedException {
+        acceptThread.join();
+    }
+
+    /**
+     * Stops accepting connections. Running sessions end when their clients leave.
+     * @throws IOException If the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One battle that is simulated without being drawn, for the BattleServer.
+ * Plays by the same BattleRules as GameController: the same characters and starting positions,
+ * turns decided by an InitiativeScheduler, enemies walking along a FlowField and deciding with their
+ * EnemyAI, damage from the CombatRules, and attacks that take as long as their animations.
+ * Range and hits are decided with the same hit masks, loaded once by the server without decoding
+ * any sprite for drawing, and every hit is reported to the flight recorder.
+ * It has no sprites, canvas or timers, so thousands of sessions fit in one process.
+ * A session is ticked by one thread; only its input buffer is shared with the connection's reader.
+ */
+public class BattleSession {
+    /**
+     * Frames in the minotaur's walk cycle.
+     */
+    private static final int WALK_FRAMES = 18;
+
+    /**
+     * Number this session is known by on its server.
+     */
+    private final int id;
+
+    /**
+     * The player's character.
+     */
+    private final Player player = new Player(200, 35, 25, 10);
+
+    /**
+     * Turns, attacks, range, hits and enemy movement of this battle.
+     */
+    private final BattleRules rules;
+
+    /**
+     * Every enemy in this battle; the list of the rules.
+     */
+    private final List<EnemyUnit> enemies;
+
+    /**
+     * Copy of the game state the enemies' AI decides from.
+     */
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+
+    /**
+     * Commands from the client, buffered until a tick can carry them out.
+     */
+    private final InputBuffer input = new InputBuffer();
+
+    /**
+     * Timing of the player's attack animation.
+     */
+    private final AnimationController playerAttack;
+
+    /**
+     * Clock of the walk cycle, shared by the session's enemies.
+     */
+    private final AnimationClock walkClock = new AnimationClock("walk", WALK_FRAMES, 0);
+
+    /**
+     * Number of ticks run so far.
+     */
+    private long tickCount = 0;
+
+    /**
+     * Creates a battle with the player and one minotaur at their usual starting positions.
+     * The minotaur starts walking at once, as in the game.
+     * @param id Number the session is known by
+     * @param combatRules Damage formulas
+     * @param flowField Shared directions toward the player's feet; only read
+     * @param playerMasks Hit masks of the skeleton's attack, shared with the other sessions
+     * @param walkMasks Hit masks of the minotaur's walk cycle, shared with the other sessions
+     * @param attackMasks Hit masks of the minotaur's attack, shared with the other sessions
+     * @param seed Seed for the damage rolls
+     */
+    public BattleSession(int id, CombatRules combatRules, FlowField flowField, HitMaskSource playerMasks,
+            HitMaskSource walkMasks, HitMaskSource attackMasks, long seed) {
+        this.id = id;
+        this.playerAttack = new AnimationController("attack", playerMasks.getFrameCount(), playerMasks.getStartIndex());
+        this.rules = new BattleRules(player, playerMasks, playerAttack,
+                GameController.SKELETON_START_X, GameController.SKELETON_START_Y,
+                flowField, combatRules, new Random(seed));
+        this.enemies = rules.getEnemies();
+
+        // Equal speeds alternate turns; the player is in the rules first so it opens the battle
+        EnemyUnit minotaur = new EnemyUnit(new Enemy(150, 20, 15, 10),
+                new ChargeAndCounterAI(GameController.ATTACK_RANGE),
+                GameController.MINOTAUR_START_X, GameController.MINOTAUR_START_Y,
+                walkClock, walkMasks, attackMasks);
+        rules.addEnemy(minotaur);
+        minotaur.setWalking(true);
+    }
+
+    /**
+     * Advances the battle to the given time.
+     * @param now Current time in nanoseconds
+     * @return true if anything a client can see changed
+     */
+    public boolean tick(long now) {
+        tickCount++;
+        rules.setTime(now);
+        boolean changed = false;
+
+        // Carry out the client's commands, oldest first; one that cannot run yet stays buffered
+        GameCommand command;
+        while ((command = input.nextCommand(now)) != null) {
+            if (command == GameCommand.ATTACK && !rules.startPlayerAttack()) {
+                break;
+            }
+            input.markPerformed(now);
+            changed = true;
+        }
+
+        if (applyEnemyDecisions()) {
+            changed = true;
+        }
+
+        // The player's attack lands when its animation ends
+        if (rules.updatePlayerAttack(now)) {
+            changed = true;
+            input.markShown();
+        }
+
+        rules.expireModifiers(now);
+        walkClock.update(now);
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            if (unit.isWalkStepDue()) {
+                rules.stepEnemy(unit, now);
+                changed = true;
+            }
+            if (rules.updateEnemyAttack(unit, now)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Lets every enemy's AI decide and carries out the decisions, the way GameController
+     * applies a finished AI batch. Decisions are made on the ticking thread, since a session
+     * is too small to be worth handing to other threads.
+     * @return true if an enemy started walking or attacking, or its turn passed
+     */
+    private boolean applyEnemyDecisions() {
+        int active = rules.getActiveEnemyIndex();
+        snapshot.capture(player, GameController.SKELETON_START_X, GameController.SKELETON_START_Y, active, enemies);
+        boolean changed = false;
+
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            if (unit.getEnemy().isAlive() && rules.applyEnemyCommand(unit, unit.getAI().decide(snapshot, i))) {
+                changed = true;
+            }
+        }
+
+        // The acting enemy could not strike, so the next combatant gets its turn
+        if (rules.finishEnemyCommands(active)) {
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if the battle has ended.
+     * @return true once the player or every enemy is defeated
+     */
+    public boolean isOver() {
+        return !player.isAlive() || rules.areAllEnemiesDefeated();
+    }
+
+    /**
+     * Checks if the player could start an attack right now.
+     * @return true on the player's turn with an enemy in range and no attack playing
+     */
+    public boolean isAttackReady() {
+        return rules.isAttackReady() && !rules.isPlayerAttacking();
+    }
+
+    /**
+     * Writes the state a client sees as one line of the server protocol, without the line break:
+     * "STATE tick turn playerHp playerFrame ready enemyCount", then "hp x y action frame" for each enemy,
+     * where turn is PLAYER, ENEMY or OVER and action is IDLE, WALK or ATTACK.
+     * Coordinates are rounded to whole pixels.
+     * @param line Buffer to append to
+     */
+    public void appendState(StringBuilder line) {
+        String turn = isOver() ? "OVER" : rules.isPlayerTurn() ? "PLAYER" : "ENEMY";
+        line.append("STATE ").append(tickCount).append(' ').append(turn)
+                .append(' ').append(player.getHitPoints())
+                .append(' ').append(playerAttack.getCurrentFrame())
+                .append(' ').append(isAttackReady() ? 1 : 0)
+                .append(' ').append(enemies.size());
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            line.append(' ').append(unit.getEnemy().getHitPoints())
+                    .append(' ').append(Math.round(unit.getX()))
+                    .append(' ').append(Math.round(unit.getY()));
+            if (unit.isAttacking()) {
+                line.append(" ATTACK ").append(unit.getAttackController().getCurrentFrame());
+            } else if (unit.isWalking()) {
+                line.append(" WALK ").append(unit.getWalkFrame());
+            } else {
+                line.append(" IDLE 0");
+            }
+        }
+    }
+
+    /**
+     * Gets the number this session is known by on its server.
+     * @return Session number
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the player's character.
+     * @return The player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the buffer the connection puts the client's commands into.
+     * @return The session's input buffer
+     */
+    public InputBuffer getInput() {
+        return input;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * A byte array that values are written to and read from a few bits at a time.
+ * Used to pack spectator snapshots tightly: a flag costs one bit and a small number
+ * only as many bits as it needs, instead of a whole byte or int.
+ * Bits are stored most significant first, so a packed buffer reads back in the same order.
+ * The same buffer is reused for every packet; nothing is allocated after construction
+ * unless the buffer has to grow.
+ */
+public class BitBuffer {
+    /**
+     * The packed bits.
+     */
+    private byte[] bytes;
+
+    /**
+     * Number of bits written so far, or the end of the bits to read.
+     */
+    private int bitLength = 0;
+
+    /**
+     * Position of the next bit to read.
+     */
+    private int readPosition = 0;
+
+    /**
+     * Creates an empty buffer.
+     * @param capacity Number of bytes it starts with; it grows when more are written
+     */
+    public BitBuffer(int capacity) {
+        bytes = new byte[Math.max(1, capacity)];
+    }
+
+    /**
+     * Empties the buffer so it can be written again.
+     */
+    public void clear() {
+        Arrays.fill(bytes, 0, getByteLength(), (byte) 0);
+        bitLength = 0;
+        readPosition = 0;
+    }
+
+    /**
+     * Replaces the contents with received bytes and starts reading from the first bit.
+     * @param source Bytes to read
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     */
+    public void load(byte[] source, int offset, int length) {
+        if (length > bytes.length) {
+            bytes = new byte[length];
+        }
+        System.arraycopy(source, offset, bytes, 0, length);
+        bitLength = length * 8;
+        readPosition = 0;
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     * @param value The value; bits above count are ignored
+     * @param count Number of bits, 0 to 64
+     */
+    public void writeBits(long value, int count) {
+        if (count < 0 || count > 64) {
+            throw new IllegalArgumentException("Bit count must be 0 to 64: " + count);
+        }
+        if (bitLength + count > bytes.length * 8) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, (bitLength + count + 7) / 8));
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            if ((value >>> i & 1) != 0) {
+                bytes[bitLength >> 3] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+            bitLength++;
+        }
+    }
+
+    /**
+     * Writes one flag.
+     * @param flag The flag
+     */
+    public void writeBoolean(boolean flag) {
+        writeBits(flag ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes a signed number using few bits when it is close to 0:
+     * 1 + 6 bits up to ±32, 2 + 12 bits up to ±2048, and 2 + 32 bits beyond that.
+     * Differences between two snapshots are usually tiny, so they are written this way.
+     * @param value The number
+     */
+    public void writeSigned(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);  // Small negative and positive numbers both get small codes
+        if ((zigzag & ~0x3F) == 0) {
+            writeBits(0b0, 1);
+            writeBits(zigzag, 6);
+        } else if ((zigzag & ~0xFFF) == 0) {
+            writeBits(0b10, 2);
+            writeBits(zigzag, 12);
+        } else {
+            writeBits(0b11, 2);
+            writeBits(zigzag, 32);
+        }
+    }
+
+    /**
+     * Reads bits written with writeBits().
+     * @param count Number of bits, 0 to 64
+     * @return The value, in the lowest bits
+     * @throws IllegalStateException If fewer bits are left
+     */
+    public long readBits(int count) {
+        if (count < 0 || count > 64) {
+            throw new IllegalArgumentException("Bit count must be 0 to 64: " + count);
+        }
+        if (readPosition + count > bitLength) {
+            throw new IllegalStateException("Packet ends after " + bitLength + " bits");
+        }
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value << 1 | (bytes[readPosition >> 3] >>> (7 - (readPosition & 7)) & 1);
+            readPosition++;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a flag written with writeBoolean().
+     * @return The flag
+     */
+    public boolean readBoolean() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * Reads a number written with writeSigned().
+     * @return The number
+     */
+    public int readSigned() {
+        int zigzag;
+        if (readBits(1) == 0) {
+            zigzag = (int) readBits(6);
+        } else if (readBits(1) == 0) {
+            zigzag = (int) readBits(12);
+        } else {
+            zigzag = (int) readBits(32);
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Gets the number of bits left to read.
+     * @return Bits between the read position and the end
+     */
+    public int getRemainingBits() {
+        return bitLength - readPosition;
+    }
+
+    /**
+     * Gets the packed bytes. Only the first getByteLength() of them are used.
+     * @return The backing array
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of bytes the written bits take, the last one padded with zeros.
+     * @return Packed size in bytes
+     */
+    public int getByteLength() {
+        return (bitLength + 7) / 8;
+    }
+}
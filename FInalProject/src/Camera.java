@@ -0,0 +1,205 @@
+/**
+ * View onto the battlefield: which part of the world the canvas shows and how large.
+ * Game logic works in world coordinates; the camera turns them into canvas (screen)
+ * coordinates and decides which entities are close enough to the view to be animated and drawn.
+ * The position is the world point shown in the top-left corner of the canvas.
+ * The view is moved on the FX thread and read by the simulation thread,
+ * so position and zoom are volatile.
+ */
+public class Camera {
+    /**
+     * Smallest zoom; at 1 one world pixel is one canvas pixel.
+     * The battlefield is as tall as the canvas, so zooming further out would show past its edge.
+     */
+    public static final double MIN_ZOOM = 1;
+
+    /**
+     * Largest zoom; 3 shows a third of the canvas width of the world.
+     */
+    public static final double MAX_ZOOM = 3;
+
+    /**
+     * Extra world distance around the view in which entities still count as visible.
+     * 64 pixels keeps sprites animating just before they scroll in, so they never pop in mid-step.
+     */
+    public static final double CULL_MARGIN = 64;
+
+    /**
+     * Width of the canvas in pixels.
+     */
+    private final double viewportWidth;
+
+    /**
+     * Height of the canvas in pixels.
+     */
+    private final double viewportHeight;
+
+    /**
+     * Width of the whole battlefield in world pixels.
+     */
+    private final double worldWidth;
+
+    /**
+     * Height of the whole battlefield in world pixels.
+     */
+    private final double worldHeight;
+
+    /**
+     * World X coordinate shown at the left edge of the canvas.
+     */
+    private volatile double x = 0;
+
+    /**
+     * World Y coordinate shown at the top edge of the canvas.
+     */
+    private volatile double y = 0;
+
+    /**
+     * Canvas pixels per world pixel.
+     */
+    private volatile double zoom = 1;
+
+    /**
+     * Creates a camera looking at the top-left corner of the battlefield at zoom 1.
+     * @param viewportWidth Canvas width in pixels
+     * @param viewportHeight Canvas height in pixels
+     * @param worldWidth Battlefield width in world pixels
+     * @param worldHeight Battlefield height in world pixels
+     * @throws IllegalArgumentException If the battlefield is smaller than the canvas
+     */
+    public Camera(double viewportWidth, double viewportHeight, double worldWidth, double worldHeight) {
+        if (worldWidth < viewportWidth || worldHeight < viewportHeight) {
+            throw new IllegalArgumentException("Battlefield " + worldWidth + "x" + worldHeight
+                    + " is smaller than the canvas " + viewportWidth + "x" + viewportHeight);
+        }
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+    }
+
+    /**
+     * Moves the view so the given world point is in the top-left corner.
+     * The view is kept inside the battlefield.
+     * @param x World X coordinate
+     * @param y World Y coordinate
+     */
+    public void moveTo(double x, double y) {
+        double zoom = this.zoom;
+        this.x = clamp(x, 0, worldWidth - viewportWidth / zoom);
+        this.y = clamp(y, 0, worldHeight - viewportHeight / zoom);
+    }
+
+    /**
+     * Moves the view by a distance measured on the canvas, as when dragging with the mouse.
+     * @param screenDx Canvas pixels to move to the right
+     * @param screenDy Canvas pixels to move down
+     */
+    public void panBy(double screenDx, double screenDy) {
+        moveTo(x + screenDx / zoom, y + screenDy / zoom);
+    }
+
+    /**
+     * Moves the view so the given world point is in the middle of the canvas, as far as the battlefield allows.
+     * @param worldX World X coordinate to center on
+     * @param worldY World Y coordinate to center on
+     */
+    public void centerOn(double worldX, double worldY) {
+        double zoom = this.zoom;
+        moveTo(worldX - viewportWidth / zoom / 2, worldY - viewportHeight / zoom / 2);
+    }
+
+    /**
+     * Changes the zoom while keeping one canvas point over the same spot of the world,
+     * so zooming with the mouse wheel zooms toward the pointer.
+     * @param newZoom Requested zoom; limited to MIN_ZOOM..MAX_ZOOM
+     * @param screenX Canvas X coordinate to keep in place
+     * @param screenY Canvas Y coordinate to keep in place
+     */
+    public void zoomAt(double newZoom, double screenX, double screenY) {
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        zoom = clamp(newZoom, MIN_ZOOM, MAX_ZOOM);
+        moveTo(worldX - screenX / zoom, worldY - screenY / zoom);
+    }
+
+    /**
+     * Checks if a rectangle around a world point is inside the view or its margin.
+     * Used to skip animating and drawing entities nobody can see.
+     * @param centerX World X coordinate of the rectangle's center
+     * @param centerY World Y coordinate of the rectangle's center
+     * @param halfWidth Half the rectangle's width in world pixels
+     * @param halfHeight Half the rectangle's height in world pixels
+     * @return true if any part of the rectangle is within CULL_MARGIN of the view
+     */
+    public boolean isVisible(double centerX, double centerY, double halfWidth, double halfHeight) {
+        double left = x;
+        double top = y;
+        double zoom = this.zoom;
+        return centerX + halfWidth >= left - CULL_MARGIN
+                && centerX - halfWidth <= left + viewportWidth / zoom + CULL_MARGIN
+                && centerY + halfHeight >= top - CULL_MARGIN
+                && centerY - halfHeight <= top + viewportHeight / zoom + CULL_MARGIN;
+    }
+
+    /**
+     * Converts a canvas X coordinate to the world.
+     * @param screenX Canvas X coordinate
+     * @return World X coordinate
+     */
+    public double toWorldX(double screenX) {
+        return x + screenX / zoom;
+    }
+
+    /**
+     * Converts a canvas Y coordinate to the world.
+     * @param screenY Canvas Y coordinate
+     * @return World Y coordinate
+     */
+    public double toWorldY(double screenY) {
+        return y + screenY / zoom;
+    }
+
+    /**
+     * Gets the world X coordinate at the left edge of the canvas.
+     * @return View left edge
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the world Y coordinate at the top edge of the canvas.
+     * @return View top edge
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Gets the current zoom.
+     * @return Canvas pixels per world pixel
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Gets the battlefield width.
+     * @return Width in world pixels
+     */
+    public double getWorldWidth() {
+        return worldWidth;
+    }
+
+    /**
+     * Limits a value to a range.
+     * @param value The value
+     * @param min Lowest allowed value
+     * @param max Highest allowed value
+     * @return value, moved into the range if needed
+     */
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
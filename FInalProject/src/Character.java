@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Base class for all game characters (Player and Enemy).
  * Defines common attributes and behaviors shared by all characters in the game.
@@ -19,19 +22,52 @@ public class Character {
     private int maxHitPoints;
     
     /**
-     * Offensive power of the character.
+     * Offensive power of the character before any modifier.
      * Higher values mean more damage dealt to opponents during attacks.
-     * Used in damage calculation formulas during combat.
      */
     private int attackPoints;
     
     /**
-     * Defensive capability of the character.
+     * Defensive capability of the character before any modifier.
      * Reduces incoming damage from enemy attacks.
      * Higher defense means less damage taken.
      */
     private int defense;
     
+    /**
+     * Buffs, debuffs and auras currently applied, in the order they were added.
+     */
+    private final List<StatModifier> modifiers = new ArrayList<>();
+    
+    /**
+     * Attack points with every modifier applied.
+     * Cached so the combat rules read a field instead of going through all modifiers on every attack.
+     */
+    private int effectiveAttackPoints;
+    
+    /**
+     * Defense with every modifier applied. Cached like effectiveAttackPoints.
+     */
+    private int effectiveDefense;
+    
+    /**
+     * Set when a modifier was added, removed or ran out since the effective stats were worked out.
+     */
+    private boolean modifiersChanged = false;
+    
+    /**
+     * Earliest time stamp at which one of the modifiers runs out, or StatModifier.PERMANENT.
+     * Lets expireModifiers() return at once on the ticks where nothing runs out.
+     */
+    private long nextExpiry = StatModifier.PERMANENT;
+    
+    /**
+     * How quickly the character gets to act again.
+     * A character twice as fast takes twice as many turns.
+     * Read by InitiativeScheduler to order turns.
+     */
+    private int speed;
+    
     /**
      * Flag indicating if the character is still active in combat.
      * Set to false when hitPoints reaches 0.
@@ -46,13 +82,17 @@ public class Character {
      * @param attackPoints Offensive power
      * @param defense Defensive capability
      * @param speed Action/movement speed
+     * @throws IllegalArgumentException If speed is not positive
      */
     public Character(int maxHitPoints, int attackPoints, 
-            int defense) {
+            int defense, int speed) {
         this.maxHitPoints = maxHitPoints;
         this.hitPoints = maxHitPoints;  // Start at full health
         this.attackPoints = attackPoints;
         this.defense = defense;
+        this.effectiveAttackPoints = attackPoints;  // No modifiers yet
+        this.effectiveDefense = defense;
+        setSpeed(speed);
         this.isAlive = true;  // Characters start alive
     }
     
@@ -77,23 +117,70 @@ public class Character {
     }
     
     /**
-     * Gets attack power.
-     * Used in damage calculations during combat.
+     * Gets attack power with every active modifier applied.
+     * Used in damage calculations during combat. The value is only worked out again
+     * after the modifiers changed, so this costs the same however many are active.
      * @return Attack points value
      */
     public int getAttackPoints() {
-        return attackPoints;
+        if (modifiersChanged) {
+            updateEffectiveStats();
+        }
+        return effectiveAttackPoints;
     }
     
     /**
-     * Gets defensive capability.
-     * Used to reduce incoming damage in combat calculations.
+     * Gets defensive capability with every active modifier applied.
+     * Used to reduce incoming damage in combat calculations. Cached like getAttackPoints().
      * @return Defense value
      */
     public int getDefense() {
+        if (modifiersChanged) {
+            updateEffectiveStats();
+        }
+        return effectiveDefense;
+    }
+    
+    /**
+     * Gets attack power without modifiers.
+     * @return Base attack points
+     */
+    public int getBaseAttackPoints() {
+        return attackPoints;
+    }
+    
+    /**
+     * Gets defensive capability without modifiers.
+     * @return Base defense
+     */
+    public int getBaseDefense() {
         return defense;
     }
     
+    /**
+     * Gets action speed.
+     * Used by InitiativeScheduler to decide how often the character acts.
+     * @return Speed value
+     */
+    public int getSpeed() {
+        return speed;
+    }
+    
+    /**
+     * Sets action speed.
+     * During a battle, change speed through InitiativeScheduler.changeSpeed()
+     * so the character's place in the turn order is updated too.
+     * Final because the constructor calls it before a subclass is built.
+     * @param speed New speed value
+     * @throws IllegalArgumentException If speed is not positive
+     */
+    public final void setSpeed(int speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        this.speed = speed;
+    }
+    
     /**
      * Checks if character is still alive.
      * Used to determine if character can act or if combat is over.
@@ -105,6 +192,113 @@ public class Character {
     
     // Methods to change statistics
     
+    /**
+     * Applies a buff, debuff or aura. The same modifier may be added more than once, and then counts each time.
+     * @param modifier The modifier to apply
+     * @throws IllegalArgumentException If modifier is null
+     */
+    public void addModifier(StatModifier modifier) {
+        if (modifier == null) {
+            throw new IllegalArgumentException("Modifier cannot be null");
+        }
+        modifiers.add(modifier);
+        nextExpiry = Math.min(nextExpiry, modifier.getExpiresAt());
+        modifiersChanged = true;
+    }
+    
+    /**
+     * Takes off one application of a modifier, for example when an aura's source leaves.
+     * If it was the one due to run out first, the next expiry is looked up among the rest.
+     * @param modifier The modifier to remove
+     * @return true if it was applied, false if the character did not have it
+     */
+    public boolean removeModifier(StatModifier modifier) {
+        if (!modifiers.remove(modifier)) {
+            return false;
+        }
+        if (modifier.getExpiresAt() == nextExpiry) {
+            nextExpiry = StatModifier.PERMANENT;
+            for (int i = 0; i < modifiers.size(); i++) {
+                nextExpiry = Math.min(nextExpiry, modifiers.get(i).getExpiresAt());
+            }
+        }
+        modifiersChanged = true;
+        return true;
+    }
+    
+    /**
+     * Takes off every modifier.
+     */
+    public void clearModifiers() {
+        if (!modifiers.isEmpty()) {
+            modifiers.clear();
+            nextExpiry = StatModifier.PERMANENT;
+            modifiersChanged = true;
+        }
+    }
+    
+    /**
+     * Gets the number of modifiers applied.
+     * @return Active modifier count, counting repeated ones each time
+     */
+    public int getModifierCount() {
+        return modifiers.size();
+    }
+    
+    /**
+     * Removes the modifiers that have run out.
+     * Called by BattleRules on every tick; returns at once unless a modifier is due,
+     * so it costs nothing for characters without timed modifiers.
+     * @param now Current time in nanoseconds, on the clock given to GameController.tick()
+     */
+    public void expireModifiers(long now) {
+        if (now < nextExpiry) {
+            return;
+        }
+        nextExpiry = StatModifier.PERMANENT;
+        for (int i = modifiers.size() - 1; i >= 0; i--) {
+            long expiresAt = modifiers.get(i).getExpiresAt();
+            if (expiresAt <= now) {
+                modifiers.remove(i);
+            } else {
+                nextExpiry = Math.min(nextExpiry, expiresAt);
+            }
+        }
+        modifiersChanged = true;
+    }
+    
+    /**
+     * Works out the effective attack and defense from the base values and every modifier, in one pass.
+     * Additive amounts are summed first, then the total is multiplied by every factor;
+     * the result is rounded and never drops below 0.
+     */
+    private void updateEffectiveStats() {
+        double attackBonus = 0;
+        double attackFactor = 1;
+        double defenseBonus = 0;
+        double defenseFactor = 1;
+        for (int i = 0; i < modifiers.size(); i++) {
+            StatModifier modifier = modifiers.get(i);
+            boolean add = modifier.getKind() == StatModifier.Kind.ADD;
+            if (modifier.getStat() == StatModifier.Stat.ATTACK) {
+                if (add) {
+                    attackBonus += modifier.getAmount();
+                } else {
+                    attackFactor *= modifier.getAmount();
+                }
+            } else {
+                if (add) {
+                    defenseBonus += modifier.getAmount();
+                } else {
+                    defenseFactor *= modifier.getAmount();
+                }
+            }
+        }
+        effectiveAttackPoints = (int) Math.max(0, Math.round((attackPoints + attackBonus) * attackFactor));
+        effectiveDefense = (int) Math.max(0, Math.round((defense + defenseBonus) * defenseFactor));
+        modifiersChanged = false;
+    }
+    
     /**
      * Processes damage taken by the character.
      * Empty method to be overridden by subclasses (Player/Enemy).
@@ -1,11 +1,26 @@
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.util.Callback;
 
 /**
  * Manages sprite sheet loading and frame access for animated characters.
  * Generic class that can handle different sprite naming conventions and frame counts.
  * Loads all animation frames into memory for quick access during game play.
+ * A sprite created with a SpriteCache may have its frames dropped when the cache is over budget;
+ * it then shows its first frame until the others are decoded again.
+ * After encodeDeltas() only the first frame is stored whole and every other frame as the rectangles
+ * where it differs from the first; a frame is rebuilt into a reusable buffer when it is drawn.
  */
-public class CharacterSprite {
+public final class CharacterSprite implements HitMaskSource {
     /**
      * Array storing all loaded sprite frame images.
      * Indexed to match the sprite file numbering (0-based or 1-based).
@@ -13,6 +28,35 @@ public class CharacterSprite {
      */
     private Image[] spriteFrames;
     
+    /**
+     * Width and height in image pixels of the block each hit mask bit covers.
+     * At 4 a mask bit is 2 world pixels at the 50% drawing scale, finer than any step a character takes,
+     * and the masks of all frames together take about a sixteenth of a bit per image pixel.
+     */
+    public static final int HIT_MASK_CELL = 4;
+    
+    /**
+     * Solid parts of each frame, built from its alpha channel when the frame is loaded.
+     * Indexed like spriteFrames.
+     */
+    private HitMask[] hitMasks;
+    
+    /**
+     * The same masks mirrored left to right, for sprites drawn flipped.
+     */
+    private HitMask[] mirroredHitMasks;
+    
+    /**
+     * Every frame's mask in one, for asking whether any frame of the animation reaches something.
+     * Made again whenever a frame's mask changes.
+     */
+    private HitMask unionHitMask;
+    
+    /**
+     * The union of the mirrored masks.
+     */
+    private HitMask mirroredUnionHitMask;
+    
     /**
      * Directory path where sprite images are located.
      * Example: "images/skeleton/" or "images/minotaur/"
@@ -48,6 +92,96 @@ public class CharacterSprite {
      */
     private boolean usePadding;
     
+    /**
+     * Cache that decides when the frames are dropped, or null to keep them for good.
+     */
+    private final SpriteCache cache;
+    
+    /**
+     * Whether every frame is decoded. False after the cache evicted the animation,
+     * when only the first frame is kept. Volatile because prefetch() may read it from another thread.
+     */
+    private volatile boolean resident = true;
+    
+    /**
+     * Set while the cache's decoder thread is decoding the evicted frames again.
+     * Guarded by this sprite's lock.
+     */
+    private boolean reloading = false;
+    
+    /**
+     * Frames decoded again by the cache's decoder thread, waiting to be swapped in on the next draw.
+     * Indexed like spriteFrames; the first frame's slot is left empty.
+     */
+    private volatile Image[] decodedFrames;
+    
+    /**
+     * Bytes the decoded frames currently take, 4 per pixel.
+     */
+    private long residentBytes = 0;
+    
+    /**
+     * The cache's draw count when this animation was last drawn.
+     */
+    private long lastDrawn = 0;
+    
+    /**
+     * Width and height in image pixels of the tiles frames are compared in when they are delta-encoded.
+     * Changed tiles next to each other in a row become one patch rectangle.
+     * At 16 the minotaur and skeleton animations keep about 40% of their pixels, first frame included;
+     * smaller tiles save a few percent more but make rebuilding a frame many more, shorter copies.
+     */
+    public static final int DELTA_TILE = 16;
+    
+    /**
+     * Scenes a rebuilt frame buffer may go unused before it is let go.
+     */
+    private static final int BUFFER_IDLE_PASSES = 120;
+    
+    /**
+     * Number of the scene being drawn, counted up by beginDrawPass(). Used on the FX thread only.
+     */
+    private static long drawPass = 0;
+    
+    /**
+     * Pixels of the first frame in premultiplied ARGB, row by row, when the frames are delta-encoded;
+     * the first frame's image shows this array. Null while every frame is stored whole.
+     */
+    private int[] keyPixels;
+    
+    /**
+     * Width of every frame in pixels, when delta-encoded.
+     */
+    private int frameWidth;
+    
+    /**
+     * Height of every frame in pixels, when delta-encoded.
+     */
+    private int frameHeight;
+    
+    /**
+     * Rectangles where each frame differs from the first, four ints each: x, y, width and height.
+     * Indexed like spriteFrames; set only when delta-encoded.
+     */
+    private int[][] patchRects;
+    
+    /**
+     * Pixels of each frame's rectangles in premultiplied ARGB, one rectangle after the other, row by row.
+     * Indexed like spriteFrames; set only when delta-encoded.
+     */
+    private int[][] patchPixels;
+    
+    /**
+     * Images delta-encoded frames are rebuilt into for drawing.
+     * A buffer keeps its frame until another frame needs it, so frames shown on consecutive scenes are rebuilt once.
+     */
+    private final List<FrameBuffer> frameBuffers = new ArrayList<>();
+    
+    /**
+     * Scene in which idle buffers were last looked for, so it is done once per scene.
+     */
+    private long idleCheckPass = -1;
+    
     /**
      * Constructor to create a sprite loader with specific parameters.
      * Immediately loads all frames into memory upon creation.
@@ -59,27 +193,182 @@ public class CharacterSprite {
      * @param usePadding Whether to use zero-padded numbers
      */
     public CharacterSprite(String spritePath, String filePrefix, int frameCount, int startIndex, boolean usePadding) {
+        this(spritePath, filePrefix, frameCount, startIndex, usePadding, null);
+    }
+    
+    /**
+     * Constructor to create a sprite loader whose frames are kept within a cache's budget.
+     * All frames are loaded upon creation, after which the cache may evict them again.
+     * @param spritePath Directory containing sprite files
+     * @param filePrefix Base filename before frame numbers
+     * @param frameCount Number of frames to load
+     * @param startIndex First frame number (0 or 1)
+     * @param usePadding Whether to use zero-padded numbers
+     * @param cache Cache to register with, or null to keep every frame for good
+     */
+    public CharacterSprite(String spritePath, String filePrefix, int frameCount, int startIndex, boolean usePadding,
+            SpriteCache cache) {
         this.spritePath = spritePath;
         this.filePrefix = filePrefix;
         this.frameCount = frameCount;
         this.startIndex = startIndex;
         this.usePadding = usePadding;
+        this.cache = cache;
         loadSpriteFrames();  // Load all frames immediately
+        if (cache != null) {
+            cache.register(this);
+        }
     }
     
     /**
      * Retrieves a specific frame image by index.
      * Used by GameWorld during rendering to get the current frame.
+     * If the cache evicted the animation, the first frame is returned instead
+     * and the other frames are decoded again in the background.
+     * Counts as a draw for the cache, so only ask for a frame that is drawn: renderers cull
+     * with getPlaceholder() first, and an animation seen only off screen ages like one not shown.
+     * Must be called on the thread that draws the scene when the sprite has a cache.
      * @param index Frame number to retrieve
      * @return Image object for the requested frame, or null if index invalid
      */
     public Image getFrame(int index) {
         // Bounds checking to prevent array access errors
-        if (index >= 0 && index < spriteFrames.length) {
-            return spriteFrames[index];
+        if (index < startIndex || index >= spriteFrames.length) {
+            return null;  // Return null for invalid indices
         }
         
-        return null;  // Return null for invalid indices
+        if (cache != null) {
+            if (!resident && decodedFrames != null) {
+                installDecodedFrames();
+            }
+            if (!resident) {
+                cache.recordMiss(this);
+                return spriteFrames[startIndex];  // Placeholder until the frames are back
+            }
+            cache.recordHit(this);
+        }
+        if (keyPixels != null && index != startIndex) {
+            return rebuiltFrame(index);
+        }
+        return spriteFrames[index];
+    }
+    
+    /**
+     * Starts a new scene. A delta-encoded frame handed out for drawing keeps its buffer until the scene is done,
+     * because Canvas reads an image's pixels only when the pulse is rendered.
+     * Every scene covers the whole canvas, so once a newer scene has started the buffers may be rebuilt.
+     * Called by GameWorld before it draws a scene; must be called on the FX thread.
+     */
+    public static void beginDrawPass() {
+        drawPass++;
+    }
+    
+    /**
+     * Gets the array holding the pixels of an image this sprite returned from getFrame(), if it keeps one.
+     * Lets the software compositor read delta-encoded frames directly instead of copying buffers
+     * whose contents change from scene to scene.
+     * @param frame Image returned by getFrame()
+     * @return Its pixels row by row in premultiplied ARGB, or null if the frame is stored as a plain image
+     */
+    public int[] getFramePixels(Image frame) {
+        if (keyPixels == null) {
+            return null;
+        }
+        if (frame == spriteFrames[startIndex]) {
+            return keyPixels;
+        }
+        for (int i = 0; i < frameBuffers.size(); i++) {
+            if (frameBuffers.get(i).image == frame) {
+                return frameBuffers.get(i).pixels;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Switches to storing only the first frame whole and every other frame as the tiles where it differs from the first.
+     * Frames are compared in DELTA_TILE squares; changed tiles next to each other in a row are kept as one rectangle.
+     * From then on getFrame() rebuilds a frame into a buffer when it is drawn: the first frame with the
+     * frame's rectangles copied over it. Buffers are reused for other frames, so an animation holds
+     * only as many whole frames as it shows in one scene.
+     * Must be called on the FX thread.
+     * @return true if the frames were encoded; false if they already were, the cache evicted them,
+     *         or a frame could not be read or differs in size from the first
+     */
+    public boolean encodeDeltas() {
+        if (keyPixels != null || !resident) {
+            return false;
+        }
+        int width = (int) spriteFrames[startIndex].getWidth();
+        int height = (int) spriteFrames[startIndex].getHeight();
+        int[][] frames = new int[spriteFrames.length][];
+        for (int i = startIndex; i < spriteFrames.length; i++) {
+            frames[i] = readPixels(spriteFrames[i], width, height);
+            if (frames[i] == null) {
+                return false;
+            }
+        }
+        frameWidth = width;
+        frameHeight = height;
+        encode(frames);
+        for (int i = startIndex + 1; i < spriteFrames.length; i++) {
+            spriteFrames[i] = null;
+        }
+        updateResidentBytes();
+        return true;
+    }
+    
+    /**
+     * Checks if the frames are delta-encoded.
+     * @return true after a successful encodeDeltas()
+     */
+    public boolean isDeltaEncoded() {
+        return keyPixels != null;
+    }
+    
+    /**
+     * Starts decoding the frames again in the background if the cache evicted them,
+     * so they are back before the animation is next drawn. Does not count as a draw.
+     * Used by GameController shortly before an enemy of this kind enters; may be called from any thread.
+     */
+    public void prefetch() {
+        if (cache != null && !resident && startReload()) {
+            cache.decode(this);
+        }
+    }
+    
+    /**
+     * Gets the first frame, which is never evicted.
+     * Used to find how much room the character takes without counting as a draw.
+     * @return The first frame's image
+     */
+    public Image getPlaceholder() {
+        return spriteFrames[startIndex];
+    }
+    
+    /**
+     * Retrieves the hit mask of a frame, for pixel-accurate collision tests.
+     * @param index Frame number
+     * @param mirrored true for the mask of the frame drawn flipped horizontally
+     * @return The frame's mask, or null if index invalid
+     */
+    @Override
+    public HitMask getHitMask(int index, boolean mirrored) {
+        if (index >= startIndex && index < hitMasks.length) {
+            return mirrored ? mirroredHitMasks[index] : hitMasks[index];
+        }
+        return null;
+    }
+    
+    /**
+     * Retrieves one mask that is solid wherever any frame of the animation is.
+     * Placed like a frame's mask, it touches something exactly when at least one frame would.
+     * @param mirrored true for the union of the frames drawn flipped horizontally
+     * @return The union of all frames' masks
+     */
+    @Override
+    public HitMask getUnionHitMask(boolean mirrored) {
+        return mirrored ? mirroredUnionHitMask : unionHitMask;
     }
     
     /**
@@ -87,6 +376,7 @@ public class CharacterSprite {
      * Used by animation controllers to know when animation completes.
      * @return Number of frames in the animation
      */
+    @Override
     public int getFrameCount() {
         return frameCount;
     }
@@ -96,39 +386,558 @@ public class CharacterSprite {
      * Used by animation controllers to properly initialize frame counters.
      * @return Starting frame index (0 or 1)
      */
+    @Override
     public int getStartIndex() {
         return startIndex;
     }
     
+    /**
+     * Gets the directory the frames are loaded from.
+     * @return Sprite directory with trailing slash, for example "images/minotaur/"
+     */
+    public String getSpritePath() {
+        return spritePath;
+    }
+    
+    /**
+     * Builds the file name of one frame, without the directory.
+     * Handles both padded (001) and non-padded (1) filename formats.
+     * @param index Frame index, which is also the number in the file name
+     * @return File name such as "Minotaur_01_Walking_005.png" or "skeleton_5.png"
+     */
+    public String getFileName(int index) {
+        return fileName(filePrefix, index, usePadding);
+    }
+    
+    /**
+     * Builds the file name of one frame of any sprite, without the directory.
+     * Shared with ClipHitMasks, which loads the same files without JavaFX.
+     * @param filePrefix Base filename before the frame number
+     * @param index Frame number
+     * @param usePadding Whether the number is zero-padded to three digits
+     * @return File name such as "Minotaur_01_Walking_005.png" or "skeleton_5.png"
+     */
+    public static String fileName(String filePrefix, int index, boolean usePadding) {
+        if (usePadding) {
+            // %03d means 3-digit number with leading zeros
+            return String.format("%s%03d.png", filePrefix, index);
+        }
+        return String.format("%s%d.png", filePrefix, index);
+    }
+    
+    /**
+     * Finds which frame a file in the sprite directory belongs to.
+     * Used by SpriteWatcher to reload only the frames whose files changed.
+     * @param fileName File name without the directory
+     * @return The frame index, or -1 if the file is not one of this sprite's frames
+     */
+    public int frameIndexOf(String fileName) {
+        for (int index = startIndex; index < startIndex + frameCount; index++) {
+            if (getFileName(index).equals(fileName)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Replaces one loaded frame with a newly decoded image.
+     * Must be called on the FX thread, between pulses, so a frame is never
+     * swapped while the scene is being drawn.
+     * The frame's hit masks are replaced with it.
+     * A delta-encoded frame is encoded again; a new first frame means every frame is.
+     * @param index Frame index to replace
+     * @param image The new image
+     * @param hitMask Mask built from the new image with HIT_MASK_CELL, off the FX thread
+     * @throws IllegalArgumentException If the index is not one of this sprite's frames
+     */
+    public void replaceFrame(int index, Image image, HitMask hitMask) {
+        if (index < startIndex || index >= spriteFrames.length) {
+            throw new IllegalArgumentException("No frame " + index + " in " + spritePath + filePrefix);
+        }
+        if (keyPixels != null) {
+            replaceDeltaFrame(index, image, hitMask);
+            return;
+        }
+        hitMasks[index] = hitMask;
+        mirroredHitMasks[index] = hitMask.mirrored();
+        updateUnionHitMasks();
+        if (!resident && index != startIndex) {
+            return;  // Evicted; the frame is decoded again from spritePath when it is next drawn
+        }
+        spriteFrames[index] = image;
+        updateResidentBytes();
+    }
+    
+    /**
+     * Gets the bytes the decoded frames take now.
+     * @return Resident bytes, 4 per pixel
+     */
+    long getResidentBytes() {
+        return residentBytes;
+    }
+    
+    /**
+     * Gets the cache's draw count when this animation was last drawn.
+     * @return Draw count; lower means drawn longer ago
+     */
+    long getLastDrawn() {
+        return lastDrawn;
+    }
+    
+    /**
+     * Records when this animation was drawn.
+     * @param drawCount The cache's draw count
+     */
+    void markDrawn(long drawCount) {
+        lastDrawn = drawCount;
+    }
+    
+    /**
+     * Checks if evicting this animation would free anything.
+     * @return true if all frames are decoded and there is more than one,
+     *         or if the frames are delta-encoded and some are rebuilt
+     */
+    boolean isEvictable() {
+        if (keyPixels != null) {
+            return !frameBuffers.isEmpty();
+        }
+        return resident && frameCount > 1;
+    }
+    
+    /**
+     * Drops every frame except the first. Called by the cache when it is over budget.
+     * A delta-encoded animation only drops the buffers its frames are rebuilt into;
+     * it can rebuild them without going back to disk, so it never shows the placeholder.
+     * @return Bytes freed
+     */
+    long evict() {
+        if (keyPixels != null) {
+            frameBuffers.clear();
+            long before = residentBytes;
+            residentBytes = countResidentBytes();
+            return before - residentBytes;
+        }
+        for (int i = startIndex + 1; i < spriteFrames.length; i++) {
+            spriteFrames[i] = null;
+        }
+        resident = false;
+        long before = residentBytes;
+        residentBytes = decodedSize(spriteFrames[startIndex]);
+        return before - residentBytes;
+    }
+    
+    /**
+     * Marks that decoding the evicted frames again has begun.
+     * @return false if it already had, so the frames are decoded only once
+     */
+    synchronized boolean startReload() {
+        if (reloading) {
+            return false;
+        }
+        reloading = true;
+        return true;
+    }
+    
+    /**
+     * Decodes every frame except the first from spritePath and hands them to the drawing thread.
+     * Runs on the cache's decoder thread; frames that cannot be decoded are shown as the first frame.
+     */
+    void decodeEvictedFrames() {
+        Image[] frames = new Image[spriteFrames.length];
+        for (int i = startIndex + 1; i < frames.length; i++) {
+            Image image = new Image(spritePath + getFileName(i));
+            if (image.isError()) {
+                System.err.println("Could not decode " + spritePath + getFileName(i) + ": " + image.getException());
+                continue;
+            }
+            frames[i] = image;
+        }
+        decodedFrames = frames;
+    }
+    
+    /**
+     * Swaps in the frames the decoder thread decoded and tells the cache how much they take.
+     */
+    private void installDecodedFrames() {
+        Image[] frames = decodedFrames;
+        for (int i = startIndex + 1; i < spriteFrames.length; i++) {
+            spriteFrames[i] = frames[i] != null ? frames[i] : spriteFrames[startIndex];
+        }
+        decodedFrames = null;
+        synchronized (this) {
+            reloading = false;
+        }
+        resident = true;
+        updateResidentBytes();
+    }
+    
+    /**
+     * Recounts the decoded size of the frames held now and reports any change to the cache.
+     */
+    private void updateResidentBytes() {
+        long before = residentBytes;
+        residentBytes = countResidentBytes();
+        if (cache != null && residentBytes != before) {
+            cache.recordResize(this, residentBytes - before);
+        }
+    }
+    
+    /**
+     * Adds up the decoded size of the frames held now.
+     * Frames standing in for ones that could not be decoded share the first frame's image and are not counted twice.
+     * Delta-encoded frames count the first frame, the patches and the rebuilt buffers.
+     * @return Resident bytes, 4 per pixel
+     */
+    private long countResidentBytes() {
+        if (keyPixels != null) {
+            long ints = keyPixels.length + (long) frameBuffers.size() * keyPixels.length;
+            for (int i = startIndex + 1; i < patchRects.length; i++) {
+                ints += patchRects[i].length + patchPixels[i].length;
+            }
+            return ints * 4;
+        }
+        long bytes = decodedSize(spriteFrames[startIndex]);
+        for (int i = startIndex + 1; i < spriteFrames.length; i++) {
+            if (spriteFrames[i] != spriteFrames[startIndex]) {
+                bytes += decodedSize(spriteFrames[i]);
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Gets the buffer a delta-encoded frame is rebuilt in for the current scene.
+     * A buffer that already holds the frame is used as it is. Otherwise the buffer unused for longest
+     * is rebuilt, as long as it was not handed out in this scene; if every buffer was, a new one is made.
+     * @param index Frame index, not the first frame
+     * @return Image showing the frame
+     */
+    private Image rebuiltFrame(int index) {
+        if (idleCheckPass != drawPass) {
+            idleCheckPass = drawPass;
+            releaseIdleBuffers();
+        }
+        FrameBuffer free = null;
+        for (int i = 0; i < frameBuffers.size(); i++) {
+            FrameBuffer buffer = frameBuffers.get(i);
+            if (buffer.frame == index) {
+                buffer.lastPass = drawPass;
+                return buffer.image;
+            }
+            if (buffer.lastPass < drawPass && (free == null || buffer.lastPass < free.lastPass)) {
+                free = buffer;
+            }
+        }
+        
+        if (free == null) {
+            free = new FrameBuffer();
+            frameBuffers.add(free);
+            updateResidentBytes();
+        }
+        free.show(index);
+        free.lastPass = drawPass;
+        return free.image;
+    }
+    
+    /**
+     * Lets go of buffers no scene has used for BUFFER_IDLE_PASSES, so an animation that had a crowd
+     * on screen shrinks again when the crowd is gone.
+     */
+    private void releaseIdleBuffers() {
+        boolean released = false;
+        for (int i = frameBuffers.size() - 1; i >= 0; i--) {
+            if (drawPass - frameBuffers.get(i).lastPass > BUFFER_IDLE_PASSES) {
+                frameBuffers.remove(i);
+                released = true;
+            }
+        }
+        if (released) {
+            updateResidentBytes();
+        }
+    }
+    
+    /**
+     * Encodes a reloaded frame of a delta-encoded animation.
+     * A frame of another size cannot be patched onto the first frame and is left as it was.
+     * @param index Frame index to replace
+     * @param image The new image
+     * @param hitMask Mask built from the new image
+     */
+    private void replaceDeltaFrame(int index, Image image, HitMask hitMask) {
+        int[] pixels = readPixels(image, frameWidth, frameHeight);
+        if (pixels == null) {
+            System.err.println("Could not encode " + spritePath + getFileName(index) + ": it must be "
+                    + frameWidth + "x" + frameHeight + " like the other frames");
+            return;
+        }
+        hitMasks[index] = hitMask;
+        mirroredHitMasks[index] = hitMask.mirrored();
+        updateUnionHitMasks();
+        if (index == startIndex) {
+            // Every patch is relative to the first frame, so all of them are made again
+            int[][] frames = new int[spriteFrames.length][];
+            for (int i = startIndex + 1; i < frames.length; i++) {
+                frames[i] = keyPixels.clone();
+                applyPatch(frames[i], i);
+            }
+            frames[startIndex] = pixels;
+            encode(frames);
+        } else {
+            encodePatch(index, pixels);
+        }
+        
+        // The buffers' rectangles no longer match their contents
+        for (int i = 0; i < frameBuffers.size(); i++) {
+            FrameBuffer buffer = frameBuffers.get(i);
+            if (index == startIndex || buffer.frame == index) {
+                buffer.frame = -1;
+            }
+        }
+        updateResidentBytes();
+    }
+    
+    /**
+     * Makes the first frame the keyframe and encodes every other frame against it.
+     * @param frames Pixels of every frame in premultiplied ARGB, indexed like spriteFrames, all frameWidth by frameHeight
+     */
+    private void encode(int[][] frames) {
+        keyPixels = frames[startIndex];
+        spriteFrames[startIndex] = new WritableImage(new PixelBuffer<>(frameWidth, frameHeight,
+                IntBuffer.wrap(keyPixels), PixelFormat.getIntArgbPreInstance()));
+        patchRects = new int[spriteFrames.length][];
+        patchPixels = new int[spriteFrames.length][];
+        for (int i = startIndex + 1; i < frames.length; i++) {
+            encodePatch(i, frames[i]);
+        }
+    }
+    
+    /**
+     * Finds the rectangles where a frame differs from the first and keeps their pixels.
+     * Each row of DELTA_TILE tiles is scanned left to right; a run of changed tiles becomes one rectangle.
+     * @param index Frame index
+     * @param frame The frame's pixels in premultiplied ARGB
+     */
+    private void encodePatch(int index, int[] frame) {
+        int columns = (frameWidth + DELTA_TILE - 1) / DELTA_TILE;
+        int[] rects = new int[16];
+        int rectInts = 0;
+        int pixelCount = 0;
+        for (int y = 0; y < frameHeight; y += DELTA_TILE) {
+            int rows = Math.min(DELTA_TILE, frameHeight - y);
+            int runStart = -1;
+            // One column past the last closes a run that reaches the right edge
+            for (int column = 0; column <= columns; column++) {
+                int x = column * DELTA_TILE;
+                boolean changed = column < columns
+                        && tileChanged(frame, x, y, Math.min(DELTA_TILE, frameWidth - x), rows);
+                if (changed && runStart < 0) {
+                    runStart = x;
+                } else if (!changed && runStart >= 0) {
+                    if (rectInts == rects.length) {
+                        rects = Arrays.copyOf(rects, rects.length * 2);
+                    }
+                    int width = Math.min(x, frameWidth) - runStart;
+                    rects[rectInts++] = runStart;
+                    rects[rectInts++] = y;
+                    rects[rectInts++] = width;
+                    rects[rectInts++] = rows;
+                    pixelCount += width * rows;
+                    runStart = -1;
+                }
+            }
+        }
+        
+        int[] pixels = new int[pixelCount];
+        int offset = 0;
+        for (int r = 0; r < rectInts; r += 4) {
+            for (int row = 0; row < rects[r + 3]; row++) {
+                System.arraycopy(frame, (rects[r + 1] + row) * frameWidth + rects[r], pixels, offset, rects[r + 2]);
+                offset += rects[r + 2];
+            }
+        }
+        patchRects[index] = Arrays.copyOf(rects, rectInts);
+        patchPixels[index] = pixels;
+    }
+    
+    /**
+     * Checks if any pixel of a tile differs from the first frame.
+     * @param frame Pixels of the frame
+     * @param x Left edge of the tile
+     * @param y Top edge of the tile
+     * @param width Tile width, smaller at the right edge
+     * @param height Tile height, smaller at the bottom edge
+     * @return true if the tile changed
+     */
+    private boolean tileChanged(int[] frame, int x, int y, int width, int height) {
+        for (int row = y; row < y + height; row++) {
+            int start = row * frameWidth + x;
+            if (Arrays.mismatch(frame, start, start + width, keyPixels, start, start + width) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Copies a frame's rectangles over pixels that show the first frame.
+     * @param target Pixels showing the first frame
+     * @param index Frame whose rectangles are copied
+     */
+    private void applyPatch(int[] target, int index) {
+        int[] rects = patchRects[index];
+        int[] pixels = patchPixels[index];
+        int offset = 0;
+        for (int r = 0; r < rects.length; r += 4) {
+            for (int row = 0; row < rects[r + 3]; row++) {
+                System.arraycopy(pixels, offset, target, (rects[r + 1] + row) * frameWidth + rects[r], rects[r + 2]);
+                offset += rects[r + 2];
+            }
+        }
+    }
+    
+    /**
+     * Copies the first frame back over a frame's rectangles, undoing applyPatch().
+     * @param target Pixels showing the frame
+     * @param index The frame they show
+     */
+    private void restorePatch(int[] target, int index) {
+        int[] rects = patchRects[index];
+        for (int r = 0; r < rects.length; r += 4) {
+            for (int row = 0; row < rects[r + 3]; row++) {
+                int start = (rects[r + 1] + row) * frameWidth + rects[r];
+                System.arraycopy(keyPixels, start, target, start, rects[r + 2]);
+            }
+        }
+    }
+    
+    /**
+     * Reads the pixels of an image.
+     * @param image The image
+     * @param width Width it must have
+     * @param height Height it must have
+     * @return Its pixels row by row in premultiplied ARGB, or null if it has none or is not width by height
+     */
+    private static int[] readPixels(Image image, int width, int height) {
+        PixelReader reader = image.getPixelReader();
+        if (reader == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+            return null;
+        }
+        int[] pixels = new int[width * height];
+        reader.getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+        return pixels;
+    }
+    
+    /**
+     * Works out how much memory a decoded image takes.
+     * @param image The image, or null
+     * @return Width times height times 4 bytes, or 0 for null
+     */
+    private static long decodedSize(Image image) {
+        if (image == null) {
+            return 0;
+        }
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+    
     /**
      * Loads all sprite frames from disk into memory.
      * Private method called during construction.
-     * Handles both padded (001) and non-padded (1) filename formats.
      */
     private void loadSpriteFrames() {
         // Size array to accommodate the indexing scheme
         // For 1-indexed: need indices 0-12 (13 slots) to store frames 1-12
         // For 0-indexed: need indices 0-17 (18 slots) to store frames 0-17
         spriteFrames = new Image[startIndex + frameCount];
+        hitMasks = new HitMask[startIndex + frameCount];
+        mirroredHitMasks = new HitMask[startIndex + frameCount];
         
         // Load each frame file
         for (int i = 0; i < frameCount; i++) {
-            String filename;
             int fileNumber = startIndex + i;  // Actual number in filename
             
-            if (usePadding) {
-                // Create padded filename like "Minotaur_01_Walking_001.png"
-                // %03d means 3-digit number with leading zeros
-                filename = String.format("%s%s%03d.png", spritePath, filePrefix, fileNumber);
-            } else {
-                // Create unpadded filename like "skeleton_1.png"
-                // %d means regular number without padding
-                filename = String.format("%s%s%d.png", spritePath, filePrefix, fileNumber);
-            }
-            
             // Load image and store at the index matching its frame number
             // This allows direct access: frame 5 is at index 5
-            spriteFrames[fileNumber] = new Image(filename);
+            spriteFrames[fileNumber] = new Image(spritePath + getFileName(fileNumber));
+            
+            // Build the masks now so collision tests never read pixels during play
+            hitMasks[fileNumber] = HitMask.fromImage(spriteFrames[fileNumber], HIT_MASK_CELL);
+            mirroredHitMasks[fileNumber] = hitMasks[fileNumber].mirrored();
         }   
+        updateUnionHitMasks();
+        residentBytes = countResidentBytes();
+    }
+    
+    /**
+     * Combines the masks of all frames into the union masks.
+     */
+    private void updateUnionHitMasks() {
+        unionHitMask = HitMask.union(hitMasks, startIndex, hitMasks.length);
+        mirroredUnionHitMask = HitMask.union(mirroredHitMasks, startIndex, mirroredHitMasks.length);
+    }
+    
+    /**
+     * An image delta-encoded frames are rebuilt into for drawing, reused for other frames of the animation.
+     */
+    private class FrameBuffer {
+        /**
+         * Pixels in premultiplied ARGB, row by row; the store of pixelBuffer.
+         */
+        final int[] pixels = new int[frameWidth * frameHeight];
+        
+        /**
+         * Buffer wrapping pixels, shown by image.
+         */
+        final PixelBuffer<IntBuffer> pixelBuffer = new PixelBuffer<>(frameWidth, frameHeight,
+                IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+        
+        /**
+         * Image handed out by getFrame().
+         */
+        final WritableImage image = new WritableImage(pixelBuffer);
+        
+        /**
+         * Rebuilds the pixels as the callback of pixelBuffer.updateBuffer(), built once.
+         */
+        final Callback<PixelBuffer<IntBuffer>, Rectangle2D> rebuild = buffer -> rebuild();
+        
+        /**
+         * Frame the pixels show, or -1 if they show none yet.
+         */
+        int frame = -1;
+        
+        /**
+         * Frame to rebuild on the next callback.
+         */
+        int nextFrame;
+        
+        /**
+         * Scene the image was last handed out in.
+         */
+        long lastPass;
+        
+        /**
+         * Rebuilds the pixels to show a frame and tells the image they changed.
+         * @param index Frame index, not the first frame
+         */
+        void show(int index) {
+            nextFrame = index;
+            pixelBuffer.updateBuffer(rebuild);
+        }
+        
+        /**
+         * Undoes the rectangles of the frame shown before and copies in those of the next frame.
+         * @return null, since the whole image may have changed
+         */
+        private Rectangle2D rebuild() {
+            if (frame < 0) {
+                System.arraycopy(keyPixels, 0, pixels, 0, pixels.length);
+            } else {
+                restorePatch(pixels, frame);
+            }
+            applyPatch(pixels, nextFrame);
+            frame = nextFrame;
+            return null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * The minotaur's original behavior expressed as an EnemyAI.
+ * Walks toward the player until within melee range, then waits
+ * and strikes back whenever its turn comes.
+ */
+public class ChargeAndCounterAI implements EnemyAI {
+    /**
+     * Distance in pixels at which an enemy is close enough to hit the player.
+     * Same 225 pixel melee range the player uses.
+     */
+    private final double attackRange;
+
+    /**
+     * Creates the AI with a given melee range.
+     * @param attackRange Distance in pixels that counts as in range
+     */
+    public ChargeAndCounterAI(double attackRange) {
+        this.attackRange = attackRange;
+    }
+
+    /**
+     * Approaches while out of range and attacks on its own turn.
+     * @param world Read-only copy of the game state
+     * @param self Index of this enemy in the snapshot
+     * @return APPROACH, ATTACK or HOLD
+     */
+    @Override
+    public EnemyCommand decide(WorldSnapshot world, int self) {
+        if (!world.isEnemyAlive(self) || !world.isPlayerAlive()) {
+            return EnemyCommand.HOLD;
+        }
+
+        double distance = Math.hypot(world.getPlayerX() - world.getEnemyX(self),
+                world.getPlayerY() - world.getEnemyY(self));
+        if (distance >= attackRange) {
+            return EnemyCommand.APPROACH;
+        }
+
+        if (world.getActiveEnemy() == self && !world.isEnemyAttacking(self)) {
+            return EnemyCommand.ATTACK;
+        }
+        return EnemyCommand.HOLD;
+    }
+}
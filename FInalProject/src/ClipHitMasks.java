@@ -0,0 +1,130 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The hit masks of one animation clip, loaded without JavaFX.
+ * Headless battles on a BattleServer decide range and hits with the same masks the drawn game uses,
+ * so they need the frames' alpha channels but never an image to draw. Each frame is read with ImageIO
+ * from the same resource a CharacterSprite would load, turned into a mask and dropped again.
+ * Masks never change after loading, so one set is shared by every session on a server.
+ */
+public final class ClipHitMasks implements HitMaskSource {
+    /**
+     * Mask of each frame, indexed by frame number like CharacterSprite's masks.
+     */
+    private final HitMask[] hitMasks;
+
+    /**
+     * The same masks mirrored left to right.
+     */
+    private final HitMask[] mirroredHitMasks;
+
+    /**
+     * Every frame's mask in one.
+     */
+    private final HitMask unionHitMask;
+
+    /**
+     * The union of the mirrored masks.
+     */
+    private final HitMask mirroredUnionHitMask;
+
+    /**
+     * Number of the first frame.
+     */
+    private final int startIndex;
+
+    /**
+     * Loads the masks of a clip, named the way CharacterSprite names its frames.
+     * @param spritePath Directory containing sprite files, as a resource path with trailing slash
+     * @param filePrefix Base filename before frame numbers
+     * @param frameCount Number of frames to load
+     * @param startIndex First frame number (0 or 1)
+     * @param usePadding Whether to use zero-padded numbers
+     * @throws IOException If a frame cannot be found or decoded
+     */
+    public ClipHitMasks(String spritePath, String filePrefix, int frameCount, int startIndex, boolean usePadding)
+            throws IOException {
+        this.startIndex = startIndex;
+        hitMasks = new HitMask[startIndex + frameCount];
+        mirroredHitMasks = new HitMask[startIndex + frameCount];
+        for (int index = startIndex; index < hitMasks.length; index++) {
+            String path = spritePath + CharacterSprite.fileName(filePrefix, index, usePadding);
+            hitMasks[index] = readMask(path);
+            mirroredHitMasks[index] = hitMasks[index].mirrored();
+        }
+        unionHitMask = HitMask.union(hitMasks, startIndex, hitMasks.length);
+        mirroredUnionHitMask = HitMask.union(mirroredHitMasks, startIndex, mirroredHitMasks.length);
+    }
+
+    /**
+     * Decodes one frame and builds its mask with CharacterSprite.HIT_MASK_CELL.
+     * Resources are looked up like JavaFX looks up an image URL without a scheme.
+     * @param path Resource path of the frame
+     * @return The frame's mask
+     * @throws IOException If the frame cannot be found or decoded
+     */
+    private static HitMask readMask(String path) throws IOException {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(path);
+        if (url == null) {
+            throw new IOException("Sprite frame not found: " + path);
+        }
+        BufferedImage image;
+        try (InputStream in = url.openStream()) {
+            image = ImageIO.read(in);
+        }
+        if (image == null) {
+            throw new IOException("Not an image ImageIO can read: " + path);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        return HitMask.fromArgb(argb, width, height, CharacterSprite.HIT_MASK_CELL);
+    }
+
+    /**
+     * Retrieves the hit mask of a frame.
+     * @param index Frame number
+     * @param mirrored true for the mask of the frame drawn flipped horizontally
+     * @return The frame's mask, or null if index invalid
+     */
+    @Override
+    public HitMask getHitMask(int index, boolean mirrored) {
+        if (index >= startIndex && index < hitMasks.length) {
+            return mirrored ? mirroredHitMasks[index] : hitMasks[index];
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves one mask that is solid wherever any frame of the clip is.
+     * @param mirrored true for the union of the frames drawn flipped horizontally
+     * @return The union of all frames' masks
+     */
+    @Override
+    public HitMask getUnionHitMask(boolean mirrored) {
+        return mirrored ? mirroredUnionHitMask : unionHitMask;
+    }
+
+    /**
+     * Gets the number of frames in the clip.
+     * @return Number of frames
+     */
+    @Override
+    public int getFrameCount() {
+        return hitMasks.length - startIndex;
+    }
+
+    /**
+     * Gets the number of the clip's first frame.
+     * @return Starting frame index (0 or 1)
+     */
+    @Override
+    public int getStartIndex() {
+        return startIndex;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * One compiled combat rule, such as the damage of a hit.
+ * Built once by FormulaCompiler from the text in the rules file;
+ * evaluating it is a chain of direct calls with no parsing or lookups.
+ * Formulas keep no state, so one instance can be shared by any number of battles and threads.
+ */
+@FunctionalInterface
+public interface CombatFormula {
+    /**
+     * Calculates the rule's value for one attack.
+     * @param attacker Character making the attack
+     * @param defender Character being attacked
+     * @param roll Random number between 0 (inclusive) and 1 (exclusive) for this attack
+     * @return The rule's value
+     */
+    double evaluate(Character attacker, Character defender, double roll);
+}
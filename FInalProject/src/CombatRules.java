@@ -0,0 +1,169 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The combat formulas of the game, read from a rules file and compiled to bytecode once.
+ * Each line of the file defines one rule as "name = expression", and later rules
+ * may use earlier ones; '#' starts a comment. A rule named "damage" is required
+ * and decides how many hit points an attack takes away.
+ * Designers can change the game balance by editing the file, without a rebuild.
+ * A compiled set of rules has no state, so it can be shared by every battle.
+ */
+public class CombatRules {
+    /**
+     * Classpath location of the rules the game ships with.
+     */
+    public static final String DEFAULT_RESOURCE = "/rules/combat.rules";
+
+    /**
+     * Name of the rule that calculates the damage of one attack.
+     */
+    public static final String DAMAGE_RULE = "damage";
+
+    /**
+     * Rules shipped with the game; loaded the first time they are needed.
+     */
+    private static CombatRules defaultRules;
+
+    /**
+     * Every compiled rule by name, in the order of the file.
+     */
+    private final Map<String, CombatFormula> formulas;
+
+    /**
+     * The compiled damage rule, kept separately so a hit needs no lookup.
+     */
+    private final CombatFormula damage;
+
+    /**
+     * Creates the rules from compiled formulas.
+     * @param formulas Compiled rules by name; must contain DAMAGE_RULE
+     */
+    private CombatRules(Map<String, CombatFormula> formulas) {
+        this.formulas = formulas;
+        this.damage = formulas.get(DAMAGE_RULE);
+    }
+
+    /**
+     * Gets the rules that ship with the game.
+     * @return The default rules
+     * @throws IllegalStateException If the bundled rules file is missing or broken
+     */
+    public static synchronized CombatRules getDefault() {
+        if (defaultRules == null) {
+            InputStream stream = CombatRules.class.getResourceAsStream(DEFAULT_RESOURCE);
+            if (stream == null) {
+                throw new IllegalStateException("Missing " + DEFAULT_RESOURCE);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                defaultRules = parse(reader, DEFAULT_RESOURCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return defaultRules;
+    }
+
+    /**
+     * Reads and compiles a rules file from disk.
+     * @param file Path of the rules file
+     * @return The compiled rules
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a rule is not valid
+     */
+    public static CombatRules load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.toString());
+        }
+    }
+
+    /**
+     * Reads and compiles rules line by line.
+     * @param reader Source of the rules text
+     * @param source Name of the source, used in error messages
+     * @return The compiled rules
+     * @throws IOException If reading fails
+     * @throws IllegalArgumentException If a rule is not valid or the damage rule is missing
+     */
+    public static CombatRules parse(BufferedReader reader, String source) throws IOException {
+        Map<String, FormulaNode> trees = new LinkedHashMap<>();
+        Map<String, CombatFormula> formulas = new LinkedHashMap<>();
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            // Drop comments and skip lines with nothing left
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int equals = line.indexOf('=');
+            if (equals <= 0 || line.startsWith("=", equals + 1)) {
+                throw new IllegalArgumentException(source + " line " + lineNumber
+                        + ": expected \"name = expression\"");
+            }
+            String name = line.substring(0, equals).strip();
+            if (!name.matches("[A-Za-z][A-Za-z0-9_]*") || FormulaCompiler.isReservedName(name)) {
+                throw new IllegalArgumentException(source + " line " + lineNumber
+                        + ": '" + name + "' cannot be used as a rule name");
+            }
+            if (trees.containsKey(name)) {
+                throw new IllegalArgumentException(source + " line " + lineNumber
+                        + ": rule '" + name + "' is defined twice");
+            }
+
+            try {
+                FormulaNode tree = FormulaCompiler.parse(line.substring(equals + 1).strip(), trees);
+                trees.put(name, tree);
+                formulas.put(name, FormulaClassWriter.define(tree, name));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(source + " line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (!formulas.containsKey(DAMAGE_RULE)) {
+            throw new IllegalArgumentException(source + ": no \"" + DAMAGE_RULE + "\" rule");
+        }
+        return new CombatRules(formulas);
+    }
+
+    /**
+     * Calculates how many hit points one attack takes away.
+     * The damage rule's result is rounded to whole hit points and never negative.
+     * @param attacker Character making the attack
+     * @param defender Character being attacked
+     * @param roll Random number between 0 (inclusive) and 1 (exclusive) for this attack
+     * @return Hit points to remove from the defender
+     */
+    public int damage(Character attacker, Character defender, double roll) {
+        double value = damage.evaluate(attacker, defender, roll);
+        if (!(value > 0)) {
+            return 0;  // Also catches NaN from a bad formula
+        }
+        return (int) Math.min(Math.round(value), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets one compiled rule by name.
+     * @param name Rule name as written in the file
+     * @return The compiled rule, or null if the file does not define it
+     */
+    public CombatFormula getFormula(String name) {
+        return formulas.get(name);
+    }
+}
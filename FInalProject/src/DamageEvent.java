@@ -0,0 +1,72 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one hit landing on a character.
+ * Off unless a recording turns it on; see FlightRecording.
+ */
+@Name("battle.Damage")
+@Label("Damage")
+@Category("Battle")
+@Description("A character took damage from an attack")
+@Enabled(false)
+@StackTrace(false)
+public class DamageEvent extends jdk.jfr.Event {
+    /**
+     * Registered type of this event, used to check cheaply whether it is being recorded.
+     */
+    private static final EventType TYPE = EventType.getEventType(DamageEvent.class);
+
+    /**
+     * Character that made the attack, for example "Player" or "Enemy 1".
+     */
+    @Label("Attacker")
+    private String attacker;
+
+    /**
+     * Character that was hit.
+     */
+    @Label("Target")
+    private String target;
+
+    /**
+     * Hit points the attack took away.
+     */
+    @Label("Amount")
+    private int amount;
+
+    /**
+     * Target's hit points after the hit.
+     */
+    @Label("Hit Points Left")
+    private int hitPointsLeft;
+
+    /**
+     * Checks if a recording has turned this event on.
+     * @return true if hits should be recorded
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Writes one event for a hit.
+     * @param attacker Name of the attacking character
+     * @param target Name of the character that was hit
+     * @param amount Damage dealt
+     * @param hitPointsLeft Target's hit points after the hit
+     */
+    public static void record(String attacker, String target, int amount, int hitPointsLeft) {
+        DamageEvent event = new DamageEvent();
+        event.attacker = attacker;
+        event.target = target;
+        event.amount = amount;
+        event.hitPointsLeft = hitPointsLeft;
+        event.commit();
+    }
+}
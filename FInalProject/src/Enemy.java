@@ -12,7 +12,7 @@ public class Enemy extends Character {
      * @param defense Damage reduction capability
      * @param speed Turn order/movement speed
      */
-    public Enemy(int maxHitPoints, int attackPoints, int defense) {
-        super(maxHitPoints, attackPoints, defense);
+    public Enemy(int maxHitPoints, int attackPoints, int defense, int speed) {
+        super(maxHitPoints, attackPoints, defense, speed);
     }
 }
\ No newline at end of file
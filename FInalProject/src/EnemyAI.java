@@ -0,0 +1,14 @@
+/**
+ * Pluggable behavior that decides what one enemy does next.
+ * Implementations are called from EnemyAIPool worker threads, several at once,
+ * so they must not keep mutable state and must only read the snapshot they are given.
+ */
+public interface EnemyAI {
+    /**
+     * Chooses the next command for one enemy.
+     * @param world Read-only copy of the game state taken at the start of the tick
+     * @param self Index of the enemy being decided for in the snapshot
+     * @return The command the FX thread should carry out for this enemy
+     */
+    EnemyCommand decide(WorldSnapshot world, int self);
+}
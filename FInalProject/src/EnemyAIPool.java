@@ -0,0 +1,289 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Evaluates every enemy's AI in parallel on a set of worker threads.
+ * The FX thread hands over a WorldSnapshot with submit(), keeps rendering,
+ * and picks the finished batch of commands up on a later tick.
+ * Workers are started once and parked between batches, and each one always handles
+ * the same stripe of enemy indices, so a batch allocates nothing.
+ * A batch only wakes as many workers as it has groups of ENEMIES_PER_WORKER enemies,
+ * so a battle against a single minotaur keeps the other workers asleep.
+ * The workers run until shutdown() is called, which the owner of the pool must do when it is done with it.
+ */
+public class EnemyAIPool {
+    /**
+     * Fewest enemies worth waking another worker for.
+     * Deciding a command takes far less time than waking a parked thread.
+     */
+    private static final int ENEMIES_PER_WORKER = 16;
+
+    /**
+     * Snapshot the workers read while a batch is running.
+     */
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+
+    /**
+     * AI of each enemy, copied from the units when a batch is submitted.
+     */
+    private EnemyAI[] brains = new EnemyAI[8];
+
+    /**
+     * Result slot for each enemy; written by the workers, read by the FX thread.
+     */
+    private EnemyCommand[] commands = new EnemyCommand[8];
+
+    /**
+     * Number of enemies in the running or last finished batch.
+     */
+    private int batchSize = 0;
+
+    /**
+     * Number of workers the running or last batch was split between; the others sleep through it.
+     */
+    private int activeWorkers = 0;
+
+    /**
+     * Number of workers that have not finished the current batch yet.
+     * The decrement by each worker publishes its commands to the FX thread.
+     */
+    private final AtomicInteger pendingWorkers = new AtomicInteger(0);
+
+    /**
+     * Incremented for every new batch. Used by the FX thread only.
+     */
+    private long batchNumber = 0;
+
+    /**
+     * Number of the latest batch each worker was given; a worker wakes up when its entry changes.
+     * Only the active workers' entries are written, and each write also publishes the snapshot to that worker.
+     */
+    private final AtomicLongArray assignedBatch;
+
+    /**
+     * True if a finished batch is waiting to be applied.
+     */
+    private boolean hasResults = false;
+
+    /**
+     * The worker threads, one per stripe.
+     */
+    private final Thread[] workers;
+
+    /**
+     * Thread parked in awaitIdle(), woken by the worker that finishes the batch; null when nobody waits.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Cleared by shutdown() to end the workers' loops.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates the pool without starting it; see withWorkers().
+     * @param workerCount Number of worker threads
+     */
+    private EnemyAIPool(int workerCount) {
+        workers = new Thread[workerCount];
+        assignedBatch = new AtomicLongArray(workerCount);
+    }
+
+    /**
+     * Creates a pool and starts its worker threads.
+     * Workers are daemon threads so they never keep the application alive.
+     * @param workerCount Number of worker threads
+     * @return The running pool
+     * @throws IllegalArgumentException If workerCount is not positive
+     */
+    public static EnemyAIPool withWorkers(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Pool needs at least one worker: " + workerCount);
+        }
+        EnemyAIPool pool = new EnemyAIPool(workerCount);
+        pool.startWorkers();
+        return pool;
+    }
+
+    /**
+     * Creates a pool sized to leave one core free for the FX thread.
+     * @return A running pool with at least one worker
+     */
+    public static EnemyAIPool forAvailableCores() {
+        return withWorkers(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Starts one thread per stripe. Called once, after the pool is fully built.
+     */
+    private void startWorkers() {
+        for (int i = 0; i < workers.length; i++) {
+            int stripe = i;
+            workers[i] = new Thread(() -> runWorker(stripe), "enemy-ai-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Checks if the workers are free to take a new batch.
+     * @return true when no batch is running
+     */
+    public boolean isIdle() {
+        return pendingWorkers.get() == 0;
+    }
+
+    /**
+     * Checks if a finished batch is waiting to be applied.
+     * @return true if getCommand() has results to return
+     */
+    public boolean hasResults() {
+        return hasResults && isIdle();
+    }
+
+    /**
+     * Waits until the running batch is done, parked until the last worker wakes this thread.
+     * Used when the game is stepped by an external clock and must stay deterministic.
+     * Only one thread may wait at a time.
+     */
+    public void awaitIdle() {
+        if (isIdle()) {
+            return;
+        }
+        waiter = Thread.currentThread();
+        // Checked again after publishing the waiter, so a worker finishing in between is not missed
+        while (!isIdle()) {
+            LockSupport.park(this);
+        }
+        waiter = null;
+    }
+
+    /**
+     * Starts evaluating a new batch for the given game state.
+     * Must only be called on the FX thread while the pool is idle.
+     * @param player The player character
+     * @param playerX Player's X coordinate
+     * @param playerY Player's Y coordinate
+     * @param activeEnemy Index of the enemy whose turn it is, or -1 on the player's turn
+     * @param enemies All enemy units
+     * @throws IllegalStateException If the pool was shut down
+     */
+    public void submit(Player player, double playerX, double playerY, int activeEnemy,
+            List<EnemyUnit> enemies) {
+        if (!running) {
+            throw new IllegalStateException("Enemy AI pool was shut down");
+        }
+        snapshot.capture(player, playerX, playerY, activeEnemy, enemies);
+
+        batchSize = enemies.size();
+        if (batchSize > brains.length) {
+            brains = Arrays.copyOf(brains, Math.max(batchSize, brains.length * 2));
+            commands = Arrays.copyOf(commands, brains.length);
+        }
+        for (int i = 0; i < batchSize; i++) {
+            brains[i] = enemies.get(i).getAI();
+        }
+
+        // One worker per ENEMIES_PER_WORKER enemies, at least one even for an empty batch
+        activeWorkers = Math.max(1, Math.min(workers.length,
+                (batchSize + ENEMIES_PER_WORKER - 1) / ENEMIES_PER_WORKER));
+
+        hasResults = true;
+        pendingWorkers.set(activeWorkers);
+        batchNumber++;
+        for (int i = 0; i < activeWorkers; i++) {
+            assignedBatch.set(i, batchNumber);  // Volatile write publishes everything above
+            LockSupport.unpark(workers[i]);
+        }
+    }
+
+    /**
+     * Gets the command decided for one enemy in the finished batch.
+     * @param i Enemy index, in the order the units were submitted
+     * @return The enemy's command
+     */
+    public EnemyCommand getCommand(int i) {
+        return commands[i];
+    }
+
+    /**
+     * Gets the number of commands in the finished batch.
+     * @return Number of enemies evaluated
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets whose turn it was when the finished batch was submitted.
+     * Only the enemy acting at that time may have chosen to attack.
+     * @return Index of the enemy whose turn the batch saw, or -1 for the player's turn
+     */
+    public int getActiveEnemy() {
+        return snapshot.getActiveEnemy();
+    }
+
+    /**
+     * Marks the finished batch as applied.
+     * Called by GameController after carrying out every command.
+     */
+    public void clearResults() {
+        hasResults = false;
+    }
+
+    /**
+     * Stops the worker threads and waits for them to end.
+     * A batch that is running is finished first. The pool cannot be used afterwards;
+     * calling this again does nothing.
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of one worker thread.
+     * Sleeps until it is given a new batch number, evaluates its stripe, and reports back.
+     * The worker that finishes last wakes the thread waiting in awaitIdle(), if any.
+     * Ends once shutdown() was called and no batch of its own is waiting.
+     * @param stripe Index of this worker; it handles enemies stripe, stripe + active workers, ...
+     */
+    private void runWorker(int stripe) {
+        long lastBatch = 0;
+        while (true) {
+            long current = assignedBatch.get(stripe);
+            if (current == lastBatch) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            lastBatch = current;
+
+            // The next batch cannot change these fields before this worker reports back
+            int stride = activeWorkers;
+            for (int i = stripe; i < batchSize; i += stride) {
+                commands[i] = brains[i].decide(snapshot, i);
+            }
+            if (pendingWorkers.decrementAndGet() == 0) {
+                Thread waiting = waiter;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+        }
+    }
+}
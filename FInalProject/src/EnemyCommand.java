@@ -0,0 +1,15 @@
+/**
+ * A decision an EnemyAI makes for one enemy during one game tick.
+ * Commands are computed on worker threads and carried out later on the FX thread,
+ * so they only describe intent and never touch game state themselves.
+ */
+public enum EnemyCommand {
+    /** Stay in place and do nothing this tick. */
+    HOLD,
+
+    /** Keep walking toward the player. */
+    APPROACH,
+
+    /** Start an attack animation against the player. */
+    ATTACK
+}
@@ -0,0 +1,148 @@
+/**
+ * One enemy a wave file brings onto the battlefield: what it is, how strong, where and when.
+ * Created by WaveStream from one line of the file; GameController turns it into an EnemyUnit
+ * once its time has come.
+ */
+public class EnemySpawn {
+    /**
+     * When the enemy enters, in nanoseconds after the waves started.
+     */
+    private final long time;
+
+    /**
+     * Kind of enemy, which decides its sprites; for example "minotaur".
+     */
+    private final String type;
+
+    /**
+     * Hit points the enemy starts with.
+     */
+    private final int hitPoints;
+
+    /**
+     * Attack points.
+     */
+    private final int attack;
+
+    /**
+     * Defense points.
+     */
+    private final int defense;
+
+    /**
+     * Speed, which decides how often it gets a turn.
+     */
+    private final int speed;
+
+    /**
+     * X coordinate the enemy enters at, in world pixels.
+     */
+    private final double x;
+
+    /**
+     * Y coordinate the enemy enters at, in world pixels.
+     */
+    private final double y;
+
+    /**
+     * Whether the enemy leads its wave: while it lives, every other enemy's attack is raised by BattleRules.LEADER_AURA.
+     */
+    private final boolean leader;
+
+    /**
+     * Creates a spawn.
+     * @param time When the enemy enters, in nanoseconds after the waves started
+     * @param type Kind of enemy
+     * @param hitPoints Starting hit points
+     * @param attack Attack points
+     * @param defense Defense points
+     * @param speed Speed
+     * @param x X coordinate the enemy enters at
+     * @param y Y coordinate the enemy enters at
+     * @param leader Whether the enemy leads its wave
+     */
+    public EnemySpawn(long time, String type, int hitPoints, int attack, int defense, int speed, double x, double y,
+            boolean leader) {
+        this.time = time;
+        this.type = type;
+        this.hitPoints = hitPoints;
+        this.attack = attack;
+        this.defense = defense;
+        this.speed = speed;
+        this.x = x;
+        this.y = y;
+        this.leader = leader;
+    }
+
+    /**
+     * Gets when the enemy enters.
+     * @return Nanoseconds after the waves started
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the kind of enemy.
+     * @return Type name from the wave file
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the starting hit points.
+     * @return Hit points
+     */
+    public int getHitPoints() {
+        return hitPoints;
+    }
+
+    /**
+     * Gets the attack points.
+     * @return Attack points
+     */
+    public int getAttack() {
+        return attack;
+    }
+
+    /**
+     * Gets the defense points.
+     * @return Defense points
+     */
+    public int getDefense() {
+        return defense;
+    }
+
+    /**
+     * Gets the speed.
+     * @return Speed
+     */
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Gets the X coordinate the enemy enters at.
+     * @return X coordinate in world pixels
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the Y coordinate the enemy enters at.
+     * @return Y coordinate in world pixels
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Checks if the enemy leads its wave.
+     * @return true if its aura raises the other enemies' attack while it lives
+     */
+    public boolean isLeader() {
+        return leader;
+    }
+}
@@ -0,0 +1,397 @@
+/**
+ * One enemy on the battlefield: its combat stats, position, animations and AI.
+ * Groups everything GameController used to keep in separate minotaur fields,
+ * so any number of enemies can be updated and drawn the same way.
+ */
+public class EnemyUnit {
+    /**
+     * Combat statistics (HP, attack, defense) of this enemy.
+     */
+    private final Enemy enemy;
+
+    /**
+     * Sprite frames shown while walking.
+     */
+    private final CharacterSprite walkSprite;
+
+    /**
+     * Sprite frames shown while attacking; frame 0 doubles as the idle pose.
+     */
+    private final CharacterSprite attackSprite;
+
+    /**
+     * Hit masks of the walk cycle; the walk sprite itself, unless the unit is headless.
+     */
+    private final HitMaskSource walkMasks;
+
+    /**
+     * Hit masks of the attack animation; the attack sprite itself, unless the unit is headless.
+     */
+    private final HitMaskSource attackMasks;
+
+    /**
+     * Clock of the walk cycle, shared by every enemy that walks with the same frames.
+     */
+    private final AnimationClock walkClock;
+
+    /**
+     * Offset of this enemy's walk cycle on the shared clock, taken when it last started walking.
+     * Its walk frame is startFrame + (clock ticks + walkPhase) % frameCount.
+     */
+    private int walkPhase = 0;
+
+    /**
+     * Clock ticks each shown walk frame is held for: 1 at the full rate, more when far away.
+     */
+    private int animationStep = 1;
+
+    /**
+     * Timing for one attack animation.
+     */
+    private final AnimationController attackController;
+
+    /**
+     * Behavior that decides this enemy's commands.
+     */
+    private final EnemyAI ai;
+
+    /**
+     * X coordinate of the sprite center on the battlefield.
+     */
+    private double x;
+
+    /**
+     * Y coordinate of the sprite center on the battlefield.
+     */
+    private double y;
+
+    /**
+     * Position before the latest step, which drawing glides away from.
+     */
+    private double previousX, previousY;
+
+    /**
+     * Time stamp of the latest step, in nanoseconds.
+     */
+    private long lastStepTime;
+
+    /**
+     * Time the latest step is spread over when drawn, in nanoseconds; 0 before the first step.
+     */
+    private long stepDuration = 0;
+
+    /**
+     * True while the enemy is walking toward the player.
+     */
+    private boolean walking = false;
+
+    /**
+     * True while the attack animation is playing.
+     */
+    private boolean attacking = false;
+
+    /**
+     * Creates an enemy unit at a starting position.
+     * The attack controller is created here to match the sprite's frame numbering.
+     * @param enemy Combat statistics
+     * @param walkSprite Walking animation frames
+     * @param attackSprite Attack animation frames
+     * @param walkClock Clock of the walk cycle, with walkSprite's frame numbering; shared with other enemies
+     * @param ai Behavior used to pick commands
+     * @param x Starting X coordinate
+     * @param y Starting Y coordinate
+     */
+    public EnemyUnit(Enemy enemy, CharacterSprite walkSprite, CharacterSprite attackSprite,
+            AnimationClock walkClock, EnemyAI ai, double x, double y) {
+        this.enemy = enemy;
+        this.walkSprite = walkSprite;
+        this.attackSprite = attackSprite;
+        this.walkMasks = walkSprite;
+        this.attackMasks = attackSprite;
+        this.ai = ai;
+        this.x = x;
+        this.y = y;
+        this.previousX = x;
+        this.previousY = y;
+        this.walkClock = walkClock;
+        this.attackController = new AnimationController(attackSprite.getSpritePath(),
+                attackSprite.getFrameCount(), attackSprite.getStartIndex());
+    }
+    
+    /**
+     * Creates an enemy unit that is never drawn, for headless battles on a BattleServer.
+     * It has no sprites; its animations only keep time, and range and hits are decided
+     * with the same hit masks the drawn game's sprites have.
+     * @param enemy Combat statistics
+     * @param ai Behavior used to pick commands
+     * @param x Starting X coordinate
+     * @param y Starting Y coordinate
+     * @param walkClock Clock of the walk cycle, shared with other enemies
+     * @param walkMasks Hit masks of the walk cycle
+     * @param attackMasks Hit masks of the attack animation, which also give its frame numbering
+     */
+    public EnemyUnit(Enemy enemy, EnemyAI ai, double x, double y, AnimationClock walkClock,
+            HitMaskSource walkMasks, HitMaskSource attackMasks) {
+        this.enemy = enemy;
+        this.walkSprite = null;
+        this.attackSprite = null;
+        this.walkMasks = walkMasks;
+        this.attackMasks = attackMasks;
+        this.ai = ai;
+        this.x = x;
+        this.y = y;
+        this.previousX = x;
+        this.previousY = y;
+        this.walkClock = walkClock;
+        this.attackController = new AnimationController("attack", attackMasks.getFrameCount(),
+                attackMasks.getStartIndex());
+    }
+
+    /**
+     * Gets the enemy's combat statistics.
+     * @return The Enemy character
+     */
+    public Enemy getEnemy() {
+        return enemy;
+    }
+
+    /**
+     * Gets the walking animation frames.
+     * @return The walk CharacterSprite, or null for a headless unit
+     */
+    public CharacterSprite getWalkSprite() {
+        return walkSprite;
+    }
+
+    /**
+     * Gets the attack animation frames.
+     * @return The attack CharacterSprite, or null for a headless unit
+     */
+    public CharacterSprite getAttackSprite() {
+        return attackSprite;
+    }
+
+    /**
+     * Gets the hit masks of the walk cycle, for range and hit tests.
+     * @return The walk masks; the walk sprite for a drawn unit
+     */
+    public HitMaskSource getWalkMasks() {
+        return walkMasks;
+    }
+
+    /**
+     * Gets the hit masks of the attack animation, for range and hit tests.
+     * @return The attack masks; the attack sprite for a drawn unit
+     */
+    public HitMaskSource getAttackMasks() {
+        return attackMasks;
+    }
+
+    /**
+     * Gets the clock of the walk cycle.
+     * @return The shared walk AnimationClock
+     */
+    public AnimationClock getWalkClock() {
+        return walkClock;
+    }
+
+    /**
+     * Checks if the enemy takes a walking step this pulse, which it does on every tick of the walk clock.
+     * The enemy keeps no timer of its own, so this is one field read and one flag on the shared clock.
+     * @return true while walking, in the pulse the clock ticked
+     */
+    public boolean isWalkStepDue() {
+        return walking && walkClock.hasTicked();
+    }
+
+    /**
+     * Gets the walk frame to draw, one addition and modulo on the shared clock.
+     * @return Frame index in the walk sprite
+     */
+    public int getWalkFrame() {
+        return walkClock.frameAt(walkPhase, animationStep);
+    }
+
+    /**
+     * Checks if the walk frame the enemy is drawn with changed in this pulse.
+     * At a reduced rate only every animationStep-th tick shows a new frame.
+     * @return true if the enemy walks, the clock ticked and the shown frame moved
+     */
+    public boolean isWalkFrameChanged() {
+        return walking && walkClock.isFrameChanged(walkPhase, animationStep);
+    }
+
+    /**
+     * Gets how many clock ticks each shown walk frame is held for.
+     * @return 1 at the full rate, more at a reduced rate
+     */
+    public int getAnimationStep() {
+        return animationStep;
+    }
+
+    /**
+     * Sets the rate the walk cycle is shown at. Steps are still taken on every tick,
+     * so the enemy moves exactly as fast; only the frames drawn are fewer.
+     * @param animationStep Clock ticks each shown frame is held for; 1 shows every frame
+     * @throws IllegalArgumentException If the step is below 1
+     */
+    public void setAnimationStep(int animationStep) {
+        if (animationStep < 1) {
+            throw new IllegalArgumentException("Animation step must be at least 1: " + animationStep);
+        }
+        this.animationStep = animationStep;
+    }
+
+    /**
+     * Gets the attack animation timing.
+     * @return The attack AnimationController
+     */
+    public AnimationController getAttackController() {
+        return attackController;
+    }
+
+    /**
+     * Gets the behavior that decides this enemy's commands.
+     * @return The EnemyAI
+     */
+    public EnemyAI getAI() {
+        return ai;
+    }
+
+    /**
+     * Gets the X coordinate.
+     * @return X coordinate in pixels
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the Y coordinate.
+     * @return Y coordinate in pixels
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Moves the enemy at once; it is drawn at the new position right away.
+     * @param dx Pixels to move right (negative moves left)
+     * @param dy Pixels to move down (negative moves up)
+     */
+    public void moveBy(double dx, double dy) {
+        x += dx;
+        y += dy;
+        previousX = x;
+        previousY = y;
+        stepDuration = 0;
+    }
+
+    /**
+     * Moves the enemy by one walking step, which is drawn as a glide from where it is drawn now.
+     * The glide lasts as long as the time since the step before, which is the best guess of
+     * when the next step comes, but at least one walk frame. A step that comes before the
+     * previous glide has finished carries on from the point reached, so the enemy never jumps.
+     * @param dx Pixels to move right (negative moves left)
+     * @param dy Pixels to move down (negative moves up)
+     * @param now Time stamp of the step in nanoseconds
+     */
+    public void stepBy(double dx, double dy, long now) {
+        long frameDuration = walkClock.getFrameDuration();
+        long sinceLastStep = now - lastStepTime;
+        if (isGliding(now)) {
+            double fraction = Math.max(0, (double) sinceLastStep / stepDuration);
+            previousX += (x - previousX) * fraction;
+            previousY += (y - previousY) * fraction;
+        } else {
+            previousX = x;
+            previousY = y;
+        }
+        // A step after a pause starts a new walk, which is paced by the walk frames
+        stepDuration = stepDuration == 0 || sinceLastStep > 2 * frameDuration ? frameDuration
+                : Math.max(frameDuration, sinceLastStep);
+        x += dx;
+        y += dy;
+        lastStepTime = now;
+    }
+
+    /**
+     * Checks if the enemy is still drawn gliding toward its position.
+     * @param now Current time in nanoseconds
+     * @return true until the latest step's glide has finished
+     */
+    public boolean isGliding(long now) {
+        return stepDuration > 0 && now - lastStepTime < stepDuration && (previousX != x || previousY != y);
+    }
+
+    /**
+     * Gets the X coordinate before the latest step.
+     * @return Previous X coordinate in pixels
+     */
+    public double getPreviousX() {
+        return previousX;
+    }
+
+    /**
+     * Gets the Y coordinate before the latest step.
+     * @return Previous Y coordinate in pixels
+     */
+    public double getPreviousY() {
+        return previousY;
+    }
+
+    /**
+     * Gets the time stamp of the latest step.
+     * @return Time in nanoseconds
+     */
+    public long getLastStepTime() {
+        return lastStepTime;
+    }
+
+    /**
+     * Gets the time the latest step is spread over when drawn.
+     * @return Duration in nanoseconds, or 0 if the enemy is drawn at its position
+     */
+    public long getStepDuration() {
+        return stepDuration;
+    }
+
+    /**
+     * Checks if the enemy is walking.
+     * @return true while walking
+     */
+    public boolean isWalking() {
+        return walking;
+    }
+
+    /**
+     * Starts or stops the walk cycle.
+     * Starting restarts the animation from its first frame by taking a new phase offset on the clock;
+     * the first step comes with the clock's next tick.
+     * @param walking true to walk, false to stand still
+     */
+    public void setWalking(boolean walking) {
+        if (walking && !this.walking) {
+            walkPhase = walkClock.getStartPhase();
+        }
+        this.walking = walking;
+    }
+
+    /**
+     * Checks if the enemy is attacking.
+     * @return true while the attack animation plays
+     */
+    public boolean isAttacking() {
+        return attacking;
+    }
+
+    /**
+     * Starts or ends the attack animation.
+     * Both starting and ending rewind the animation to its first frame.
+     * @param attacking true when an attack begins, false when it ends
+     */
+    public void setAttacking(boolean attacking) {
+        attackController.resetAnimation();
+        this.attacking = attacking;
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Always-on JDK Flight Recorder recording of the game's own events.
+ * Uses the JDK's low-overhead "default" settings, turns on the battle events
+ * (FrameEvent, SceneDrawEvent, AnimationClipEvent, DamageEvent, InputLatencyEvent) and keeps
+ * only the most recent minutes, so it can run for a whole session.
+ * When a player reports lag, the recent history can be saved while the game keeps running with
+ * "jcmd <pid> JFR.dump name=battle filename=lag.jfr"; it is also written to the file on exit.
+ */
+public class FlightRecording {
+    /**
+     * Name of the recording, used by jcmd to find it.
+     */
+    public static final String NAME = "battle";
+
+    /**
+     * How much history the recording keeps.
+     * 10 minutes is enough to cover the lag a player noticed and what led up to it.
+     */
+    private static final Duration MAX_AGE = Duration.ofMinutes(10);
+
+    /**
+     * Prevents creating instances; this class only has static methods.
+     */
+    private FlightRecording() {
+    }
+
+    /**
+     * Starts recording the battle events.
+     * @param file Where the recording is written when the game exits
+     * @return The running recording
+     * @throws IOException If the recording file cannot be set up
+     * @throws IllegalStateException If the JDK's default settings cannot be read
+     */
+    public static Recording start(Path file) throws IOException {
+        Configuration settings;
+        try {
+            settings = Configuration.getConfiguration("default");
+        } catch (ParseException e) {
+            throw new IllegalStateException("Cannot read the JDK's default recording settings", e);
+        }
+
+        Recording recording = new Recording(settings);
+        recording.setName(NAME);
+        recording.enable(FrameEvent.class);
+        recording.enable(SceneDrawEvent.class);
+        recording.enable(AnimationClipEvent.class);
+        recording.enable(DamageEvent.class);
+        recording.enable(InputLatencyEvent.class);
+        recording.setToDisk(true);
+        recording.setMaxAge(MAX_AGE);
+        recording.setDestination(file);
+        recording.setDumpOnExit(true);
+        recording.start();
+        return recording;
+    }
+}
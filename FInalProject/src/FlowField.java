@@ -0,0 +1,707 @@
+import java.util.Arrays;
+
+/**
+ * Directions toward one target for every walkable cell of the battlefield, shared by all enemies.
+ * The grid is the tile grid of a TileMap. When the target moves to another cell, the walking
+ * distance from every cell to the target is worked out once (Dijkstra over 8 neighbours),
+ * and each cell remembers which neighbour is one step closer. An enemy then finds its next step
+ * with a single array lookup, so moving any number of enemies costs the same per enemy
+ * whether there is one or hundreds, and none of them runs its own path search.
+ * Diagonal steps may not cut past the corner of an obstacle.
+ * <p>
+ * When a tile turns into an obstacle or is cleared (setWalkable()), the field is repaired instead of
+ * rebuilt: only the cells whose shortest way ran through that tile lose their distance, they are seeded
+ * again from the neighbours around them, and the improvement or loss spreads only as far as distances
+ * actually change. A target that moves one cell is different: the distance of almost every cell changes
+ * with it, so there is no smaller region to update, and the whole field is rebuilt in linear time.
+ * All arrays are allocated once, so neither rebuilding nor repairing the field creates garbage.
+ */
+public class FlowField {
+    /**
+     * Cost of one straight step between cells.
+     */
+    private static final int STRAIGHT_COST = 10;
+
+    /**
+     * Cost of one diagonal step; 14 is 10 times the square root of 2, rounded.
+     */
+    private static final int DIAGONAL_COST = 14;
+
+    /**
+     * Distance of cells that cannot reach the target.
+     */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Direction code of cells with nowhere to go: the target cell itself and cells that cannot reach it.
+     */
+    private static final byte NO_DIRECTION = 8;
+
+    /**
+     * Column offset of each neighbour; straight neighbours come first so they win ties,
+     * which keeps walks along a clear row perfectly straight.
+     */
+    private static final int[] NEIGHBOUR_COLUMN = { -1, 1, 0, 0, -1, 1, -1, 1 };
+
+    /**
+     * Row offset of each neighbour.
+     */
+    private static final int[] NEIGHBOUR_ROW = { 0, 0, -1, 1, -1, -1, 1, 1 };
+
+    /**
+     * X part of the unit vector for each direction code; the last entry is "stay".
+     */
+    private static final double[] DIRECTION_X = new double[9];
+
+    /**
+     * Y part of the unit vector for each direction code; the last entry is "stay".
+     */
+    private static final double[] DIRECTION_Y = new double[9];
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            double length = Math.hypot(NEIGHBOUR_COLUMN[i], NEIGHBOUR_ROW[i]);
+            DIRECTION_X[i] = NEIGHBOUR_COLUMN[i] / length;
+            DIRECTION_Y[i] = NEIGHBOUR_ROW[i] / length;
+        }
+    }
+
+    /**
+     * Number of cell columns, the same as the map's tile columns.
+     */
+    private final int columns;
+
+    /**
+     * Number of cell rows.
+     */
+    private final int rows;
+
+    /**
+     * Width and height of a cell in world pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * Walking distance from each cell to the target, in STRAIGHT_COST units per cell.
+     */
+    private final int[] distance;
+
+    /**
+     * Direction code of each cell: which neighbour is one step closer to the target.
+     */
+    private final byte[] direction;
+
+    /**
+     * Whether each cell can be walked on, copied from the map once.
+     */
+    private final boolean[] walkable;
+
+    /**
+     * Dial's bucket queue: first cell of each bucket, indexed by distance modulo the bucket count.
+     * One more bucket than the largest step cost is enough, since no cell in the queue
+     * is ever further than one step past the cell being settled.
+     */
+    private final int[] bucketHead = new int[DIAGONAL_COST + 1];
+
+    /**
+     * Next cell in the same bucket, forming a linked list through the cells.
+     */
+    private final int[] bucketNext;
+
+    /**
+     * Previous cell in the same bucket, or -1 for the first; lets a cell leave its bucket
+     * when a shorter way to it is found.
+     */
+    private final int[] bucketPrevious;
+
+    /**
+     * Cells waiting to be checked for a neighbour that still backs their distance during a repair; a stack.
+     */
+    private final int[] checkStack;
+
+    /**
+     * Number of cells in checkStack.
+     */
+    private int checkCount = 0;
+
+    /**
+     * Whether each cell is in checkStack now.
+     */
+    private final boolean[] waitingForCheck;
+
+    /**
+     * Cells that lost their distance during a repair and must be seeded again.
+     */
+    private final int[] invalidated;
+
+    /**
+     * Number of cells in invalidated.
+     */
+    private int invalidatedCount = 0;
+
+    /**
+     * Binary min-heap of cells ordered by distance, used to spread a repair.
+     * Dial's ring of buckets cannot hold it, since the seeds of a repair are far apart in distance.
+     */
+    private final int[] repairHeap;
+
+    /**
+     * Position of each cell in repairHeap, or -1 when it is not queued.
+     */
+    private final int[] repairHeapPosition;
+
+    /**
+     * Number of cells in repairHeap.
+     */
+    private int repairHeapSize = 0;
+
+    /**
+     * Cells whose distance or neighbourhood changed during a repair; their directions and
+     * their neighbours' directions are worked out again at the end.
+     */
+    private final int[] changed;
+
+    /**
+     * Number of cells in changed.
+     */
+    private int changedCount = 0;
+
+    /**
+     * Whether each cell is in changed.
+     */
+    private final boolean[] markedChanged;
+
+    /**
+     * Cell the field currently leads to, or -1 before the first target is set.
+     */
+    private int targetCell = -1;
+
+    /**
+     * World position of the target, for cells outside the grid.
+     */
+    private double targetX, targetY;
+
+    /**
+     * Number of times the field was rebuilt.
+     */
+    private int rebuildCount = 0;
+
+    /**
+     * Number of cells whose distance changed in the latest repair.
+     */
+    private int lastRepairSize = 0;
+
+    /**
+     * Creates an empty field over a map's tile grid; call setTarget() before asking for directions.
+     * @param map The terrain; tiles that are not walkable are obstacles. Read once; report later changes with setWalkable()
+     */
+    public FlowField(TileMap map) {
+        this.columns = map.getColumns();
+        this.rows = map.getRows();
+        this.cellSize = map.getTileSize();
+
+        int cells = columns * rows;
+        distance = new int[cells];
+        direction = new byte[cells];
+        walkable = new boolean[cells];
+        bucketNext = new int[cells];
+        bucketPrevious = new int[cells];
+        checkStack = new int[cells];
+        waitingForCheck = new boolean[cells];
+        invalidated = new int[cells];
+        repairHeap = new int[cells];
+        repairHeapPosition = new int[cells];
+        Arrays.fill(repairHeapPosition, -1);
+        changed = new int[cells];
+        markedChanged = new boolean[cells];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                walkable[row * columns + column] = map.isWalkable(column, row);
+            }
+        }
+    }
+
+    /**
+     * Points the field at a position.
+     * The field is only rebuilt when the position is in a different cell than before,
+     * so this can be called every tick.
+     * @param worldX World X coordinate of the target
+     * @param worldY World Y coordinate of the target
+     */
+    public void setTarget(double worldX, double worldY) {
+        targetX = worldX;
+        targetY = worldY;
+        int cell = cellAt(worldX, worldY);
+        if (cell != targetCell) {
+            targetCell = cell;
+            rebuild();
+        }
+    }
+
+    /**
+     * Turns a tile into an obstacle or clears it, and repairs the field around it.
+     * Only cells whose shortest way to the target ran through the tile, or that now have a shorter one,
+     * are worked out again; the rest of the field is not touched. A change to the target's own tile,
+     * or before the first target is set, just updates the grid and rebuilds as usual.
+     * @param column Tile column
+     * @param row Tile row
+     * @param canWalk true if the tile can now be walked on
+     * @throws IllegalArgumentException If the tile is outside the grid
+     */
+    public void setWalkable(int column, int row, boolean canWalk) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            throw new IllegalArgumentException("Tile " + column + "," + row + " is outside the " + columns + "x" + rows + " grid");
+        }
+        int cell = row * columns + column;
+        if (walkable[cell] == canWalk) {
+            return;
+        }
+        walkable[cell] = canWalk;
+        if (targetCell < 0) {
+            return;  // The first setTarget() builds the field from the updated grid
+        }
+        if (cell == targetCell || !walkable[targetCell]) {
+            rebuild();
+            return;
+        }
+        repair(column, row);
+    }
+
+    /**
+     * Gets the X part of the direction to walk from a position.
+     * @param worldX World X coordinate of the walker
+     * @param worldY World Y coordinate of the walker
+     * @return X part of a unit vector, or 0 if the walker is at the target or cannot reach it
+     */
+    public double getDirectionX(double worldX, double worldY) {
+        int cell = cellAt(worldX, worldY);
+        if (cell < 0 || !walkable[cell]) {
+            return straightToTarget(worldX, worldY, true);
+        }
+        return DIRECTION_X[direction[cell]];
+    }
+
+    /**
+     * Gets the Y part of the direction to walk from a position.
+     * @param worldX World X coordinate of the walker
+     * @param worldY World Y coordinate of the walker
+     * @return Y part of a unit vector, or 0 if the walker is at the target or cannot reach it
+     */
+    public double getDirectionY(double worldX, double worldY) {
+        int cell = cellAt(worldX, worldY);
+        if (cell < 0 || !walkable[cell]) {
+            return straightToTarget(worldX, worldY, false);
+        }
+        return DIRECTION_Y[direction[cell]];
+    }
+
+    /**
+     * Gets how many times the field has been rebuilt.
+     * Only grows when the target changes cell.
+     * @return Number of rebuilds
+     */
+    public int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * Gets how many cells changed distance in the latest setWalkable() repair.
+     * @return Number of cells whose distance changed
+     */
+    public int getLastRepairSize() {
+        return lastRepairSize;
+    }
+
+    /**
+     * Direction for a walker off the grid or inside an obstacle: straight at the target,
+     * which brings it back onto walkable ground the way the old straight-line walk did.
+     * @param worldX World X coordinate of the walker
+     * @param worldY World Y coordinate of the walker
+     * @param xPart true for the X part of the vector, false for the Y part
+     * @return One part of the unit vector toward the target, or 0 if already there
+     */
+    private double straightToTarget(double worldX, double worldY, boolean xPart) {
+        double dx = targetX - worldX;
+        double dy = targetY - worldY;
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return 0;
+        }
+        return (xPart ? dx : dy) / length;
+    }
+
+    /**
+     * Finds the cell containing a world position.
+     * @param worldX World X coordinate
+     * @param worldY World Y coordinate
+     * @return Cell index, or -1 outside the grid
+     */
+    private int cellAt(double worldX, double worldY) {
+        int column = (int) Math.floor(worldX / cellSize);
+        int row = (int) Math.floor(worldY / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * Works out the distance from every cell to the target, then each cell's direction.
+     * Uses Dial's algorithm: Dijkstra with a ring of buckets instead of a heap,
+     * which is linear in the number of cells because step costs are small integers.
+     */
+    private void rebuild() {
+        rebuildCount++;
+        Arrays.fill(distance, UNREACHABLE);
+        Arrays.fill(direction, NO_DIRECTION);
+        Arrays.fill(bucketHead, -1);
+        if (targetCell < 0 || !walkable[targetCell]) {
+            return;  // Nothing can reach a target off the ground; walkers stay where they are
+        }
+
+        distance[targetCell] = 0;
+        push(targetCell, 0);
+        int queued = 1;
+        int current = 0;
+        while (queued > 0) {
+            int cell = bucketHead[current % bucketHead.length];
+            if (cell < 0) {
+                current++;
+                continue;
+            }
+            remove(cell, current);
+            queued--;
+
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int i = 0; i < 8; i++) {
+                int neighbour = stepTo(column, row, i);
+                if (neighbour < 0) {
+                    continue;
+                }
+                int cost = current + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (cost < distance[neighbour]) {
+                    // A cell with a distance already is still queued; settled cells are never closer
+                    if (distance[neighbour] == UNREACHABLE) {
+                        queued++;
+                    } else {
+                        remove(neighbour, distance[neighbour]);
+                    }
+                    distance[neighbour] = cost;
+                    push(neighbour, cost);
+                }
+            }
+        }
+
+        for (int cell = 0; cell < distance.length; cell++) {
+            updateDirection(cell);
+        }
+    }
+
+    /**
+     * Works out which neighbour of a cell is closest to the target.
+     * Each reachable cell points at its closest neighbour; the target itself and unreachable cells stay put.
+     * @param cell Cell index
+     */
+    private void updateDirection(int cell) {
+        direction[cell] = NO_DIRECTION;
+        if (cell == targetCell || distance[cell] == UNREACHABLE) {
+            return;
+        }
+        int column = cell % columns;
+        int row = cell / columns;
+        int best = distance[cell];
+        for (int i = 0; i < 8; i++) {
+            int neighbour = stepTo(column, row, i);
+            if (neighbour >= 0 && distance[neighbour] < best) {
+                best = distance[neighbour];
+                direction[cell] = (byte) i;
+            }
+        }
+    }
+
+    /**
+     * Brings the field up to date after one tile changed, touching only the cells that are affected.
+     * First every cell whose distance is no longer backed by a neighbour loses it, spreading outward
+     * from the tile; distances only ever lean on strictly closer cells, so nothing can back itself.
+     * Then the cells that lost their distance are seeded from their neighbours, the tiles around the
+     * change are queued so paths through a cleared tile are found, and Dijkstra spreads from there for
+     * as long as distances improve. Last, directions are worked out again around every changed cell.
+     * @param column Column of the changed tile
+     * @param row Row of the changed tile
+     */
+    private void repair(int column, int row) {
+        // The tile's own edges and the diagonals it guards all run between cells of its 3x3 block
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int cell = r * columns + c;
+                markChanged(cell);
+                queueCheck(cell);
+            }
+        }
+
+        // Drop every distance that no neighbour backs any more
+        while (checkCount > 0) {
+            int cell = checkStack[--checkCount];
+            waitingForCheck[cell] = false;
+            if (distance[cell] != UNREACHABLE && !isBacked(cell)) {
+                distance[cell] = UNREACHABLE;
+                invalidated[invalidatedCount++] = cell;
+                markChanged(cell);
+                queueNeighbourChecks(cell);
+            }
+        }
+
+        // Seed the dropped cells from what is left, and let cleared paths spread from around the tile
+        for (int i = 0; i < invalidatedCount; i++) {
+            int cell = invalidated[i];
+            int seed = closestThroughNeighbour(cell);
+            if (seed != UNREACHABLE) {
+                distance[cell] = seed;
+                pushRepair(cell);
+            }
+        }
+        invalidatedCount = 0;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int cell = r * columns + c;
+                if (distance[cell] != UNREACHABLE) {
+                    pushRepair(cell);
+                }
+            }
+        }
+        while (repairHeapSize > 0) {
+            int cell = popRepair();
+            int cellColumn = cell % columns;
+            int cellRow = cell / columns;
+            for (int i = 0; i < 8; i++) {
+                int neighbour = stepTo(cellColumn, cellRow, i);
+                if (neighbour < 0) {
+                    continue;
+                }
+                int cost = distance[cell] + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (cost < distance[neighbour]) {
+                    distance[neighbour] = cost;
+                    markChanged(neighbour);
+                    pushRepair(neighbour);
+                }
+            }
+        }
+
+        // A cell's direction depends on its neighbours' distances, so look around every changed cell
+        lastRepairSize = 0;
+        for (int i = 0; i < changedCount; i++) {
+            int cell = changed[i];
+            markedChanged[cell] = false;
+            lastRepairSize++;
+            int cellColumn = cell % columns;
+            int cellRow = cell / columns;
+            for (int r = Math.max(0, cellRow - 1); r <= Math.min(rows - 1, cellRow + 1); r++) {
+                for (int c = Math.max(0, cellColumn - 1); c <= Math.min(columns - 1, cellColumn + 1); c++) {
+                    updateDirection(r * columns + c);
+                }
+            }
+        }
+        changedCount = 0;
+    }
+
+    /**
+     * Checks if some neighbour still explains a cell's distance: one step from it gives exactly that distance.
+     * @param cell Cell index; its distance is known
+     * @return true if the distance still holds
+     */
+    private boolean isBacked(int cell) {
+        if (cell == targetCell) {
+            return true;
+        }
+        if (!walkable[cell]) {
+            return false;
+        }
+        int column = cell % columns;
+        int row = cell / columns;
+        for (int i = 0; i < 8; i++) {
+            int neighbour = stepTo(column, row, i);
+            if (neighbour >= 0 && distance[neighbour] != UNREACHABLE
+                    && distance[neighbour] + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST) == distance[cell]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the shortest distance to a cell through one of its neighbours.
+     * @param cell Cell index
+     * @return The distance, or UNREACHABLE if the cell is an obstacle or no neighbour has a distance
+     */
+    private int closestThroughNeighbour(int cell) {
+        if (!walkable[cell]) {
+            return UNREACHABLE;
+        }
+        int column = cell % columns;
+        int row = cell / columns;
+        int best = UNREACHABLE;
+        for (int i = 0; i < 8; i++) {
+            int neighbour = stepTo(column, row, i);
+            if (neighbour >= 0 && distance[neighbour] != UNREACHABLE) {
+                best = Math.min(best, distance[neighbour] + (i < 4 ? STRAIGHT_COST : DIAGONAL_COST));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Queues a cell to be checked for a neighbour that backs its distance, unless it is queued already.
+     * @param cell Cell index
+     */
+    private void queueCheck(int cell) {
+        if (!waitingForCheck[cell]) {
+            waitingForCheck[cell] = true;
+            checkStack[checkCount++] = cell;
+        }
+    }
+
+    /**
+     * Queues every neighbour of a cell that lost its distance, since any of them may have leant on it.
+     * All eight are queued whether or not a step is allowed, as the cell may have just become an obstacle.
+     * @param cell Cell index
+     */
+    private void queueNeighbourChecks(int cell) {
+        int column = cell % columns;
+        int row = cell / columns;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int neighbour = r * columns + c;
+                if (neighbour != cell && distance[neighbour] != UNREACHABLE) {
+                    queueCheck(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that a cell's distance or surroundings changed in the current repair.
+     * @param cell Cell index
+     */
+    private void markChanged(int cell) {
+        if (!markedChanged[cell]) {
+            markedChanged[cell] = true;
+            changed[changedCount++] = cell;
+        }
+    }
+
+    /**
+     * Adds a cell to the repair heap, or moves it up after its distance dropped.
+     * @param cell Cell index; its distance is already set
+     */
+    private void pushRepair(int cell) {
+        int position = repairHeapPosition[cell];
+        if (position < 0) {
+            position = repairHeapSize++;
+            repairHeap[position] = cell;
+            repairHeapPosition[cell] = position;
+        }
+        // Distances only drop while a cell is queued, so it can only move toward the root
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (distance[repairHeap[parent]] <= distance[cell]) {
+                break;
+            }
+            repairHeap[position] = repairHeap[parent];
+            repairHeapPosition[repairHeap[position]] = position;
+            position = parent;
+        }
+        repairHeap[position] = cell;
+        repairHeapPosition[cell] = position;
+    }
+
+    /**
+     * Takes the closest cell off the repair heap.
+     * @return Cell index
+     */
+    private int popRepair() {
+        int first = repairHeap[0];
+        repairHeapPosition[first] = -1;
+        repairHeapSize--;
+        if (repairHeapSize > 0) {
+            int cell = repairHeap[repairHeapSize];
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= repairHeapSize) {
+                    break;
+                }
+                if (child + 1 < repairHeapSize && distance[repairHeap[child + 1]] < distance[repairHeap[child]]) {
+                    child++;
+                }
+                if (distance[repairHeap[child]] >= distance[cell]) {
+                    break;
+                }
+                repairHeap[position] = repairHeap[child];
+                repairHeapPosition[repairHeap[position]] = position;
+                position = child;
+            }
+            repairHeap[position] = cell;
+            repairHeapPosition[cell] = position;
+        }
+        return first;
+    }
+
+    /**
+     * Finds the neighbour one step away in a direction, if it can be walked to.
+     * A diagonal step needs both cells beside it to be walkable, so walkers never cut corners.
+     * @param column Column of the starting cell
+     * @param row Row of the starting cell
+     * @param i Direction code 0-7
+     * @return Cell index of the neighbour, or -1 if it is off the grid or blocked
+     */
+    private int stepTo(int column, int row, int i) {
+        int nextColumn = column + NEIGHBOUR_COLUMN[i];
+        int nextRow = row + NEIGHBOUR_ROW[i];
+        if (nextColumn < 0 || nextColumn >= columns || nextRow < 0 || nextRow >= rows) {
+            return -1;
+        }
+        int next = nextRow * columns + nextColumn;
+        if (!walkable[next]) {
+            return -1;
+        }
+        if (i >= 4 && (!walkable[row * columns + nextColumn] || !walkable[nextRow * columns + column])) {
+            return -1;
+        }
+        return next;
+    }
+
+    /**
+     * Adds a cell to the bucket for its distance.
+     * @param cell Cell index
+     * @param cost The cell's new distance
+     */
+    private void push(int cell, int cost) {
+        int bucket = cost % bucketHead.length;
+        int first = bucketHead[bucket];
+        bucketNext[cell] = first;
+        bucketPrevious[cell] = -1;
+        if (first >= 0) {
+            bucketPrevious[first] = cell;
+        }
+        bucketHead[bucket] = cell;
+    }
+
+    /**
+     * Takes a cell out of the bucket for its distance.
+     * @param cell Cell index
+     * @param cost The distance the cell was queued with
+     */
+    private void remove(int cell, int cost) {
+        int next = bucketNext[cell];
+        int previous = bucketPrevious[cell];
+        if (previous >= 0) {
+            bucketNext[previous] = next;
+        } else {
+            bucketHead[cost % bucketHead.length] = next;
+        }
+        if (next >= 0) {
+            bucketPrevious[next] = previous;
+        }
+    }
+}
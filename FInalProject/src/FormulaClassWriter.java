@@ -0,0 +1,562 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns a parsed combat rule into a class of its own.
+ * The rule's tree is written out as the bytecode of one evaluate() method, the same
+ * straight-line code javac would produce for the formula written by hand, and loaded
+ * as a hidden class. The JIT then compiles and inlines it like any other method,
+ * so a rule from a text file runs as fast as a hard-coded one.
+ * Hidden classes are unloaded again once their rules are no longer used.
+ */
+public class FormulaClassWriter {
+    /**
+     * Class file version 49 (Java 5): the newest version that needs no stack map frames.
+     */
+    private static final int CLASS_VERSION = 49;
+
+    /**
+     * Descriptor of CombatFormula.evaluate(Character, Character, double).
+     */
+    private static final String EVALUATE_DESCRIPTOR = "(LCharacter;LCharacter;D)D";
+
+    /**
+     * Local variable slots of evaluate(): this, attacker, defender, then roll (two slots).
+     */
+    private static final int LOCAL_SLOTS = 5;
+
+    // Opcodes used by the generated code
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int DLOAD_3 = 0x29;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int LDC2_W = 0x14;
+    private static final int I2D = 0x87;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DREM = 0x73;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    /**
+     * Constant pool being built, as raw bytes.
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * Writer over pool.
+     */
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+
+    /**
+     * Index of every constant pool entry already written, so each one appears only once.
+     */
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+
+    /**
+     * Next free constant pool index; index 0 is never used.
+     */
+    private int poolSize = 1;
+
+    /**
+     * Bytecode of the method being written.
+     */
+    private byte[] code = new byte[256];
+
+    /**
+     * Number of bytes written to code.
+     */
+    private int codeLength = 0;
+
+    /**
+     * Operand stack slots in use at the current instruction.
+     */
+    private int stack = 0;
+
+    /**
+     * Most operand stack slots in use at any point.
+     */
+    private int maxStack = 0;
+
+    /**
+     * Creates an empty writer; use define() instead.
+     */
+    private FormulaClassWriter() {
+    }
+
+    /**
+     * Generates and loads a class whose evaluate() method computes the given rule.
+     * @param tree The parsed rule
+     * @param ruleName Name of the rule; becomes part of the class name seen in profilers
+     * @return A new instance of the generated class
+     * @throws IllegalArgumentException If the rule is too long to fit in one method
+     */
+    public static CombatFormula define(FormulaNode tree, String ruleName) {
+        byte[] classBytes = new FormulaClassWriter().write(tree, "CompiledRule_" + ruleName);
+        try {
+            MethodHandles.Lookup rule = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (CombatFormula) rule.findConstructor(rule.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot load compiled rule " + ruleName, e);
+        }
+    }
+
+    /**
+     * Writes the complete class file.
+     * @param tree The parsed rule
+     * @param className Name of the generated class
+     * @return The class file bytes
+     */
+    private byte[] write(FormulaNode tree, String className) {
+        try {
+            int thisClass = classEntry(className);
+            int superClass = classEntry("java/lang/Object");
+            int formulaInterface = classEntry("CombatFormula");
+
+            // Constructor: just calls Object()
+            int initName = utf8Entry("<init>");
+            int initDescriptor = utf8Entry("()V");
+            int objectInit = methodEntry("java/lang/Object", "<init>", "()V");
+            emit(ALOAD_0, 1);
+            emit(INVOKESPECIAL, -1);
+            emitShort(objectInit);
+            emit(RETURN, 0);
+            byte[] constructorCode = takeCode();
+            int constructorStack = takeMaxStack();
+
+            // evaluate(): the rule itself
+            int evaluateName = utf8Entry("evaluate");
+            int evaluateDescriptor = utf8Entry(EVALUATE_DESCRIPTOR);
+            emitNode(tree);
+            emit(DRETURN, -2);
+            byte[] evaluateCode = takeCode();
+            int evaluateStack = takeMaxStack();
+            int codeName = utf8Entry("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020);  // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(formulaInterface);
+            out.writeShort(0);  // No fields
+            out.writeShort(2);
+            writeMethod(out, initName, initDescriptor, codeName, constructorCode, constructorStack, 1);
+            writeMethod(out, evaluateName, evaluateDescriptor, codeName, evaluateCode, evaluateStack, LOCAL_SLOTS);
+            out.writeShort(0);  // No class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // Cannot happen when writing to memory
+        }
+    }
+
+    /**
+     * Writes one public method with its Code attribute.
+     * @param out Class file being written
+     * @param name Constant pool index of the method name
+     * @param descriptor Constant pool index of the method descriptor
+     * @param codeName Constant pool index of "Code"
+     * @param body The method's bytecode
+     * @param maxStack Operand stack size the code needs
+     * @param maxLocals Local variable slots the code needs
+     * @throws IOException Never, when writing to memory
+     */
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+            byte[] body, int maxStack, int maxLocals) throws IOException {
+        out.writeShort(0x0001);  // public
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0);  // No exception handlers
+        out.writeShort(0);  // No code attributes
+    }
+
+    /**
+     * Writes the code that leaves one node's value on the operand stack as a double.
+     * @param node The node to compile
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitNode(FormulaNode node) throws IOException {
+        switch (node.getKind()) {
+            case CONSTANT:
+                emitConstant(node.getValue());
+                return;
+            case ATTACK:
+                emitGetter(ALOAD_1, "getAttackPoints");
+                return;
+            case DEFENSE:
+                emitGetter(ALOAD_2, "getDefense");
+                return;
+            case ATTACKER_SPEED:
+                emitGetter(ALOAD_1, "getSpeed");
+                return;
+            case DEFENDER_SPEED:
+                emitGetter(ALOAD_2, "getSpeed");
+                return;
+            case HIT_POINTS:
+                emitGetter(ALOAD_2, "getHitPoints");
+                return;
+            case MAX_HIT_POINTS:
+                emitGetter(ALOAD_2, "getMaxHitPoints");
+                return;
+            case ROLL:
+                emit(DLOAD_3, 2);
+                return;
+            case IF:
+                emitIf(node);
+                return;
+            default:
+                break;
+        }
+
+        emitNode(node.getOperand(0));
+        switch (node.getKind()) {
+            case NEGATE:
+                emit(DNEG, 0);
+                return;
+            case ABS:
+                emitMath("abs", "(D)D", 0);
+                return;
+            case FLOOR:
+                emitMath("floor", "(D)D", 0);
+                return;
+            case CEIL:
+                emitMath("ceil", "(D)D", 0);
+                return;
+            case ROUND:
+                emitConstant(0.5);
+                emit(DADD, -2);
+                emitMath("floor", "(D)D", 0);
+                return;
+            default:
+                break;
+        }
+
+        emitNode(node.getOperand(1));
+        switch (node.getKind()) {
+            case ADD:
+                emit(DADD, -2);
+                break;
+            case SUBTRACT:
+                emit(DSUB, -2);
+                break;
+            case MULTIPLY:
+                emit(DMUL, -2);
+                break;
+            case DIVIDE:
+                emit(DDIV, -2);
+                break;
+            case REMAINDER:
+                emit(DREM, -2);
+                break;
+            case MIN:
+                emitMath("min", "(DD)D", -2);
+                break;
+            case MAX:
+                emitMath("max", "(DD)D", -2);
+                break;
+            // Comparisons jump to "false" on the opposite condition, like javac does
+            case LESS:
+                emitComparison(DCMPG, IFGE);
+                break;
+            case LESS_OR_EQUAL:
+                emitComparison(DCMPG, IFGT);
+                break;
+            case GREATER:
+                emitComparison(DCMPL, IFLE);
+                break;
+            case GREATER_OR_EQUAL:
+                emitComparison(DCMPL, IFLT);
+                break;
+            case EQUAL:
+                emitComparison(DCMPL, IFNE);
+                break;
+            default:
+                emitComparison(DCMPL, IFEQ);
+                break;
+        }
+    }
+
+    /**
+     * Writes code that turns the two doubles on the stack into 1 or 0.
+     * @param compare DCMPL or DCMPG, chosen so NaN makes the comparison false
+     * @param jumpIfFalse Branch opcode taken when the comparison is false
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitComparison(int compare, int jumpIfFalse) throws IOException {
+        emit(compare, -3);
+        int toFalse = emitJump(jumpIfFalse, -1);
+        int base = stack;
+        emit(DCONST_1, 2);
+        int toEnd = emitJump(GOTO, 0);
+        patchJump(toFalse);
+        stack = base;
+        emit(DCONST_0, 2);
+        patchJump(toEnd);
+    }
+
+    /**
+     * Writes an if(condition, a, b) that only evaluates the chosen branch.
+     * @param node The IF node
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitIf(FormulaNode node) throws IOException {
+        emitNode(node.getOperand(0));
+        emit(DCONST_0, 2);
+        emit(DCMPL, -3);
+        int toElse = emitJump(IFEQ, -1);
+        int base = stack;
+        emitNode(node.getOperand(1));
+        int toEnd = emitJump(GOTO, 0);
+        patchJump(toElse);
+        stack = base;
+        emitNode(node.getOperand(2));
+        patchJump(toEnd);
+    }
+
+    /**
+     * Writes a number onto the stack.
+     * @param value The number
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitConstant(double value) throws IOException {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            emit(DCONST_0, 2);
+        } else if (value == 1.0) {
+            emit(DCONST_1, 2);
+        } else {
+            emit(LDC2_W, 2);
+            emitShort(doubleEntry(value));
+        }
+    }
+
+    /**
+     * Writes a call to an int getter of Character and widens the result to double.
+     * @param loadCharacter ALOAD_1 for the attacker or ALOAD_2 for the defender
+     * @param getter Name of the getter
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitGetter(int loadCharacter, String getter) throws IOException {
+        emit(loadCharacter, 1);
+        emit(INVOKEVIRTUAL, 0);
+        emitShort(methodEntry("Character", getter, "()I"));
+        emit(I2D, 1);
+    }
+
+    /**
+     * Writes a call to a static method of java.lang.Math.
+     * @param name Method name
+     * @param descriptor Method descriptor
+     * @param stackChange Change in operand stack slots caused by the call
+     * @throws IOException Never, when writing to memory
+     */
+    private void emitMath(String name, String descriptor, int stackChange) throws IOException {
+        emit(INVOKESTATIC, stackChange);
+        emitShort(methodEntry("java/lang/Math", name, descriptor));
+    }
+
+    /**
+     * Writes one opcode and tracks the operand stack.
+     * @param opcode The instruction
+     * @param stackChange Slots pushed (positive) or popped (negative) by it
+     */
+    private void emit(int opcode, int stackChange) {
+        ensureCode(1);
+        code[codeLength++] = (byte) opcode;
+        stack += stackChange;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * Writes a two-byte operand.
+     * @param value The operand
+     */
+    private void emitShort(int value) {
+        ensureCode(2);
+        code[codeLength++] = (byte) (value >> 8);
+        code[codeLength++] = (byte) value;
+    }
+
+    /**
+     * Writes a branch whose target is filled in later by patchJump().
+     * @param opcode Branch instruction
+     * @param stackChange Slots popped by the branch
+     * @return Position of the branch instruction
+     */
+    private int emitJump(int opcode, int stackChange) {
+        int at = codeLength;
+        emit(opcode, stackChange);
+        emitShort(0);
+        return at;
+    }
+
+    /**
+     * Points an earlier branch at the current position.
+     * @param at Position of the branch instruction
+     * @throws IllegalArgumentException If the jump is too far for a branch instruction
+     */
+    private void patchJump(int at) {
+        int offset = codeLength - at;
+        if (offset > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Rule is too long to compile");
+        }
+        code[at + 1] = (byte) (offset >> 8);
+        code[at + 2] = (byte) offset;
+    }
+
+    /**
+     * Makes room in the code buffer.
+     * @param bytes Number of bytes about to be written
+     * @throws IllegalArgumentException If the method would exceed the class file limit
+     */
+    private void ensureCode(int bytes) {
+        if (codeLength + bytes > 65535) {
+            throw new IllegalArgumentException("Rule is too long to compile");
+        }
+        if (codeLength + bytes > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + bytes));
+        }
+    }
+
+    /**
+     * Hands out the finished method body and starts a new one.
+     * @return The bytecode written since the last call
+     */
+    private byte[] takeCode() {
+        byte[] body = Arrays.copyOf(code, codeLength);
+        codeLength = 0;
+        stack = 0;
+        return body;
+    }
+
+    /**
+     * Hands out the stack size of the finished method body.
+     * @return Most operand stack slots the body uses
+     */
+    private int takeMaxStack() {
+        int result = maxStack;
+        maxStack = 0;
+        return result;
+    }
+
+    /**
+     * Adds a UTF-8 string to the constant pool.
+     * @param text The string
+     * @return Its pool index
+     * @throws IOException Never, when writing to memory
+     */
+    private int utf8Entry(String text) throws IOException {
+        Integer index = poolIndex.get("U" + text);
+        if (index == null) {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(text);
+            index = poolSize++;
+            poolIndex.put("U" + text, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a class reference to the constant pool.
+     * @param internalName Class name with '/' between package parts
+     * @return Its pool index
+     * @throws IOException Never, when writing to memory
+     */
+    private int classEntry(String internalName) throws IOException {
+        Integer index = poolIndex.get("C" + internalName);
+        if (index == null) {
+            int name = utf8Entry(internalName);
+            poolOut.writeByte(7);
+            poolOut.writeShort(name);
+            index = poolSize++;
+            poolIndex.put("C" + internalName, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a method reference to the constant pool.
+     * @param owner Internal name of the class declaring the method
+     * @param name Method name
+     * @param descriptor Method descriptor
+     * @return Its pool index
+     * @throws IOException Never, when writing to memory
+     */
+    private int methodEntry(String owner, String name, String descriptor) throws IOException {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int ownerClass = classEntry(owner);
+            int methodName = utf8Entry(name);
+            int methodDescriptor = utf8Entry(descriptor);
+            poolOut.writeByte(12);
+            poolOut.writeShort(methodName);
+            poolOut.writeShort(methodDescriptor);
+            int nameAndType = poolSize++;
+            poolOut.writeByte(10);
+            poolOut.writeShort(ownerClass);
+            poolOut.writeShort(nameAndType);
+            index = poolSize++;
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a double constant to the constant pool.
+     * @param value The number
+     * @return Its pool index
+     * @throws IOException Never, when writing to memory
+     */
+    private int doubleEntry(double value) throws IOException {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            poolOut.writeByte(6);
+            poolOut.writeDouble(value);
+            index = poolSize;
+            poolSize += 2;  // Doubles take two pool slots
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.Map;
+
+/**
+ * Parses the text of one combat rule into a tree of FormulaNodes.
+ * Names of earlier rules are replaced by those rules' trees, so the finished tree
+ * only refers to the inputs of an attack and can be turned into one flat method
+ * by FormulaClassWriter.
+ *
+ * Grammar, from lowest to highest precedence:
+ * comparison  a < b, a <= b, a > b, a >= b, a == b, a != b  (1 when true, 0 when false)
+ * sum         a + b, a - b
+ * product     a * b, a / b, a % b
+ * sign        -a
+ * value       number, input name, earlier rule name, function call or (expression)
+ *
+ * Inputs: attack (attacker's attack points), defense (defender's defense),
+ * attackerSpeed, defenderSpeed, hitPoints and maxHitPoints (defender's), roll (random, 0 to 1).
+ * Functions: min(a, b), max(a, b), abs(a), floor(a), ceil(a), round(a), if(condition, a, b).
+ */
+public class FormulaCompiler {
+    /**
+     * The expression being parsed.
+     */
+    private final String text;
+
+    /**
+     * Rules defined earlier in the file, which this expression may use by name.
+     */
+    private final Map<String, FormulaNode> rules;
+
+    /**
+     * Position of the next unread character in text.
+     */
+    private int position = 0;
+
+    /**
+     * Creates a parser for one expression.
+     * @param text The expression to parse
+     * @param rules Earlier rules, by name
+     */
+    private FormulaCompiler(String text, Map<String, FormulaNode> rules) {
+        this.text = text;
+        this.rules = rules;
+    }
+
+    /**
+     * Parses one expression.
+     * @param expression The expression, for example "max(1, attack - defense / 2)"
+     * @param rules Rules defined earlier in the file, which the expression may refer to
+     * @return The parsed tree
+     * @throws IllegalArgumentException If the expression is not valid
+     */
+    public static FormulaNode parse(String expression, Map<String, FormulaNode> rules) {
+        FormulaCompiler compiler = new FormulaCompiler(expression, rules);
+        FormulaNode tree = compiler.parseComparison();
+        compiler.skipSpaces();
+        if (compiler.position < expression.length()) {
+            throw compiler.error("Unexpected '" + expression.charAt(compiler.position) + "'");
+        }
+        return tree;
+    }
+
+    /**
+     * Checks if a name belongs to an input or a function and cannot name a rule.
+     * @param name The proposed rule name
+     * @return true if the name is taken
+     */
+    public static boolean isReservedName(String name) {
+        return inputKind(name) != null || functionKind(name) != null;
+    }
+
+    /**
+     * Parses a comparison, the lowest precedence level.
+     * @return The parsed comparison
+     */
+    private FormulaNode parseComparison() {
+        FormulaNode left = parseSum();
+        FormulaNode.Kind kind;
+        if (accept("<=")) {
+            kind = FormulaNode.Kind.LESS_OR_EQUAL;
+        } else if (accept(">=")) {
+            kind = FormulaNode.Kind.GREATER_OR_EQUAL;
+        } else if (accept("==")) {
+            kind = FormulaNode.Kind.EQUAL;
+        } else if (accept("!=")) {
+            kind = FormulaNode.Kind.NOT_EQUAL;
+        } else if (accept("<")) {
+            kind = FormulaNode.Kind.LESS;
+        } else if (accept(">")) {
+            kind = FormulaNode.Kind.GREATER;
+        } else {
+            return left;
+        }
+        return FormulaNode.of(kind, left, parseSum());
+    }
+
+    /**
+     * Parses additions and subtractions.
+     * @return The parsed sum
+     */
+    private FormulaNode parseSum() {
+        FormulaNode result = parseProduct();
+        while (true) {
+            if (accept("+")) {
+                result = FormulaNode.of(FormulaNode.Kind.ADD, result, parseProduct());
+            } else if (accept("-")) {
+                result = FormulaNode.of(FormulaNode.Kind.SUBTRACT, result, parseProduct());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Parses multiplications, divisions and remainders.
+     * @return The parsed product
+     */
+    private FormulaNode parseProduct() {
+        FormulaNode result = parseSign();
+        while (true) {
+            if (accept("*")) {
+                result = FormulaNode.of(FormulaNode.Kind.MULTIPLY, result, parseSign());
+            } else if (accept("/")) {
+                result = FormulaNode.of(FormulaNode.Kind.DIVIDE, result, parseSign());
+            } else if (accept("%")) {
+                result = FormulaNode.of(FormulaNode.Kind.REMAINDER, result, parseSign());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Parses an optional minus sign in front of a value.
+     * @return The parsed value
+     */
+    private FormulaNode parseSign() {
+        if (accept("-")) {
+            return FormulaNode.of(FormulaNode.Kind.NEGATE, parseSign());
+        }
+        return parseValue();
+    }
+
+    /**
+     * Parses a number, a name, a function call or an expression in parentheses.
+     * @return The parsed value
+     */
+    private FormulaNode parseValue() {
+        skipSpaces();
+        if (accept("(")) {
+            FormulaNode inner = parseComparison();
+            expect(")");
+            return inner;
+        }
+        if (position >= text.length()) {
+            throw error("Expression ends too early");
+        }
+        char next = text.charAt(position);
+        if (isDigit(next) || next == '.') {
+            return parseNumber();
+        }
+        if (java.lang.Character.isLetter(next)) {
+            int start = position;
+            String name = parseName();
+            if (accept("(")) {
+                return parseCall(name, start);
+            }
+            return resolveName(name, start);
+        }
+        throw error("Unexpected '" + next + "'");
+    }
+
+    /**
+     * Parses a number such as 2, 0.5 or .25.
+     * @return A constant node
+     */
+    private FormulaNode parseNumber() {
+        int start = position;
+        while (position < text.length() && (isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+            position++;
+        }
+        try {
+            return FormulaNode.constant(Double.parseDouble(text.substring(start, position)));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Bad number");
+        }
+    }
+
+    /**
+     * Parses a name made of letters, digits and underscores.
+     * @return The name
+     */
+    private String parseName() {
+        int start = position;
+        while (position < text.length()
+                && (java.lang.Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+            position++;
+        }
+        return text.substring(start, position);
+    }
+
+    /**
+     * Turns a name into an input of the attack or the tree of an earlier rule.
+     * @param name The name in the expression
+     * @param start Position of the name, for error messages
+     * @return The node that produces the named value
+     */
+    private FormulaNode resolveName(String name, int start) {
+        FormulaNode.Kind input = inputKind(name);
+        if (input != null) {
+            return FormulaNode.of(input);
+        }
+        FormulaNode rule = rules.get(name);
+        if (rule == null) {
+            position = start;
+            throw error("Unknown name '" + name + "'");
+        }
+        return rule;
+    }
+
+    /**
+     * Parses the arguments of a function call.
+     * The opening parenthesis has already been read.
+     * @param name Function name
+     * @param start Position of the name, for error messages
+     * @return The parsed call
+     */
+    private FormulaNode parseCall(String name, int start) {
+        FormulaNode.Kind kind = functionKind(name);
+        if (kind == null) {
+            position = start;
+            throw error("Unknown function '" + name + "'");
+        }
+
+        FormulaNode[] arguments = new FormulaNode[kind.getOperandCount()];
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) {
+                expect(",");
+            }
+            arguments[i] = parseComparison();
+        }
+        expect(")");
+        return FormulaNode.of(kind, arguments);
+    }
+
+    /**
+     * Finds the input a name stands for.
+     * @param name Name in the expression
+     * @return The input kind, or null if the name is not an input
+     */
+    private static FormulaNode.Kind inputKind(String name) {
+        switch (name) {
+            case "attack":
+                return FormulaNode.Kind.ATTACK;
+            case "defense":
+                return FormulaNode.Kind.DEFENSE;
+            case "attackerSpeed":
+                return FormulaNode.Kind.ATTACKER_SPEED;
+            case "defenderSpeed":
+                return FormulaNode.Kind.DEFENDER_SPEED;
+            case "hitPoints":
+                return FormulaNode.Kind.HIT_POINTS;
+            case "maxHitPoints":
+                return FormulaNode.Kind.MAX_HIT_POINTS;
+            case "roll":
+                return FormulaNode.Kind.ROLL;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Finds the operation a function name stands for.
+     * @param name Function name
+     * @return The operation, or null if there is no such function
+     */
+    private static FormulaNode.Kind functionKind(String name) {
+        switch (name) {
+            case "min":
+                return FormulaNode.Kind.MIN;
+            case "max":
+                return FormulaNode.Kind.MAX;
+            case "abs":
+                return FormulaNode.Kind.ABS;
+            case "floor":
+                return FormulaNode.Kind.FLOOR;
+            case "ceil":
+                return FormulaNode.Kind.CEIL;
+            case "round":
+                return FormulaNode.Kind.ROUND;
+            case "if":
+                return FormulaNode.Kind.IF;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads a symbol if it comes next, skipping spaces before it.
+     * @param symbol The symbol to look for
+     * @return true if the symbol was read
+     */
+    private boolean accept(String symbol) {
+        skipSpaces();
+        if (text.startsWith(symbol, position)) {
+            position += symbol.length();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a symbol that must come next.
+     * @param symbol The required symbol
+     * @throws IllegalArgumentException If something else comes next
+     */
+    private void expect(String symbol) {
+        if (!accept(symbol)) {
+            throw error("Expected '" + symbol + "'");
+        }
+    }
+
+    /**
+     * Moves past spaces and tabs.
+     */
+    private void skipSpaces() {
+        while (position < text.length() && java.lang.Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Checks if a character is a decimal digit.
+     * @param c The character
+     * @return true for 0-9
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Builds an error that points at the current position.
+     * @param message What is wrong
+     * @return The exception to throw
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at column " + (position + 1) + " in: " + text);
+    }
+}
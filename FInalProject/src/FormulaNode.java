@@ -0,0 +1,268 @@
+/**
+ * One operation in a parsed combat rule.
+ * FormulaCompiler builds a tree of these from the rule text, and FormulaClassWriter
+ * turns the tree into bytecode. Operations whose operands are all numbers are
+ * replaced by their result when the node is created.
+ */
+public final class FormulaNode {
+    /**
+     * The operation a node performs.
+     */
+    public enum Kind {
+        /** A fixed number. */
+        CONSTANT(0),
+        /** Attacker's attack points. */
+        ATTACK(0),
+        /** Defender's defense points. */
+        DEFENSE(0),
+        /** Attacker's speed. */
+        ATTACKER_SPEED(0),
+        /** Defender's speed. */
+        DEFENDER_SPEED(0),
+        /** Defender's current hit points. */
+        HIT_POINTS(0),
+        /** Defender's maximum hit points. */
+        MAX_HIT_POINTS(0),
+        /** Random number for this attack. */
+        ROLL(0),
+        /** -a */
+        NEGATE(1),
+        /** a + b */
+        ADD(2),
+        /** a - b */
+        SUBTRACT(2),
+        /** a * b */
+        MULTIPLY(2),
+        /** a / b */
+        DIVIDE(2),
+        /** a % b */
+        REMAINDER(2),
+        /** a < b */
+        LESS(2),
+        /** a <= b */
+        LESS_OR_EQUAL(2),
+        /** a > b */
+        GREATER(2),
+        /** a >= b */
+        GREATER_OR_EQUAL(2),
+        /** a == b */
+        EQUAL(2),
+        /** a != b */
+        NOT_EQUAL(2),
+        /** min(a, b) */
+        MIN(2),
+        /** max(a, b) */
+        MAX(2),
+        /** abs(a) */
+        ABS(1),
+        /** floor(a) */
+        FLOOR(1),
+        /** ceil(a) */
+        CEIL(1),
+        /** round(a), halves round up */
+        ROUND(1),
+        /** if(condition, a, b) */
+        IF(3);
+
+        /**
+         * Number of operands the operation takes.
+         */
+        private final int operandCount;
+
+        /**
+         * Creates an operation kind.
+         * @param operandCount Number of operands
+         */
+        Kind(int operandCount) {
+            this.operandCount = operandCount;
+        }
+
+        /**
+         * Gets the number of operands.
+         * @return Operand count; 0 for numbers and inputs
+         */
+        public int getOperandCount() {
+            return operandCount;
+        }
+    }
+
+    /**
+     * The operation of this node.
+     */
+    private final Kind kind;
+
+    /**
+     * The number of a CONSTANT node; unused otherwise.
+     */
+    private final double value;
+
+    /**
+     * Operands in the order they appear in the rule.
+     */
+    private final FormulaNode[] operands;
+
+    /**
+     * Creates a node.
+     * @param kind Operation
+     * @param value Number for CONSTANT nodes
+     * @param operands Operands
+     */
+    private FormulaNode(Kind kind, double value, FormulaNode[] operands) {
+        this.kind = kind;
+        this.value = value;
+        this.operands = operands;
+    }
+
+    /**
+     * Creates a node for a fixed number.
+     * @param value The number
+     * @return A CONSTANT node
+     */
+    public static FormulaNode constant(double value) {
+        return new FormulaNode(Kind.CONSTANT, value, new FormulaNode[0]);
+    }
+
+    /**
+     * Creates a node for an operation or an input.
+     * If every operand is a number, the result is calculated now and returned as a number.
+     * An if() with a fixed condition becomes the branch it would always take.
+     * @param kind Operation or input
+     * @param operands Operands, as many as the kind takes
+     * @return The new node
+     * @throws IllegalArgumentException If the number of operands is wrong
+     */
+    public static FormulaNode of(Kind kind, FormulaNode... operands) {
+        if (kind == Kind.CONSTANT || operands.length != kind.getOperandCount()) {
+            throw new IllegalArgumentException(kind + " takes " + kind.getOperandCount() + " operands");
+        }
+        FormulaNode node = new FormulaNode(kind, 0, operands);
+
+        if (kind == Kind.IF && operands[0].isConstant()) {
+            return operands[0].value != 0 ? operands[1] : operands[2];
+        }
+        if (operands.length == 0) {
+            return node;  // Inputs change with every attack
+        }
+        for (FormulaNode operand : operands) {
+            if (!operand.isConstant()) {
+                return node;
+            }
+        }
+        return constant(node.evaluate(null, null, 0));
+    }
+
+    /**
+     * Gets the operation of this node.
+     * @return The kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the number of a CONSTANT node.
+     * @return The number
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Gets one operand.
+     * @param i Operand index
+     * @return The operand
+     */
+    public FormulaNode getOperand(int i) {
+        return operands[i];
+    }
+
+    /**
+     * Checks if this node is a fixed number.
+     * @return true for CONSTANT nodes
+     */
+    public boolean isConstant() {
+        return kind == Kind.CONSTANT;
+    }
+
+    /**
+     * Calculates the node's value by walking the tree.
+     * Used while compiling to fold constants; the game itself runs the generated bytecode.
+     * Comparisons give 1 for true and 0 for false, exactly like the bytecode.
+     * @param attacker Character making the attack
+     * @param defender Character being attacked
+     * @param roll Random number for this attack
+     * @return The value
+     */
+    public double evaluate(Character attacker, Character defender, double roll) {
+        switch (kind) {
+            case CONSTANT:
+                return value;
+            case ATTACK:
+                return attacker.getAttackPoints();
+            case DEFENSE:
+                return defender.getDefense();
+            case ATTACKER_SPEED:
+                return attacker.getSpeed();
+            case DEFENDER_SPEED:
+                return defender.getSpeed();
+            case HIT_POINTS:
+                return defender.getHitPoints();
+            case MAX_HIT_POINTS:
+                return defender.getMaxHitPoints();
+            case ROLL:
+                return roll;
+            case IF:
+                return operands[0].evaluate(attacker, defender, roll) != 0
+                        ? operands[1].evaluate(attacker, defender, roll)
+                        : operands[2].evaluate(attacker, defender, roll);
+            default:
+                break;
+        }
+
+        double a = operands[0].evaluate(attacker, defender, roll);
+        if (operands.length == 1) {
+            switch (kind) {
+                case NEGATE:
+                    return -a;
+                case ABS:
+                    return Math.abs(a);
+                case FLOOR:
+                    return Math.floor(a);
+                case CEIL:
+                    return Math.ceil(a);
+                default:
+                    return Math.floor(a + 0.5);
+            }
+        }
+
+        double b = operands[1].evaluate(attacker, defender, roll);
+        switch (kind) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return a / b;
+            case REMAINDER:
+                return a % b;
+            case LESS:
+                return a < b ? 1 : 0;
+            case LESS_OR_EQUAL:
+                return a <= b ? 1 : 0;
+            case GREATER:
+                return a > b ? 1 : 0;
+            case GREATER_OR_EQUAL:
+                return a >= b ? 1 : 0;
+            case EQUAL:
+                return a == b ? 1 : 0;
+            case NOT_EQUAL:
+                return a != b ? 1 : 0;
+            case MIN:
+                return Math.min(a, b);
+            default:
+                return Math.max(a, b);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one pulse of the game loop, with the time spent in each phase.
+ * The event's own duration covers the whole of GameController.tick().
+ * Off unless a recording turns it on; see FlightRecording.
+ */
+@Name("battle.Frame")
+@Label("Frame")
+@Category("Battle")
+@Description("One pulse of the game loop with the time spent in each phase")
+@Enabled(false)
+@StackTrace(false)
+public class FrameEvent extends jdk.jfr.Event {
+    /**
+     * Registered type of this event, used to check cheaply whether it is being recorded.
+     */
+    private static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+
+    /**
+     * Time spent on queued player commands and enemy AI results.
+     */
+    @Label("Logic Time")
+    @Timespan
+    private long logicTime;
+
+    /**
+     * Time spent moving particles.
+     */
+    @Label("Particle Time")
+    @Timespan
+    private long particleTime;
+
+    /**
+     * Time spent advancing the animations of every character.
+     */
+    @Label("Animation Time")
+    @Timespan
+    private long animationTime;
+
+    /**
+     * Time spent drawing the scene and updating the labels.
+     * Zero when the simulation thread ticks, because the FX thread draws instead.
+     */
+    @Label("Draw Time")
+    @Timespan
+    private long drawTime;
+
+    /**
+     * Whether the scene was redrawn in this pulse.
+     */
+    @Label("Redrawn")
+    private boolean redrawn;
+
+    /**
+     * Whether something was still animating at the end of the pulse.
+     */
+    @Label("Animating")
+    private boolean animating;
+
+    /**
+     * System.nanoTime() at the end of the previous phase; not recorded.
+     */
+    private transient long phaseStart;
+
+    /**
+     * Checks if a recording has turned this event on.
+     * Costs a field read, so the game loop creates no event object while recording is off.
+     * @return true if frames should be timed
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Starts timing the pulse and its first phase.
+     */
+    public void startPulse() {
+        begin();
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the logic phase and starts the particle phase.
+     */
+    public void endLogic() {
+        logicTime = endPhase();
+    }
+
+    /**
+     * Ends the particle phase and starts the animation phase.
+     */
+    public void endParticles() {
+        particleTime = endPhase();
+    }
+
+    /**
+     * Ends the animation phase and starts the draw phase.
+     */
+    public void endAnimation() {
+        animationTime = endPhase();
+    }
+
+    /**
+     * Ends the draw phase and writes the event.
+     * @param redrawn Whether the scene was redrawn
+     * @param animating Whether something is still animating
+     */
+    public void endPulse(boolean redrawn, boolean animating) {
+        drawTime = endPhase();
+        this.redrawn = redrawn;
+        this.animating = animating;
+        commit();
+    }
+
+    /**
+     * Measures the phase that just ended and starts the next one.
+     * @return Length of the phase in nanoseconds
+     */
+    private long endPhase() {
+        long now = System.nanoTime();
+        long length = now - phaseStart;
+        phaseStart = now;
+        return length;
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer that hands finished frames from the simulation thread to the FX thread.
+ * The simulation always writes into its own back buffer and publishes it with one atomic swap;
+ * the renderer swaps the newest published frame into its front buffer the same way.
+ * Neither side ever waits for the other, and no frame object is allocated after construction.
+ */
+public class FrameExchange {
+    /**
+     * Bit set in the shared slot when it holds a frame the renderer has not taken yet.
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The three frame buffers; which role each plays changes with every swap.
+     */
+    private final FrameState[] buffers = new FrameState[3];
+
+    /**
+     * Buffer the simulation thread is writing. Only touched by the simulation thread.
+     */
+    private int backIndex = 0;
+
+    /**
+     * Buffer the FX thread is drawing. Only touched by the FX thread.
+     */
+    private int frontIndex = 1;
+
+    /**
+     * Index of the buffer in the middle, plus the FRESH bit.
+     * The only state shared between the two threads.
+     */
+    private final AtomicInteger middle = new AtomicInteger(2);
+
+    /**
+     * Creates the exchange and its three buffers.
+     * @param particleCapacity Particle capacity of each buffer
+     */
+    public FrameExchange(int particleCapacity) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new FrameState(particleCapacity);
+        }
+    }
+
+    /**
+     * Gets the buffer the simulation should fill next.
+     * Simulation thread only.
+     * @return The back buffer
+     */
+    public FrameState getBackBuffer() {
+        return buffers[backIndex];
+    }
+
+    /**
+     * Publishes the filled back buffer and takes the old middle buffer as the new back buffer.
+     * Simulation thread only.
+     */
+    public void publish() {
+        backIndex = middle.getAndSet(backIndex | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Takes the newest published frame if there is one.
+     * FX thread only.
+     * @return true if a new frame was swapped into the front buffer
+     */
+    public boolean acquireLatest() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        frontIndex = middle.getAndSet(frontIndex) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * Gets the frame the FX thread should draw.
+     * FX thread only.
+     * @return The front buffer
+     */
+    public FrameState getFrontBuffer() {
+        return buffers[frontIndex];
+    }
+}
@@ -0,0 +1,410 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything GameWorld needs to draw one frame, copied out of the live game objects.
+ * Rendering from a copy means the simulation can keep changing the game while
+ * the FX thread draws. Instances are reused frame after frame; capturing only
+ * allocates when the number of enemies grows past the current capacity.
+ */
+public class FrameState {
+    /**
+     * Draw time that shows every enemy at its latest position, without gliding.
+     */
+    public static final long LATEST = Long.MAX_VALUE;
+    
+    /** Skeleton sprite frames. */
+    private CharacterSprite skeletonSprite;
+
+    /** Skeleton frame index to draw. */
+    private int skeletonFrame;
+
+    /** Skeleton X coordinate. */
+    private double skeletonX;
+
+    /** Skeleton Y coordinate. */
+    private double skeletonY;
+
+    /** Number of enemies captured in the arrays below. */
+    private int enemyCount;
+
+    /** Sprite each enemy is drawn with, chosen from its current action. */
+    private CharacterSprite[] enemySprite = new CharacterSprite[8];
+
+    /** Frame index each enemy is drawn with. */
+    private int[] enemyFrame = new int[8];
+
+    /** X coordinate of each enemy. */
+    private double[] enemyX = new double[8];
+
+    /** Y coordinate of each enemy. */
+    private double[] enemyY = new double[8];
+
+    /** X coordinate of each enemy before its latest step. */
+    private double[] enemyPreviousX = new double[8];
+
+    /** Y coordinate of each enemy before its latest step. */
+    private double[] enemyPreviousY = new double[8];
+
+    /** Time stamp of each enemy's latest step, in nanoseconds. */
+    private long[] enemyStepTime = new long[8];
+
+    /** Time each enemy's latest step is spread over, in nanoseconds; 0 to draw it at its position. */
+    private long[] enemyStepDuration = new long[8];
+
+    /** Whether each enemy is alive and should be drawn. */
+    private boolean[] enemyAlive = new boolean[8];
+
+    /** Copy of the live particles, drawn over the sprites. */
+    private final ParticleSystem particles;
+
+    /** Player hit points, shown in the stats panel. */
+    private int playerHitPoints;
+
+    /** Hit points of the enemy shown in the stats panel. */
+    private int enemyHitPoints;
+
+    /** Whether the Attack button should be enabled. */
+    private boolean attackReady;
+
+    /** Number of player commands whose effect this frame shows; see InputBuffer. */
+    private long shownInputCount;
+
+    /**
+     * Creates an empty frame.
+     * @param particleCapacity Capacity of the particle copy; must match the live pool
+     */
+    public FrameState(int particleCapacity) {
+        particles = new ParticleSystem(particleCapacity);
+    }
+
+    /**
+     * Copies the current game state into this frame.
+     * Must run on the thread that updates the game, between ticks.
+     * @param controller The controller owning the live game state
+     */
+    public void capture(GameController controller) {
+        skeletonSprite = controller.getSkeletonSprite();
+        skeletonFrame = controller.getSkeletonController().getCurrentFrame();
+        skeletonX = controller.getSkeletonX();
+        skeletonY = controller.getSkeletonY();
+
+        List<EnemyUnit> enemies = controller.getEnemies();
+        enemyCount = enemies.size();
+        ensureCapacity(enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            captureEnemy(i, enemies.get(i));
+        }
+
+        particles.copyFrom(controller.getParticles());
+
+        playerHitPoints = controller.getPlayer().getHitPoints();
+        enemyHitPoints = controller.getEnemy().getHitPoints();
+        attackReady = controller.isAttackReady();
+        shownInputCount = controller.getInputBuffer().getShownCount();
+    }
+
+    /**
+     * Rebuilds a frame from a snapshot received by a SpectatorViewer.
+     * Particles are not sent to spectators, so the frame has none.
+     * @param snapshot The decoded snapshot
+     * @param skeleton Sprite the skeleton is drawn with
+     * @param walk Sprite walking enemies are drawn with
+     * @param attack Sprite attacking and idle enemies are drawn with
+     */
+    public void capture(SpectatorSnapshot snapshot, CharacterSprite skeleton, CharacterSprite walk, CharacterSprite attack) {
+        skeletonSprite = skeleton;
+        skeletonFrame = snapshot.getSkeletonFrame();
+        skeletonX = snapshot.getSkeletonX();
+        skeletonY = snapshot.getSkeletonY();
+
+        enemyCount = snapshot.getEnemyCount();
+        ensureCapacity(enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            enemySprite[i] = snapshot.getEnemyClip(i) == SpectatorSnapshot.CLIP_WALK ? walk : attack;
+            enemyFrame[i] = snapshot.getEnemyFrame(i);
+            enemyX[i] = snapshot.getEnemyX(i);
+            enemyY[i] = snapshot.getEnemyY(i);
+            enemyStepDuration[i] = 0;  // Spectators see each snapshot as it is
+            enemyAlive[i] = snapshot.isEnemyAlive(i);
+        }
+
+        playerHitPoints = snapshot.getPlayerHitPoints();
+        enemyHitPoints = enemyCount > 0 ? snapshot.getEnemyHitPoints(0) : 0;
+        attackReady = false;  // Spectators cannot attack
+    }
+
+    /**
+     * Copies one enemy, picking the sprite that matches its current action.
+     * Attacking enemies use the attack frames, walking enemies the walk cycle,
+     * and idle enemies stand in the first attack frame with feet planted.
+     * @param i Slot to fill
+     * @param unit The enemy to copy
+     */
+    private void captureEnemy(int i, EnemyUnit unit) {
+        if (unit.isAttacking()) {
+            enemySprite[i] = unit.getAttackSprite();
+            enemyFrame[i] = unit.getAttackController().getCurrentFrame();
+        } else if (unit.isWalking()) {
+            enemySprite[i] = unit.getWalkSprite();
+            enemyFrame[i] = unit.getWalkFrame();
+        } else {
+            enemySprite[i] = unit.getAttackSprite();
+            enemyFrame[i] = unit.getAttackSprite().getStartIndex();
+        }
+        enemyX[i] = unit.getX();
+        enemyY[i] = unit.getY();
+        enemyPreviousX[i] = unit.getPreviousX();
+        enemyPreviousY[i] = unit.getPreviousY();
+        enemyStepTime[i] = unit.getLastStepTime();
+        enemyStepDuration[i] = unit.getStepDuration();
+        enemyAlive[i] = unit.getEnemy().isAlive();
+    }
+
+    /**
+     * Places the skeleton directly instead of capturing it from a game.
+     * Used by RenderBenchmark to draw scenes no battle produced.
+     * @param sprite Sprite to draw the skeleton with
+     * @param frame Frame index to draw
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void setSkeleton(CharacterSprite sprite, int frame, double x, double y) {
+        skeletonSprite = sprite;
+        skeletonFrame = frame;
+        skeletonX = x;
+        skeletonY = y;
+    }
+
+    /**
+     * Sets how many enemies the frame holds, growing the arrays if needed.
+     * Slots that were not captured before must be filled with setEnemy().
+     * @param count Number of enemies
+     */
+    public void setEnemyCount(int count) {
+        ensureCapacity(count);
+        enemyCount = count;
+    }
+
+    /**
+     * Places one living enemy directly instead of capturing it from a game.
+     * It is drawn standing at its position, without gliding.
+     * @param i Enemy index, below getEnemyCount()
+     * @param sprite Sprite to draw the enemy with
+     * @param frame Frame index to draw
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void setEnemy(int i, CharacterSprite sprite, int frame, double x, double y) {
+        enemySprite[i] = sprite;
+        enemyFrame[i] = frame;
+        enemyX[i] = x;
+        enemyY[i] = y;
+        enemyPreviousX[i] = x;
+        enemyPreviousY[i] = y;
+        enemyStepTime[i] = 0;
+        enemyStepDuration[i] = 0;
+        enemyAlive[i] = true;
+    }
+
+    /**
+     * Grows the enemy arrays when more enemies exist than they can hold.
+     * @param count Number of enemies that must fit
+     */
+    private void ensureCapacity(int count) {
+        if (count > enemyX.length) {
+            int size = Math.max(count, enemyX.length * 2);
+            enemySprite = Arrays.copyOf(enemySprite, size);
+            enemyFrame = Arrays.copyOf(enemyFrame, size);
+            enemyX = Arrays.copyOf(enemyX, size);
+            enemyY = Arrays.copyOf(enemyY, size);
+            enemyPreviousX = Arrays.copyOf(enemyPreviousX, size);
+            enemyPreviousY = Arrays.copyOf(enemyPreviousY, size);
+            enemyStepTime = Arrays.copyOf(enemyStepTime, size);
+            enemyStepDuration = Arrays.copyOf(enemyStepDuration, size);
+            enemyAlive = Arrays.copyOf(enemyAlive, size);
+        }
+    }
+
+    /**
+     * Gets skeleton sprite frames.
+     * @return Skeleton sprite frames
+     */
+    public CharacterSprite getSkeletonSprite() {
+        return skeletonSprite;
+    }
+
+    /**
+     * Gets skeleton frame index.
+     * @return Skeleton frame index
+     */
+    public int getSkeletonFrame() {
+        return skeletonFrame;
+    }
+
+    /**
+     * Gets skeleton X coordinate.
+     * @return Skeleton X coordinate
+     */
+    public double getSkeletonX() {
+        return skeletonX;
+    }
+
+    /**
+     * Gets skeleton Y coordinate.
+     * @return Skeleton Y coordinate
+     */
+    public double getSkeletonY() {
+        return skeletonY;
+    }
+
+    /**
+     * Gets the number of captured enemies.
+     * @return Number of captured enemies
+     */
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    /**
+     * Gets the sprite to draw one enemy with.
+     * @param i Enemy index
+     * @return Sprite to draw the enemy with
+     */
+    public CharacterSprite getEnemySprite(int i) {
+        return enemySprite[i];
+    }
+
+    /**
+     * Gets the frame index to draw one enemy with.
+     * @param i Enemy index
+     * @return Frame index to draw
+     */
+    public int getEnemyFrame(int i) {
+        return enemyFrame[i];
+    }
+
+    /**
+     * Gets the X coordinate of one enemy.
+     * @param i Enemy index
+     * @return X coordinate of the enemy
+     */
+    public double getEnemyX(int i) {
+        return enemyX[i];
+    }
+
+    /**
+     * Gets the Y coordinate of one enemy.
+     * @param i Enemy index
+     * @return Y coordinate of the enemy
+     */
+    public double getEnemyY(int i) {
+        return enemyY[i];
+    }
+
+    /**
+     * Gets where one enemy is drawn at a given time: on its way from the position before its
+     * latest step to its current one, so that steps taken at the walk's 20 Hz look like smooth
+     * movement at the display's refresh rate. Drawing runs at most one step behind the simulation.
+     * @param i Enemy index
+     * @param time Time the frame is drawn for in nanoseconds, or LATEST
+     * @return X coordinate to draw at
+     */
+    public double getEnemyX(int i, long time) {
+        return interpolate(enemyPreviousX[i], enemyX[i], i, time);
+    }
+
+    /**
+     * Gets where one enemy is drawn at a given time; see getEnemyX(int, long).
+     * @param i Enemy index
+     * @param time Time the frame is drawn for in nanoseconds, or LATEST
+     * @return Y coordinate to draw at
+     */
+    public double getEnemyY(int i, long time) {
+        return interpolate(enemyPreviousY[i], enemyY[i], i, time);
+    }
+
+    /**
+     * Blends one coordinate between its value before and after an enemy's latest step.
+     * @param previous Coordinate before the step
+     * @param current Coordinate after the step
+     * @param i Enemy index
+     * @param time Draw time in nanoseconds, or LATEST
+     * @return The blended coordinate
+     */
+    private double interpolate(double previous, double current, int i, long time) {
+        long duration = enemyStepDuration[i];
+        if (time == LATEST || duration == 0) {
+            return current;
+        }
+        double fraction = (double) (time - enemyStepTime[i]) / duration;
+        if (fraction >= 1) {
+            return current;
+        }
+        return fraction <= 0 ? previous : previous + (current - previous) * fraction;
+    }
+
+    /**
+     * Checks if drawing this frame at a later time would show any enemy somewhere else.
+     * @param time Time the frame was last drawn for, in nanoseconds
+     * @return true while a living enemy is still gliding through its latest step
+     */
+    public boolean isGliding(long time) {
+        for (int i = 0; i < enemyCount; i++) {
+            if (enemyAlive[i] && enemyStepDuration[i] > 0 && time - enemyStepTime[i] < enemyStepDuration[i]
+                    && (enemyPreviousX[i] != enemyX[i] || enemyPreviousY[i] != enemyY[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if one enemy is alive.
+     * @param i Enemy index
+     * @return true if the enemy is alive
+     */
+    public boolean isEnemyAlive(int i) {
+        return enemyAlive[i];
+    }
+
+    /**
+     * Gets the particle copy to render.
+     * @return The particle copy to render
+     */
+    public ParticleSystem getParticles() {
+        return particles;
+    }
+
+    /**
+     * Gets player hit points.
+     * @return Player hit points
+     */
+    public int getPlayerHitPoints() {
+        return playerHitPoints;
+    }
+
+    /**
+     * Gets hit points of the enemy shown in the UI.
+     * @return Hit points of the enemy shown in the UI
+     */
+    public int getEnemyHitPoints() {
+        return enemyHitPoints;
+    }
+
+    /**
+     * Checks if the Attack button should be enabled.
+     * @return true if the Attack button should be enabled
+     */
+    public boolean isAttackReady() {
+        return attackReady;
+    }
+
+    /**
+     * Gets how many player commands this frame shows the effect of.
+     * @return Shown command count when the frame was captured
+     */
+    public long getShownInputCount() {
+        return shownInputCount;
+    }
+}
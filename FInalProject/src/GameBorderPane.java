@@ -2,11 +2,16 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * Main UI layout container for the game window.
  * Uses BorderPane to organize game elements into distinct regions.
@@ -18,7 +23,7 @@ public class GameBorderPane extends BorderPane {
      * The game canvas where all animations and graphics are rendered.
      * Central display area for the actual game play visuals.
      */
-    private GameWorld gameWorld = new GameWorld();
+    private GameWorld gameWorld;
     
     /**
      * Controller that manages game logic and coordinates animations.
@@ -27,14 +32,43 @@ public class GameBorderPane extends BorderPane {
     private GameController gameController;
     
     /**
-     * Constructor that sets up the entire game interface.
+     * Number of strips the software compositor splits frames into when it is switched on.
+     */
+    private final int compositorStrips;
+    
+    /**
+     * Constructor that sets up the entire game interface with default options.
      * Creates all UI regions and initializes the game state.
      */
     public GameBorderPane() {
+        this(GameOptions.parse(List.of()));
+    }
+    
+    /**
+     * Constructor that sets up the entire game interface.
+     * Creates all UI regions and initializes the game state.
+     * @param options Start-up options; decide the map and whether the simulation gets its own thread
+     */
+    public GameBorderPane(GameOptions options) {
+        gameWorld = new GameWorld(options.getTileMap());
+        compositorStrips = options.getCompositorStrips();
+        if (options.isSoftwareRenderer()) {
+            toggleRenderer();
+        }
       
         // Create an instance of GameController and pass it GameWorld
         // This establishes the MVC pattern connection
         gameController = new GameController(gameWorld);
+        gameController.setCombatRules(options.getCombatRules());
+        if (options.isSpriteDeltas()) {
+            // Before the budget, which could evict animations that are then left whole
+            SpriteCache sprites = gameController.getSpriteCache();
+            long before = sprites.getResidentBytes();
+            sprites.encodeDeltas();
+            System.out.printf("Sprite frames delta-encoded: %.1f MB, was %.1f MB%n",
+                    sprites.getResidentBytes() / 1048576.0, before / 1048576.0);
+        }
+        gameController.getSpriteCache().setBudget(options.getSpriteBudget());
         gameController.initializeScene();      // Draw initial game state
         gameController.startMinotaurApproach(); // Begin minotaur walking animation
         
@@ -150,7 +184,7 @@ public class GameBorderPane extends BorderPane {
         // Event handler for attack button
         // Delegates to controller to maintain separation of concerns
         attackButton.setOnAction(event -> {
-            gameController.startSkeletonAttack();
+            gameController.requestAttack();
         });
         
         // Configure right pane layout and styling
@@ -160,5 +194,88 @@ public class GameBorderPane extends BorderPane {
         rightPane.setPadding(new Insets(10));       // Padding from edges
         
         setRight(rightPane);
+        
+        // Spectators watch through a feed that is captured on the ticking thread, so open it first
+        if (options.getSpectatorPort() >= 0) {
+            try {
+                SpectatorFeed feed = gameController.startSpectatorFeed(options.getSpectatorPort());
+                System.out.println("Spectators can watch on UDP port " + feed.getPort());
+            } catch (IOException e) {
+                // The battle can still be played, just not watched
+                System.err.println("Spectator feed is off: " + e);
+            }
+        }
+        
+        // More enemies follow the opening minotaur when a wave file was given; the spawns are
+        // taken on the ticking thread, so the waves start before it is handed over
+        if (options.getWaveFile() != null) {
+            try {
+                gameController.startWaves(options.getWaveFile());
+            } catch (IOException e) {
+                // The opening minotaur still fights
+                System.err.println("Waves are off: " + e);
+            }
+        }
+        
+        // The journal is written from the ticking thread too, so it is opened before that is handed over
+        if (options.getJournalDirectory() != null) {
+            try {
+                gameController.startJournal(options.getJournalDirectory());
+            } catch (IOException e) {
+                // The battle can still be played, just not analysed afterwards
+                System.err.println("Battle journal is off: " + e);
+            }
+        }
+        
+        // Hand the simulation to its own thread once the labels are connected
+        if (options.isSimulationThread()) {
+            gameController.startSimulationThread(options.getSimulationRate());
+        }
+        
+        // Development mode: pick up edited sprite frames without a restart
+        if (options.getSpriteSourceDirectory() != null) {
+            try {
+                gameController.watchSprites(options.getSpriteSourceDirectory());
+            } catch (IOException e) {
+                // The game still works with the frames it already loaded
+                System.err.println("Sprite hot reload is off: " + e);
+            }
+        }
+    }
+    
+    /**
+     * Sends a pressed key to the controller's key bindings.
+     * Main installs this as a key filter on the whole scene, so the shortcuts work
+     * whatever has focus. A bound key is consumed, so Space or Enter does not also press the focused button.
+     * @param event The key event
+     */
+    public void handleKey(KeyEvent event) {
+        if (event.getCode() == KeyCode.F3) {
+            toggleRenderer();
+            event.consume();
+        } else if (gameController.handleKey(event.getCode())) {
+            event.consume();
+        }
+    }
+    
+    /**
+     * Switches the battlefield between drawing with Canvas calls and the software compositor.
+     * Bound to F3, so both can be compared on the same battle.
+     */
+    private void toggleRenderer() {
+        if (gameWorld.getSoftwareCompositor() != null) {
+            gameWorld.setSoftwareCompositor(null);
+        } else {
+            gameWorld.setSoftwareCompositor(new SoftwareCompositor(gameWorld.getTileMap(),
+                    (int) gameWorld.getWidth(), (int) gameWorld.getHeight(), compositorStrips));
+        }
+    }
+    
+    /**
+     * Gets the controller running the battle shown in this pane.
+     * @return The game controller
+     */
+    public GameController getGameController() {
+        return gameController;
     }
 }
\ No newline at end of file
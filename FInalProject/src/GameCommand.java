@@ -0,0 +1,9 @@
+/**
+ * A player action sent from the UI to the game logic.
+ * When the simulation runs on its own thread, UI handlers cannot touch
+ * the game directly, so they queue one of these for the next tick instead.
+ */
+public enum GameCommand {
+    /** The player pressed Attack. */
+    ATTACK
+}
@@ -1,6 +1,14 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import javafx.animation.AnimationTimer;
 import javafx.beans.property.*;
 import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
 
 /**
  * Main game logic controller that manages animations and game state.
@@ -34,6 +42,7 @@ public class GameController {
     /**
      * Sprite manager for minotaur enemy images.
      * Handles loading and accessing minotaur animation frames.
+     * Shared by every minotaur unit since the frames never change.
      */
     private CharacterSprite minotaurSprite;
     
@@ -44,6 +53,12 @@ public class GameController {
      */
     private CharacterSprite minotaurAttackSprite;
     
+    /**
+     * Keeps the decoded frames of all three sprites within a memory budget.
+     * Unlimited until GameBorderPane sets the budget from "--sprite-budget".
+     */
+    private final SpriteCache spriteCache = new SpriteCache(SpriteCache.UNLIMITED);
+    
     /**
      * Animation timing controller for skeleton.
      * Manages frame progression and timing for skeleton animations.
@@ -51,26 +66,23 @@ public class GameController {
     private AnimationController skeletonController;
     
     /**
-     * Animation timing controller for minotaur.
-     * Manages frame progression and timing for minotaur animations.
+     * Clock of the minotaur walk cycle, shared by every walking minotaur.
+     * Updated once per pulse; each minotaur only keeps the phase offset it started walking with.
      */
-    private AnimationController minotaurController;
+    private AnimationClock minotaurWalkClock;
     
     /**
-     * Animation timing controller for minotaur attack sequence.
-     * Separate from minotaurController (walking) to independently track attack frames.
-     * Works in tandem with minotaurAttackSprite to animate the attack.
+     * Every enemy on the battlefield, each with its own position, animations and AI.
+     * The first unit is the minotaur whose stats are shown in the UI.
+     * The list of the battle rules, which add and remove enemies.
      */
-    private AnimationController minotaurAttackController;
+    private List<EnemyUnit> enemies;
     
     /**
-     * The enemy character instance representing the minotaur.
-     * Contains combat statistics (HP, attack, defense, speed) for the minotaur enemy.
-     * This is the logical game entity, separate from its visual representation (minotaurSprite).
-     * Used for combat calculations, damage tracking, and determining defeat conditions.
+     * Turns, attacks, range, hits and enemy movement, shared with the headless BattleSession.
      */
-    private Enemy minotaurEnemy;
-
+    private BattleRules rules;
+    
     /**
      * The player character instance representing the skeleton warrior.
      * Contains combat statistics (HP, attack, defense, speed) for the player-controlled character.
@@ -81,29 +93,69 @@ public class GameController {
     
     // Position tracking for characters
     
+    /**
+     * Starting X coordinate of the skeleton.
+     * Also used by BattleSession, so headless battles start from the same positions.
+     */
+    public static final double SKELETON_START_X = 200;
+    
+    /**
+     * Starting Y coordinate of the skeleton.
+     */
+    public static final double SKELETON_START_Y = 350;
+    
     /**
      * Skeleton's X coordinate on the game canvas.
      * Measured in pixels from left edge of canvas.
      */
-    private double skeletonX = 200;
+    private double skeletonX = SKELETON_START_X;
     
     /**
      * Skeleton's Y coordinate on the game canvas.
      * Measured in pixels from top edge of canvas.
      */
-    private double skeletonY = 350;
+    private double skeletonY = SKELETON_START_Y;
     
     /**
-     * Minotaur's X coordinate on the game canvas.
+     * Starting X coordinate of the minotaur.
      * Starts off-screen to the right (800 > 700 canvas width).
      */
-    private double minotaurX = 800;
+    public static final double MINOTAUR_START_X = 800;
     
     /**
-     * Minotaur's Y coordinate on the game canvas.
+     * Starting Y coordinate of the minotaur.
      * Same vertical level as skeleton for combat alignment.
      */
-    private double minotaurY = 350;
+    public static final double MINOTAUR_START_Y = 350;
+    
+    /**
+     * Distance in pixels that counts as close enough for melee combat.
+     * Used by the player and by every enemy's AI.
+     */
+    public static final double ATTACK_RANGE = 225;
+    
+    /**
+     * Pixels an enemy moves each time its walk animation advances a frame.
+     */
+    public static final double WALK_STEP = 3;
+    
+    /**
+     * Distance from the minotaur's sprite center down to its feet, at 50% scale.
+     * Used to place footstep dust on the ground.
+     */
+    public static final double MINOTAUR_FEET_OFFSET = 105;
+    
+    /**
+     * Distance in pixels from the player beyond which enemies are drawn at a reduced animation rate.
+     * About one and a half screen widths: they only show up when the camera is moved or zoomed out,
+     * and then they are small and far from the fight.
+     */
+    public static final double FAR_ANIMATION_DISTANCE = 1000;
+    
+    /**
+     * Walk clock ticks each shown frame is held for by enemies beyond FAR_ANIMATION_DISTANCE.
+     */
+    public static final int FAR_ANIMATION_STEP = 2;
     
     /**
      * Reference to the GameWorld canvas for rendering.
@@ -117,6 +169,12 @@ public class GameController {
      */
     private AnimationTimer gameLoop;
     
+    /**
+     * Worker threads that decide every enemy's next command from a snapshot.
+     * Decisions for a tick are picked up and applied on a later tick.
+     */
+    private final EnemyAIPool aiPool = EnemyAIPool.forAvailableCores();
+    
     // Game state flags
     
     /**
@@ -127,30 +185,102 @@ public class GameController {
     private BooleanProperty canAttack = new SimpleBooleanProperty(false);
     
     /**
-     * Flag indicating if minotaur is currently walking.
-     * Used to control minotaur movement and animation updates.
+     * Hit point values currently shown in the labels; -1 before the first update.
+     * Lets showUiState() skip labels whose value has not changed.
+     */
+    private int shownPlayerHitPoints = -1;
+    private int shownEnemyHitPoints = -1;
+    
+    /**
+     * Player commands waiting for the next tick, buffered briefly if they cannot run yet,
+     * with the latency from each press to the screen measured.
+     * Lock-free, so the FX thread can add to it while the simulation thread takes from it.
+     */
+    private final InputBuffer inputBuffer = new InputBuffer();
+    
+    /**
+     * The thread running the simulation, or null when the game runs on the FX thread.
+     */
+    private SimulationThread simulationThread;
+    
+    /**
+     * Reloads changed sprite frames during development, or null when hot reload is off.
+     */
+    private SpriteWatcher spriteWatcher;
+    
+    /**
+     * Sends the battle to spectators on other machines, or null when nobody may watch.
+     */
+    private SpectatorFeed spectatorFeed;
+    
+    /**
+     * Upcoming spawns of the wave file being played, or null when no waves were started.
+     */
+    private WaveStream waves;
+    
+    /**
+     * Time stamp (in nanoseconds) of the current or latest tick;
+     * player input is stamped with it while an external clock drives the game.
+     */
+    private long tickTime = 0;
+    
+    /**
+     * Time stamp (in nanoseconds) of the first tick after the waves started; 0 until then.
+     * Spawn times in the wave file count from here.
+     */
+    private long waveStartTime = 0;
+    
+    /**
+     * Enemy types a wave file may name. Every type walks and attacks with the minotaur sprites.
+     */
+    public static final Set<String> ENEMY_TYPES = Set.of("minotaur");
+    
+    /**
+     * How long before an enemy enters its sprites are decoded again if the cache evicted them, in nanoseconds.
+     * Long enough for the decoder thread to finish, so the enemy never enters as a placeholder.
      */
-    private boolean isMinotaurWalking = false;
+    private static final long SPRITE_PREFETCH_TIME = 2_000_000_000L;
     
     /**
-     * Flag indicating if skeleton is currently attacking.
-     * Used to control skeleton attack animation updates.
+     * Flag indicating that tick() is called by an external clock instead of the AnimationTimer.
+     * Set for offscreen battle replays so that no JavaFX pulse is needed.
      */
-    private boolean isSkeletonAttacking = false;
+    private boolean manualPulse = false;
     
     /**
-     * Flag indicating if minotaur is currently performing an attack animation.
-     * Used by the game loop to update attack animation frames.
-     * Also used by GameWorld to determine which sprite to render.
+     * Text for every hit point value from 0 up to the highest maximum, indexed by value.
+     * Built once so that updating an HP label never formats a new String.
      */
-    private boolean isMinotaurAttacking = false;
+    private String[] hitPointTexts;
     
     /**
-     * Flag indicating whose turn it is in the turn-based combat system.
-     * True means the player can act; false means it's the enemy's turn.
-     * Controls the flow of combat by preventing actions during opponent's turn.
+     * Maximum number of live particles.
+     * Shared with FrameState so a frame can hold a copy of every particle.
      */
-    private boolean isPlayerTurn = true;
+    public static final int PARTICLE_CAPACITY = 4096;
+    
+    /**
+     * Pool of hit sparks, dust puffs and death bursts drawn on top of the sprites.
+     * Preallocated for 4096 particles so even large fights never allocate during play.
+     */
+    private ParticleSystem particles = new ParticleSystem(PARTICLE_CAPACITY);
+    
+    /**
+     * Time stamp (in nanoseconds) of the previous tick.
+     * Used to work out how far particles move each pulse; 0 when the loop was idle.
+     */
+    private long lastTickTime = 0;
+    
+    /**
+     * Longest time step fed to the particles, in seconds.
+     * Prevents particles from jumping after the loop has been paused.
+     */
+    private static final double MAX_PARTICLE_STEP = 0.1;
+    
+    /**
+     * Directions toward the player over the battlefield's walkable tiles, shared by every enemy.
+     */
+    private final FlowField flowField;
     
     /**
      * Constructor that establishes the controller-view relationship.
@@ -158,10 +288,32 @@ public class GameController {
      */
     public GameController(GameWorld gameWorld) {
         this.gameWorld = gameWorld;
+        this.flowField = new FlowField(gameWorld.getTileMap());
         
         initializeSprites();     // Load sprite images
-        initializeCharacters();  // Create enemy objects
         initializeControllers(); // Create animation controllers
+        initializeCharacters();  // Create enemy objects
+        initializeGameLoop();    // Create the reusable game loop timer
+    }
+    
+    /**
+     * Creates the AnimationTimer that drives the game loop.
+     * Built once and then started and stopped as actions begin and end.
+     */
+    private void initializeGameLoop() {
+        gameLoop = new AnimationTimer() {
+            /**
+             * Called approximately 60 times per second by JavaFX.
+             * @param now Current time in nanoseconds
+             */
+            @Override
+            public void handle(long now) {
+                // Stop game loop if nothing is animating (optimization)
+                if (!tick(now)) {
+                    stop();
+                }
+            }
+        };
     }
     
     /**
@@ -189,180 +341,637 @@ public class GameController {
      * Initializes both player and enemy characters for the game session.
      */
     private void initializeCharacters() {
-        minotaurEnemy = new Enemy(150, 20, 15);      // HP, Attack, Defense
-        skeletonPlayer = new Player(200, 35, 25);   // HP, Attack, Defense
+        Enemy minotaurEnemy = new Enemy(150, 20, 15, 10);      // HP, Attack, Defense, Speed
+        skeletonPlayer = new Player(200, 35, 25, 10);   // HP, Attack, Defense, Speed
+        
+        // Equal speeds alternate turns; the player is in the rules first so it opens the battle.
+        // The rules use the shipped combat formulas unless GameBorderPane passes others in.
+        rules = new BattleRules(skeletonPlayer, skeletonSprite, skeletonController, skeletonX, skeletonY,
+                flowField, CombatRules.getDefault(), new Random());
+        rules.setHitListener(this::emitHitEffects);
+        enemies = rules.getEnemies();
+        rules.addEnemy(new EnemyUnit(minotaurEnemy, minotaurSprite, minotaurAttackSprite, minotaurWalkClock,
+                new ChargeAndCounterAI(ATTACK_RANGE), MINOTAUR_START_X, MINOTAUR_START_Y));
+        
+        // Pre-build the label text for every possible hit point value
+        int highestHitPoints = Math.max(minotaurEnemy.getMaxHitPoints(), skeletonPlayer.getMaxHitPoints());
+        hitPointTexts = new String[highestHitPoints + 1];
+        for (int i = 0; i < hitPointTexts.length; i++) {
+            hitPointTexts[i] = String.valueOf(i);
+        }
     }
 
 	/**
      * Creates and configures sprite managers for both characters.
      * Loads all animation frames into memory for quick access.
+     * Every sprite is registered with spriteCache, which may drop frames again later.
      */
     private void initializeSprites() {
         // Create the skeleton sprite
         // 12 frames, starting at index 1, no padding in filenames
-        skeletonSprite = new CharacterSprite("images/skeleton/", "skeleton_", 12, 1, false);
+        skeletonSprite = new CharacterSprite("images/skeleton/", "skeleton_", 12, 1, false, spriteCache);
         
         // Create the minotaur sprite  
         // 18 frames, starting at index 0, with zero-padding in filenames
-        minotaurSprite = new CharacterSprite("images/minotaur/", "Minotaur_01_Walking_", 18, 0, true);
+        minotaurSprite = new CharacterSprite("images/minotaur/", "Minotaur_01_Walking_", 18, 0, true, spriteCache);
         
         
-        minotaurAttackSprite = new CharacterSprite("images/minotaur_attacking/", "Minotaur_01_Attacking_", 12, 0, true);
+        minotaurAttackSprite = new CharacterSprite("images/minotaur_attacking/", "Minotaur_01_Attacking_", 12, 0, true,
+                spriteCache);
     }
     
     /**
      * Creates animation controllers for timing frame advances.
      * Matches controller parameters to sprite indexing schemes.
+     * Enemy units create their own attack controllers from their sprites and share the walk clock.
      */
     private void initializeControllers() {
-        skeletonController = new AnimationController(12, 1);  // 12 frames, starts at 1
-        minotaurController = new AnimationController(18, 0);  // 18 frames, starts at 0
-        minotaurAttackController = new AnimationController(12, 0);
+        skeletonController = new AnimationController(skeletonSprite.getSpritePath(), 12, 1);  // 12 frames, starts at 1
+        minotaurWalkClock = new AnimationClock(minotaurSprite.getSpritePath(), minotaurSprite.getFrameCount(),
+                minotaurSprite.getStartIndex());
     }
     
     /**
      * Initiates skeleton attack animation sequence.
      * Called when attack button is pressed by player.
-     * Only starts if skeleton is in range of the enemy
+     * Only starts if skeleton is in range of an enemy
      * and there is an enemy to attack.
+     * @return true if the attack started, false if the player cannot attack right now
      */
-    public void startSkeletonAttack() {
-        // Check conditions: not already attacking and enemy is close enough and there is an enemy to attack
-        if (!isSkeletonAttacking && isInAttackRange() && minotaurEnemy.isAlive()) {
-            isSkeletonAttacking = true;           // Set attack state flag
-            skeletonController.resetAnimation();  // Start from first frame
+    public boolean startSkeletonAttack() {
+        // Check conditions: not already attacking and a living enemy is close enough
+        if (rules.startPlayerAttack()) {
             startGameLoop();                      // Begin animation updates
+            return true;
         }
-    }
-    
-    /**
-     * Initiates minotaur attack animation sequence.
-     * Called automatically when the skeleton's attack completes and minotaur is alive.
-     * Unlike startSkeletonAttack(), this is triggered by game logic, not user input.
-     * Only starts if minotaur isn't already attacking and the player is still alive.
-     */
-    public void startMinotaurAttack() {
-        if (!isMinotaurAttacking && skeletonPlayer.isAlive()) {
-            isMinotaurAttacking = true;
-            minotaurAttackController.resetAnimation();
-            startGameLoop();
-        }
+        return false;
     }
     
     /**
      * Initiates minotaur walking onto the scene.
      * Called during game initialization to start enemy approach.
+     * From then on each enemy's AI decides when to keep walking.
      */
     public void startMinotaurApproach() {
-        if (!isMinotaurWalking) {
-            isMinotaurWalking = true;             // Set walking state flag
-            minotaurController.resetAnimation();  // Start from first frame
-            startGameLoop();                      // Begin animation updates
+        EnemyUnit minotaur = enemies.get(0);
+        if (!minotaur.isWalking()) {
+            minotaur.setWalking(true);  // Set walking state and start from first frame
+            startGameLoop();            // Begin animation updates
         }
     }
     
     /**
-     * Creates and starts the main game animation loop.
+     * Starts the main game animation loop.
      * Uses JavaFX AnimationTimer for smooth 60 FPS updates.
      * Manages all active animations and redraws.
+     * Does nothing when the controller is driven by an external clock (see setManualPulse)
+     * or by the simulation thread.
+     * The timer is created once in the constructor and reused, so starting
+     * a new action does not allocate another AnimationTimer.
      */
     private void startGameLoop() {
-        // Stop any existing game loop to prevent multiple timers
-        if (gameLoop != null) {
-            gameLoop.stop();
+        // An offscreen replay or the simulation thread calls tick() itself
+        if (manualPulse || simulationThread != null) {
+            return;
+        }
+        
+        gameLoop.start();  // Begin the animation loop (no effect if already running)
+    }
+    
+    /**
+     * Advances every active animation to the given time stamp and redraws if needed.
+     * Called by the AnimationTimer on every pulse, by the SimulationThread on every step,
+     * or directly by BattleExporter when a battle is replayed offscreen with a synthetic clock.
+     * @param now Current time in nanoseconds
+     * @return true if something is still animating, false once the scene is at rest
+     */
+    public boolean tick(long now) {
+        boolean needsRedraw = false;  // Track if any visual changes occurred
+        tickTime = now;
+        rules.setTime(now);
+        
+        // Phase timings for the flight recorder; no event is created while nobody records
+        FrameEvent frameEvent = null;
+        if (FrameEvent.isRecording()) {
+            frameEvent = new FrameEvent();
+            frameEvent.startPulse();
+        }
+        
+        // Player actions queued by the UI while the simulation runs on its own thread
+        processCommands(now);
+        
+        // Carry out the enemy commands decided since the last tick, then start the next batch.
+        // An external clock waits for the workers so replays stay deterministic.
+        if (manualPulse) {
+            aiPool.awaitIdle();
+        }
+        if (aiPool.isIdle()) {
+            if (aiPool.hasResults()) {
+                applyEnemyCommands();
+            }
+            // The workers hold no indices now, so the list can change before the next batch
+            if (waves != null) {
+                spawnDueEnemies(now);
+                rules.removeDefeatedEnemies();
+            }
+            aiPool.submit(skeletonPlayer, skeletonX, skeletonY, rules.getActiveEnemyIndex(), enemies);
+        }
+        
+        if (frameEvent != null) {
+            frameEvent.endLogic();
+        }
+        
+        // Move particles by the real time since the last pulse
+        double elapsedSeconds = lastTickTime == 0 ? 0 : Math.min((now - lastTickTime) / 1e9, MAX_PARTICLE_STEP);
+        lastTickTime = now;
+        if (particles.getLiveCount() > 0) {
+            particles.update(elapsedSeconds);
+            needsRedraw = true;  // Particles move every pulse
+        }
+        
+        if (frameEvent != null) {
+            frameEvent.endParticles();
+        }
+        
+        // Update skeleton animation if attacking; the hit lands when it ends
+        if (rules.updatePlayerAttack(now)) {
+            needsRedraw = true;  // Frame changed, need to redraw
+            inputBuffer.markShown();  // The attack the player asked for is now visible
+        }
+        
+        // Point the shared flow field at the player's feet; only rebuilt if the player changed cell.
+        // The skeleton stands on the same ground line as the minotaur.
+        flowField.setTarget(skeletonX, skeletonY + MINOTAUR_FEET_OFFSET);
+        
+        // Timed buffs and debuffs run out; characters with none due return at once
+        rules.expireModifiers(now);
+        
+        // Update each enemy's walk and attack animations; all walkers move on one clock
+        minotaurWalkClock.update(now);
+        for (int i = 0; i < enemies.size(); i++) {
+            if (updateEnemy(enemies.get(i), now)) {
+                needsRedraw = true;
+            }
+        }
+        
+        // Enemies glide between their steps, so they must be drawn on every pulse until they arrive
+        boolean gliding = isAnyEnemyGliding(now);
+        if (gliding) {
+            needsRedraw = true;
+        }
+        
+        if (frameEvent != null) {
+            frameEvent.endAnimation();
+        }
+        
+        // Only redraw canvas if something changed (optimization)
+        // The simulation thread publishes frames instead and never touches the UI
+        if (simulationThread == null) {
+            if (needsRedraw) {
+                gameWorld.drawScene(this, now);
+                inputBuffer.markDisplayed(inputBuffer.getShownCount(), now);
+            }
+            showUiState(skeletonPlayer.getHitPoints(), getEnemy().getHitPoints(), rules.isAttackReady());
+        }
+        
+        // Keep ticking while an enemy still owes its turn, so its AI can answer
+        boolean animating = rules.isPlayerAttacking() || rules.isEnemyAttacking() || isAnyEnemyWalking() || gliding
+                || particles.getLiveCount() > 0 || inputBuffer.hasPending()
+                || (!rules.isPlayerTurn() && skeletonPlayer.isAlive() && !areAllEnemiesDefeated())
+                || (waves != null && !waves.isFinished() && skeletonPlayer.isAlive());
+        if (!animating) {
+            lastTickTime = 0;  // Next pulse starts a fresh time step
+        }
+        
+        // Spectators get the state at their own fixed rate, and the final state of every action
+        if (spectatorFeed != null) {
+            spectatorFeed.capture(this, now, !animating);
+        }
+        if (frameEvent != null) {
+            frameEvent.endPulse(needsRedraw && simulationThread == null, animating);
+        }
+        return animating;
+    }
+    
+    /**
+     * Advances one enemy's walk or attack animation.
+     * Walking enemies step toward the player on every tick of the shared walk clock;
+     * their frame follows from the clock, so there is nothing to advance per enemy.
+     * Enemies outside the camera's view keep their timing, so they move and finish
+     * attacks exactly as if they were seen, but they raise no dust and never cause a redraw.
+     * Enemies beyond FAR_ANIMATION_DISTANCE from the player show only every FAR_ANIMATION_STEP-th walk frame.
+     * @param unit The enemy to update
+     * @param now Current time in nanoseconds
+     * @return true if the enemy's frame changed in view and the scene must be redrawn
+     */
+    private boolean updateEnemy(EnemyUnit unit, long now) {
+        boolean changed = false;
+        
+        // Move if the walk clock ticked
+        if (unit.isWalkStepDue()) {
+            double dx = unit.getX() - skeletonX;
+            double dy = unit.getY() - skeletonY;
+            unit.setAnimationStep(dx * dx + dy * dy > FAR_ANIMATION_DISTANCE * FAR_ANIMATION_DISTANCE
+                    ? FAR_ANIMATION_STEP : 1);
+            boolean visible = isInView(unit);
+            changed = visible && unit.isWalkFrameChanged();
+            rules.stepEnemy(unit, now);  // Also move the enemy
+            if (visible) {
+                particles.emit(ParticleSystem.Effect.DUST, unit.getX(), unit.getY() + MINOTAUR_FEET_OFFSET);
+            }
+        }
+        
+        // The attack lands on the skeleton when it ends, if the swing touched it
+        if (rules.updateEnemyAttack(unit, now)) {
+        	changed = isInView(unit);
+        }
+        
+        return changed;
+    }
+    
+    /**
+     * Checks if an enemy is inside the camera's view or close to its edge.
+     * The room the enemy takes is worked out from the sprite it is currently shown with.
+     * @param unit The enemy
+     * @return true if the enemy would be drawn
+     */
+    private boolean isInView(EnemyUnit unit) {
+        CharacterSprite sprite = unit.isAttacking() ? unit.getAttackSprite() : unit.getWalkSprite();
+        Image frame = sprite.getPlaceholder();
+        double halfWidth = frame.getWidth() * GameWorld.SPRITE_SCALE / 2;
+        double halfHeight = frame.getHeight() * GameWorld.SPRITE_SCALE / 2;
+        return gameWorld.getCamera().isVisible(unit.getX(), unit.getY(), halfWidth, halfHeight);
+    }
+    
+    /**
+     * Brings in every enemy of the wave file whose time has come, and starts decoding the sprites
+     * of the next one if it is about to enter.
+     * Only the spawns the wave reader has queued are looked at, so this stays cheap
+     * however long the file is. Called while the AI workers are idle.
+     * @param now Current time in nanoseconds
+     */
+    private void spawnDueEnemies(long now) {
+        if (waveStartTime == 0) {
+            waveStartTime = now;
+        }
+        long elapsed = now - waveStartTime;
+        EnemySpawn spawn = waves.peek();
+        while (spawn != null && spawn.getTime() <= elapsed) {
+            waves.poll();
+            spawnEnemy(spawn);
+            spawn = waves.peek();
+        }
+        if (spawn != null && spawn.getTime() - elapsed <= SPRITE_PREFETCH_TIME) {
+            minotaurSprite.prefetch();
+            minotaurAttackSprite.prefetch();
+        }
+    }
+    
+    /**
+     * Puts one enemy from the wave file on the battlefield, walking toward the player.
+     * It joins the turn order behind the combatants already in it.
+     * @param spawn The enemy's type, stats and position
+     */
+    private void spawnEnemy(EnemySpawn spawn) {
+        Enemy enemy = new Enemy(spawn.getHitPoints(), spawn.getAttack(), spawn.getDefense(), spawn.getSpeed());
+        EnemyUnit unit = new EnemyUnit(enemy, minotaurSprite, minotaurAttackSprite, minotaurWalkClock,
+                new ChargeAndCounterAI(ATTACK_RANGE), spawn.getX(), spawn.getY());
+        rules.addEnemy(unit, spawn.isLeader());
+        
+        // Stronger enemies than any before need more label texts; built here, never while drawing
+        if (enemy.getMaxHitPoints() >= hitPointTexts.length) {
+            String[] texts = new String[enemy.getMaxHitPoints() + 1];
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = i < hitPointTexts.length ? hitPointTexts[i] : String.valueOf(i);
+            }
+            hitPointTexts = texts;
+        }
+        
+        unit.setWalking(true);
+        startGameLoop();
+    }
+    
+    /**
+     * Carries out the commands of the last finished AI batch on the FX thread.
+     * The list of enemies may have changed since the batch was submitted,
+     * so only indices that still exist are applied.
+     * If it is an enemy's turn and that enemy chose not to attack, its turn is skipped.
+     */
+    private void applyEnemyCommands() {
+        int count = Math.min(aiPool.getBatchSize(), enemies.size());
+        
+        for (int i = 0; i < count; i++) {
+            if (rules.applyEnemyCommand(enemies.get(i), aiPool.getCommand(i))) {
+                startGameLoop();
+            }
+        }
+        aiPool.clearResults();
+        
+        // The acting enemy could not strike, so the next combatant gets its turn.
+        // Only a batch decided for this same enemy's turn may pass it on.
+        rules.finishEnemyCommands(aiPool.getActiveEnemy());
+    }
+    
+    /**
+     * Spawns the particle effects for a character that has just been hit.
+     * Sparks always appear on the target; a defeated target also bursts apart.
+     * @param target The character that took damage
+     * @param targetX X coordinate of the target's sprite center
+     * @param targetY Y coordinate of the target's sprite center
+     */
+    private void emitHitEffects(Character target, double targetX, double targetY) {
+        particles.emit(ParticleSystem.Effect.HIT_SPARK, targetX, targetY);
+        if (!target.isAlive()) {
+            particles.emit(ParticleSystem.Effect.DEATH_BURST, targetX, targetY);
+        }
+    }
+    
+    /**
+     * Brings the stats labels and the Attack button up to date.
+     * Must run on the FX thread: it is called at the end of each tick when the game
+     * runs on the FX thread, or by the render loop with the values of the latest frame
+     * when the simulation has its own thread. Labels only change when a value changed,
+     * and their text comes from the cached hitPointTexts instead of a new String.
+     * The labels are absent when the battle is replayed offscreen, so they are skipped.
+     * @param playerHitPoints Player hit points to show
+     * @param enemyHitPoints Hit points of the enemy shown in the stats panel
+     * @param ready Whether the Attack button should be enabled
+     */
+    private void showUiState(int playerHitPoints, int enemyHitPoints, boolean ready) {
+        if (playerHitPointsLabel != null && playerHitPoints != shownPlayerHitPoints) {
+            playerHitPointsLabel.setText(hitPointTexts[playerHitPoints]);
+        }
+        if (enemyHitPointsLabel != null && enemyHitPoints != shownEnemyHitPoints) {
+            enemyHitPointsLabel.setText(hitPointTexts[enemyHitPoints]);
+        }
+        shownPlayerHitPoints = playerHitPoints;
+        shownEnemyHitPoints = enemyHitPoints;
+        canAttack.set(ready);
+    }
+    
+    /**
+     * Queues a player attack for the next tick.
+     * Called by the Attack button. The command waits in the input buffer,
+     * so an attack asked for a moment too early still happens once it can.
+     */
+    public void requestAttack() {
+        inputBuffer.press(GameCommand.ATTACK, inputTime());
+        startGameLoop();  // The loop may be at rest; the next pulse runs the command
+    }
+    
+    /**
+     * Called for every key pressed in the game window.
+     * A bound key buffers its command for the next tick, like a click on its button.
+     * @param key The pressed key
+     * @return true if the key is bound to a command and should not be handled further
+     */
+    public boolean handleKey(KeyCode key) {
+        if (!inputBuffer.handleKey(key, inputTime())) {
+            return false;
         }
+        startGameLoop();
+        return true;
+    }
+    
+    /**
+     * Gets the current time on the clock that ticks the game, for stamping player input.
+     * The AnimationTimer and the simulation thread both tick with System.nanoTime();
+     * an external clock is only known through its ticks, so the latest tick's time is used.
+     * @return Time in nanoseconds
+     */
+    private long inputTime() {
+        return manualPulse ? tickTime : System.nanoTime();
+    }
+    
+    /**
+     * Carries out the player commands buffered since the last tick, oldest first.
+     * A command that cannot run yet stops the queue and is offered again on the next tick,
+     * until its buffer window closes.
+     * Runs on whichever thread ticks the game.
+     * @param now Time of the tick in nanoseconds
+     */
+    private void processCommands(long now) {
+        GameCommand command;
+        while ((command = inputBuffer.nextCommand(now)) != null) {
+            boolean started;
+            switch (command) {
+                case ATTACK:
+                    started = startSkeletonAttack();
+                    break;
+                default:
+                    started = true;  // Nothing to wait for
+                    break;
+            }
+            if (!started) {
+                return;
+            }
+            inputBuffer.markPerformed(now);
+        }
+    }
+    
+    /**
+     * Moves the simulation onto its own thread, stepping 60 times a second.
+     * See startSimulationThread(int).
+     */
+    public void startSimulationThread() {
+        startSimulationThread(SimulationThread.DEFAULT_STEP_RATE);
+    }
+    
+    /**
+     * Moves the simulation onto its own thread and lets the FX thread only render.
+     * The simulation publishes a FrameState after every step through a lock-free
+     * triple buffer; an AnimationTimer draws the newest one on each pulse and
+     * updates the UI from it. Between steps it keeps redrawing the newest frame while
+     * enemies glide, so the simulation can step less often than the display refreshes.
+     * Call once, after the scene has been set up.
+     * @param stepsPerSecond Simulation steps per second
+     */
+    public void startSimulationThread(int stepsPerSecond) {
+        FrameExchange exchange = new FrameExchange(PARTICLE_CAPACITY);
+        simulationThread = new SimulationThread(this, exchange, stepsPerSecond);
+        gameLoop.stop();
         
+        // Replace the game loop with a loop that only draws published frames
         gameLoop = new AnimationTimer() {
             /**
-             * Called approximately 60 times per second by JavaFX.
+             * Draws the newest simulated frame, if one arrived since the last pulse,
+             * or the same frame again while an enemy in it is still gliding.
              * @param now Current time in nanoseconds
              */
             @Override
             public void handle(long now) {
-                boolean needsRedraw = false;  // Track if any visual changes occurred
-                
-                // Update skeleton animation if attacking
-                if (isSkeletonAttacking && skeletonController.update(now)) {
-                    needsRedraw = true;  // Frame changed, need to redraw
-                    
-                    // Check if attack animation finished
-                    if (skeletonController.isAnimationComplete()) {
-                    	minotaurEnemy.takeDamage(skeletonPlayer.getAttackPoints());		// When animation is complete reduce minotaur's hitpoints
-                    	enemyHitPointsLabel.setText(String.valueOf(minotaurEnemy.getHitPoints())); // Change the current hit points label
-                        isSkeletonAttacking = false;      // Clear attack flag
-                        skeletonController.resetAnimation(); // Ready for next attack
-                        isPlayerTurn = false;
-                        canAttack.set(false);
-                        
-                        if (minotaurEnemy.isAlive()) {
-                        	startMinotaurAttack();
-                        }
-                    }
-                }
-                
-                // Update minotaur animation and position if walking
-                if (isMinotaurWalking && minotaurController.update(now)) {
-                    needsRedraw = true;  // Frame changed, need to redraw
-                    updateMinotaurPosition();  // Also move the minotaur
-                    
-                    // Reset walk cycle when it completes to continue walking
-                    if (minotaurController.isAnimationComplete()) {
-                        minotaurController.resetAnimation();
-                    }
-                }
-                
-                if (isMinotaurAttacking && !isPlayerTurn && minotaurAttackController.update(now)) {
-                	needsRedraw = true;
-                	
-                	if (minotaurAttackController.isAnimationComplete()) {
-                		skeletonPlayer.takeDamage(minotaurEnemy.getAttackPoints());
-                		playerHitPointsLabel.setText(String.valueOf(skeletonPlayer.getHitPoints()));
-                		isMinotaurAttacking = false;
-                		minotaurAttackController.resetAnimation();
-                		isPlayerTurn = true;
-                		canAttack.set(true);
-                	}
-                }
-                
-                // Only redraw canvas if something changed (optimization)
-                if (needsRedraw) {
-                    gameWorld.drawScene(GameController.this);
-                }
-                
-                // Stop game loop if nothing is animating (optimization)
-                if (!isSkeletonAttacking && !isMinotaurAttacking && !isMinotaurWalking) {
-                    gameLoop.stop();
+                if (exchange.acquireLatest()) {
+                    FrameState frame = exchange.getFrontBuffer();
+                    gameWorld.drawScene(frame, now);
+                    inputBuffer.markDisplayed(frame.getShownInputCount(), now);
+                    showUiState(frame.getPlayerHitPoints(), frame.getEnemyHitPoints(), frame.isAttackReady());
+                } else if (exchange.getFrontBuffer().isGliding(now)) {
+                    gameWorld.drawScene(exchange.getFrontBuffer(), now);
                 }
             }
         };
         
-        gameLoop.start();  // Begin the animation loop
+        simulationThread.start();
+        gameLoop.start();
     }
     
     /**
-     * Updates minotaur position during walking animation.
-     * Moves minotaur leftward toward the skeleton.
-     * Stops when within attack range.
+     * Stops the game loop and, if the simulation has its own thread, ends that thread
+     * and waits for its last step, then stops the enemy AI workers. Nothing ticks the game
+     * afterwards, so the journal and the other resources the ticks write to can be closed safely.
+     * The controller cannot be ticked again.
+     * Call on the FX thread when the application shuts down or a tool is done with the controller.
      */
-    private void updateMinotaurPosition() {
-        // Move minotaur to the left (toward skeleton)
-        minotaurX -= 3;  // 3 pixels per frame for smooth movement
-        
-        // Stop walking when close enough to attack
-        if (isInAttackRange()) {
-            isMinotaurWalking = false;  // Stop walk animation
-            canAttack.set(true);
+    public void stopSimulation() {
+        gameLoop.stop();
+        if (simulationThread != null) {
+            simulationThread.shutdown();
         }
+        aiPool.shutdown();
+    }
+    
+    /**
+     * Starts reloading sprite frames whenever their files change on disk.
+     * Only the changed frames are decoded, on a background thread, and they are swapped
+     * into the sprites on the FX thread between pulses. When the game runs on the FX
+     * thread the scene is redrawn right away, so the new art shows even while nothing moves;
+     * with a simulation thread it shows with the next published frame.
+     * @param sourceDirectory Folder containing the "images" directory the artists edit
+     * @throws IOException If a sprite directory cannot be watched
+     */
+    public void watchSprites(Path sourceDirectory) throws IOException {
+        spriteWatcher = new SpriteWatcher(sourceDirectory,
+                List.of(skeletonSprite, minotaurSprite, minotaurAttackSprite),
+                () -> {
+                    if (simulationThread == null) {
+                        gameWorld.drawScene(this);
+                    }
+                });
+        spriteWatcher.start();
+    }
+    
+    /**
+     * Lets spectators watch the battle with a SpectatorViewer.
+     * Snapshots are captured on the thread that ticks the game and sent by the feed's own thread.
+     * The scene as it is now is captured right away, so viewers see it even before anything moves.
+     * Call before startSimulationThread(), on the FX thread.
+     * @param port UDP port the feed listens on, or 0 for any free port
+     * @return The running feed
+     * @throws IOException If the port cannot be opened
+     */
+    public SpectatorFeed startSpectatorFeed(int port) throws IOException {
+        SpectatorFeed feed = new SpectatorFeed(port);
+        feed.captureNow(this);
+        spectatorFeed = feed;
+        return feed;
     }
     
     /**
-     * Checks if characters are close enough for combat.
-     * Used to enable attacks and stop enemy approach.
-     * @return true if within attack range, false otherwise
+     * Plays a wave file: its enemies enter one by one at the times the file gives,
+     * counted from the next tick. The file is read by its own thread while the battle goes on.
+     * Call before startSimulationThread(), on the FX thread.
+     * @param file Path of the wave file
+     * @throws IOException If the file cannot be opened
      */
-    private boolean isInAttackRange() {
-        double distance = Math.abs(skeletonX - minotaurX);
-        return distance < 225;  // 225 pixels is close enough for melee combat
+    public void startWaves(Path file) throws IOException {
+        startWaves(WaveStream.open(file, ENEMY_TYPES));
+    }
+    
+    /**
+     * Plays waves from a stream that is already being read, for example one generated by PerfSuite.
+     * Call before startSimulationThread(), on the FX thread.
+     * @param waves The upcoming spawns; types must be in ENEMY_TYPES
+     */
+    public void startWaves(WaveStream waves) {
+        this.waves = waves;
+        waveStartTime = 0;
+        startGameLoop();
+    }
+    
+    /**
+     * Starts keeping a journal of the battle's events in a folder.
+     * The enemies already on the battlefield are recorded as spawns first.
+     * Call before startSimulationThread(), on the FX thread.
+     * @param directory Folder for the journal's segment files
+     * @throws IOException If the folder or the first segment cannot be created
+     */
+    public void startJournal(Path directory) throws IOException {
+        rules.setJournal(new BattleJournal(directory));
+    }
+    
+    /**
+     * Gets the battle journal.
+     * @return The journal, or null when none is kept
+     */
+    public BattleJournal getJournal() {
+        return rules.getJournal();
+    }
+    
+    /**
+     * Gets the wave file being played.
+     * @return The waves, or null when none were started
+     */
+    public WaveStream getWaves() {
+        return waves;
+    }
+    
+    /**
+     * Replaces the combat formulas used for every attack.
+     * Called by GameBorderPane and BattleExporter when a rules file was given on the command line.
+     * @param combatRules The compiled rules to use
+     */
+    public void setCombatRules(CombatRules combatRules) {
+        rules.setCombatRules(combatRules);
+    }
+    
+    /**
+     * Switches the controller between the JavaFX AnimationTimer and an external clock.
+     * When enabled, the AnimationTimer is stopped and not started again, and the caller must call tick() itself.
+     * Used by BattleExporter and PerfSuite so frames can be stepped at a fixed rate without a visible window.
+     * @param manualPulse true to drive the game with tick(), false to use the AnimationTimer
+     */
+    public void setManualPulse(boolean manualPulse) {
+        this.manualPulse = manualPulse;
+        if (manualPulse) {
+            gameLoop.stop();  // Started by GameBorderPane before the caller took over the clock
+        }
+    }
+    
+    /**
+     * Checks if any enemy is still walking.
+     * @return true if at least one walk animation is playing
+     */
+    private boolean isAnyEnemyWalking() {
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.get(i).isWalking()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks if any enemy in view is still drawn on its way through its latest step.
+     * @param now Current time in nanoseconds
+     * @return true if the next pulse would draw an enemy somewhere else
+     */
+    private boolean isAnyEnemyGliding(long now) {
+        for (int i = 0; i < enemies.size(); i++) {
+            EnemyUnit unit = enemies.get(i);
+            if (unit.getEnemy().isAlive() && unit.isGliding(now) && isInView(unit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks if every enemy has been defeated.
+     * Used to detect the end of the battle.
+     * @return true when no enemy is alive
+     */
+    public boolean areAllEnemiesDefeated() {
+        return rules.areAllEnemiesDefeated();
     }
     
     // Getters for GameWorld to access when drawing
@@ -375,13 +984,13 @@ public class GameController {
     public CharacterSprite getSkeletonSprite() { 
         return skeletonSprite; 
     }
-
+    
     /**
-     * Gets minotaur sprite manager for rendering.
-     * @return The minotaur CharacterSprite instance
+     * Gets the cache that keeps the sprites' decoded frames within budget.
+     * @return The sprite cache
      */
-    public CharacterSprite getMinotaurSprite() { 
-        return minotaurSprite; 
+    public SpriteCache getSpriteCache() {
+        return spriteCache;
     }
 
     /**
@@ -392,14 +1001,6 @@ public class GameController {
         return skeletonController; 
     }
 
-    /**
-     * Gets minotaur animation controller for current frame.
-     * @return The minotaur AnimationController instance
-     */
-    public AnimationController getMinotaurController() { 
-        return minotaurController; 
-    }
-
     /**
      * Gets skeleton X position for rendering.
      * @return X coordinate in pixels
@@ -417,21 +1018,14 @@ public class GameController {
     }
 
     /**
-     * Gets minotaur X position for rendering.
-     * @return X coordinate in pixels
+     * Gets every enemy unit for rendering.
+     * GameWorld draws each one with its current animation.
+     * @return The list of enemy units (do not modify)
      */
-    public double getMinotaurX() { 
-        return minotaurX; 
+    public List<EnemyUnit> getEnemies() {
+        return enemies;
     }
-
-    /**
-     * Gets minotaur Y position for rendering.
-     * @return Y coordinate in pixels
-     */
-    public double getMinotaurY() { 
-        return minotaurY; 
-    }
-
+    
     /**
      * Draws the initial game scene before any animations.
      * Called during initialization to show starting positions.
@@ -450,58 +1044,76 @@ public class GameController {
     }
     
     /**
-     * Gets the enemy character for UI display and game logic.
+     * Gets the enemy character shown in the UI stats panel.
      * Allows other classes to read enemy stats without modifying them.
-     * @return The enemy character instance
+     * @return The first enemy (the minotaur)
      */
     public Enemy getEnemy() {
-    	return minotaurEnemy;
+    	return enemies.get(0).getEnemy();
     }
     
-    // Getters for GameBorderPane to access
+    /**
+     * Checks if the game logic would allow the player to attack right now.
+     * Read by FrameState when a frame is captured.
+     * @return true when a living enemy is in range on the player's turn
+     */
+    public boolean isAttackReady() {
+        return rules.isAttackReady();
+    }
     
     /**
-     * Exposes the attack availability state for UI binding.
-     * True when enemy is in range and alive, false otherwise.
-     * @return Observable property that UI components can bind to
+     * Checks if the skeleton's attack animation is playing.
+     * Read by SpectatorSnapshot to pick the skeleton's clip.
+     * @return true while the skeleton attacks
      */
-    public BooleanProperty canAttackProperty() {
-        return canAttack;
+    public boolean isSkeletonAttacking() {
+        return rules.isPlayerAttacking();
+    }
+    
+    /**
+     * Gets the feed sending the battle to spectators.
+     * Read by Main for the bandwidth summary.
+     * @return The feed, or null when nobody may watch
+     */
+    public SpectatorFeed getSpectatorFeed() {
+        return spectatorFeed;
     }
     
     /**
-     * Gets minotaur attack sprite manager for rendering.
-     * Used by GameWorld when drawing the minotaur during its attack animation.
-     * @return The minotaur attack CharacterSprite instance
+     * Gets the buffer of player commands, with their measured latencies.
+     * Read by FrameState when a frame is captured and by Main for the latency summary.
+     * @return The input buffer
      */
-    public CharacterSprite getMinotaurAttackSprite() {
-        return minotaurAttackSprite;
+    public InputBuffer getInputBuffer() {
+        return inputBuffer;
     }
     
     /**
-     * Gets minotaur attack animation controller for current frame.
-     * Used by GameWorld to determine which attack frame to display.
-     * @return The minotaur attack AnimationController instance
+     * Gets the turn order of all combatants.
+     * Lets spells and items haste or slow a combatant with changeSpeed().
+     * @return The initiative scheduler
      */
-    public AnimationController getMinotaurAttackController() {
-        return minotaurAttackController;
+    public InitiativeScheduler getInitiative() {
+        return rules.getInitiative();
     }
     
     /**
-     * Checks if the minotaur is currently in its attack animation.
-     * Used by GameWorld to decide whether to render attack or idle sprite.
-     * @return true if minotaur is attacking, false otherwise
+     * Gets the particle pool for rendering effects.
+     * Used by GameWorld to draw particles on top of the sprites.
+     * @return The ParticleSystem owned by this controller
      */
-    public boolean getIsMinotaurAttacking() {
-        return isMinotaurAttacking;
+    public ParticleSystem getParticles() {
+        return particles;
     }
     
+    // Getters for GameBorderPane to access
+    
     /**
-     * Checks if the minotaur is currently walking toward the player.
-     * Used by GameWorld to determine which sprite to render.
-     * @return true if minotaur is walking, false otherwise
+     * Exposes the attack availability state for UI binding.
+     * True when enemy is in range and alive, false otherwise.
+     * @return Observable property that UI components can bind to
      */
-    public boolean getIsMinotaurWalking() {
-        return isMinotaurWalking;
+    public BooleanProperty canAttackProperty() {
+        return canAttack;
     }
 }
\ No newline at end of file
@@ -0,0 +1,585 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Command line switches that decide how the game starts.
+ * Parsed once in Main so that optional modes can be turned on
+ * without changing the normal windowed start-up path.
+ */
+public class GameOptions {
+    /**
+     * Directory where exported battle frames are written.
+     * Null unless "--export <dir>" was given, in which case the battle is replayed offscreen.
+     */
+    private Path exportDirectory;
+
+    /**
+     * Upper limit on the number of frames an export records.
+     * 3600 frames = one minute of footage at 60 frames per second.
+     */
+    private int exportFrameLimit = 3600;
+
+    /**
+     * Number of worker threads that encode exported frames.
+     * Defaults to one per available core so encoding scales with the machine.
+     */
+    private int exportThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether the game logic runs on its own thread while the FX thread only renders.
+     * Off by default; turned on with "--sim-thread".
+     */
+    private boolean simulationThread = false;
+
+    /**
+     * Simulation steps per second when the simulation has its own thread.
+     */
+    private int simulationRate = SimulationThread.DEFAULT_STEP_RATE;
+
+    /**
+     * Combat formulas to play with.
+     * The rules shipped with the game unless "--rules <file>" was given.
+     */
+    private CombatRules combatRules;
+
+    /**
+     * Terrain of the battlefield.
+     * The map shipped with the game unless "--map <file>" was given.
+     */
+    private TileMap tileMap;
+
+    /**
+     * Folder containing the "images" directory whose sprite files are reloaded when they change.
+     * Null unless "--watch-sprites <dir>" was given.
+     */
+    private Path spriteSourceDirectory;
+
+    /**
+     * File the flight recording of the battle events is written to on exit.
+     * Null unless "--flight-recording <file>" was given.
+     */
+    private Path flightRecordingFile;
+
+    /**
+     * Wave file whose enemies join the battle while it is played.
+     * Null unless "--waves <file>" was given.
+     */
+    private Path waveFile;
+
+    /**
+     * Folder the battle journal is written to.
+     * Null unless "--journal <dir>" was given.
+     */
+    private Path journalDirectory;
+
+    /**
+     * Folder of a battle journal to summarize instead of playing.
+     * Null unless "--journal-report <dir>" was given.
+     */
+    private Path journalReportDirectory;
+
+    /**
+     * Baseline file of the scene performance suite.
+     * Null unless "--perf-suite <file>" was given, in which case no battle is played.
+     */
+    private Path perfBaselineFile;
+
+    /**
+     * Whether the performance suite records a new baseline instead of comparing with it.
+     */
+    private boolean perfBaselineUpdate = false;
+
+    /**
+     * Share a performance result may be above its baseline before it counts as a regression.
+     */
+    private double perfTolerance = 0.25;
+
+    /**
+     * Port a headless BattleServer listens on.
+     * -1 unless "--server <port>" was given, in which case no window is opened.
+     */
+    private int serverPort = -1;
+
+    /**
+     * Number of battles a server load test plays at once.
+     * 0 unless "--server-bench <sessions>" was given.
+     */
+    private int serverBenchSessions = 0;
+
+    /**
+     * Number of battles the server check plays at once.
+     * 0 unless "--server-check <sessions>" was given.
+     */
+    private int serverCheckSessions = 0;
+
+    /**
+     * UDP port spectators watch the battle on.
+     * -1 unless "--spectators <port>" was given.
+     */
+    private int spectatorPort = -1;
+
+    /**
+     * Feed to watch instead of playing.
+     * Null unless "--watch <host:port>" was given, in which case the window only shows another player's battle.
+     */
+    private InetSocketAddress watchAddress;
+
+    /**
+     * Most bytes of decoded sprite frames kept in memory.
+     * Unlimited unless "--sprite-budget <MB>" was given.
+     */
+    private long spriteBudget = SpriteCache.UNLIMITED;
+
+    /**
+     * Whether sprite frames are kept as a first frame plus the rectangles where the others differ from it.
+     * Off unless "--sprite-deltas" was given.
+     */
+    private boolean spriteDeltas = false;
+
+    /**
+     * Whether the battlefield starts out drawn by the SoftwareCompositor instead of Canvas calls.
+     * Off unless "--renderer software" was given; F3 switches while playing.
+     */
+    private boolean softwareRenderer = false;
+
+    /**
+     * Number of strips the software compositor splits each frame into.
+     * Defaults to one per available core.
+     */
+    private int compositorStrips = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of sprites the renderer benchmark draws.
+     * 0 unless "--render-bench <sprites>" was given, in which case no battle is played.
+     */
+    private int renderBenchSprites = 0;
+
+    /**
+     * Number of pulses the allocation check measures.
+     * 0 unless "--alloc-check <pulses>" was given, in which case no battle is shown.
+     */
+    private int allocCheckPulses = 0;
+
+    /**
+     * Builds the options from the raw command line arguments.
+     * Recognized switches:
+     * --export <dir>          replay a battle offscreen and write numbered PNG frames to dir
+     * --export-frames <n>     stop the export after n frames
+     * --export-threads <n>    number of encoder threads
+     * --sim-thread            run the game logic on its own thread
+     * --sim-rate <n>          step the game logic n times a second on its own thread (implies --sim-thread)
+     * --rules <file>          read the combat formulas from file instead of the built-in rules
+     * --map <file>            read the battlefield terrain from file instead of the built-in map
+     * --watch-sprites <dir>   reload sprite frames from dir/images while the game runs
+     * --flight-recording <f>  keep a flight recording of the battle events, written to f on exit
+     * --waves <file>          bring in more enemies at the times a wave file gives
+     * --journal <dir>         keep a binary journal of the battle's events in dir
+     * --journal-report <dir>  print a summary of the journal in dir and exit
+     * --perf-suite <file>     play preset battles headless and compare their results with the baseline in file,
+     *                         such as perf/scene.baseline
+     * --perf-update           record the performance suite's results as the new baseline
+     * --perf-tolerance <f>    share a result may exceed its baseline by, such as 0.25 (default)
+     * --server <port>         host headless battles for clients on a local port instead of opening a window
+     * --server-bench <n>      play n battles at once against an in-process server and report the load
+     * --server-check <n>      play n battles against an in-process server, check the protocol and fail on any error
+     * --spectators <port>     let spectators watch the battle through a UDP feed on port
+     * --watch <host:port>     watch the battle another game sends with --spectators instead of playing
+     * --sprite-budget <MB>    keep at most this many megabytes of decoded sprite frames
+     * --sprite-deltas         store each animation as its first frame plus what changes in the others
+     * --renderer <name>       draw the battlefield with "canvas" calls (default) or the "software" compositor
+     * --compositor-strips <n> number of strips the software compositor blends in parallel
+     * --render-bench <n>      time both renderers drawing n sprites and exit
+     * --alloc-check <n>       play n pulses headless and fail if the game loop allocates
+     * @param args Raw arguments as returned by Application.getParameters().getRaw(), or given to main()
+     * @return The parsed options
+     * @throws IllegalArgumentException If a switch is unknown or is missing its value,
+     *         or if the rules or map file cannot be read or is not valid
+     */
+    public static GameOptions parse(List<String> args) {
+        GameOptions options = new GameOptions();
+
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "--export":
+                    options.exportDirectory = Path.of(valueAfter(args, i++));
+                    break;
+                case "--export-frames":
+                    options.exportFrameLimit = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--export-threads":
+                    options.exportThreads = Math.max(1, Integer.parseInt(valueAfter(args, i++)));
+                    break;
+                case "--sim-thread":
+                    options.simulationThread = true;
+                    break;
+                case "--sim-rate":
+                    options.simulationRate = Integer.parseInt(valueAfter(args, i++));
+                    if (options.simulationRate <= 0) {
+                        throw new IllegalArgumentException("--sim-rate must be positive");
+                    }
+                    options.simulationThread = true;
+                    break;
+                case "--rules":
+                    options.combatRules = loadRules(Path.of(valueAfter(args, i++)));
+                    break;
+                case "--map":
+                    options.tileMap = loadMap(Path.of(valueAfter(args, i++)));
+                    break;
+                case "--watch-sprites":
+                    options.spriteSourceDirectory = Path.of(valueAfter(args, i++));
+                    break;
+                case "--flight-recording":
+                    options.flightRecordingFile = Path.of(valueAfter(args, i++));
+                    break;
+                case "--waves":
+                    options.waveFile = Path.of(valueAfter(args, i++));
+                    break;
+                case "--journal":
+                    options.journalDirectory = Path.of(valueAfter(args, i++));
+                    break;
+                case "--journal-report":
+                    options.journalReportDirectory = Path.of(valueAfter(args, i++));
+                    break;
+                case "--perf-suite":
+                    options.perfBaselineFile = Path.of(valueAfter(args, i++));
+                    break;
+                case "--perf-update":
+                    options.perfBaselineUpdate = true;
+                    break;
+                case "--perf-tolerance":
+                    options.perfTolerance = Double.parseDouble(valueAfter(args, i++));
+                    if (options.perfTolerance < 0) {
+                        throw new IllegalArgumentException("--perf-tolerance cannot be negative");
+                    }
+                    break;
+                case "--server":
+                    options.serverPort = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--server-bench":
+                    options.serverBenchSessions = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--server-check":
+                    options.serverCheckSessions = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--spectators":
+                    options.spectatorPort = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--watch":
+                    options.watchAddress = parseAddress(valueAfter(args, i++));
+                    break;
+                case "--sprite-budget":
+                    options.spriteBudget = (long) (Double.parseDouble(valueAfter(args, i++)) * 1024 * 1024);
+                    if (options.spriteBudget < 0) {
+                        throw new IllegalArgumentException("--sprite-budget cannot be negative");
+                    }
+                    break;
+                case "--sprite-deltas":
+                    options.spriteDeltas = true;
+                    break;
+                case "--renderer":
+                    String renderer = valueAfter(args, i++);
+                    if (!renderer.equals("canvas") && !renderer.equals("software")) {
+                        throw new IllegalArgumentException("--renderer must be canvas or software: " + renderer);
+                    }
+                    options.softwareRenderer = renderer.equals("software");
+                    break;
+                case "--compositor-strips":
+                    options.compositorStrips = Math.max(1, Integer.parseInt(valueAfter(args, i++)));
+                    break;
+                case "--render-bench":
+                    options.renderBenchSprites = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                case "--alloc-check":
+                    options.allocCheckPulses = Integer.parseInt(valueAfter(args, i++));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Reads a "host:port" address named on the command line.
+     * @param value The address
+     * @return The address, with the host looked up
+     * @throws IllegalArgumentException If there is no port or it is not a number
+     */
+    private static InetSocketAddress parseAddress(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + value);
+        }
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    /**
+     * Reads and compiles a rules file named on the command line.
+     * @param file Path of the rules file
+     * @return The compiled rules
+     * @throws IllegalArgumentException If the file cannot be read or a rule is not valid
+     */
+    private static CombatRules loadRules(Path file) {
+        try {
+            return CombatRules.load(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read rules file " + file, e);
+        }
+    }
+
+    /**
+     * Reads a map file named on the command line.
+     * @param file Path of the map file
+     * @return The loaded map
+     * @throws IllegalArgumentException If the file cannot be read or is not a valid map
+     */
+    private static TileMap loadMap(Path file) {
+        try {
+            return TileMap.load(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read map file " + file, e);
+        }
+    }
+
+    /**
+     * Gets the value that follows a switch on the command line.
+     * @param args All raw arguments
+     * @param index Position of the switch itself
+     * @return The argument right after the switch
+     * @throws IllegalArgumentException If the switch is the last argument
+     */
+    private static String valueAfter(List<String> args, int index) {
+        if (index + 1 >= args.size()) {
+            throw new IllegalArgumentException("Missing value for " + args.get(index));
+        }
+        return args.get(index + 1);
+    }
+
+    /**
+     * Checks if the game should replay a battle offscreen instead of opening a window.
+     * @return true if an export directory was given
+     */
+    public boolean isExportMode() {
+        return exportDirectory != null;
+    }
+
+    /**
+     * Gets the directory where exported frames are written.
+     * @return The export directory, or null when not exporting
+     */
+    public Path getExportDirectory() {
+        return exportDirectory;
+    }
+
+    /**
+     * Gets the maximum number of frames to export.
+     * @return Frame limit for one exported battle
+     */
+    public int getExportFrameLimit() {
+        return exportFrameLimit;
+    }
+
+    /**
+     * Gets how many worker threads encode exported frames.
+     * @return Number of encoder threads (at least 1)
+     */
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    /**
+     * Checks if the game logic should run on its own simulation thread.
+     * @return true if "--sim-thread" was given
+     */
+    public boolean isSimulationThread() {
+        return simulationThread;
+    }
+
+    /**
+     * Gets how often the simulation thread steps the game.
+     * @return Steps per second; 60 unless "--sim-rate" was given
+     */
+    public int getSimulationRate() {
+        return simulationRate;
+    }
+
+    /**
+     * Gets the combat formulas to play with.
+     * @return Rules from "--rules", or the rules shipped with the game
+     */
+    public CombatRules getCombatRules() {
+        return combatRules != null ? combatRules : CombatRules.getDefault();
+    }
+
+    /**
+     * Gets the terrain of the battlefield.
+     * @return Map from "--map", or the map shipped with the game
+     */
+    public TileMap getTileMap() {
+        return tileMap != null ? tileMap : TileMap.getDefault();
+    }
+
+    /**
+     * Gets the folder whose sprite files are watched for changes.
+     * @return Folder containing "images", or null when hot reload is off
+     */
+    public Path getSpriteSourceDirectory() {
+        return spriteSourceDirectory;
+    }
+
+    /**
+     * Gets the file the flight recording is written to.
+     * @return Recording file, or null when no recording was asked for
+     */
+    public Path getFlightRecordingFile() {
+        return flightRecordingFile;
+    }
+
+    /**
+     * Gets the wave file to play.
+     * @return Wave file, or null when only the opening minotaur fights
+     */
+    public Path getWaveFile() {
+        return waveFile;
+    }
+
+    /**
+     * Gets the folder the battle journal is written to.
+     * @return Journal folder, or null when no journal is kept
+     */
+    public Path getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Gets the folder of a journal to summarize instead of playing.
+     * @return Journal folder, or null to play
+     */
+    public Path getJournalReportDirectory() {
+        return journalReportDirectory;
+    }
+
+    /**
+     * Gets the baseline file of the performance suite.
+     * @return Baseline file, or null to play
+     */
+    public Path getPerfBaselineFile() {
+        return perfBaselineFile;
+    }
+
+    /**
+     * Checks if the performance suite should record a new baseline.
+     * @return true if "--perf-update" was given
+     */
+    public boolean isPerfBaselineUpdate() {
+        return perfBaselineUpdate;
+    }
+
+    /**
+     * Gets how far a performance result may exceed its baseline.
+     * @return Tolerance as a fraction of the baseline
+     */
+    public double getPerfTolerance() {
+        return perfTolerance;
+    }
+
+    /**
+     * Checks if the game should run as a headless battle server or its load test instead of opening a window.
+     * @return true if "--server", "--server-bench" or "--server-check" was given
+     */
+    public boolean isServerMode() {
+        return serverPort >= 0 || serverBenchSessions > 0 || serverCheckSessions > 0;
+    }
+
+    /**
+     * Gets the port the battle server listens on.
+     * @return Port number (0 picks any free port), or -1 when not running a server
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * Gets the number of battles the server load test plays at once.
+     * @return Number of sessions, or 0 when not running the load test
+     */
+    public int getServerBenchSessions() {
+        return serverBenchSessions;
+    }
+
+    /**
+     * Gets the number of battles the server check plays at once.
+     * @return Number of sessions, or 0 when not running the check
+     */
+    public int getServerCheckSessions() {
+        return serverCheckSessions;
+    }
+
+    /**
+     * Gets the UDP port spectators watch the battle on.
+     * @return Port number (0 picks any free port), or -1 when nobody may watch
+     */
+    public int getSpectatorPort() {
+        return spectatorPort;
+    }
+
+    /**
+     * Gets the feed to watch instead of playing.
+     * @return Address of the feed, or null to play
+     */
+    public InetSocketAddress getWatchAddress() {
+        return watchAddress;
+    }
+
+    /**
+     * Gets how many bytes of decoded sprite frames may be kept in memory.
+     * @return Budget in bytes, or SpriteCache.UNLIMITED
+     */
+    public long getSpriteBudget() {
+        return spriteBudget;
+    }
+
+    /**
+     * Checks if sprite frames should be delta-encoded.
+     * @return true if "--sprite-deltas" was given
+     */
+    public boolean isSpriteDeltas() {
+        return spriteDeltas;
+    }
+
+    /**
+     * Checks if the battlefield should start out drawn by the software compositor.
+     * @return true if "--renderer software" was given
+     */
+    public boolean isSoftwareRenderer() {
+        return softwareRenderer;
+    }
+
+    /**
+     * Gets how many strips the software compositor splits each frame into.
+     * @return Strip count (at least 1)
+     */
+    public int getCompositorStrips() {
+        return compositorStrips;
+    }
+
+    /**
+     * Gets the number of sprites the renderer benchmark draws.
+     * @return Number of sprites, or 0 when not benchmarking
+     */
+    public int getRenderBenchSprites() {
+        return renderBenchSprites;
+    }
+
+    /**
+     * Gets the number of pulses the allocation check measures.
+     * @return Number of pulses, or 0 when not checking
+     */
+    public int getAllocCheckPulses() {
+        return allocCheckPulses;
+    }
+}
@@ -1,12 +1,6 @@
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
-import javafx.scene.paint.Color;
-import javafx.scene.paint.CycleMethod;
-import javafx.scene.paint.LinearGradient;
-import javafx.scene.paint.RadialGradient;
-import javafx.scene.paint.Stop;
-import javafx.scene.shape.ArcType;
 
 /**
  * Game rendering canvas that handles all visual output.
@@ -15,89 +9,285 @@ import javafx.scene.shape.ArcType;
  */
 public class GameWorld extends Canvas {
     
+    /**
+     * Size characters are drawn at relative to their sprite images (50%).
+     * Also used by GameController to work out how much room a sprite takes when culling.
+     */
+    public static final double SPRITE_SCALE = 0.5;
+    
+    /**
+     * Zoom change for one step of the mouse wheel.
+     */
+    private static final double ZOOM_STEP = 1.1;
+    
+    /**
+     * The battlefield terrain: which tiles there are and which can be walked on.
+     */
+    private final TileMap tileMap;
+    
+    /**
+     * The battlefield terrain, drawn from cached pre-rendered chunks.
+     */
+    private final TerrainChunkCache terrain;
+    
+    /**
+     * Frame reused by drawScene(GameController) to copy the live state into.
+     */
+    private final FrameState localFrame = new FrameState(GameController.PARTICLE_CAPACITY);
+    
+    /**
+     * Which part of the battlefield the canvas shows.
+     */
+    private final Camera camera;
+    
+    /**
+     * Software backend that composites each frame into one image, or null to draw with Canvas calls.
+     */
+    private SoftwareCompositor compositor;
+    
+    /**
+     * The frame drawn most recently, redrawn when the camera moves; null before the first draw.
+     */
+    private FrameState lastFrame;
+    
+    /**
+     * Time the last frame was drawn for, so a redraw shows moving enemies where they were.
+     */
+    private long lastDrawTime = FrameState.LATEST;
+    
+    /**
+     * Canvas position of the mouse at the last press or drag event, for panning.
+     */
+    private double dragX, dragY;
+    
+    /**
+     * Constructor that creates the game canvas over the map shipped with the game.
+     */
+    public GameWorld() {
+        this(TileMap.getDefault());
+    }
+    
     /**
      * Constructor that creates the game canvas.
      * Sets up initial dimensions and draws the background.
+     * @param map Terrain of the battlefield; also decides how far the camera can move
      */
-    public GameWorld() {
+    public GameWorld(TileMap map) {
         // Create canvas with 700x700 pixel dimensions
         // Square canvas provides equal space for horizontal and vertical game play
         super(700, 700);
         
+        tileMap = map;
+        camera = new Camera(700, 700, map.getWidth(), map.getHeight());
+        terrain = new TerrainChunkCache(map, 700, 700);
+        
         // Draw the initial background
         // Sets up the scene before any characters appear
         drawBackground();
+        
+        // Drag to move the camera, scroll to zoom toward the pointer
+        setOnMousePressed(event -> {
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+        setOnMouseDragged(event -> {
+            camera.panBy(dragX - event.getX(), dragY - event.getY());
+            dragX = event.getX();
+            dragY = event.getY();
+            redraw();
+        });
+        setOnScroll(event -> {
+            if (event.getDeltaY() != 0) {
+                double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+                camera.zoomAt(camera.getZoom() * factor, event.getX(), event.getY());
+                redraw();
+            }
+        });
+    }
+    
+    /**
+     * Gets the terrain of the battlefield.
+     * Used by GameController to find paths around obstacles.
+     * @return The tile map
+     */
+    public TileMap getTileMap() {
+        return tileMap;
+    }
+    
+    /**
+     * Gets the camera that decides which part of the battlefield is shown.
+     * @return The camera
+     */
+    public Camera getCamera() {
+        return camera;
+    }
+    
+    /**
+     * Switches between drawing with Canvas calls and compositing in software, and redraws the last frame.
+     * Can be called between any two frames.
+     * @param compositor Compositor sized like this canvas, or null to draw with Canvas calls
+     */
+    public void setSoftwareCompositor(SoftwareCompositor compositor) {
+        this.compositor = compositor;
+        redraw();
+    }
+    
+    /**
+     * Gets the software backend in use.
+     * @return The compositor, or null when drawing with Canvas calls
+     */
+    public SoftwareCompositor getSoftwareCompositor() {
+        return compositor;
+    }
+    
+    /**
+     * Draws the last frame again, for example after the camera moved.
+     * Does nothing before the first frame was drawn.
+     */
+    public void redraw() {
+        if (lastFrame != null) {
+            drawScene(lastFrame, lastDrawTime);
+        }
     }
 
     /**
      * Public method for GameController to trigger scene redraws.
-     * Called whenever animation frames change or positions update.
-     * Redraws entire scene including background and all visible sprites.
+     * Draws every enemy at its latest position; see drawScene(GameController, long).
      * @param controller GameController providing current game state
      */
     public void drawScene(GameController controller) {
+        drawScene(controller, FrameState.LATEST);
+    }
+    
+    /**
+     * Public method for GameController to trigger scene redraws.
+     * Called on every pulse while something animates or an enemy glides between steps.
+     * Copies the controller's state into a reusable frame and draws that.
+     * @param controller GameController providing current game state
+     * @param time Pulse time in nanoseconds, used to place walking enemies between their steps
+     */
+    public void drawScene(GameController controller, long time) {
+        localFrame.capture(controller);
+        drawScene(localFrame, time);
+    }
+    
+    /**
+     * Draws one captured frame with every enemy at its latest position.
+     * @param frame The game state to draw
+     */
+    public void drawScene(FrameState frame) {
+        drawScene(frame, FrameState.LATEST);
+    }
+    
+    /**
+     * Draws one captured frame.
+     * Redraws entire scene including background and all visible sprites.
+     * Positions in the frame are world coordinates; the camera decides where they land
+     * on the canvas, and sprites outside the view are skipped.
+     * Walking enemies are drawn part of the way through their latest step, by how much of the
+     * step's time has passed at the given time, so they move smoothly between simulation steps.
+     * Used directly by the render loop when the simulation runs on its own thread.
+     * With a software compositor the frame is composited into its image, which is then drawn in one call.
+     * @param frame The game state to draw
+     * @param time Time to draw the frame for in nanoseconds, or FrameState.LATEST
+     */
+    public void drawScene(FrameState frame, long time) {
+        // Draw time and counts for the flight recorder; no event is created while nobody records
+        SceneDrawEvent drawEvent = null;
+        if (SceneDrawEvent.isRecording()) {
+            drawEvent = new SceneDrawEvent();
+            drawEvent.begin();
+        }
+        lastFrame = frame;
+        lastDrawTime = time;
+        CharacterSprite.beginDrawPass();
+        
+        int spritesDrawn;
+        if (compositor != null) {
+            spritesDrawn = compositor.composite(frame, time, camera);
+            GraphicsContext gc = this.getGraphicsContext2D();
+            gc.setTransform(1, 0, 0, 1, 0, 0);
+            gc.drawImage(compositor.getImage(), 0, 0);
+        } else {
+            spritesDrawn = drawWithCanvas(frame, time);
+        }
+        
+        if (drawEvent != null) {
+            drawEvent.finish(spritesDrawn, 1 + frame.getEnemyCount() - spritesDrawn,
+                    frame.getParticles().getLiveCount());
+        }
+    }
+    
+    /**
+     * Draws one captured frame with Canvas calls: terrain, enemies, skeleton, then particles.
+     * @param frame The game state to draw
+     * @param time Time to draw the frame for in nanoseconds, or FrameState.LATEST
+     * @return Number of sprites drawn
+     */
+    private int drawWithCanvas(FrameState frame, long time) {
+        int spritesDrawn = 0;
+        
+        // Everything from here on is drawn in world coordinates through the camera
+        GraphicsContext gc = this.getGraphicsContext2D();
+        double zoom = camera.getZoom();
+        gc.setTransform(zoom, 0, 0, zoom, -camera.getX() * zoom, -camera.getY() * zoom);
+        
         // Clear and redraw background
         // Ensures clean slate for each frame (no ghosting)
         drawBackground();
         
-     // Draw minotaur if it's on screen and alive
-        double minotaurX = controller.getMinotaurX();
-        if (minotaurX < 800 && controller.getEnemy().isAlive()) {  
-            // Choose which sprite to render based on minotaur's current action
-            // Attack animation uses different sprite sheet than walking/idle
-            if (controller.getIsMinotaurAttacking()) {
-                // Draw minotaur using attack animation frames
-                drawSprite(controller.getMinotaurAttackSprite(),
-                           controller.getMinotaurAttackController().getCurrentFrame(),
-                           minotaurX,
-                           controller.getMinotaurY(),
-                           0.5,    // Scale to 50% of original size
-                           true);  // Flip horizontally to face left
-            } else if (controller.getIsMinotaurWalking()){
-                // Draw minotaur using walking/idle animation frames
-                drawSprite(controller.getMinotaurSprite(), 
-                        controller.getMinotaurController().getCurrentFrame(),
-                        minotaurX, 
-                        controller.getMinotaurY(), 
-                        0.5,    // Scale to 50% of original size
-                        true);  // Flip horizontally to face left
-            }
-            
-            else {
-                // Idle state - draw first frame of attack sprite as standing pose
-                // Uses frame 0 which shows minotaur in neutral stance with feet planted
-                drawSprite(controller.getMinotaurAttackSprite(),
-                        0,
-                        minotaurX,
-                        controller.getMinotaurY(),
-                        0.5,    // Scale to 50% of original size
-                        true);  // Flip horizontally to face left
+        // Draw every enemy that is alive and in view
+        for (int i = 0; i < frame.getEnemyCount(); i++) {
+            if (frame.isEnemyAlive(i)
+                    && drawSprite(frame.getEnemySprite(i),
+                                  frame.getEnemyFrame(i),
+                                  frame.getEnemyX(i, time),
+                                  frame.getEnemyY(i, time),
+                                  SPRITE_SCALE,  // Scale to 50% of original size
+                                  true)) {       // Flip horizontally to face left
+                spritesDrawn++;
             }
         }
         
-        // Always draw skeleton (player character is always visible)
-        drawSprite(controller.getSkeletonSprite(), 
-                  controller.getSkeletonController().getCurrentFrame(),
-                  controller.getSkeletonX(), 
-                  controller.getSkeletonY(), 
-                  0.5,     // Scale to 50% of original size
-                  false);  // Don't flip - skeleton faces right
+        // Draw the skeleton unless the camera was moved away from it
+        if (drawSprite(frame.getSkeletonSprite(), 
+                       frame.getSkeletonFrame(),
+                       frame.getSkeletonX(), 
+                       frame.getSkeletonY(), 
+                       SPRITE_SCALE,  // Scale to 50% of original size
+                       false)) {      // Don't flip - skeleton faces right
+            spritesDrawn++;
+        }
+        
+        // Draw particle effects last so they appear over the characters
+        frame.getParticles().render(gc);
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        return spritesDrawn;
     }
     
     /**
      * Generic sprite drawing method supporting scaling and flipping.
      * Centers sprites at specified coordinates for consistent positioning.
      * Handles horizontal flipping for directional facing.
+     * Sprites outside the camera's view are not drawn.
      * @param sprite The CharacterSprite containing frame images
      * @param frameIndex Which frame of animation to draw
      * @param x X coordinate for sprite center
      * @param y Y coordinate for sprite center
      * @param scale Size multiplier (0.5 = half size, 2.0 = double size)
      * @param flipHorizontal Whether to mirror the sprite horizontally
+     * @return true if the sprite was drawn, false if it was out of view or had no such frame
      */
-    private void drawSprite(CharacterSprite sprite, int frameIndex, double x, double y, double scale, boolean flipHorizontal) {
+    private boolean drawSprite(CharacterSprite sprite, int frameIndex, double x, double y, double scale, boolean flipHorizontal) {
         GraphicsContext gc = this.getGraphicsContext2D();
         
+        // Cull with the first frame's size, which every frame of an animation shares, before the frame
+        // is asked for: a delta-encoded frame is rebuilt when it is asked for, even if it is never drawn
+        Image placeholder = sprite.getPlaceholder();
+        if (!camera.isVisible(x, y, placeholder.getWidth() * scale / 2, placeholder.getHeight() * scale / 2)) {
+            return false;
+        }
+        
         // Get the specific frame image to draw
         Image frame = sprite.getFrame(frameIndex);
         if (frame != null) {
@@ -111,21 +301,9 @@ public class GameWorld extends Canvas {
              * images
              */
             if (flipHorizontal) {
-                // Save the current transformation state
-                // Allows us to modify then restore transformations
-                gc.save();
-                
-                // Flip horizontally by scaling x by -1
-                // This mirrors the image around the Y axis
-                gc.scale(-1, 1);
-                
-                // When flipped, we need to draw at the negative x position
-                // The flip transformation will mirror it back to the correct spot
-                gc.drawImage(frame, -x - width/2, y - height/2, width, height);
-                
-                // Restore the original transformation state
-                // Prevents flip from affecting subsequent draws
-                gc.restore();
+                // Draw with a negative width to mirror the image around its center
+                // Unlike save()/scale()/restore() this does not copy the context state
+                gc.drawImage(frame, x + width/2, y - height/2, -width, height);
             } else {
                 // Normal drawing (not flipped)
                 // Center the sprite at the given coordinates
@@ -133,92 +311,22 @@ public class GameWorld extends Canvas {
                 double drawY = y - height / 2;  // Offset up by half height
                 gc.drawImage(frame, drawX, drawY, width, height);
             }
+            return true;
         }
+        return false;
     }
     
     /**
-     * Draws the game background including sky, ground, mountains, and sun.
-     * Creates a outdoor scene with gradient effects for visual depth.
+     * Draws the terrain in view from its cached chunks.
      * Called before drawing sprites to provide backdrop.
+     * The terrain covers the whole canvas, so nothing from the previous frame shows through.
+     * Smoothing is turned off so tiles keep sharp edges and chunks meet without seams when zoomed.
      */
     private void drawBackground() {
-        // Get the graphics context to draw on this canvas
         GraphicsContext gc = this.getGraphicsContext2D();
-        
-        // Paint the sky - light blue rectangle covering entire canvas
-        // Creates daytime atmosphere
-        gc.setFill(Color.LIGHTBLUE);
-        gc.fillRect(0, 0, 700, 700);  
-        
-        // Paint the ground - green rectangle for lower portion
-        // Represents grassy terrain where characters stand
-        gc.setFill(Color.rgb(100, 200, 100));  // Custom green color
-        gc.fillRect(0, 240, 700, 460);         // Starts at y=240, covers rest of canvas
-        
-        // Create gradient for mountains
-        // Simulates snow-capped peaks with rocky base
-        Stop[] mountainStops = new Stop[] {
-            new Stop(0, Color.WHITE),           // Snow at peak (0% = top)
-            new Stop(0.3, Color.LIGHTGRAY),     // Rocky upper slopes (30% down)
-            new Stop(0.6, Color.rgb(101, 67, 33)) // Brown earth at base (60% down)
-        };
-        
-        // Linear gradient from top to bottom of mountain
-        LinearGradient gradient = new LinearGradient(
-            0.5, 0,     // Start point (center-top)
-            0.5, 1,     // End point (center-bottom)
-            true,       // Proportional (relative to shape bounds)
-            CycleMethod.NO_CYCLE,  // Don't repeat gradient
-            mountainStops
-        );
-        
-        // Draw first triangle/mountain using gradient
-        // Closer/larger mountain on the left
-        gc.setFill(gradient);
-        gc.setStroke(gradient);
-        gc.setLineWidth(2);     // Border width for mountain outline
-        gc.beginPath();
-        gc.moveTo(100, 20);     // Peak position
-        gc.lineTo(15, 250);     // Left base
-        gc.lineTo(200, 250);    // Right base
-        gc.closePath();
-        gc.fill();              // Fill with gradient
-        gc.stroke();            // Draw outline
-        
-        // Draw second triangle/mountain using same gradient
-        // Farther/smaller mountain offset to the right
-        gc.beginPath();
-        gc.moveTo(250, 50);     // Peak position (lower = farther)
-        gc.lineTo(150, 300);    // Left base
-        gc.lineTo(350, 300);    // Right base
-        gc.closePath();
-        gc.fill();              // Fill with gradient
-        gc.stroke();            // Draw outline
-        
-        // Create radial gradient for sun
-        // Simulates glowing effect with hot center
-        Stop[] sunGradient = new Stop[] {
-            new Stop(0, Color.rgb(255, 220, 100)),  // Bright yellow center
-            new Stop(1, Color.rgb(255, 100, 30))    // Orange-red edges
-        };
-        
-        // Radial gradient emanating from center
-        RadialGradient radialGradient = new RadialGradient(
-            0, 0,           // Focus point angle and distance
-            0.5, 0.5,       // Center point (middle of shape)
-            0.5,            // Radius (0.5 = half the shape size)
-            true,           // Proportional
-            CycleMethod.NO_CYCLE,  // Don't repeat
-            sunGradient
-        );
-
-        // Draw the sun as an arc in the upper right corner
-        // Partial circle creates setting/rising sun effect
-        gc.setFill(radialGradient);
-        gc.fillArc(580, 0,      // Position (partially off-screen)
-                   100, 100,     // Size (width, height)
-                   90,           // Starting angle (90° = bottom)
-                   360,          // Arc extent (360° = full circle)
-                   ArcType.OPEN); // Open arc (no lines to center)
+        double zoom = camera.getZoom();
+        gc.setImageSmoothing(false);
+        terrain.draw(gc, camera.getX(), camera.getY(), getWidth() / zoom, getHeight() / zoom);
+        gc.setImageSmoothing(true);
     }
 }
\ No newline at end of file
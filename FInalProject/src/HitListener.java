@@ -0,0 +1,14 @@
+/**
+ * Hears about every attack that lands in a battle played by BattleRules,
+ * so the caller can show it, for example with sparks on the target.
+ * Called on the thread that ticks the battle, after the damage was dealt.
+ */
+public interface HitListener {
+    /**
+     * Called after a hit was dealt.
+     * @param target The character that took damage; it may have just been defeated
+     * @param x X coordinate of the target's sprite center
+     * @param y Y coordinate of the target's sprite center
+     */
+    void hit(Character target, double x, double y);
+}
@@ -0,0 +1,275 @@
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+/**
+ * Which parts of one sprite frame are solid, as a grid of bits built from the frame's alpha channel.
+ * Each bit covers a square block of image pixels and is set if any pixel in the block is
+ * mostly opaque, so thin parts such as a sword tip are never lost when the mask is downsampled.
+ * Rows are stored as 64-bit words, so two masks are compared 64 cells at a time with a single AND.
+ * The tight box around the solid cells is kept as well, so most pairs of sprites
+ * are ruled out by a box test before any bits are looked at.
+ * Masks never change after they are built, so they can be read from any thread.
+ */
+public final class HitMask {
+    /**
+     * Smallest alpha (0-255) that counts as solid.
+     * 128 ignores soft shadows and the faded edges of anti-aliased outlines.
+     */
+    public static final int ALPHA_THRESHOLD = 128;
+
+    /**
+     * Width of the mask in cells.
+     */
+    private final int width;
+
+    /**
+     * Height of the mask in cells.
+     */
+    private final int height;
+
+    /**
+     * Number of 64-bit words in each row.
+     */
+    private final int wordsPerRow;
+
+    /**
+     * The cells, row by row; bit x % 64 of word y * wordsPerRow + x / 64 is cell (x, y).
+     * Bits past the width of a row are always 0.
+     */
+    private final long[] bits;
+
+    /**
+     * Smallest and largest column and row that contain a solid cell.
+     * maxX is less than minX when the mask has no solid cells at all.
+     */
+    private final int minX, minY, maxX, maxY;
+
+    /**
+     * Creates a mask from its bits and works out the box around the solid cells.
+     * @param width Width in cells
+     * @param height Height in cells
+     * @param bits Cells, row by row, as described for the bits field
+     */
+    private HitMask(int width, int height, long[] bits) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) / 64;
+        this.bits = bits;
+
+        int left = width, top = height, right = -1, bottom = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (get(x, y)) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+        this.minX = left;
+        this.minY = top;
+        this.maxX = right;
+        this.maxY = bottom;
+    }
+
+    /**
+     * Builds a mask from an image's alpha channel.
+     * @param image A fully loaded image
+     * @param cellSize Width and height in image pixels of the block each bit covers; 1 keeps full detail
+     * @return The mask, ceil(width / cellSize) by ceil(height / cellSize) cells
+     * @throws IllegalArgumentException If cellSize is not positive or the image has no readable pixels
+     */
+    public static HitMask fromImage(Image image, int cellSize) {
+        PixelReader reader = image.getPixelReader();
+        if (reader == null) {
+            throw new IllegalArgumentException("Image pixels cannot be read: " + image.getUrl());
+        }
+        int imageWidth = (int) image.getWidth();
+        int imageHeight = (int) image.getHeight();
+        int[] argb = new int[imageWidth * imageHeight];
+        reader.getPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbInstance(), argb, 0, imageWidth);
+        return fromArgb(argb, imageWidth, imageHeight, cellSize);
+    }
+
+    /**
+     * Builds a mask from pixels already read, for callers that decode images without JavaFX.
+     * @param argb Pixels in non-premultiplied ARGB, row by row
+     * @param imageWidth Width of the image in pixels
+     * @param imageHeight Height of the image in pixels
+     * @param cellSize Width and height in image pixels of the block each bit covers; 1 keeps full detail
+     * @return The mask, ceil(width / cellSize) by ceil(height / cellSize) cells
+     * @throws IllegalArgumentException If cellSize is not positive or there are fewer pixels than the size says
+     */
+    public static HitMask fromArgb(int[] argb, int imageWidth, int imageHeight, int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        if (argb.length < imageWidth * imageHeight) {
+            throw new IllegalArgumentException("Need " + imageWidth * imageHeight + " pixels, got " + argb.length);
+        }
+
+        int width = (imageWidth + cellSize - 1) / cellSize;
+        int height = (imageHeight + cellSize - 1) / cellSize;
+        int wordsPerRow = (width + 63) / 64;
+        long[] bits = new long[wordsPerRow * height];
+
+        for (int y = 0; y < imageHeight; y++) {
+            int rowStart = (y / cellSize) * wordsPerRow;
+            int pixelRow = y * imageWidth;
+            for (int x = 0; x < imageWidth; x++) {
+                if (argb[pixelRow + x] >>> 24 >= ALPHA_THRESHOLD) {
+                    int cell = x / cellSize;
+                    bits[rowStart + cell / 64] |= 1L << (cell % 64);
+                }
+            }
+        }
+        return new HitMask(width, height, bits);
+    }
+
+    /**
+     * Builds the mask of the same frame drawn mirrored left to right.
+     * Flipped sprites use a mirrored mask made once at load time, so collision tests never flip bits.
+     * @return The mirrored mask
+     */
+    public HitMask mirrored() {
+        long[] flipped = new long[bits.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (get(x, y)) {
+                    int mirroredX = width - 1 - x;
+                    flipped[y * wordsPerRow + mirroredX / 64] |= 1L << (mirroredX % 64);
+                }
+            }
+        }
+        return new HitMask(width, height, flipped);
+    }
+
+    /**
+     * Builds one mask that is solid wherever any of several masks is, as if all of them were drawn
+     * centered on the same point. Masks are centered by their width / 2 and height / 2 cells, so the
+     * union is made 2 * max(width / 2) + 1 cells wide (and likewise high): centered the same way,
+     * it puts every mask's cells exactly where that mask would put them.
+     * Touching the union is the same as touching at least one of the masks, in a single test.
+     * @param masks Masks to combine; null entries are skipped
+     * @param from Index of the first mask
+     * @param to Index past the last mask
+     * @return The union; an empty 1x1 mask if there are no masks in the range
+     */
+    public static HitMask union(HitMask[] masks, int from, int to) {
+        int halfWidth = 0, halfHeight = 0;
+        for (int i = from; i < to; i++) {
+            if (masks[i] != null) {
+                halfWidth = Math.max(halfWidth, masks[i].width / 2);
+                halfHeight = Math.max(halfHeight, masks[i].height / 2);
+            }
+        }
+        int width = 2 * halfWidth + 1;
+        int height = 2 * halfHeight + 1;
+        int wordsPerRow = (width + 63) / 64;
+        long[] bits = new long[wordsPerRow * height];
+
+        for (int i = from; i < to; i++) {
+            HitMask mask = masks[i];
+            if (mask == null) {
+                continue;
+            }
+            int left = halfWidth - mask.width / 2;
+            int top = halfHeight - mask.height / 2;
+            for (int y = mask.minY; y <= mask.maxY; y++) {
+                for (int x = mask.minX; x <= mask.maxX; x++) {
+                    if (mask.get(x, y)) {
+                        int unionX = left + x;
+                        bits[(top + y) * wordsPerRow + unionX / 64] |= 1L << (unionX % 64);
+                    }
+                }
+            }
+        }
+        return new HitMask(width, height, bits);
+    }
+
+    /**
+     * Checks if one cell is solid.
+     * @param x Column
+     * @param y Row
+     * @return true if the cell is solid; false outside the mask
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return false;
+        }
+        return (bits[y * wordsPerRow + x / 64] >>> (x % 64) & 1) != 0;
+    }
+
+    /**
+     * Gets the width of the mask.
+     * @return Width in cells
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the mask.
+     * @return Height in cells
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks if two masks placed on a common grid have a solid cell in the same place.
+     * First the boxes around the solid cells are compared; only if they overlap are the rows
+     * of the overlap ANDed together, 64 cells per operation.
+     * @param a First mask
+     * @param ax Column of a's left edge on the common grid
+     * @param ay Row of a's top edge on the common grid
+     * @param b Second mask
+     * @param bx Column of b's left edge on the common grid
+     * @param by Row of b's top edge on the common grid
+     * @return true if the masks touch
+     */
+    public static boolean overlaps(HitMask a, int ax, int ay, HitMask b, int bx, int by) {
+        // Boxes around the solid cells, on the common grid
+        int left = Math.max(ax + a.minX, bx + b.minX);
+        int right = Math.min(ax + a.maxX, bx + b.maxX);
+        int top = Math.max(ay + a.minY, by + b.minY);
+        int bottom = Math.min(ay + a.maxY, by + b.maxY);
+        if (left > right || top > bottom) {
+            return false;
+        }
+
+        for (int y = top; y <= bottom; y++) {
+            int aRow = (y - ay) * a.wordsPerRow;
+            int bRow = (y - by) * b.wordsPerRow;
+            for (int x = left; x <= right; x += 64) {
+                long overlap = a.bitsFrom(aRow, x - ax) & b.bitsFrom(bRow, x - bx);
+                int remaining = right - x + 1;
+                if (remaining < 64) {
+                    overlap &= (1L << remaining) - 1;  // Ignore cells past the right edge of the overlap
+                }
+                if (overlap != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads 64 cells of one row starting at any column.
+     * @param rowStart Index of the row's first word
+     * @param x First column to read, 0 or more
+     * @return The cells x to x + 63 in bits 0 to 63; cells past the row's end read as 0
+     */
+    private long bitsFrom(int rowStart, int x) {
+        int word = x / 64;
+        int shift = x % 64;
+        long low = word < wordsPerRow ? bits[rowStart + word] >>> shift : 0;
+        if (shift == 0 || word + 1 >= wordsPerRow) {
+            return low;
+        }
+        return low | bits[rowStart + word + 1] << (64 - shift);
+    }
+}
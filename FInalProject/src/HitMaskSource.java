@@ -0,0 +1,33 @@
+/**
+ * The hit masks of one animation clip, frame by frame, which decide range and hits in battle.
+ * A CharacterSprite provides them for the drawn game; ClipHitMasks loads the same masks for
+ * headless battles that never decode images for drawing.
+ */
+public interface HitMaskSource {
+    /**
+     * Retrieves the hit mask of a frame.
+     * @param index Frame number
+     * @param mirrored true for the mask of the frame drawn flipped horizontally
+     * @return The frame's mask, or null if index invalid
+     */
+    HitMask getHitMask(int index, boolean mirrored);
+
+    /**
+     * Retrieves one mask that is solid wherever any frame of the clip is.
+     * @param mirrored true for the union of the frames drawn flipped horizontally
+     * @return The union of all frames' masks
+     */
+    HitMask getUnionHitMask(boolean mirrored);
+
+    /**
+     * Gets the number of frames in the clip.
+     * @return Number of frames
+     */
+    int getFrameCount();
+
+    /**
+     * Gets the number of the clip's first frame.
+     * @return Starting frame index (0 or 1)
+     */
+    int getStartIndex();
+}
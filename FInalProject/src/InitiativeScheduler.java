@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Decides which combatant acts next, based on speed.
+ * Every combatant has a time on a shared timeline at which it may act again;
+ * the one with the earliest time goes first. After acting, a combatant waits
+ * ACTION_COST / speed before its next turn, so a character twice as fast acts twice as often.
+ * The timeline is an indexed binary heap: finding the next actor is O(1),
+ * and ending a turn, removing a combatant or changing a speed is O(log N).
+ * The slot of a removed combatant is handed to the next one added, so the arrays
+ * grow with the most combatants scheduled at once, not with everyone ever added.
+ */
+public class InitiativeScheduler {
+    /**
+     * Timeline units one action costs at speed 1.
+     * A combatant with speed s waits ACTION_COST / s between turns.
+     */
+    public static final double ACTION_COST = 1000.0;
+
+    /**
+     * Combatant registered in each slot, or null while the slot is free.
+     */
+    private Character[] combatants = new Character[8];
+
+    /**
+     * Time on the timeline at which each slot may act next.
+     */
+    private double[] nextTime = new double[8];
+
+    /**
+     * Position of each slot in the heap, or -1 once it has been removed.
+     */
+    private int[] heapPosition = new int[8];
+
+    /**
+     * Order in which the combatant in each slot was added, counting up across the whole battle.
+     * Breaks ties in next action time, since a reused slot number says nothing about age.
+     */
+    private long[] addedOrder = new long[8];
+
+    /**
+     * Heap of slot numbers ordered by next action time; the root acts now.
+     * Ties go to the combatant added first.
+     */
+    private int[] heap = new int[8];
+
+    /**
+     * Number of slots in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * Time on the timeline of the turn that started most recently.
+     * Stays 0 until the first turn ends, so everyone added before the battle
+     * starts is measured from the same point.
+     */
+    private double currentTime = 0;
+
+    /**
+     * Number of slots ever handed out, free or in use; the arrays hold at least this many.
+     */
+    private int slotCount = 0;
+
+    /**
+     * Slots of removed combatants, waiting to be handed out again; used as a stack.
+     */
+    private int[] freeSlots = new int[8];
+
+    /**
+     * Number of entries in freeSlots.
+     */
+    private int freeCount = 0;
+
+    /**
+     * Number of combatants added so far; the next one's addedOrder.
+     */
+    private long addCount = 0;
+
+    /**
+     * Finds the slot of a registered character.
+     */
+    private final IdentityHashMap<Character, Integer> slots = new IdentityHashMap<>();
+
+    /**
+     * Adds a combatant to the timeline.
+     * Its first turn comes one action after the current time, so faster
+     * combatants added together act first. Among equal speeds the one added first goes first.
+     * @param combatant The character to schedule
+     * @throws IllegalArgumentException If the character is already scheduled
+     */
+    public void add(Character combatant) {
+        if (slots.containsKey(combatant)) {
+            throw new IllegalArgumentException("Combatant is already scheduled");
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            ensureCapacity(slotCount + 1);
+            slot = slotCount++;
+        }
+        slots.put(combatant, slot);
+        combatants[slot] = combatant;
+        addedOrder[slot] = addCount++;
+        nextTime[slot] = currentTime + delayOf(combatant.getSpeed());
+
+        heap[size] = slot;
+        heapPosition[slot] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Takes a combatant off the timeline, for example when it is defeated.
+     * Does nothing if the character is not scheduled.
+     * @param combatant The character to remove
+     */
+    public void remove(Character combatant) {
+        Integer slot = slots.get(combatant);
+        if (slot == null || heapPosition[slot] < 0) {
+            return;
+        }
+
+        int position = heapPosition[slot];
+        size--;
+        heapPosition[slot] = -1;
+        // Forget the combatant and free its slot, so long battles with many spawned enemies
+        // neither keep the defeated ones nor grow the arrays
+        combatants[slot] = null;
+        slots.remove(combatant);
+        freeSlots[freeCount++] = slot;
+        if (position < size) {
+            // Move the last entry into the hole and restore heap order around it
+            heap[position] = heap[size];
+            heapPosition[heap[position]] = position;
+            siftDown(position);
+            siftUp(position);
+        }
+        startNextTurn();
+    }
+
+    /**
+     * Gets the combatant whose turn it is.
+     * @return The combatant acting now, or null when nobody is scheduled
+     */
+    public Character peek() {
+        return size == 0 ? null : combatants[heap[0]];
+    }
+
+    /**
+     * Ends the turn of the current combatant and schedules its next one.
+     * Its speed at this moment decides how long it waits.
+     */
+    public void endTurn() {
+        if (size == 0) {
+            return;
+        }
+        int slot = heap[0];
+        nextTime[slot] += delayOf(combatants[slot].getSpeed());
+        siftDown(0);
+        startNextTurn();
+    }
+
+    /**
+     * Moves the current time forward to the turn of the combatant now at the root.
+     */
+    private void startNextTurn() {
+        if (size > 0) {
+            currentTime = Math.max(currentTime, nextTime[heap[0]]);
+        }
+    }
+
+    /**
+     * Hastes or slows a combatant without rebuilding the timeline.
+     * The part of its wait that is still left is rescaled to the new speed,
+     * so a haste cast halfway through a wait halves only the remaining half.
+     * The combatant acting now has no wait left, so it keeps its turn
+     * and the new speed applies from its next wait.
+     * @param combatant The character whose speed changes
+     * @param speed The new speed
+     * @throws IllegalArgumentException If the speed is not positive
+     */
+    public void changeSpeed(Character combatant, int speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        int oldSpeed = combatant.getSpeed();
+        combatant.setSpeed(speed);
+
+        Integer slot = slots.get(combatant);
+        if (slot == null || heapPosition[slot] < 0) {
+            return;  // Not on the timeline
+        }
+        nextTime[slot] = currentTime + (nextTime[slot] - currentTime) * oldSpeed / speed;
+        siftUp(heapPosition[slot]);
+        siftDown(heapPosition[slot]);
+    }
+
+    /**
+     * Gets the time of the current turn on the timeline.
+     * @return Time at which the most recent turn started
+     */
+    public double getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of combatants on the timeline.
+     * @return Number of scheduled combatants
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots the timeline has handed out, including free ones.
+     * Stays at the most combatants ever scheduled at once, however many were added and removed.
+     * @return Number of slots
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Calculates the wait between two turns.
+     * @param speed Speed of the combatant
+     * @return Timeline units until its next turn
+     */
+    private static double delayOf(int speed) {
+        return ACTION_COST / speed;
+    }
+
+    /**
+     * Checks if one slot acts before another.
+     * @param a First slot
+     * @param b Second slot
+     * @return true if a comes first
+     */
+    private boolean before(int a, int b) {
+        return nextTime[a] < nextTime[b] || (nextTime[a] == nextTime[b] && addedOrder[a] < addedOrder[b]);
+    }
+
+    /**
+     * Moves a heap entry up until its parent acts before it.
+     * @param position Heap position to fix
+     */
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!before(slot, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPosition[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapPosition[slot] = position;
+    }
+
+    /**
+     * Moves a heap entry down until it acts before both children.
+     * @param position Heap position to fix
+     */
+    private void siftDown(int position) {
+        int slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], slot)) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPosition[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapPosition[slot] = position;
+    }
+
+    /**
+     * Grows the slot arrays when more combatants are added than they can hold.
+     * @param count Number of slots that must fit
+     */
+    private void ensureCapacity(int count) {
+        if (count > combatants.length) {
+            int length = Math.max(count, combatants.length * 2);
+            combatants = Arrays.copyOf(combatants, length);
+            nextTime = Arrays.copyOf(nextTime, length);
+            heapPosition = Arrays.copyOf(heapPosition, length);
+            heap = Arrays.copyOf(heap, length);
+            addedOrder = Arrays.copyOf(addedOrder, length);
+            freeSlots = Arrays.copyOf(freeSlots, length);
+        }
+    }
+}
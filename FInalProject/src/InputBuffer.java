@@ -0,0 +1,314 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+import javafx.scene.input.KeyCode;
+
+/**
+ * Player input on its way from the UI to the game logic, with its latency measured.
+ * Every key press or button click bound to a GameCommand is stamped with the time it arrived
+ * and kept for up to BUFFER_WINDOW_NANOS. The game loop takes it on its next tick; if the command
+ * cannot run yet, for example because the previous attack is still playing, it stays buffered
+ * and runs on the first tick where it can, instead of being lost. Commands still waiting when
+ * the window closes are dropped, so a stale press never fires long after the player gave up.
+ * For each command that runs, the time from the press to the first drawn frame that shows it
+ * is recorded, both here and as an InputLatencyEvent for the flight recorder.
+ * Every time is passed in by the caller from the clock that ticks the game, never read here,
+ * so a battle stepped by a fixed clock expires and measures its commands the same way on every run.
+ * <p>
+ * Three threads may share one buffer without locks: the input thread presses (the FX thread,
+ * or a BattleServer connection's reader), the thread that ticks the game takes commands and marks
+ * them as shown in the game state, and the displaying thread marks them as displayed after drawing
+ * (the FX thread, or the BattleServer session sending its state). Each counter is written by one thread only.
+ * No objects are created after construction.
+ */
+public class InputBuffer {
+    /**
+     * How long a command waits for a tick that can run it.
+     * 200 ms covers a press made just before the attack button would come back,
+     * but is short enough that a command never seems to fire by itself.
+     */
+    public static final long BUFFER_WINDOW_NANOS = 200_000_000L;
+
+    /**
+     * Number of presses and of measured commands that can be in flight at once; a power of two.
+     */
+    private static final int CAPACITY = 16;
+
+    /**
+     * Which command each bound key sends.
+     * Changed on the FX thread only.
+     */
+    private final Map<KeyCode, GameCommand> bindings = new EnumMap<>(KeyCode.class);
+
+    /**
+     * Command of each press, in a ring indexed by press number.
+     */
+    private final GameCommand[] commands = new GameCommand[CAPACITY];
+
+    /**
+     * Time of each press on the game's clock, indexed like commands.
+     */
+    private final long[] pressTimes = new long[CAPACITY];
+
+    /**
+     * Command of each command that ran, in a ring indexed by the number of commands that ran before it.
+     */
+    private final GameCommand[] performedCommands = new GameCommand[CAPACITY];
+
+    /**
+     * Press time of each command that ran, indexed like performedCommands.
+     */
+    private final long[] performedPressTimes = new long[CAPACITY];
+
+    /**
+     * Time on the game's clock when each command that ran was started, indexed like performedCommands.
+     */
+    private final long[] performedTimes = new long[CAPACITY];
+
+    /**
+     * Number of presses accepted so far. Written by the input thread.
+     */
+    private volatile long pressed = 0;
+
+    /**
+     * Number of presses taken out of the buffer, run or dropped. Written by the ticking thread.
+     */
+    private volatile long taken = 0;
+
+    /**
+     * Number of commands that ran. Written by the ticking thread.
+     */
+    private volatile long performed = 0;
+
+    /**
+     * Number of commands that ran and changed what the next drawn frame shows. Written by the ticking thread.
+     */
+    private volatile long shown = 0;
+
+    /**
+     * Number of commands that ran and have been drawn. Written by the displaying thread.
+     */
+    private volatile long displayed = 0;
+
+    /**
+     * Presses ignored because the buffer was full. Written by the input thread.
+     */
+    private volatile int overflowCount = 0;
+
+    /**
+     * Commands dropped because they could not run within the window. Written by the ticking thread.
+     */
+    private volatile int expiredCount = 0;
+
+    /**
+     * Number of latencies measured. Written by the displaying thread.
+     */
+    private volatile int latencyCount = 0;
+
+    /**
+     * Sum of all measured latencies in nanoseconds. Written by the displaying thread.
+     */
+    private volatile long latencyTotal = 0;
+
+    /**
+     * Longest measured latency in nanoseconds. Written by the displaying thread.
+     */
+    private volatile long latencyMax = 0;
+
+    /**
+     * Creates a buffer with the default key bindings: A, Space and Enter attack.
+     */
+    public InputBuffer() {
+        bindings.put(KeyCode.A, GameCommand.ATTACK);
+        bindings.put(KeyCode.SPACE, GameCommand.ATTACK);
+        bindings.put(KeyCode.ENTER, GameCommand.ATTACK);
+    }
+
+    /**
+     * Binds a key to a command, replacing the key's previous binding.
+     * FX thread only.
+     * @param key The key
+     * @param command Command the key sends, or null to unbind it
+     */
+    public void bind(KeyCode key, GameCommand command) {
+        if (command == null) {
+            bindings.remove(key);
+        } else {
+            bindings.put(key, command);
+        }
+    }
+
+    /**
+     * Buffers the command bound to a pressed key.
+     * FX thread only.
+     * @param key The pressed key
+     * @param now Current time on the game's clock in nanoseconds
+     * @return true if the key is bound, so the caller can consume the key event
+     */
+    public boolean handleKey(KeyCode key, long now) {
+        GameCommand command = bindings.get(key);
+        if (command == null) {
+            return false;
+        }
+        press(command, now);
+        return true;
+    }
+
+    /**
+     * Buffers a command, stamped with the time it arrived.
+     * Input thread only.
+     * @param command The command
+     * @param now Current time on the game's clock in nanoseconds
+     * @return true if it was buffered, false if the buffer was full
+     */
+    public boolean press(GameCommand command, long now) {
+        long next = pressed;
+        if (next - taken >= CAPACITY) {
+            overflowCount++;
+            return false;
+        }
+        int slot = (int) (next & (CAPACITY - 1));
+        commands[slot] = command;
+        pressTimes[slot] = now;
+        pressed = next + 1;  // Publishes the slot to the ticking thread
+        return true;
+    }
+
+    /**
+     * Checks if any command is waiting to be taken.
+     * @return true if at least one press has not been run or dropped
+     */
+    public boolean hasPending() {
+        return taken < pressed;
+    }
+
+    /**
+     * Gets the oldest command waiting to run, first dropping every command whose window has closed.
+     * The command stays in the buffer until markPerformed() is called, so a command that cannot
+     * run yet is offered again on the next tick.
+     * Ticking thread only.
+     * @param now Time of the tick on the game's clock in nanoseconds
+     * @return The oldest waiting command, or null if none is waiting
+     */
+    public GameCommand nextCommand(long now) {
+        while (taken < pressed) {
+            int slot = (int) (taken & (CAPACITY - 1));
+            long waited = now - pressTimes[slot];
+            if (waited <= BUFFER_WINDOW_NANOS) {
+                return commands[slot];
+            }
+            if (InputLatencyEvent.isRecording()) {
+                InputLatencyEvent.record(commands[slot].name(), false, waited, 0);
+            }
+            expiredCount++;
+            taken++;
+        }
+        return null;
+    }
+
+    /**
+     * Takes the command returned by nextCommand() out of the buffer after the game started it.
+     * Its latency is measured once a frame showing it has been drawn; call markShown()
+     * when the game state first reflects it.
+     * Ticking thread only.
+     * @param now Time of the tick on the game's clock in nanoseconds
+     */
+    public void markPerformed(long now) {
+        int slot = (int) (taken & (CAPACITY - 1));
+        long count = performed;
+        // Only if the displaying thread has caught up; otherwise this command goes unmeasured
+        if (count - displayed < CAPACITY) {
+            int performedSlot = (int) (count & (CAPACITY - 1));
+            performedCommands[performedSlot] = commands[slot];
+            performedPressTimes[performedSlot] = pressTimes[slot];
+            performedTimes[performedSlot] = now;
+            performed = count + 1;
+        }
+        taken++;
+    }
+
+    /**
+     * Records that every command run so far now shows in the game state,
+     * so the next frame drawn from it will show them.
+     * Ticking thread only.
+     */
+    public void markShown() {
+        shown = performed;
+    }
+
+    /**
+     * Gets how many commands have been run and show in the game state.
+     * Copied into each published FrameState, so the FX thread knows what a frame shows.
+     * @return Number of shown commands
+     */
+    public long getShownCount() {
+        return shown;
+    }
+
+    /**
+     * Records that a frame showing the given number of commands has just been drawn,
+     * and measures the latency of every command it shows for the first time.
+     * Displaying thread only.
+     * @param shownCount Value of getShownCount() when the frame's state was captured
+     * @param now Time the frame was drawn on the game's clock in nanoseconds
+     */
+    public void markDisplayed(long shownCount, long now) {
+        long count = displayed;
+        if (shownCount <= count) {
+            return;
+        }
+        for (; count < shownCount; count++) {
+            int slot = (int) (count & (CAPACITY - 1));
+            long latency = now - performedPressTimes[slot];
+            latencyTotal += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            latencyCount++;
+            if (InputLatencyEvent.isRecording()) {
+                InputLatencyEvent.record(performedCommands[slot].name(), true,
+                        performedTimes[slot] - performedPressTimes[slot], latency);
+            }
+        }
+        displayed = count;
+    }
+
+    /**
+     * Gets how many input latencies have been measured.
+     * @return Number of commands that ran and were drawn
+     */
+    public int getLatencyCount() {
+        return latencyCount;
+    }
+
+    /**
+     * Gets the average time from a press to the first frame drawn with its effect.
+     * @return Average latency in nanoseconds, or 0 if none was measured
+     */
+    public long getAverageLatency() {
+        int count = latencyCount;
+        return count == 0 ? 0 : latencyTotal / count;
+    }
+
+    /**
+     * Gets the longest time from a press to the first frame drawn with its effect.
+     * @return Longest latency in nanoseconds, or 0 if none was measured
+     */
+    public long getMaxLatency() {
+        return latencyMax;
+    }
+
+    /**
+     * Gets how many buffered commands were dropped because they could not run in time.
+     * @return Number of expired commands
+     */
+    public int getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Gets how many presses were ignored because too many were already waiting.
+     * @return Number of overflowed presses
+     */
+    public int getOverflowCount() {
+        return overflowCount;
+    }
+}
@@ -0,0 +1,78 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one player command, from the key press or click to the screen.
+ * Written by InputBuffer when the first frame showing the command has been drawn,
+ * or when the command is dropped because it could not run within the buffer window.
+ * Off unless a recording turns it on; see FlightRecording.
+ */
+@Name("battle.InputLatency")
+@Label("Input Latency")
+@Category("Battle")
+@Description("Time from a player command to the first frame drawn with its effect")
+@Enabled(false)
+@StackTrace(false)
+public class InputLatencyEvent extends jdk.jfr.Event {
+    /**
+     * Registered type of this event, used to check cheaply whether it is being recorded.
+     */
+    private static final EventType TYPE = EventType.getEventType(InputLatencyEvent.class);
+
+    /**
+     * The command, for example "ATTACK".
+     */
+    @Label("Command")
+    private String command;
+
+    /**
+     * Whether the command ran; false if it was dropped when its buffer window closed.
+     */
+    @Label("Performed")
+    private boolean performed;
+
+    /**
+     * Time the command waited in the buffer before the game started it, or before it was dropped.
+     */
+    @Label("Buffered Time")
+    @Timespan
+    private long bufferedTime;
+
+    /**
+     * Time from the press to the end of drawing the first frame that shows the command.
+     * Zero for dropped commands.
+     */
+    @Label("Latency")
+    @Timespan
+    private long latency;
+
+    /**
+     * Checks if a recording has turned this event on.
+     * @return true if input latencies should be recorded
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Writes one event for a command.
+     * @param command Name of the command
+     * @param performed Whether the command ran
+     * @param bufferedTime Nanoseconds the command waited in the buffer
+     * @param latency Nanoseconds from the press to the first frame showing it; 0 if it did not run
+     */
+    public static void record(String command, boolean performed, long bufferedTime, long latency) {
+        InputLatencyEvent event = new InputLatencyEvent();
+        event.command = command;
+        event.performed = performed;
+        event.bufferedTime = bufferedTime;
+        event.latency = latency;
+        event.commit();
+    }
+}
@@ -1,5 +1,9 @@
+import java.util.List;
+
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
 
 /**
@@ -21,16 +25,65 @@ import javafx.stage.Stage;
  */
 public class Main extends Application {
 
+    /**
+     * The game window's contents, or null in export mode.
+     * Kept so the input latency can be summed up when the game closes.
+     */
+    private GameBorderPane pane;
+
+    /**
+     * The window's contents when watching another game's battle, or null when playing.
+     */
+    private SpectatorPane spectatorPane;
+
+    /**
+     * Status main() exits with once JavaFX has shut down; 1 when the performance suite found a regression
+     * or the allocation check found a pulse that allocates.
+     */
+    private static int exitStatus = 0;
+
+    /**
+     * Start-up options, parsed once by main() before JavaFX is launched and used by start().
+     */
+    private static GameOptions options;
+
     /**
      * Main method - the program's entry point.
-     * Launches the JavaFX application framework.
-     * @param args Command line arguments (not used)
+     * Launches the JavaFX application framework, unless a headless battle server or a journal report was asked for.
+     * @param args Command line arguments; see GameOptions
      * @throws Exception If application fails to launch
      */
     public static void main(String[] args) throws Exception{
+        // Server modes and journal reports never touch JavaFX, so they run before it is started
+        options = GameOptions.parse(List.of(args));
+        if (options.getJournalReportDirectory() != null) {
+            new BattleJournalReader(options.getJournalReportDirectory()).printSummary(System.out);
+            return;
+        }
+        // The launcher has started the JavaFX toolkit for this Application class anyway,
+        // and its thread would keep the process alive, so the in-process server runs exit by themselves
+        if (options.getServerBenchSessions() > 0) {
+            new ServerLoadTest(options.getServerBenchSessions(), options).run();
+            System.exit(0);
+        }
+        if (options.getServerCheckSessions() > 0) {
+            System.exit(new ServerCheck(options.getServerCheckSessions(), options).run() ? 0 : 1);
+        }
+        if (options.isServerMode()) {
+            try (BattleServer server = new BattleServer(options.getServerPort(),
+                    options.getCombatRules(), options.getTileMap())) {
+                System.out.println("Battle server listening on port " + server.getPort());
+                server.awaitClose();
+            }
+            return;
+        }
+        
         // Calls Application.launch() which starts JavaFX
         // This will eventually call the start() method below
         launch(args);
+        if (exitStatus != 0) {
+            System.exit(exitStatus);
+        }
     }
 
     /**
@@ -42,14 +95,64 @@ public class Main extends Application {
      */
     @Override
     public void start(Stage primaryStage) throws Exception {
+        // Start recording before the battle so the first frames are included
+        if (options.getFlightRecordingFile() != null) {
+            FlightRecording.start(options.getFlightRecordingFile());
+        }
+        
+        // Export mode replays a battle offscreen and never opens the window
+        if (options.isExportMode()) {
+            int frames = new BattleExporter(options).export();
+            System.out.println("Exported " + frames + " frames to " + options.getExportDirectory());
+            Platform.exit();
+            return;
+        }
+        
+        // The renderer benchmark draws a crowd offscreen and never opens the window
+        if (options.getRenderBenchSprites() > 0) {
+            new RenderBenchmark(options.getRenderBenchSprites(), options).run();
+            Platform.exit();
+            return;
+        }
+        
+        // The allocation check steps battles offscreen and fails if a pulse allocates
+        if (options.getAllocCheckPulses() > 0) {
+            if (!new AllocationCheck(options.getAllocCheckPulses(), options).run()) {
+                exitStatus = 1;
+            }
+            Platform.exit();
+            return;
+        }
+        
+        // The performance suite plays its battles in scenes that are never shown
+        if (options.getPerfBaselineFile() != null) {
+            if (!new PerfSuite(options).run()) {
+                exitStatus = 1;
+            }
+            Platform.exit();
+            return;
+        }
+        
+        // Watch mode shows someone else's battle and has no controls
+        if (options.getWatchAddress() != null) {
+            spectatorPane = new SpectatorPane(options);
+            primaryStage.setTitle("Watching " + options.getWatchAddress());
+            primaryStage.setScene(new Scene(spectatorPane));
+            primaryStage.show();
+            return;
+        }
+        
         // Create the main game interface container
         // This contains all UI elements and the game canvas
-        GameBorderPane pane = new GameBorderPane();
+        pane = new GameBorderPane(options);
         
         // Create a Scene to hold the game interface
         // Scene connects the UI to the window
         Scene scene = new Scene(pane);
         
+        // Keyboard shortcuts work whatever has focus
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, pane::handleKey);
+        
         // Attach the scene to the main window
         primaryStage.setScene(scene);
         
@@ -57,4 +160,52 @@ public class Main extends Application {
         // Makes the game visible and interactive
         primaryStage.show();
     }
+
+    /**
+     * JavaFX application stop method.
+     * Called automatically when the window closes.
+     * Prints how long player commands took to reach the screen, if any were measured,
+     * how much the spectator feed sent or received, and how the sprite budget held up.
+     * Writes the rest of the battle journal, if one is kept.
+     */
+    @Override
+    public void stop() {
+        if (spectatorPane != null) {
+            SpectatorViewer viewer = spectatorPane.getViewer();
+            System.out.printf("Watched %d packets, %d bytes (%d could not be decoded)%n",
+                    viewer.getPacketsReceived(), viewer.getBytesReceived(), viewer.getPacketsSkipped());
+            spectatorPane.close();
+        }
+        if (pane == null) {
+            return;
+        }
+        SpectatorFeed feed = pane.getGameController().getSpectatorFeed();
+        if (feed != null && feed.getPacketsSent() > 0) {
+            System.out.printf("Spectator feed: %d packets, %d bytes, %.1f bytes per packet (%d full snapshots)%n",
+                    feed.getPacketsSent(), feed.getBytesSent(),
+                    (double) feed.getBytesSent() / feed.getPacketsSent(), feed.getFullSnapshotsSent());
+        }
+        // The simulation thread may still be appending to the journal
+        pane.getGameController().stopSimulation();
+        BattleJournal journal = pane.getGameController().getJournal();
+        if (journal != null) {
+            journal.close();
+            System.out.printf("Battle journal: %d records in %d segments in %s (%d dropped)%n",
+                    journal.getRecordsWritten(), journal.getSegmentCount(), journal.getDirectory(),
+                    journal.getDropped());
+        }
+        SpriteCache sprites = pane.getGameController().getSpriteCache();
+        if (sprites.getBudget() != SpriteCache.UNLIMITED) {
+            System.out.printf("Sprite cache: %d hits, %d misses, %d evictions, %d reloads, %.1f of %.1f MB resident%n",
+                    sprites.getHits(), sprites.getMisses(), sprites.getEvictions(), sprites.getReloads(),
+                    sprites.getResidentBytes() / 1048576.0, sprites.getBudget() / 1048576.0);
+        }
+        InputBuffer input = pane.getGameController().getInputBuffer();
+        if (input.getLatencyCount() > 0) {
+            System.out.printf("Input latency over %d commands: average %.1f ms, longest %.1f ms"
+                    + " (%d dropped after waiting, %d ignored with a full buffer)%n",
+                    input.getLatencyCount(), input.getAverageLatency() / 1e6, input.getMaxLatency() / 1e6,
+                    input.getExpiredCount(), input.getOverflowCount());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+import java.util.Random;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Fixed-capacity particle pool for hit sparks, dust and death bursts.
+ * Every particle attribute lives in its own preallocated primitive array,
+ * so emitting, updating and drawing thousands of particles allocates nothing.
+ * Expired particles are removed by moving the last live particle into their slot.
+ */
+public class ParticleSystem {
+    /**
+     * The kinds of effect the game can spawn.
+     * Each effect describes how many particles it emits and how they move.
+     */
+    public enum Effect {
+        /** Short bright sparks where an attack lands. */
+        HIT_SPARK(24, 260, 0.35, 600, 3, 0, 3),
+        /** Small brown puffs kicked up by footsteps. */
+        DUST(3, 40, 0.6, -20, 5, 3, 2),
+        /** Large burst when a character is defeated. */
+        DEATH_BURST(160, 320, 1.2, 300, 4, 5, 3);
+
+        /** Number of particles spawned per emit() call. */
+        private final int count;
+        /** Maximum launch speed in pixels per second. */
+        private final double speed;
+        /** Lifetime of each particle in seconds. */
+        private final double lifetime;
+        /** Downward acceleration in pixels per second squared (negative floats upward). */
+        private final double gravity;
+        /** Side length of the square drawn for each particle, in pixels. */
+        private final double size;
+        /** First entry of this effect's colors in PALETTE. */
+        private final int firstColor;
+        /** Number of consecutive PALETTE entries this effect picks from. */
+        private final int colorCount;
+
+        Effect(int count, double speed, double lifetime, double gravity, double size,
+                int firstColor, int colorCount) {
+            this.count = count;
+            this.speed = speed;
+            this.lifetime = lifetime;
+            this.gravity = gravity;
+            this.size = size;
+            this.firstColor = firstColor;
+            this.colorCount = colorCount;
+        }
+    }
+
+    /**
+     * Shared colors for all effects, indexed by the int stored per particle.
+     * Entries 0-2: sparks, 3-4: dust, 5-7: death burst.
+     */
+    private static final Color[] PALETTE = {
+        Color.rgb(255, 250, 200), Color.rgb(255, 210, 80), Color.rgb(255, 140, 40),
+        Color.rgb(150, 120, 80), Color.rgb(190, 170, 130),
+        Color.rgb(200, 30, 30), Color.rgb(120, 10, 10), Color.rgb(240, 240, 240)
+    };
+
+    /**
+     * PALETTE as 0xRRGGBB values, for drawing without a GraphicsContext.
+     */
+    private static final int[] PALETTE_RGB = new int[PALETTE.length];
+
+    static {
+        for (int i = 0; i < PALETTE.length; i++) {
+            PALETTE_RGB[i] = (int) Math.round(PALETTE[i].getRed() * 255) << 16
+                    | (int) Math.round(PALETTE[i].getGreen() * 255) << 8
+                    | (int) Math.round(PALETTE[i].getBlue() * 255);
+        }
+    }
+
+    /**
+     * Maximum number of particles alive at once.
+     * Emits beyond this limit are dropped rather than growing the arrays.
+     */
+    private final int capacity;
+
+    // Particle attributes, one slot per particle; only the first liveCount slots are in use
+
+    /** X coordinate of each particle in pixels. */
+    private final double[] x;
+
+    /** Y coordinate of each particle in pixels. */
+    private final double[] y;
+
+    /** Horizontal speed of each particle in pixels per second. */
+    private final double[] velocityX;
+
+    /** Vertical speed of each particle in pixels per second. */
+    private final double[] velocityY;
+
+    /** Vertical acceleration copied from the particle's effect. */
+    private final double[] gravity;
+
+    /** Seconds each particle has been alive. */
+    private final double[] age;
+
+    /** Seconds each particle lives before it is removed. */
+    private final double[] lifetime;
+
+    /** Side length of each particle's square in pixels. */
+    private final double[] size;
+
+    /** Index into PALETTE for each particle's color. */
+    private final int[] color;
+
+    /**
+     * Number of particles currently alive.
+     * Live particles are always packed into indices 0 to liveCount - 1.
+     */
+    private int liveCount = 0;
+
+    /**
+     * Random source for launch angles, speeds and colors.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Creates a particle pool with room for the given number of particles.
+     * All storage is allocated here and never again.
+     * @param capacity Maximum number of live particles
+     */
+    public ParticleSystem(int capacity) {
+        this.capacity = capacity;
+        x = new double[capacity];
+        y = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        gravity = new double[capacity];
+        age = new double[capacity];
+        lifetime = new double[capacity];
+        size = new double[capacity];
+        color = new int[capacity];
+    }
+
+    /**
+     * Spawns one effect centered on a point.
+     * Particles fly out in random directions; any that do not fit in the pool are skipped.
+     * @param effect Which effect to spawn
+     * @param originX X coordinate of the effect center
+     * @param originY Y coordinate of the effect center
+     */
+    public void emit(Effect effect, double originX, double originY) {
+        int toSpawn = Math.min(effect.count, capacity - liveCount);
+
+        for (int n = 0; n < toSpawn; n++) {
+            int i = liveCount++;
+            double angle = random.nextDouble() * Math.PI * 2;
+            double speed = effect.speed * (0.3 + 0.7 * random.nextDouble());
+
+            x[i] = originX;
+            y[i] = originY;
+            velocityX[i] = Math.cos(angle) * speed;
+            velocityY[i] = Math.sin(angle) * speed;
+            gravity[i] = effect.gravity;
+            age[i] = 0;
+            lifetime[i] = effect.lifetime * (0.5 + 0.5 * random.nextDouble());
+            size[i] = effect.size;
+            color[i] = effect.firstColor + random.nextInt(effect.colorCount);
+        }
+    }
+
+    /**
+     * Moves every live particle forward in time and removes the expired ones.
+     * Called once per game loop pulse.
+     * @param elapsedSeconds Time since the previous update in seconds
+     */
+    public void update(double elapsedSeconds) {
+        int i = 0;
+        while (i < liveCount) {
+            age[i] += elapsedSeconds;
+
+            if (age[i] >= lifetime[i]) {
+                // Swap-remove: move the last live particle into this slot
+                // and check the same index again on the next pass
+                removeAt(i);
+                continue;
+            }
+
+            velocityY[i] += gravity[i] * elapsedSeconds;
+            x[i] += velocityX[i] * elapsedSeconds;
+            y[i] += velocityY[i] * elapsedSeconds;
+            i++;
+        }
+    }
+
+    /**
+     * Draws every live particle as a small square that fades out with age.
+     * Called by GameWorld after the sprites so effects appear on top.
+     * @param gc Graphics context of the game canvas
+     */
+    public void render(GraphicsContext gc) {
+        if (liveCount == 0) {
+            return;
+        }
+
+        for (int i = 0; i < liveCount; i++) {
+            double half = size[i] / 2;
+            gc.setGlobalAlpha(getOpacity(i));  // Fade out over the lifetime
+            gc.setFill(PALETTE[color[i]]);
+            gc.fillRect(x[i] - half, y[i] - half, size[i], size[i]);
+        }
+
+        // Restore full opacity for whatever is drawn next
+        gc.setGlobalAlpha(1);
+    }
+
+    /**
+     * Gets the number of particles currently alive.
+     * Used by GameController to keep the game loop running while effects play.
+     * @return Number of live particles
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Gets the X coordinate of a live particle's center.
+     * Used by SoftwareCompositor, which draws the particles itself.
+     * @param i Particle index, below getLiveCount()
+     * @return X coordinate in pixels
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Gets the Y coordinate of a live particle's center.
+     * @param i Particle index, below getLiveCount()
+     * @return Y coordinate in pixels
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Gets the side length of a live particle's square.
+     * @param i Particle index, below getLiveCount()
+     * @return Size in pixels
+     */
+    public double getSize(int i) {
+        return size[i];
+    }
+
+    /**
+     * Gets how opaque a live particle is drawn; it fades out over its lifetime.
+     * @param i Particle index, below getLiveCount()
+     * @return Opacity from 0 to 1
+     */
+    public double getOpacity(int i) {
+        return 1 - age[i] / lifetime[i];
+    }
+
+    /**
+     * Gets the color of a live particle.
+     * @param i Particle index, below getLiveCount()
+     * @return Color as 0xRRGGBB
+     */
+    public int getRgb(int i) {
+        return PALETTE_RGB[color[i]];
+    }
+
+    /**
+     * Replaces this pool's particles with a copy of another pool's live particles.
+     * Used to hand a consistent picture of the effects to the renderer.
+     * @param source The pool to copy; must not have a larger capacity than this one
+     */
+    public void copyFrom(ParticleSystem source) {
+        int n = source.liveCount;
+        System.arraycopy(source.x, 0, x, 0, n);
+        System.arraycopy(source.y, 0, y, 0, n);
+        System.arraycopy(source.velocityX, 0, velocityX, 0, n);
+        System.arraycopy(source.velocityY, 0, velocityY, 0, n);
+        System.arraycopy(source.gravity, 0, gravity, 0, n);
+        System.arraycopy(source.age, 0, age, 0, n);
+        System.arraycopy(source.lifetime, 0, lifetime, 0, n);
+        System.arraycopy(source.size, 0, size, 0, n);
+        System.arraycopy(source.color, 0, color, 0, n);
+        liveCount = n;
+    }
+
+    /**
+     * Removes one particle by copying the last live particle over it.
+     * Keeps live particles packed without shifting the whole array.
+     * @param i Index of the particle to remove
+     */
+    private void removeAt(int i) {
+        int last = --liveCount;
+        x[i] = x[last];
+        y[i] = y[last];
+        velocityX[i] = velocityX[last];
+        velocityY[i] = velocityY[last];
+        gravity[i] = gravity[last];
+        age[i] = age[last];
+        lifetime[i] = lifetime[last];
+        size[i] = size[last];
+        color[i] = color[last];
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import javafx.scene.Scene;
+import javafx.scene.image.WritableImage;
+import javafx.scene.text.Font;
+
+/**
+ * Plays preset battles through the whole game, GameBorderPane with its GameController and GameWorld,
+ * and checks that they run no slower than a stored baseline.
+ * Each scenario builds a fresh GameBorderPane in a Scene that is never shown, fills the battlefield with
+ * a number of minotaurs through a generated wave stream, and steps the battle with a 60 Hz clock.
+ * Every frame is one tick followed by a snapshot of the whole scene, which lays out and renders
+ * the labels and buttons as well as the battlefield. The wall time of each frame, the bytes the
+ * FX thread allocated, and the heap in use at the end are recorded. The scenario's game is then stopped,
+ * its simulation and AI threads included, so nothing of it is left to weigh on the next scenario.
+ * <p>
+ * The results are compared with the baseline file: a scenario regresses when a frame time percentile,
+ * the allocation per frame or the heap in use is more than the tolerance above its baseline.
+ * A missing baseline file, or a result the baseline has no value for, fails the suite as well,
+ * so a renamed file or a new scenario cannot pass unchecked.
+ * With "--perf-update" the results are written as the new baseline instead of being compared.
+ * <p>
+ * Frame times and heap sizes only mean something on the setup they were measured on, so the baseline
+ * also records that setup: operating system, Java, cores, heap limit, JavaFX platform and pipeline, and
+ * the default font the labels are laid out in. A baseline from another setup is not compared against; the suite fails and
+ * asks for one recorded here. perf/scene.baseline holds the one of the reference setup, listed at its top.
+ * <p>
+ * Started with "--perf-suite <baseline>". Needs no window: with the Monocle headless platform
+ * (-Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw) it runs on a build machine.
+ */
+public class PerfSuite {
+    /**
+     * Number of enemies on the battlefield in each scenario.
+     */
+    private static final int[] ENEMY_COUNTS = { 1, 50, 500 };
+
+    /**
+     * Frames played before measuring starts, so every enemy has entered and the code is compiled.
+     */
+    private static final int WARM_UP_FRAMES = 90;
+
+    /**
+     * Frames measured in each scenario.
+     */
+    private static final int MEASURED_FRAMES = 300;
+
+    /**
+     * Time between two ticks on the battle clock.
+     */
+    private static final long FRAME_INTERVAL = 1_000_000_000L / 60;
+
+    /**
+     * Bytes per frame an allocation result may exceed its baseline by on top of the tolerance,
+     * so a baseline of zero does not fail on a single stray object.
+     */
+    private static final double ALLOCATION_SLACK = 256;
+
+    /**
+     * Prefix of the baseline keys that describe the setup it was recorded on.
+     */
+    private static final String SETUP_PREFIX = "setup.";
+
+    /**
+     * Names of the values compared with the baseline; the baseline uses "<scenario>.<name>".
+     */
+    private static final String[] METRICS = { "p50Ms", "p95Ms", "p99Ms", "bytesPerFrame", "heapMb" };
+
+    /**
+     * Start-up options each scenario's GameBorderPane is built with.
+     */
+    private final GameOptions options;
+
+    /**
+     * File holding the baseline results.
+     */
+    private final Path baselineFile;
+
+    /**
+     * Share a result may be above its baseline before it counts as a regression.
+     */
+    private final double tolerance;
+
+    /**
+     * Whether the results replace the baseline instead of being compared with it.
+     */
+    private final boolean updateBaseline;
+
+    /**
+     * Creates a suite.
+     * @param options Start-up options; decide the baseline file, the tolerance and the map
+     */
+    public PerfSuite(GameOptions options) {
+        this.options = options;
+        this.baselineFile = options.getPerfBaselineFile();
+        this.tolerance = options.getPerfTolerance();
+        this.updateBaseline = options.isPerfBaselineUpdate();
+    }
+
+    /**
+     * Plays every scenario, prints its results, and compares them with the baseline or records a new one.
+     * Must be called on the FX thread.
+     * @return true if no scenario regressed, or the baseline was written
+     * @throws IOException If the baseline file cannot be read or written
+     */
+    public boolean run() throws IOException {
+        Map<String, String> setup = describeSetup();
+        Properties baseline = null;
+        if (!updateBaseline) {
+            if (!Files.exists(baselineFile)) {
+                System.out.println("No baseline at " + baselineFile + "; run with --perf-update to record one");
+                return false;
+            }
+            baseline = readBaseline();
+            if (!isSameSetup(setup, baseline)) {
+                return false;
+            }
+        }
+
+        Map<String, Double> results = new LinkedHashMap<>();
+        for (int enemies : ENEMY_COUNTS) {
+            String scenario = "enemies" + enemies;
+            double[] values = runScenario(enemies);
+            for (int i = 0; i < METRICS.length; i++) {
+                results.put(scenario + "." + METRICS[i], values[i]);
+            }
+            System.out.printf("%-10s p50 %6.2f ms  p95 %6.2f ms  p99 %6.2f ms  max %6.2f ms  %8.0f B/frame  heap %6.1f MB%n",
+                    scenario, values[0], values[1], values[2], values[5], values[3], values[4]);
+        }
+
+        if (updateBaseline) {
+            writeBaseline(setup, results);
+            System.out.println("Baseline written to " + baselineFile);
+            return true;
+        }
+        return compare(results, baseline);
+    }
+
+    /**
+     * Describes the setup the suite runs on, as the baseline records it.
+     * Must be called on the FX thread.
+     * @return Setup values by "setup.<name>"
+     */
+    private static Map<String, String> describeSetup() {
+        Map<String, String> setup = new LinkedHashMap<>();
+        setup.put(SETUP_PREFIX + "os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        setup.put(SETUP_PREFIX + "java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        setup.put(SETUP_PREFIX + "cores", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        setup.put(SETUP_PREFIX + "maxHeapMb", String.valueOf(Runtime.getRuntime().maxMemory() / 1048576));
+        setup.put(SETUP_PREFIX + "platform", System.getProperty("glass.platform", "default"));
+        setup.put(SETUP_PREFIX + "pipeline", System.getProperty("prism.order", "default"));
+        setup.put(SETUP_PREFIX + "font", Font.getDefault().getName() + " " + Font.getDefault().getSize());
+        return setup;
+    }
+
+    /**
+     * Checks that the baseline was recorded on this setup, and prints every difference if not.
+     * @param setup This setup, from describeSetup()
+     * @param baseline The baseline file's entries
+     * @return true if every setup value matches
+     */
+    private boolean isSameSetup(Map<String, String> setup, Properties baseline) {
+        boolean same = true;
+        for (Map.Entry<String, String> entry : setup.entrySet()) {
+            String recorded = baseline.getProperty(entry.getKey());
+            if (!entry.getValue().equals(recorded)) {
+                System.out.printf("Baseline %s was recorded with %s = %s, this run has %s%n",
+                        baselineFile, entry.getKey(), recorded, entry.getValue());
+                same = false;
+            }
+        }
+        if (!same) {
+            System.out.println("Timings do not compare across setups; record a baseline here with --perf-update");
+        }
+        return same;
+    }
+
+    /**
+     * Plays one battle and measures it.
+     * @param enemies Number of minotaurs, counting the opening one
+     * @return p50, p95 and p99 frame time in ms, allocated bytes per frame, heap in use in MB, and the longest frame in ms
+     */
+    private double[] runScenario(int enemies) {
+        GameBorderPane pane = new GameBorderPane(options);
+        GameController controller = pane.getGameController();
+        controller.setManualPulse(true);
+        Scene scene = new Scene(pane);
+        WritableImage image = scene.snapshot(null);
+        if (enemies > 1) {
+            controller.startWaves(new WaveStream(new BufferedReader(waveText(enemies - 1)), "scenario", GameController.ENEMY_TYPES));
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] frameTimes = new long[MEASURED_FRAMES];
+        long now = 0;
+        long allocatedBefore = 0;
+        for (int frame = -WARM_UP_FRAMES; frame < MEASURED_FRAMES; frame++) {
+            if (frame == 0) {
+                allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            }
+            now += FRAME_INTERVAL;
+            long start = System.nanoTime();
+            // Press Attack as soon as the UI would allow it, like BattleExporter
+            if (controller.canAttackProperty().get()) {
+                controller.startSkeletonAttack();
+            }
+            controller.tick(now);
+            scene.snapshot(image);
+            if (frame >= 0) {
+                frameTimes[frame] = System.nanoTime() - start;
+            }
+        }
+        double bytesPerFrame = (double) (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / MEASURED_FRAMES;
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        double heapMb = (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0;
+        // Stop the scenario's threads and files, so the next scenario measures only itself
+        controller.stopSimulation();
+        if (controller.getWaves() != null) {
+            controller.getWaves().close();
+        }
+        if (controller.getJournal() != null) {
+            controller.getJournal().close();
+        }
+
+        Arrays.sort(frameTimes);
+        return new double[] {
+            percentile(frameTimes, 0.50), percentile(frameTimes, 0.95), percentile(frameTimes, 0.99),
+            bytesPerFrame, heapMb, frameTimes[frameTimes.length - 1] / 1e6
+        };
+    }
+
+    /**
+     * Builds a wave file that brings every enemy in at once, spread over the battlefield to the player's right.
+     * The enemies are strong enough to survive the measured frames.
+     * @param count Number of enemies
+     * @return Reader over the wave text
+     */
+    private static Reader waveText(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double x = 600 + (i * 137) % 2000;
+            double y = 280 + (i * 53) % 140;
+            text.append("0 minotaur 5000 20 15 10 ").append(x).append(' ').append(y).append('\n');
+        }
+        return new StringReader(text.toString());
+    }
+
+    /**
+     * Picks a percentile from sorted frame times.
+     * @param sorted Frame times in nanoseconds, in ascending order
+     * @param fraction Percentile as a fraction, such as 0.95
+     * @return The frame time in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    /**
+     * Compares the results with the baseline and prints every value that regressed
+     * or has no baseline value.
+     * @param results Measured values by "<scenario>.<metric>"
+     * @param baseline The baseline file's entries, with values by the same keys
+     * @return true if every result has a baseline value and nothing regressed
+     * @throws IllegalArgumentException If a baseline value is not a number
+     */
+    private boolean compare(Map<String, Double> results, Properties baseline) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            String recorded = baseline.getProperty(result.getKey());
+            if (recorded == null) {
+                regressions.add(result.getKey() + ": no baseline value; run with --perf-update to add it");
+                continue;
+            }
+            double expected;
+            try {
+                expected = Double.parseDouble(recorded);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(baselineFile + ": " + result.getKey() + " is not a number", e);
+            }
+            double limit = expected * (1 + tolerance);
+            if (result.getKey().endsWith(".bytesPerFrame")) {
+                limit += ALLOCATION_SLACK;
+            }
+            if (result.getValue() > limit) {
+                regressions.add(String.format("%s: %.2f, baseline %.2f, limit %.2f",
+                        result.getKey(), result.getValue(), expected, limit));
+            }
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.printf("No regressions against %s (tolerance %.0f%%)%n", baselineFile, tolerance * 100);
+            return true;
+        }
+        System.out.printf("%d regressions against %s (tolerance %.0f%%):%n", regressions.size(), baselineFile, tolerance * 100);
+        for (String regression : regressions) {
+            System.out.println("  " + regression);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the baseline file.
+     * @return Setup values by "setup.<name>" and baseline values by "<scenario>.<metric>"
+     * @throws IOException If the file cannot be read
+     */
+    private Properties readBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+            baseline.load(reader);
+        }
+        return baseline;
+    }
+
+    /**
+     * Writes the results as the new baseline: the setup first, then one "<scenario>.<metric> = <value>" line each.
+     * @param setup This setup, from describeSetup()
+     * @param results Measured values by key
+     * @throws IOException If the file cannot be written
+     */
+    private void writeBaseline(Map<String, String> setup, Map<String, Double> results) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("# Scene performance baseline, written by --perf-suite.\n");
+        text.append("# Only compared against on the setup below; record a new one with --perf-update elsewhere.\n");
+        for (Map.Entry<String, String> entry : setup.entrySet()) {
+            text.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        }
+        text.append("# Frame times in milliseconds, allocation in bytes per frame on the FX thread, heap in use in MB.\n");
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            text.append(result.getKey()).append(" = ").append(String.format(Locale.ROOT, "%.3f", result.getValue())).append('\n');
+        }
+        Files.writeString(baselineFile, text.toString(), StandardCharsets.UTF_8);
+    }
+}
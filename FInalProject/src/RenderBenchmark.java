@@ -0,0 +1,148 @@
+import java.util.Random;
+
+import javafx.scene.image.WritableImage;
+
+/**
+ * Compares the ways GameWorld can draw a large battle: Canvas calls, and the SoftwareCompositor
+ * on one thread and split into strips.
+ * Fills a frame with the given number of minotaurs spread over the view, plus the skeleton and
+ * a few bursts of particles, and draws it over and over with each backend, moving every animation
+ * on by one frame each time. After every draw the canvas is snapshotted, which makes the Canvas path
+ * rasterize its calls right away instead of later on the render thread; both backends pay
+ * the same read-back, so the difference between them is the drawing itself.
+ * Started with "--render-bench <sprites>".
+ */
+public class RenderBenchmark {
+    /**
+     * Frames drawn before timing starts, so every sprite frame has been read and the code compiled.
+     */
+    private static final int WARM_UP_FRAMES = 60;
+
+    /**
+     * Frames timed for each backend.
+     */
+    private static final int TIMED_FRAMES = 240;
+
+    /**
+     * Number of minotaurs on screen.
+     */
+    private final int sprites;
+
+    /**
+     * Strips the parallel compositor run uses.
+     */
+    private final int strips;
+
+    /**
+     * Canvas everything is drawn on.
+     */
+    private final GameWorld gameWorld;
+
+    /**
+     * The crowd being drawn.
+     */
+    private final FrameState frame = new FrameState(GameController.PARTICLE_CAPACITY);
+
+    /**
+     * Minotaur walk cycle; every other minotaur walks.
+     */
+    private final CharacterSprite walkSprite = new CharacterSprite("images/minotaur/", "Minotaur_01_Walking_", 18, 0, true);
+
+    /**
+     * Minotaur attack frames for the rest.
+     */
+    private final CharacterSprite attackSprite =
+            new CharacterSprite("images/minotaur_attacking/", "Minotaur_01_Attacking_", 12, 0, true);
+
+    /**
+     * Skeleton frames.
+     */
+    private final CharacterSprite skeletonSprite = new CharacterSprite("images/skeleton/", "skeleton_", 12, 1, false);
+
+    /**
+     * Image each drawn frame is snapshotted into.
+     */
+    private final WritableImage snapshot;
+
+    /**
+     * Creates a benchmark.
+     * @param sprites Number of minotaurs on screen
+     * @param options Start-up options; decide the map and the number of strips
+     * @throws IllegalArgumentException If sprites is not positive
+     */
+    public RenderBenchmark(int sprites, GameOptions options) {
+        if (sprites <= 0) {
+            throw new IllegalArgumentException("Number of sprites must be positive: " + sprites);
+        }
+        this.sprites = sprites;
+        this.strips = options.getCompositorStrips();
+        gameWorld = new GameWorld(options.getTileMap());
+        snapshot = new WritableImage((int) gameWorld.getWidth(), (int) gameWorld.getHeight());
+
+        // The same crowd for every run, spread over the part of the map in view
+        Random random = new Random(42);
+        double width = gameWorld.getWidth();
+        double height = gameWorld.getHeight();
+        frame.setEnemyCount(sprites);
+        for (int i = 0; i < sprites; i++) {
+            frame.setEnemy(i, i % 2 == 0 ? walkSprite : attackSprite, 0,
+                    random.nextDouble() * width, random.nextDouble() * height);
+        }
+        frame.setSkeleton(skeletonSprite, skeletonSprite.getStartIndex(), width / 4, height / 2);
+        for (int i = 0; i < 8; i++) {
+            frame.getParticles().emit(ParticleSystem.Effect.DEATH_BURST,
+                    random.nextDouble() * width, random.nextDouble() * height);
+        }
+    }
+
+    /**
+     * Times every backend and prints one line for each.
+     * Must be called on the FX thread.
+     */
+    public void run() {
+        int width = (int) gameWorld.getWidth();
+        int height = (int) gameWorld.getHeight();
+        double canvas = time(null);
+        double software = time(new SoftwareCompositor(gameWorld.getTileMap(), width, height, 1));
+        double parallel = time(new SoftwareCompositor(gameWorld.getTileMap(), width, height, strips));
+        gameWorld.setSoftwareCompositor(null);
+
+        System.out.printf("%d sprites, %dx%d, %d frames each%n", sprites + 1, width, height, TIMED_FRAMES);
+        System.out.printf("Canvas calls:               %7.2f ms per frame%n", canvas);
+        System.out.printf("Software, 1 strip:          %7.2f ms per frame (%.2fx)%n", software, canvas / software);
+        System.out.printf("Software, %2d strips:        %7.2f ms per frame (%.2fx)%n", strips, parallel, canvas / parallel);
+    }
+
+    /**
+     * Draws the crowd with one backend and measures how long a frame takes.
+     * @param compositor Software backend to use, or null for Canvas calls
+     * @return Average milliseconds per timed frame, including the snapshot
+     */
+    private double time(SoftwareCompositor compositor) {
+        gameWorld.setSoftwareCompositor(compositor);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            drawFrame(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_FRAMES; i++) {
+            drawFrame(WARM_UP_FRAMES + i);
+        }
+        return (System.nanoTime() - start) / 1e6 / TIMED_FRAMES;
+    }
+
+    /**
+     * Moves every animation to the frame for a step, draws the crowd and snapshots the canvas.
+     * @param step Number of frames drawn before this one
+     */
+    private void drawFrame(int step) {
+        for (int i = 0; i < sprites; i++) {
+            CharacterSprite sprite = frame.getEnemySprite(i);
+            int index = sprite.getStartIndex() + (step + i) % sprite.getFrameCount();
+            frame.setEnemy(i, sprite, index, frame.getEnemyX(i, FrameState.LATEST), frame.getEnemyY(i, FrameState.LATEST));
+        }
+        frame.setSkeleton(skeletonSprite, skeletonSprite.getStartIndex() + step % skeletonSprite.getFrameCount(),
+                frame.getSkeletonX(), frame.getSkeletonY());
+        gameWorld.drawScene(frame);
+        gameWorld.snapshot(null, snapshot);
+    }
+}
@@ -0,0 +1,64 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one redraw of the battle scene, with how much was drawn.
+ * The event's duration is the time GameWorld spent drawing.
+ * Off unless a recording turns it on; see FlightRecording.
+ */
+@Name("battle.SceneDraw")
+@Label("Scene Draw")
+@Category("Battle")
+@Description("One redraw of the battle canvas")
+@Enabled(false)
+@StackTrace(false)
+public class SceneDrawEvent extends jdk.jfr.Event {
+    /**
+     * Registered type of this event, used to check cheaply whether it is being recorded.
+     */
+    private static final EventType TYPE = EventType.getEventType(SceneDrawEvent.class);
+
+    /**
+     * Number of character sprites drawn, including the player.
+     */
+    @Label("Sprites Drawn")
+    private int spritesDrawn;
+
+    /**
+     * Number of enemies that were off screen or defeated and not drawn.
+     */
+    @Label("Sprites Skipped")
+    private int spritesSkipped;
+
+    /**
+     * Number of live particles drawn over the characters.
+     */
+    @Label("Particles")
+    private int particles;
+
+    /**
+     * Checks if a recording has turned this event on.
+     * @return true if redraws should be recorded
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Ends the event and writes it.
+     * @param spritesDrawn Character sprites drawn
+     * @param spritesSkipped Enemies not drawn
+     * @param particles Particles drawn
+     */
+    public void finish(int spritesDrawn, int spritesSkipped, int particles) {
+        this.spritesDrawn = spritesDrawn;
+        this.spritesSkipped = spritesSkipped;
+        this.particles = particles;
+        commit();
+    }
+}
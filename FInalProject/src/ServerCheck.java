@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the battle server end to end with in-process clients.
+ * Starts a BattleServer in this process and plays the given number of battles against it at the same time,
+ * each through a BattleClient on its own virtual thread that attacks whenever the player may.
+ * Every message is checked against the protocol (see BattleServer and BattleSession.appendState()):
+ * a battle opens with a WELCOME carrying a session number no other battle has, STATE lines are well formed
+ * with rising tick counts, hit points never rise, the player is only ready and the player's attack only
+ * starts on the player's turn, an enemy only attacks on the enemies' turn, and the battle ends with an
+ * OVER state followed by the END result that state implies. Afterwards no session may still be running.
+ * Any broken rule, failed connection or battle that does not end in time is printed and fails the check.
+ * <p>
+ * Started with "--server-check <sessions>"; Main exits with status 1 when it fails. Needs no window.
+ */
+public class ServerCheck {
+    /**
+     * Longest time all battles together may take, in seconds.
+     * A battle lasts about fifteen seconds of game time; the rest leaves room for a busy machine.
+     */
+    private static final long TIMEOUT_SECONDS = 180;
+
+    /**
+     * Longest wait for the server to retire the sessions after their last message, in milliseconds.
+     */
+    private static final long SHUTDOWN_MILLIS = 1000;
+
+    /**
+     * Number of battles to play at once.
+     */
+    private final int sessions;
+
+    /**
+     * Start-up options; decide the rules and map the server plays with.
+     */
+    private final GameOptions options;
+
+    /**
+     * Problems found so far, one line each, from every client thread.
+     */
+    private final Queue<String> problems = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Session numbers the server has given out, to catch one given twice.
+     */
+    private final Set<Integer> sessionIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a check.
+     * @param sessions Number of battles to play at once
+     * @param options Start-up options
+     * @throws IllegalArgumentException If sessions is not positive
+     */
+    public ServerCheck(int sessions, GameOptions options) {
+        if (sessions <= 0) {
+            throw new IllegalArgumentException("Number of sessions must be positive: " + sessions);
+        }
+        this.sessions = sessions;
+        this.options = options;
+    }
+
+    /**
+     * Plays every battle to its end, checking each message, and prints the result.
+     * @return true if every battle followed the protocol and ended
+     * @throws IOException If the server cannot be started
+     * @throws InterruptedException If waiting for the battles is interrupted
+     */
+    public boolean run() throws IOException, InterruptedException {
+        CountDownLatch done = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+
+        try (BattleServer server = new BattleServer(0, options.getCombatRules(), options.getTileMap())) {
+            for (int i = 0; i < sessions; i++) {
+                int client = i;
+                Thread.ofVirtual().name("check-client-" + i).start(() -> {
+                    try {
+                        String problem = playAndCheck(server.getPort());
+                        if (problem != null) {
+                            problems.add("Battle " + client + ": " + problem);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        problems.add("Battle " + client + " failed: " + e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                problems.add(done.getCount() + " battles did not end within " + TIMEOUT_SECONDS + " s");
+            } else {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_MILLIS);
+                while (server.getActiveSessions() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                if (server.getActiveSessions() > 0) {
+                    problems.add(server.getActiveSessions() + " sessions still running after their battles ended");
+                }
+            }
+        }
+
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.printf("Server check: %d battles in %.1f s, %d problems%n",
+                sessions, (System.nanoTime() - start) / 1e9, problems.size());
+        return problems.isEmpty();
+    }
+
+    /**
+     * Plays one battle through its own client and checks every message the server sends.
+     * @param port The server's port
+     * @return A description of the first broken rule, or null if the battle followed the protocol
+     * @throws IOException If the connection fails
+     */
+    private String playAndCheck(int port) throws IOException {
+        try (BattleClient client = new BattleClient(port)) {
+            String line = client.readMessage();
+            if (line == null || !line.startsWith("WELCOME ")) {
+                return "expected WELCOME first, got " + line;
+            }
+            if (!sessionIds.add(client.getSessionId())) {
+                return "session number " + client.getSessionId() + " given out twice";
+            }
+
+            long lastTick = -1;
+            String lastTurn = "";
+            int lastPlayerHp = Integer.MAX_VALUE;
+            int lastEnemiesHp = Integer.MAX_VALUE;
+            int restFrame = -1;
+            boolean attackSent = false;
+            client.setReadTimeout((int) (InputBuffer.BUFFER_WINDOW_NANOS / 1_000_000) * 2);
+
+            while (true) {
+                try {
+                    line = client.readMessage();
+                } catch (SocketTimeoutException e) {
+                    // Nothing changed, so a server too busy to tick in time dropped the attack: send it again
+                    if (client.isAttackReady()) {
+                        client.attack();
+                    }
+                    continue;
+                }
+                if (line == null) {
+                    break;
+                }
+                String[] parts = line.split(" ");
+                if (parts[0].equals("END")) {
+                    if (!lastTurn.equals("OVER")) {
+                        return "END before an OVER state: " + line;
+                    }
+                    String expected = lastPlayerHp > 0 ? "WON" : "LOST";
+                    if (!expected.equals(client.getResult())) {
+                        return "ended " + client.getResult() + " with the player at " + lastPlayerHp + " hit points";
+                    }
+                    if (expected.equals("WON") && lastEnemiesHp > 0) {
+                        return "won with enemies still at " + lastEnemiesHp + " hit points";
+                    }
+                    client.setReadTimeout(0);
+                    return client.readMessage() == null ? null : "message after END";
+                }
+                if (!parts[0].equals("STATE")) {
+                    return "unknown message: " + line;
+                }
+
+                // STATE tick turn playerHp playerFrame ready enemyCount [hp x y action frame]...
+                int enemyCount = Integer.parseInt(parts[6]);
+                if (parts.length != 7 + 5 * enemyCount) {
+                    return "wrong number of fields: " + line;
+                }
+                long tick = Long.parseLong(parts[1]);
+                String turn = parts[2];
+                int playerHp = Integer.parseInt(parts[3]);
+                int playerFrame = Integer.parseInt(parts[4]);
+                boolean ready = parts[5].equals("1");
+                if (tick <= lastTick) {
+                    return "tick count did not rise: " + line;
+                }
+                if (!turn.equals("PLAYER") && !turn.equals("ENEMY") && !turn.equals("OVER")) {
+                    return "unknown turn: " + line;
+                }
+                if (lastTurn.equals("OVER")) {
+                    return "state after OVER: " + line;
+                }
+                if (ready && !turn.equals("PLAYER")) {
+                    return "ready outside the player's turn: " + line;
+                }
+                if (playerHp < 0 || playerHp > lastPlayerHp) {
+                    return "player hit points went from " + lastPlayerHp + " to " + playerHp;
+                }
+                if (restFrame < 0) {
+                    restFrame = playerFrame;
+                } else if (playerFrame != restFrame && !turn.equals("PLAYER") && !turn.equals("OVER")) {
+                    return "player attacking on the enemies' turn: " + line;
+                }
+
+                int enemiesHp = 0;
+                for (int i = 7; i < parts.length; i += 5) {
+                    int hp = Integer.parseInt(parts[i]);
+                    String action = parts[i + 3];
+                    if (hp < 0) {
+                        return "negative enemy hit points: " + line;
+                    }
+                    if (action.equals("ATTACK") && !turn.equals("ENEMY")) {
+                        return "enemy attacking outside the enemies' turn: " + line;
+                    }
+                    if (!action.equals("ATTACK") && !action.equals("WALK") && !action.equals("IDLE")) {
+                        return "unknown enemy action: " + line;
+                    }
+                    enemiesHp += hp;
+                }
+                if (enemiesHp > lastEnemiesHp) {
+                    return "enemy hit points went from " + lastEnemiesHp + " to " + enemiesHp;
+                }
+
+                lastTick = tick;
+                lastTurn = turn;
+                lastPlayerHp = playerHp;
+                lastEnemiesHp = enemiesHp;
+
+                // Attack once each time the player becomes ready, as a player would
+                if (ready && !attackSent) {
+                    client.attack();
+                    attackSent = true;
+                } else if (!ready) {
+                    attackSent = false;
+                }
+            }
+            return "connection closed before END";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how many battles one machine can host: starts a BattleServer in this process
+ * and plays the given number of battles against it at the same time through BattleClients,
+ * each on its own virtual thread. The server's load line is printed every two seconds,
+ * so a rising share of late ticks shows where the machine runs out of CPU.
+ * Started with "--server-bench <sessions>".
+ */
+public class ServerLoadTest {
+    /**
+     * Time between two progress lines, in milliseconds.
+     */
+    private static final long REPORT_MILLIS = 2000;
+
+    /**
+     * Number of battles to play at once.
+     */
+    private final int sessions;
+
+    /**
+     * Start-up options; decide the rules and map the server plays with.
+     */
+    private final GameOptions options;
+
+    /**
+     * Creates a load test.
+     * @param sessions Number of battles to play at once
+     * @param options Start-up options
+     * @throws IllegalArgumentException If sessions is not positive
+     */
+    public ServerLoadTest(int sessions, GameOptions options) {
+        if (sessions <= 0) {
+            throw new IllegalArgumentException("Number of sessions must be positive: " + sessions);
+        }
+        this.sessions = sessions;
+        this.options = options;
+    }
+
+    /**
+     * Plays every battle to its end and prints the results.
+     * @throws IOException If the server cannot be started
+     * @throws InterruptedException If waiting for the battles is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        AtomicInteger won = new AtomicInteger();
+        AtomicInteger lost = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+
+        try (BattleServer server = new BattleServer(0, options.getCombatRules(), options.getTileMap())) {
+            for (int i = 0; i < sessions; i++) {
+                Thread.ofVirtual().name("battle-client-" + i).start(() -> {
+                    try (BattleClient client = new BattleClient(server.getPort())) {
+                        String result = client.playToEnd();
+                        if ("WON".equals(result)) {
+                            won.incrementAndGet();
+                        } else if ("LOST".equals(result)) {
+                            lost.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            while (!done.await(REPORT_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.out.println(server.describeLoad());
+            }
+            System.out.println(server.describeLoad());
+        }
+
+        System.out.printf("%d battles on %d cores in %.1f s: %d won, %d lost, %d failed%n",
+                sessions, Runtime.getRuntime().availableProcessors(), (System.nanoTime() - start) / 1e9,
+                won.get(), lost.get(), failed.get());
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the game simulation on its own thread, separate from JavaFX rendering.
+ * Each step ticks the GameController, copies the result into the exchange's
+ * back buffer and publishes it, so the FX thread can draw the previous step
+ * while the next one is being computed on another core.
+ * The thread itself is only created by start(), once the object is fully built.
+ */
+public class SimulationThread {
+    /**
+     * Default number of simulation steps per second.
+     * 60 keeps the simulation in step with a 60 Hz display.
+     */
+    public static final int DEFAULT_STEP_RATE = 60;
+
+    /**
+     * Time between simulation steps in nanoseconds.
+     */
+    private final long stepInterval;
+
+    /**
+     * The game being simulated.
+     */
+    private final GameController controller;
+
+    /**
+     * Where finished frames are published for the renderer.
+     */
+    private final FrameExchange exchange;
+
+    /**
+     * Cleared to end the loop.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The thread stepping the game; null until start() is called.
+     */
+    private Thread thread;
+
+    /**
+     * Creates the simulation; call start() to begin stepping.
+     * @param controller The game to step
+     * @param exchange Triple buffer shared with the renderer
+     */
+    public SimulationThread(GameController controller, FrameExchange exchange) {
+        this(controller, exchange, DEFAULT_STEP_RATE);
+    }
+
+    /**
+     * Creates a simulation thread that steps at a given rate; call start() to begin stepping.
+     * The renderer glides enemies between steps, so a rate below the display's still moves smoothly.
+     * Rates below 20 make the 50 ms animation frames last longer than they should.
+     * @param controller The game to step
+     * @param exchange Triple buffer shared with the renderer
+     * @param stepsPerSecond Simulation steps per second
+     * @throws IllegalArgumentException If the rate is not positive
+     */
+    public SimulationThread(GameController controller, FrameExchange exchange, int stepsPerSecond) {
+        if (stepsPerSecond <= 0) {
+            throw new IllegalArgumentException("Step rate must be positive: " + stepsPerSecond);
+        }
+        this.controller = controller;
+        this.exchange = exchange;
+        this.stepInterval = 1_000_000_000L / stepsPerSecond;
+    }
+
+    /**
+     * Starts the thread that steps the game.
+     * The thread is a daemon so it never keeps the application alive.
+     * @throws IllegalStateException If the simulation was already started
+     */
+    public void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Simulation already started");
+        }
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Steps the game at a fixed rate until stopped.
+     * Sleeps away whatever is left of each step's time slot.
+     */
+    private void run() {
+        long nextStep = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            controller.tick(now);
+
+            exchange.getBackBuffer().capture(controller);
+            exchange.publish();
+
+            nextStep += stepInterval;
+            long wait = nextStep - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextStep = System.nanoTime();  // Fell behind; don't try to catch up in a burst
+            }
+        }
+    }
+
+    /**
+     * Ends the loop and waits for the step in progress to finish,
+     * so nothing the simulation writes to is used by it afterwards.
+     * Does nothing if the simulation was never started.
+     */
+    public void shutdown() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
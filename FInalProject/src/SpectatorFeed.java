@@ -0,0 +1,486 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends what happens in a battle to any number of SpectatorViewers over UDP.
+ * The thread that ticks the game captures a SpectatorSnapshot at most SEND_RATE times a second
+ * into a ring of recent snapshots. A sender thread of its own then sends the newest snapshot
+ * to every viewer at that fixed rate, as a delta against the newest snapshot the viewer has
+ * acknowledged. Lost packets need no resending: the next packet is simply a delta against an
+ * older baseline. A viewer that has acknowledged nothing yet, or fell too far behind, gets a full snapshot.
+ * <p>
+ * Most viewers have acknowledged the same baseline, so each delta is encoded once per send and the
+ * bytes are reused for all of them. While nothing moves a packet is about 12 bytes, and while the
+ * battle runs it stays under 32, so the bandwidth per viewer is small and nearly flat.
+ * <p>
+ * Packets from viewers start with one byte: HELLO to join, ACK followed by the 4-byte sequence number
+ * of a decoded snapshot, and BYE to leave. Packets to viewers start with a HEADER_BYTES header:
+ * the 4-byte sequence number of the snapshot, the 4-byte sequence number of its baseline (0 for a
+ * full snapshot), and 2 bytes holding the fragment index shifted left by one, with the lowest bit set
+ * on the last fragment. The rest is SpectatorSnapshot.encodeDelta(). A delta longer than FRAGMENT_BYTES,
+ * such as a full snapshot of a crowd of enemies, is split into as many packets as it needs, all but the
+ * last FRAGMENT_BYTES long; the viewer only decodes the snapshot once it has every fragment.
+ * Viewers that stop acknowledging are forgotten, so the feed never keeps sending to an address
+ * that is not listening.
+ */
+public class SpectatorFeed implements Closeable {
+    /**
+     * Snapshots sent to each viewer per second.
+     */
+    public static final int SEND_RATE = 20;
+
+    /**
+     * Time between two sends.
+     */
+    public static final long SEND_INTERVAL_NANOS = 1_000_000_000L / SEND_RATE;
+
+    /** First byte of a viewer's request to join. */
+    public static final byte HELLO = 1;
+
+    /** First byte of a viewer's acknowledgement. */
+    public static final byte ACK = 2;
+
+    /** First byte of a viewer's notice that it leaves. */
+    public static final byte BYE = 3;
+
+    /**
+     * Largest packet in either direction; well below any network's MTU.
+     */
+    public static final int MAX_PACKET_BYTES = 1200;
+
+    /**
+     * Bytes in front of the delta in every packet to viewers: both sequence numbers and the fragment.
+     */
+    public static final int HEADER_BYTES = 10;
+
+    /**
+     * Most bytes of a delta one packet carries.
+     */
+    public static final int FRAGMENT_BYTES = MAX_PACKET_BYTES - HEADER_BYTES;
+
+    /**
+     * Most fragments one snapshot may be split into; the index has 15 bits.
+     */
+    private static final int MAX_FRAGMENTS = 1 << 15;
+
+    /**
+     * How long a viewer that has acknowledged something may go quiet before it is dropped.
+     */
+    private static final long VIEWER_TIMEOUT_NANOS = 5_000_000_000L;
+
+    /**
+     * How long a viewer that has never acknowledged anything is sent to.
+     * Short, so a forged HELLO cannot turn the feed against some other address for long.
+     */
+    private static final long NEW_VIEWER_TIMEOUT_NANOS = 1_000_000_000L;
+
+    /**
+     * Number of recent snapshots kept as baselines; a power of two.
+     * At SEND_RATE this covers 1.6 seconds of lost acknowledgements.
+     */
+    private static final int HISTORY = 32;
+
+    /**
+     * One viewer the feed sends to. Only used by the sender thread.
+     */
+    private static class Viewer {
+        /** Newest snapshot the viewer has acknowledged, or 0. */
+        int acknowledged = 0;
+
+        /** System.nanoTime() when the viewer was last heard from. */
+        long lastHeard;
+
+        /**
+         * Creates a viewer that has just said hello.
+         * @param now Current time in nanoseconds
+         */
+        Viewer(long now) {
+            lastHeard = now;
+        }
+    }
+
+    /**
+     * Recent snapshots, indexed by sequence number modulo HISTORY.
+     * Written by the ticking thread, read by the sender thread after it reads latestSequence.
+     */
+    private final SpectatorSnapshot[] history = new SpectatorSnapshot[HISTORY];
+
+    /**
+     * Sequence number of the newest captured snapshot, or 0 before the first.
+     * Publishes the snapshot to the sender thread.
+     */
+    private volatile int latestSequence = 0;
+
+    /**
+     * Earliest time the ticking thread captures the next snapshot.
+     */
+    private long nextCaptureTime = 0;
+
+    /**
+     * Whether the last captured snapshot shows the scene at rest. Used by the ticking thread only.
+     */
+    private boolean restCaptured = false;
+
+    /**
+     * Socket all viewers talk to.
+     */
+    private final DatagramChannel channel;
+
+    /**
+     * Viewers by address. Used by the sender thread only.
+     */
+    private final Map<SocketAddress, Viewer> viewers = new HashMap<>();
+
+    /**
+     * Delta encoded in the current send for each baseline, indexed by baseline sequence modulo HISTORY.
+     */
+    private final BitBuffer[] encoded = new BitBuffer[HISTORY];
+
+    /**
+     * Baseline each entry of encoded was made against.
+     */
+    private final int[] encodedBaseline = new int[HISTORY];
+
+    /**
+     * Snapshot each entry of encoded describes; an entry for an older snapshot is stale.
+     */
+    private final int[] encodedSequence = new int[HISTORY];
+
+    /**
+     * Delta of the full snapshot encoded in the current send.
+     */
+    private final BitBuffer encodedFull = new BitBuffer(64);
+
+    /**
+     * Sequence number of the snapshot in encodedFull, or 0.
+     */
+    private int encodedFullSequence = 0;
+
+    /**
+     * Buffer for incoming packets.
+     */
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_PACKET_BYTES);
+
+    /**
+     * Buffer for outgoing packets.
+     */
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_PACKET_BYTES);
+
+    /**
+     * Thread receiving acknowledgements and sending snapshots.
+     */
+    private final Thread sender;
+
+    /**
+     * Cleared to stop the sender thread.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Number of viewers after the last send.
+     */
+    private volatile int viewerCount = 0;
+
+    /**
+     * Packets sent so far. Written by the sender thread.
+     */
+    private volatile long packetsSent = 0;
+
+    /**
+     * Payload bytes sent so far. Written by the sender thread.
+     */
+    private volatile long bytesSent = 0;
+
+    /**
+     * Full snapshots encoded so far. Written by the sender thread.
+     */
+    private volatile long fullSnapshotsSent = 0;
+
+    /**
+     * Sends that failed on a bug rather than the socket. Used by the sender thread only.
+     */
+    private int failedSends = 0;
+
+    /**
+     * Opens the feed and starts sending once the first snapshot is captured.
+     * @param port UDP port viewers send to, or 0 for any free port
+     * @throws IOException If the port cannot be opened
+     */
+    public SpectatorFeed(int port) throws IOException {
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new SpectatorSnapshot();
+            encoded[i] = new BitBuffer(64);
+        }
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+
+        sender = new Thread(this::sendLoop, "spectator-feed");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Captures the game state for the viewers, unless a snapshot was captured less than a send interval ago.
+     * The first tick at rest is always captured, so viewers end up with the final state of every action.
+     * Call on the thread that ticks the game, after the tick. Creates no objects.
+     * @param controller The controller owning the live game state
+     * @param now Current time in nanoseconds
+     * @param atRest true if nothing is animating after this tick
+     */
+    public void capture(GameController controller, long now, boolean atRest) {
+        boolean restChanged = atRest && !restCaptured;
+        if (now < nextCaptureTime && !restChanged) {
+            return;
+        }
+        captureNow(controller);
+        nextCaptureTime = now + SEND_INTERVAL_NANOS;
+        restCaptured = atRest;
+    }
+
+    /**
+     * Captures the game state for the viewers right away, without changing when the next capture is due.
+     * Used for the scene as it is before the first tick, whose clock may differ from the ticks' clock.
+     * Call on the thread that ticks the game. Creates no objects.
+     * @param controller The controller owning the live game state
+     */
+    public void captureNow(GameController controller) {
+        int sequence = latestSequence + 1;
+        history[sequence & (HISTORY - 1)].capture(controller, sequence);
+        latestSequence = sequence;  // Publishes the snapshot to the sender thread
+    }
+
+    /**
+     * Receives and sends until the feed is closed, once every SEND_INTERVAL_NANOS.
+     */
+    private void sendLoop() {
+        long nextSend = System.nanoTime();
+        while (running) {
+            try {
+                long now = System.nanoTime();
+                receivePackets(now);
+                int latest = latestSequence;
+                if (latest > 0) {
+                    sendSnapshots(latest, now);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Spectator feed failed: " + e);
+                }
+                return;
+            } catch (RuntimeException e) {
+                // Skip this send but keep the feed alive; the next one starts afresh.
+                // Only the first failure is printed, so a repeating one does not flood the log
+                if (failedSends++ == 0) {
+                    System.err.println("Spectator feed skipped a send: " + e);
+                }
+            }
+
+            nextSend += SEND_INTERVAL_NANOS;
+            long wait = nextSend - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextSend = System.nanoTime();  // Fell behind; keep the rate instead of sending a burst
+            }
+        }
+    }
+
+    /**
+     * Takes in every packet that viewers sent since the last send.
+     * @param now Current time in nanoseconds
+     * @throws IOException If the socket fails
+     */
+    private void receivePackets(long now) throws IOException {
+        SocketAddress address;
+        while (true) {
+            receiveBuffer.clear();
+            address = channel.receive(receiveBuffer);
+            if (address == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            if (!receiveBuffer.hasRemaining()) {
+                continue;
+            }
+            switch (receiveBuffer.get()) {
+                case HELLO:
+                    viewers.computeIfAbsent(address, a -> new Viewer(now)).lastHeard = now;
+                    break;
+                case ACK: {
+                    Viewer viewer = viewers.get(address);
+                    if (viewer != null && receiveBuffer.remaining() >= 4) {
+                        int sequence = receiveBuffer.getInt();
+                        // Ignore acknowledgements from the future or arriving out of order
+                        if (sequence > viewer.acknowledged && sequence <= latestSequence) {
+                            viewer.acknowledged = sequence;
+                        }
+                        viewer.lastHeard = now;
+                    }
+                    break;
+                }
+                case BYE:
+                    viewers.remove(address);
+                    break;
+                default:
+                    break;  // Not from a viewer
+            }
+        }
+    }
+
+    /**
+     * Sends the newest snapshot to every viewer, each against its own baseline, and forgets silent viewers.
+     * @param latest Sequence number of the newest snapshot
+     * @param now Current time in nanoseconds
+     * @throws IOException If the socket fails
+     */
+    private void sendSnapshots(int latest, long now) throws IOException {
+        Iterator<Map.Entry<SocketAddress, Viewer>> iterator = viewers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SocketAddress, Viewer> entry = iterator.next();
+            Viewer viewer = entry.getValue();
+            long timeout = viewer.acknowledged == 0 ? NEW_VIEWER_TIMEOUT_NANOS : VIEWER_TIMEOUT_NANOS;
+            if (now - viewer.lastHeard > timeout) {
+                iterator.remove();
+                continue;
+            }
+
+            // The baseline must be at least two snapshots younger than the ring, since the
+            // ticking thread may be capturing into the slot after the newest one meanwhile
+            int acknowledged = viewer.acknowledged;
+            int baseline = acknowledged > 0 && latest - acknowledged < HISTORY - 2 ? acknowledged : 0;
+            send(latest, baseline, deltaFor(latest, baseline), entry.getKey());
+        }
+        viewerCount = viewers.size();
+    }
+
+    /**
+     * Gets the delta that brings a viewer from its baseline to the newest snapshot,
+     * encoding it only if no other viewer needed the same one during this send.
+     * @param latest Sequence number of the newest snapshot
+     * @param baseline Snapshot the viewer has and that is still in the ring, or 0 for a full snapshot
+     * @return The encoded delta
+     */
+    private BitBuffer deltaFor(int latest, int baseline) {
+        SpectatorSnapshot snapshot = history[latest & (HISTORY - 1)];
+        if (baseline == 0) {
+            if (encodedFullSequence != latest) {
+                encode(encodedFull, snapshot, SpectatorSnapshot.EMPTY);
+                encodedFullSequence = latest;
+                fullSnapshotsSent++;
+            }
+            return encodedFull;
+        }
+
+        int slot = baseline & (HISTORY - 1);
+        if (encodedSequence[slot] != latest || encodedBaseline[slot] != baseline) {
+            encode(encoded[slot], snapshot, history[slot]);
+            encodedSequence[slot] = latest;
+            encodedBaseline[slot] = baseline;
+        }
+        return encoded[slot];
+    }
+
+    /**
+     * Encodes the delta between two snapshots.
+     * @param delta Buffer to write to
+     * @param snapshot Snapshot to send
+     * @param baseline Snapshot the viewer has, or SpectatorSnapshot.EMPTY
+     * @throws IllegalStateException If the delta needs more than MAX_FRAGMENTS packets
+     */
+    private static void encode(BitBuffer delta, SpectatorSnapshot snapshot, SpectatorSnapshot baseline) {
+        delta.clear();
+        snapshot.encodeDelta(baseline, delta);
+        if (delta.getByteLength() > (long) MAX_FRAGMENTS * FRAGMENT_BYTES) {
+            throw new IllegalStateException("Snapshot " + snapshot.getSequence() + " needs "
+                    + delta.getByteLength() + " bytes, more than " + MAX_FRAGMENTS + " packets hold");
+        }
+    }
+
+    /**
+     * Sends a delta to one viewer, in as many packets as it takes: each carries the header
+     * and up to FRAGMENT_BYTES of the delta, so no packet is longer than MAX_PACKET_BYTES.
+     * @param sequence Sequence number of the snapshot
+     * @param baseline Sequence number of its baseline, or 0
+     * @param delta The encoded delta
+     * @param address The viewer
+     * @throws IOException If the socket fails
+     */
+    private void send(int sequence, int baseline, BitBuffer delta, SocketAddress address) throws IOException {
+        int length = delta.getByteLength();
+        int offset = 0;
+        int index = 0;
+        do {
+            int size = Math.min(length - offset, FRAGMENT_BYTES);
+            boolean last = offset + size == length;
+            sendBuffer.clear();
+            sendBuffer.putInt(sequence).putInt(baseline).putShort((short) (index << 1 | (last ? 1 : 0)));
+            sendBuffer.put(delta.getBytes(), offset, size);
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            packetsSent++;
+            bytesSent += HEADER_BYTES + size;
+            offset += size;
+            index++;
+        } while (offset < length);
+    }
+
+    /**
+     * Gets the UDP port viewers send to.
+     * @return Local port number
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the number of viewers being sent to.
+     * @return Viewer count after the last send
+     */
+    public int getViewerCount() {
+        return viewerCount;
+    }
+
+    /**
+     * Gets the number of packets sent.
+     * @return Packets sent to all viewers together
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Gets the number of bytes sent, not counting UDP and IP headers.
+     * @return Payload bytes sent to all viewers together
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Gets the number of full snapshots encoded, for viewers that joined or fell behind.
+     * @return Full snapshots encoded
+     */
+    public long getFullSnapshotsSent() {
+        return fullSnapshotsSent;
+    }
+
+    /**
+     * Stops sending and closes the socket.
+     * @throws IOException If the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(sender);
+        channel.close();
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+
+/**
+ * Window contents for watching someone else's battle.
+ * Shows the battlefield drawn by a GameWorld from the snapshots a SpectatorViewer receives,
+ * with a line of text above it saying whose turn it is and how many hit points everyone has.
+ * There are no controls; spectators can only move and zoom the camera.
+ */
+public final class SpectatorPane extends BorderPane {
+    /**
+     * Receives the battle from the player's game.
+     */
+    private final SpectatorViewer viewer;
+
+    /**
+     * Canvas the battle is drawn on.
+     */
+    private final GameWorld gameWorld;
+
+    /**
+     * Whose turn it is and everyone's hit points.
+     */
+    private final Label status = new Label("Waiting for the battle...");
+
+    /**
+     * Newest snapshot drawn.
+     */
+    private final SpectatorSnapshot snapshot = new SpectatorSnapshot();
+
+    /**
+     * Frame rebuilt from the snapshot for GameWorld.
+     */
+    private final FrameState frame = new FrameState(GameController.PARTICLE_CAPACITY);
+
+    /**
+     * Skeleton frames, loaded like GameController does.
+     */
+    private final CharacterSprite skeletonSprite = new CharacterSprite("images/skeleton/", "skeleton_", 12, 1, false);
+
+    /**
+     * Minotaur walk cycle.
+     */
+    private final CharacterSprite minotaurSprite = new CharacterSprite("images/minotaur/", "Minotaur_01_Walking_", 18, 0, true);
+
+    /**
+     * Minotaur attack frames, also used while it stands still.
+     */
+    private final CharacterSprite minotaurAttackSprite =
+            new CharacterSprite("images/minotaur_attacking/", "Minotaur_01_Attacking_", 12, 0, true);
+
+    /**
+     * Draws each new snapshot on the next pulse.
+     */
+    private final AnimationTimer drawLoop;
+
+    /**
+     * Creates the pane and starts watching.
+     * @param options Start-up options; give the feed's address and the map the battle is played on
+     * @throws IOException If the viewer's socket cannot be opened
+     */
+    public SpectatorPane(GameOptions options) throws IOException {
+        gameWorld = new GameWorld(options.getTileMap());
+        viewer = new SpectatorViewer(options.getWatchAddress());
+
+        status.setPadding(new Insets(10));
+        setTop(status);
+        setCenter(gameWorld);
+
+        drawLoop = new AnimationTimer() {
+            /**
+             * Draws the newest snapshot if one arrived since the last pulse.
+             * @param now Current time in nanoseconds
+             */
+            @Override
+            public void handle(long now) {
+                if (viewer.copyLatest(snapshot)) {
+                    frame.capture(snapshot, skeletonSprite, minotaurSprite, minotaurAttackSprite);
+                    gameWorld.drawScene(frame);
+                    status.setText(describe(snapshot));
+                }
+            }
+        };
+        drawLoop.start();
+    }
+
+    /**
+     * Describes the state of the battle in one line.
+     * @param snapshot The snapshot shown
+     * @return Text for the status line
+     */
+    private static String describe(SpectatorSnapshot snapshot) {
+        String turn;
+        switch (snapshot.getTurn()) {
+            case SpectatorSnapshot.TURN_PLAYER:
+                turn = "Player's turn";
+                break;
+            case SpectatorSnapshot.TURN_ENEMY:
+                turn = "Enemy's turn";
+                break;
+            default:
+                turn = snapshot.getPlayerHitPoints() > 0 ? "Player won" : "Player lost";
+                break;
+        }
+        StringBuilder text = new StringBuilder(turn).append("   Player HP ").append(snapshot.getPlayerHitPoints());
+        for (int i = 0; i < snapshot.getEnemyCount(); i++) {
+            text.append("   Enemy ").append(i + 1).append(" HP ").append(snapshot.getEnemyHitPoints(i));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gets the viewer receiving the battle.
+     * Read by Main for the bandwidth summary.
+     * @return The viewer
+     */
+    public SpectatorViewer getViewer() {
+        return viewer;
+    }
+
+    /**
+     * Stops drawing and leaves the feed.
+     */
+    public void close() {
+        drawLoop.stop();
+        viewer.close();
+    }
+}
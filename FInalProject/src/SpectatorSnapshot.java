@@ -0,0 +1,433 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a spectator can see of a battle at one moment, in a compact form that is sent over the network.
+ * Positions are quantized to a quarter of a pixel and kept as ints, so two snapshots of the same
+ * scene are exactly equal and only real changes cost bandwidth. Everything else a spectator
+ * needs is here too: each character's animation clip and frame, hit points, and whose turn it is.
+ * Particles are left out; they are decoration and would cost more than all the rest.
+ * <p>
+ * A snapshot is sent as a delta against an older snapshot the viewer already has:
+ * a field that did not change costs one bit, and a number that changed is sent as its
+ * difference with BitBuffer.writeSigned(), which is usually 7 bits. A snapshot sent against
+ * EMPTY is a full snapshot. Any number of enemies can be described; a delta that does not fit
+ * in one packet is split by SpectatorFeed. Instances are reused; capturing only allocates when
+ * the number of enemies grows past the current capacity.
+ */
+public class SpectatorSnapshot {
+    /**
+     * Steps per pixel that positions are rounded to.
+     */
+    public static final int POSITION_STEPS = 4;
+
+    /** Clip of a character standing still. */
+    public static final int CLIP_IDLE = 0;
+
+    /** Clip of a walking character. */
+    public static final int CLIP_WALK = 1;
+
+    /** Clip of an attacking character. */
+    public static final int CLIP_ATTACK = 2;
+
+    /** Turn value while the player acts. */
+    public static final int TURN_PLAYER = 0;
+
+    /** Turn value while an enemy acts. */
+    public static final int TURN_ENEMY = 1;
+
+    /** Turn value once the battle has ended. */
+    public static final int TURN_OVER = 2;
+
+    /**
+     * Bits used for clips, turns and animation frames, which are always small.
+     */
+    private static final int CLIP_BITS = 2, TURN_BITS = 2, FRAME_BITS = 6;
+
+    /**
+     * A snapshot with nothing in it, used as the baseline of full snapshots. Never changed.
+     */
+    public static final SpectatorSnapshot EMPTY = new SpectatorSnapshot();
+
+    /** Number of this snapshot in the feed; 0 for EMPTY. */
+    private int sequence;
+
+    /** Whose turn it is: TURN_PLAYER, TURN_ENEMY or TURN_OVER. */
+    private int turn;
+
+    /** Player hit points. */
+    private int playerHitPoints;
+
+    /** Skeleton position in quarter pixels. */
+    private int skeletonX, skeletonY;
+
+    /** Skeleton clip: CLIP_IDLE or CLIP_ATTACK. */
+    private int skeletonClip;
+
+    /** Skeleton frame index. */
+    private int skeletonFrame;
+
+    /** Number of enemies described. */
+    private int enemyCount;
+
+    /** Position of each enemy in quarter pixels. */
+    private int[] enemyX = new int[4], enemyY = new int[4];
+
+    /** Clip of each enemy. */
+    private int[] enemyClip = new int[4];
+
+    /** Frame index of each enemy, in the sprite its clip is drawn with. */
+    private int[] enemyFrame = new int[4];
+
+    /** Hit points of each enemy. */
+    private int[] enemyHitPoints = new int[4];
+
+    /** Whether each enemy is alive and drawn. */
+    private boolean[] enemyAlive = new boolean[4];
+
+    /**
+     * Copies what a spectator sees out of the live game.
+     * Must run on the thread that updates the game, between ticks.
+     * @param controller The controller owning the live game state
+     * @param sequence Number of the snapshot in the feed, 1 or more
+     */
+    public void capture(GameController controller, int sequence) {
+        this.sequence = sequence;
+
+        Player player = controller.getPlayer();
+        if (!player.isAlive() || controller.areAllEnemiesDefeated()) {
+            turn = TURN_OVER;
+        } else {
+            turn = controller.getInitiative().peek() == player ? TURN_PLAYER : TURN_ENEMY;
+        }
+        playerHitPoints = player.getHitPoints();
+        skeletonX = quantize(controller.getSkeletonX());
+        skeletonY = quantize(controller.getSkeletonY());
+        skeletonClip = controller.isSkeletonAttacking() ? CLIP_ATTACK : CLIP_IDLE;
+        skeletonFrame = controller.getSkeletonController().getCurrentFrame();
+
+        List<EnemyUnit> enemies = controller.getEnemies();
+        enemyCount = enemies.size();
+        ensureCapacity(enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            EnemyUnit unit = enemies.get(i);
+            enemyX[i] = quantize(unit.getX());
+            enemyY[i] = quantize(unit.getY());
+            // The same sprite choice as FrameState: idle enemies stand in the first attack frame
+            if (unit.isAttacking()) {
+                enemyClip[i] = CLIP_ATTACK;
+                enemyFrame[i] = unit.getAttackController().getCurrentFrame();
+            } else if (unit.isWalking()) {
+                enemyClip[i] = CLIP_WALK;
+                enemyFrame[i] = unit.getWalkFrame();
+            } else {
+                enemyClip[i] = CLIP_IDLE;
+                enemyFrame[i] = unit.getAttackSprite().getStartIndex();
+            }
+            enemyHitPoints[i] = unit.getEnemy().getHitPoints();
+            enemyAlive[i] = unit.getEnemy().isAlive();
+        }
+    }
+
+    /**
+     * Makes this snapshot an exact copy of another.
+     * @param other The snapshot to copy
+     */
+    public void copyFrom(SpectatorSnapshot other) {
+        sequence = other.sequence;
+        turn = other.turn;
+        playerHitPoints = other.playerHitPoints;
+        skeletonX = other.skeletonX;
+        skeletonY = other.skeletonY;
+        skeletonClip = other.skeletonClip;
+        skeletonFrame = other.skeletonFrame;
+        enemyCount = other.enemyCount;
+        ensureCapacity(enemyCount);
+        System.arraycopy(other.enemyX, 0, enemyX, 0, enemyCount);
+        System.arraycopy(other.enemyY, 0, enemyY, 0, enemyCount);
+        System.arraycopy(other.enemyClip, 0, enemyClip, 0, enemyCount);
+        System.arraycopy(other.enemyFrame, 0, enemyFrame, 0, enemyCount);
+        System.arraycopy(other.enemyHitPoints, 0, enemyHitPoints, 0, enemyCount);
+        System.arraycopy(other.enemyAlive, 0, enemyAlive, 0, enemyCount);
+    }
+
+    /**
+     * Writes the differences between a baseline and this snapshot.
+     * The sequence numbers are not written; SpectatorFeed puts them in the packet header.
+     * @param baseline Snapshot the viewer already has, or EMPTY for a full snapshot
+     * @param out Buffer to write to
+     */
+    public void encodeDelta(SpectatorSnapshot baseline, BitBuffer out) {
+        out.writeBits(turn, TURN_BITS);
+        writeNumber(out, baseline.playerHitPoints, playerHitPoints);
+        writeNumber(out, baseline.skeletonX, skeletonX);
+        writeNumber(out, baseline.skeletonY, skeletonY);
+        out.writeBits(skeletonClip, CLIP_BITS);
+        writeFrame(out, baseline.skeletonFrame, skeletonFrame);
+
+        writeNumber(out, baseline.enemyCount, enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            // Enemies the baseline does not have are sent against zeros
+            boolean known = i < baseline.enemyCount;
+            int oldX = known ? baseline.enemyX[i] : 0;
+            int oldY = known ? baseline.enemyY[i] : 0;
+            int oldClip = known ? baseline.enemyClip[i] : CLIP_IDLE;
+            int oldFrame = known ? baseline.enemyFrame[i] : 0;
+            int oldHitPoints = known ? baseline.enemyHitPoints[i] : 0;
+            boolean oldAlive = known && baseline.enemyAlive[i];
+
+            // One bit covers an enemy that did not change at all, the usual case
+            boolean changed = enemyX[i] != oldX || enemyY[i] != oldY || enemyClip[i] != oldClip
+                    || enemyFrame[i] != oldFrame || enemyHitPoints[i] != oldHitPoints || enemyAlive[i] != oldAlive;
+            out.writeBoolean(changed);
+            if (changed) {
+                writeNumber(out, oldX, enemyX[i]);
+                writeNumber(out, oldY, enemyY[i]);
+                out.writeBits(enemyClip[i], CLIP_BITS);
+                out.writeBoolean(enemyAlive[i]);
+                writeFrame(out, oldFrame, enemyFrame[i]);
+                writeNumber(out, oldHitPoints, enemyHitPoints[i]);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a snapshot from the differences written by encodeDelta().
+     * @param in Buffer positioned after the packet header
+     * @param sequence Number of the snapshot, from the packet header
+     * @param baseline The same baseline the sender used
+     * @throws IllegalStateException If the packet ends too early or describes more enemies than it has bits for
+     */
+    public void decodeDelta(BitBuffer in, int sequence, SpectatorSnapshot baseline) {
+        this.sequence = sequence;
+        turn = (int) in.readBits(TURN_BITS);
+        playerHitPoints = readNumber(in, baseline.playerHitPoints);
+        skeletonX = readNumber(in, baseline.skeletonX);
+        skeletonY = readNumber(in, baseline.skeletonY);
+        skeletonClip = (int) in.readBits(CLIP_BITS);
+        skeletonFrame = readFrame(in, baseline.skeletonFrame);
+
+        int count = readNumber(in, baseline.enemyCount);
+        // Every enemy takes at least one bit, so a larger count can only come from a broken packet
+        if (count < 0 || count > in.getRemainingBits()) {
+            throw new IllegalStateException("Packet cannot describe " + count + " enemies");
+        }
+        enemyCount = count;
+        ensureCapacity(enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            boolean known = i < baseline.enemyCount;
+            int oldX = known ? baseline.enemyX[i] : 0;
+            int oldY = known ? baseline.enemyY[i] : 0;
+            int oldClip = known ? baseline.enemyClip[i] : CLIP_IDLE;
+            int oldFrame = known ? baseline.enemyFrame[i] : 0;
+            int oldHitPoints = known ? baseline.enemyHitPoints[i] : 0;
+            boolean oldAlive = known && baseline.enemyAlive[i];
+
+            if (in.readBoolean()) {
+                enemyX[i] = readNumber(in, oldX);
+                enemyY[i] = readNumber(in, oldY);
+                enemyClip[i] = (int) in.readBits(CLIP_BITS);
+                enemyAlive[i] = in.readBoolean();
+                enemyFrame[i] = readFrame(in, oldFrame);
+                enemyHitPoints[i] = readNumber(in, oldHitPoints);
+            } else {
+                enemyX[i] = oldX;
+                enemyY[i] = oldY;
+                enemyClip[i] = oldClip;
+                enemyAlive[i] = oldAlive;
+                enemyFrame[i] = oldFrame;
+                enemyHitPoints[i] = oldHitPoints;
+            }
+        }
+    }
+
+    /**
+     * Writes a number as "unchanged" or as its difference from the old value.
+     * @param out Buffer to write to
+     * @param oldValue Value in the baseline
+     * @param newValue Value now
+     */
+    private static void writeNumber(BitBuffer out, int oldValue, int newValue) {
+        out.writeBoolean(newValue != oldValue);
+        if (newValue != oldValue) {
+            out.writeSigned(newValue - oldValue);
+        }
+    }
+
+    /**
+     * Reads a number written by writeNumber().
+     * @param in Buffer to read from
+     * @param oldValue Value in the baseline
+     * @return Value now
+     */
+    private static int readNumber(BitBuffer in, int oldValue) {
+        return in.readBoolean() ? oldValue + in.readSigned() : oldValue;
+    }
+
+    /**
+     * Writes an animation frame as "unchanged" or as the new frame index.
+     * Frames jump back to the start of their clip, so the index is cheaper than a difference.
+     * @param out Buffer to write to
+     * @param oldFrame Frame in the baseline
+     * @param newFrame Frame now
+     */
+    private static void writeFrame(BitBuffer out, int oldFrame, int newFrame) {
+        out.writeBoolean(newFrame != oldFrame);
+        if (newFrame != oldFrame) {
+            out.writeBits(newFrame, FRAME_BITS);
+        }
+    }
+
+    /**
+     * Reads a frame written by writeFrame().
+     * @param in Buffer to read from
+     * @param oldFrame Frame in the baseline
+     * @return Frame now
+     */
+    private static int readFrame(BitBuffer in, int oldFrame) {
+        return in.readBoolean() ? (int) in.readBits(FRAME_BITS) : oldFrame;
+    }
+
+    /**
+     * Rounds a world coordinate to the steps positions are sent in.
+     * @param coordinate Coordinate in pixels
+     * @return Coordinate in quarter pixels
+     */
+    private static int quantize(double coordinate) {
+        return (int) Math.round(coordinate * POSITION_STEPS);
+    }
+
+    /**
+     * Grows the enemy arrays when more enemies exist than they can hold.
+     * @param count Number of enemies that must fit
+     */
+    private void ensureCapacity(int count) {
+        if (count > enemyX.length) {
+            int size = Math.max(count, enemyX.length * 2);
+            enemyX = Arrays.copyOf(enemyX, size);
+            enemyY = Arrays.copyOf(enemyY, size);
+            enemyClip = Arrays.copyOf(enemyClip, size);
+            enemyFrame = Arrays.copyOf(enemyFrame, size);
+            enemyHitPoints = Arrays.copyOf(enemyHitPoints, size);
+            enemyAlive = Arrays.copyOf(enemyAlive, size);
+        }
+    }
+
+    /**
+     * Gets the number of this snapshot in the feed.
+     * @return Sequence number, or 0 for EMPTY
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets whose turn it is.
+     * @return TURN_PLAYER, TURN_ENEMY or TURN_OVER
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Gets the player's hit points.
+     * @return Player hit points
+     */
+    public int getPlayerHitPoints() {
+        return playerHitPoints;
+    }
+
+    /**
+     * Gets the skeleton's X coordinate.
+     * @return X in pixels, to a quarter pixel
+     */
+    public double getSkeletonX() {
+        return (double) skeletonX / POSITION_STEPS;
+    }
+
+    /**
+     * Gets the skeleton's Y coordinate.
+     * @return Y in pixels, to a quarter pixel
+     */
+    public double getSkeletonY() {
+        return (double) skeletonY / POSITION_STEPS;
+    }
+
+    /**
+     * Gets the skeleton's clip.
+     * @return CLIP_IDLE or CLIP_ATTACK
+     */
+    public int getSkeletonClip() {
+        return skeletonClip;
+    }
+
+    /**
+     * Gets the skeleton's frame index.
+     * @return Frame index
+     */
+    public int getSkeletonFrame() {
+        return skeletonFrame;
+    }
+
+    /**
+     * Gets the number of enemies.
+     * @return Enemy count
+     */
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    /**
+     * Gets one enemy's X coordinate.
+     * @param i Enemy index
+     * @return X in pixels, to a quarter pixel
+     */
+    public double getEnemyX(int i) {
+        return (double) enemyX[i] / POSITION_STEPS;
+    }
+
+    /**
+     * Gets one enemy's Y coordinate.
+     * @param i Enemy index
+     * @return Y in pixels, to a quarter pixel
+     */
+    public double getEnemyY(int i) {
+        return (double) enemyY[i] / POSITION_STEPS;
+    }
+
+    /**
+     * Gets one enemy's clip.
+     * @param i Enemy index
+     * @return CLIP_IDLE, CLIP_WALK or CLIP_ATTACK
+     */
+    public int getEnemyClip(int i) {
+        return enemyClip[i];
+    }
+
+    /**
+     * Gets one enemy's frame index in the sprite its clip is drawn with.
+     * @param i Enemy index
+     * @return Frame index
+     */
+    public int getEnemyFrame(int i) {
+        return enemyFrame[i];
+    }
+
+    /**
+     * Gets one enemy's hit points.
+     * @param i Enemy index
+     * @return Hit points
+     */
+    public int getEnemyHitPoints(int i) {
+        return enemyHitPoints[i];
+    }
+
+    /**
+     * Checks if one enemy is alive.
+     * @param i Enemy index
+     * @return true if it is alive and drawn
+     */
+    public boolean isEnemyAlive(int i) {
+        return enemyAlive[i];
+    }
+}
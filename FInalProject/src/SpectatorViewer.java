@@ -0,0 +1,297 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Watches a battle sent by a SpectatorFeed on another machine or in another process.
+ * A receiving thread puts the fragments of each snapshot back together, decodes it against the baseline it names, keeps the recent snapshots
+ * as baselines for the packets to come, and acknowledges every snapshot it decodes.
+ * The newest snapshot is handed over with copyLatest(), for example to SpectatorPane,
+ * which draws it with GameWorld like the game itself would.
+ * If nothing arrives for a while the viewer says hello again, so it recovers from
+ * a lost HELLO or a feed that was restarted.
+ */
+public class SpectatorViewer implements Closeable {
+    /**
+     * How long to wait for a packet before saying hello again.
+     */
+    private static final int SILENCE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Number of recent snapshots kept as baselines; matches the feed's history.
+     */
+    private static final int HISTORY = 32;
+
+    /**
+     * Socket connected to the feed.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Decoded snapshots, indexed by sequence number modulo HISTORY. Used by the receiving thread only.
+     */
+    private final SpectatorSnapshot[] history = new SpectatorSnapshot[HISTORY];
+
+    /**
+     * Copy of the newest snapshot, handed to other threads under this object's lock.
+     */
+    private final SpectatorSnapshot latest = new SpectatorSnapshot();
+
+    /**
+     * Thread receiving and decoding packets.
+     */
+    private final Thread receiver;
+
+    /**
+     * Sequence number of the newest decoded snapshot, or 0. Used by the receiving thread only.
+     */
+    private int latestSequence = 0;
+
+    /**
+     * Delta being put back together from its fragments, each at its index times FRAGMENT_BYTES.
+     * Used by the receiving thread only, like the fields below; grows for the largest snapshot seen.
+     */
+    private byte[] assembly = new byte[SpectatorFeed.FRAGMENT_BYTES];
+
+    /**
+     * Sequence number of the snapshot being put together, or 0.
+     */
+    private int assemblySequence = 0;
+
+    /**
+     * Sequence number of the baseline of the snapshot being put together.
+     */
+    private int assemblyBaseline = 0;
+
+    /**
+     * Indexes of the fragments received of the snapshot being put together.
+     */
+    private final BitSet assemblyFragments = new BitSet();
+
+    /**
+     * Number of fragments of the snapshot being put together, or 0 until the last one arrived.
+     */
+    private int assemblyFragmentCount = 0;
+
+    /**
+     * Length of the delta being put together, known once its last fragment arrived.
+     */
+    private int assemblyLength = 0;
+
+    /**
+     * Packets received so far. Written by the receiving thread.
+     */
+    private volatile long packetsReceived = 0;
+
+    /**
+     * Payload bytes received so far. Written by the receiving thread.
+     */
+    private volatile long bytesReceived = 0;
+
+    /**
+     * Packets that could not be decoded because their baseline was no longer kept. Written by the receiving thread.
+     */
+    private volatile long packetsSkipped = 0;
+
+    /**
+     * Connects to a feed and starts watching.
+     * @param feed Address of the feed
+     * @throws IOException If no socket can be opened
+     */
+    public SpectatorViewer(InetSocketAddress feed) throws IOException {
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new SpectatorSnapshot();
+        }
+        socket = new DatagramSocket();
+        socket.connect(feed);
+        socket.setSoTimeout(SILENCE_TIMEOUT_MILLIS);
+
+        receiver = new Thread(this::receiveLoop, "spectator-viewer");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Receives, decodes and acknowledges packets until the viewer is closed.
+     */
+    private void receiveLoop() {
+        byte[] data = new byte[SpectatorFeed.MAX_PACKET_BYTES];
+        ByteBuffer header = ByteBuffer.wrap(data);
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        BitBuffer bits = new BitBuffer(SpectatorFeed.MAX_PACKET_BYTES);
+        try {
+            sendControl(SpectatorFeed.HELLO, 0);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(data.length);
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    sendControl(SpectatorFeed.HELLO, 0);
+                    continue;
+                }
+                packetsReceived++;
+                bytesReceived += packet.getLength();
+                if (receive(header, packet.getLength(), bits)) {
+                    sendControl(SpectatorFeed.ACK, latestSequence);
+                }
+            }
+        } catch (SocketException e) {
+            // Closed by close()
+        } catch (IOException e) {
+            System.err.println("Spectator viewer stopped: " + e);
+        }
+    }
+
+    /**
+     * Takes in one packet: keeps its fragment, and decodes the snapshot once all its fragments are in.
+     * A fragment of a newer snapshot, or of the same one against another baseline, drops the one being
+     * put together; it is never completed, since the feed only sends newer snapshots after it.
+     * @param packet The packet's bytes, from index 0
+     * @param length Length of the packet
+     * @param bits Buffer to decode the delta from
+     * @return true if the viewer's newest snapshot should be acknowledged
+     */
+    private boolean receive(ByteBuffer packet, int length, BitBuffer bits) {
+        if (length < SpectatorFeed.HEADER_BYTES) {
+            packetsSkipped++;
+            return false;
+        }
+        int sequence = packet.getInt(0);
+        int baselineSequence = packet.getInt(4);
+        int fragment = packet.getShort(8) & 0xFFFF;
+        int index = fragment >>> 1;
+        boolean last = (fragment & 1) != 0;
+        int size = length - SpectatorFeed.HEADER_BYTES;
+        if (sequence <= latestSequence) {
+            return latestSequence > 0;  // Nothing new; the feed may have missed the acknowledgement
+        }
+        if (sequence < assemblySequence || (!last && size != SpectatorFeed.FRAGMENT_BYTES)) {
+            packetsSkipped++;  // Older than the snapshot being put together, or cut short
+            return false;
+        }
+
+        if (sequence != assemblySequence || baselineSequence != assemblyBaseline) {
+            assemblySequence = sequence;
+            assemblyBaseline = baselineSequence;
+            assemblyFragments.clear();
+            assemblyFragmentCount = 0;
+        }
+        int offset = index * SpectatorFeed.FRAGMENT_BYTES;
+        if (offset + size > assembly.length) {
+            assembly = Arrays.copyOf(assembly, Math.max(offset + size, assembly.length * 2));
+        }
+        System.arraycopy(packet.array(), SpectatorFeed.HEADER_BYTES, assembly, offset, size);
+        assemblyFragments.set(index);
+        if (last) {
+            assemblyFragmentCount = index + 1;
+            assemblyLength = offset + size;
+        }
+        if (assemblyFragmentCount == 0 || assemblyFragments.cardinality() < assemblyFragmentCount) {
+            return false;  // Wait for the rest
+        }
+
+        bits.load(assembly, 0, assemblyLength);
+        return decode(bits, sequence, baselineSequence);
+    }
+
+    /**
+     * Decodes one whole delta if its baseline is still kept.
+     * @param bits The delta
+     * @param sequence Sequence number of the snapshot
+     * @param baselineSequence Sequence number of its baseline, or 0 for a full snapshot
+     * @return true if the viewer's newest snapshot should be acknowledged
+     */
+    private boolean decode(BitBuffer bits, int sequence, int baselineSequence) {
+        try {
+            SpectatorSnapshot baseline = SpectatorSnapshot.EMPTY;
+            if (baselineSequence != 0) {
+                baseline = history[baselineSequence & (HISTORY - 1)];
+                if (baseline.getSequence() != baselineSequence) {
+                    packetsSkipped++;
+                    return latestSequence > 0;
+                }
+            }
+
+            SpectatorSnapshot snapshot = history[sequence & (HISTORY - 1)];
+            snapshot.decodeDelta(bits, sequence, baseline);
+            latestSequence = sequence;
+            synchronized (this) {
+                latest.copyFrom(snapshot);
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            packetsSkipped++;  // Cut short; the slot it was decoded into is not used as a baseline
+            return false;
+        }
+    }
+
+    /**
+     * Sends a one-byte request to the feed, followed by a sequence number for acknowledgements.
+     * @param type SpectatorFeed.HELLO, ACK or BYE
+     * @param sequence Sequence number to acknowledge; ignored for other requests
+     * @throws IOException If sending fails
+     */
+    private void sendControl(byte type, int sequence) throws IOException {
+        byte[] message = type == SpectatorFeed.ACK
+                ? new byte[] {type, (byte) (sequence >>> 24), (byte) (sequence >>> 16), (byte) (sequence >>> 8), (byte) sequence}
+                : new byte[] {type};
+        socket.send(new DatagramPacket(message, message.length));
+    }
+
+    /**
+     * Copies the newest snapshot, if it is newer than the one the caller already has.
+     * @param into Snapshot to copy into
+     * @return true if a newer snapshot was copied
+     */
+    public synchronized boolean copyLatest(SpectatorSnapshot into) {
+        if (latest.getSequence() == 0 || latest.getSequence() == into.getSequence()) {
+            return false;
+        }
+        into.copyFrom(latest);
+        return true;
+    }
+
+    /**
+     * Gets the number of packets received.
+     * @return Packet count
+     */
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * Gets the number of payload bytes received.
+     * @return Byte count, not counting UDP and IP headers
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Gets the number of packets that could not be decoded.
+     * @return Skipped packets
+     */
+    public long getPacketsSkipped() {
+        return packetsSkipped;
+    }
+
+    /**
+     * Tells the feed the viewer leaves, and stops receiving.
+     */
+    @Override
+    public void close() {
+        try {
+            sendControl(SpectatorFeed.BYE, 0);
+        } catch (IOException e) {
+            // The feed forgets silent viewers anyway
+        }
+        socket.close();
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the decoded frames of CharacterSprites within a memory budget.
+ * Every animation registered with the cache counts the bytes its decoded frames take.
+ * When the total goes over the budget, the animations drawn least recently give up
+ * all their frames except the first, which stays as a placeholder.
+ * The next time an evicted animation is drawn, the placeholder is shown while
+ * a background thread decodes its frames again; they are swapped in on a later draw.
+ * Only frames that are drawn count: the renderers cull against the camera before asking for a frame,
+ * so characters out of view neither keep their animation from being evicted nor have it decoded again.
+ * The budget should hold every animation that can be on screen at once,
+ * otherwise animations keep evicting each other.
+ * Delta-encoded animations are never reduced to the placeholder: eviction drops only the buffers
+ * their frames are rebuilt into, which they make again from memory on the next draw.
+ * All methods except the decoding itself run on the thread that draws the scene,
+ * apart from decode(), which CharacterSprite.prefetch() may call from the simulation thread.
+ */
+public class SpriteCache {
+    /**
+     * Budget that is never exceeded; nothing is evicted.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * Animations the cache manages, in the order they were registered.
+     */
+    private final List<CharacterSprite> sprites = new ArrayList<>();
+
+    /**
+     * Most bytes of decoded frames to keep.
+     */
+    private long budget;
+
+    /**
+     * Bytes of decoded frames currently held by all registered animations.
+     */
+    private long residentBytes = 0;
+
+    /**
+     * Counts draws; each animation remembers the count of its last draw so the oldest can be found.
+     */
+    private long drawClock = 0;
+
+    /**
+     * Frames drawn while their animation was fully decoded.
+     */
+    private long hits = 0;
+
+    /**
+     * Frames to be drawn while their animation was evicted, answered with the placeholder.
+     */
+    private long misses = 0;
+
+    /**
+     * Animations evicted so far.
+     */
+    private long evictions = 0;
+
+    /**
+     * Evicted animations decoded again so far, whether asked for by a draw or a prefetch.
+     * Written under this cache's lock.
+     */
+    private long reloads = 0;
+
+    /**
+     * Thread that decodes evicted animations again; created on the first miss or prefetch.
+     * Guarded by this cache's lock, since prefetches may come from the simulation thread.
+     */
+    private ExecutorService decoder;
+
+    /**
+     * Creates an empty cache.
+     * @param budget Most bytes of decoded frames to keep, or UNLIMITED
+     * @throws IllegalArgumentException If the budget is negative
+     */
+    public SpriteCache(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Sprite budget cannot be negative: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Changes the budget, evicting animations at once if they no longer fit.
+     * @param budget Most bytes of decoded frames to keep, or UNLIMITED
+     * @throws IllegalArgumentException If the budget is negative
+     */
+    public void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Sprite budget cannot be negative: " + budget);
+        }
+        this.budget = budget;
+        evictOver(null);
+    }
+
+    /**
+     * Puts an animation under the cache's budget.
+     * Called by CharacterSprite when it is created with a cache.
+     * @param sprite The animation, with all its frames decoded
+     */
+    void register(CharacterSprite sprite) {
+        sprites.add(sprite);
+        residentBytes += sprite.getResidentBytes();
+        sprite.markDrawn(++drawClock);
+        evictOver(sprite);
+    }
+
+    /**
+     * Records that a frame of a fully decoded animation was drawn.
+     * @param sprite The animation
+     */
+    void recordHit(CharacterSprite sprite) {
+        hits++;
+        sprite.markDrawn(++drawClock);
+    }
+
+    /**
+     * Records that a frame of an evicted animation was to be drawn, and starts decoding it again
+     * unless that is already under way.
+     * @param sprite The animation
+     */
+    void recordMiss(CharacterSprite sprite) {
+        misses++;
+        sprite.markDrawn(++drawClock);
+        if (sprite.startReload()) {
+            decode(sprite);
+        }
+    }
+
+    /**
+     * Queues an evicted animation for decoding on the decoder thread.
+     * The caller must have won sprite.startReload(), so each animation is queued once.
+     * @param sprite The animation
+     */
+    synchronized void decode(CharacterSprite sprite) {
+        if (decoder == null) {
+            decoder = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "sprite-decoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        reloads++;
+        decoder.execute(sprite::decodeEvictedFrames);
+    }
+
+    /**
+     * Adjusts the resident total after an animation's frames were swapped in, replaced or dropped,
+     * and evicts other animations if the total is now over the budget.
+     * @param sprite The animation that changed
+     * @param change Bytes it holds now minus bytes it held before
+     */
+    void recordResize(CharacterSprite sprite, long change) {
+        residentBytes += change;
+        if (change > 0) {
+            evictOver(sprite);
+        }
+    }
+
+    /**
+     * Evicts the least recently drawn animations until the resident total fits the budget.
+     * @param keep Animation that must stay, usually the one that just grew; may be null
+     */
+    private void evictOver(CharacterSprite keep) {
+        while (residentBytes > budget) {
+            CharacterSprite oldest = null;
+            for (int i = 0; i < sprites.size(); i++) {
+                CharacterSprite sprite = sprites.get(i);
+                if (sprite != keep && sprite.isEvictable()
+                        && (oldest == null || sprite.getLastDrawn() < oldest.getLastDrawn())) {
+                    oldest = sprite;
+                }
+            }
+            if (oldest == null) {
+                return;  // Only placeholders and the kept animation are left
+            }
+            residentBytes -= oldest.evict();
+            evictions++;
+        }
+    }
+
+    /**
+     * Switches every registered animation to delta-encoded frames, see CharacterSprite.encodeDeltas().
+     * Call before lowering the budget, since evicted animations are left as they are.
+     * @return Number of animations switched
+     */
+    public int encodeDeltas() {
+        int encoded = 0;
+        for (int i = 0; i < sprites.size(); i++) {
+            if (sprites.get(i).encodeDeltas()) {
+                encoded++;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Gets the budget.
+     * @return Most bytes of decoded frames to keep, or UNLIMITED
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the bytes of decoded frames held now.
+     * @return Resident bytes, counting 4 bytes per pixel
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Gets the number of frames drawn from fully decoded animations.
+     * @return Hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of frames asked for while their animation was evicted.
+     * @return Miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of times an animation was evicted.
+     * @return Eviction count
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of times an evicted animation was decoded again.
+     * @return Reload count
+     */
+    public synchronized long getReloads() {
+        return reloads;
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+/**
+ * Development helper that reloads sprite frames while the game is running.
+ * Watches the directory of every CharacterSprite, decodes only the frames whose
+ * files changed on its own daemon thread, and hands the new images to the FX thread,
+ * which swaps them into the sprites between two pulses.
+ * Artists can save a frame in their editor and see it in the battle a moment later
+ * without restarting the game and decoding every other frame again.
+ * Nothing is watched until start() registers the directories and starts the thread.
+ */
+public class SpriteWatcher {
+    /**
+     * How long the directories must stay quiet before changed frames are decoded.
+     * Editors often write a file in several steps; waiting 150 ms
+     * collects those events so each frame is decoded once, after the last write.
+     */
+    private static final long SETTLE_MILLIS = 150;
+
+    /**
+     * One decoded frame waiting to be swapped in on the FX thread.
+     */
+    private static final class ReloadedFrame {
+        /** Sprite the frame belongs to. */
+        private final CharacterSprite sprite;
+
+        /** Frame index within the sprite. */
+        private final int index;
+
+        /** The newly decoded image. */
+        private final Image image;
+
+        /** Hit mask built from the new image. */
+        private final HitMask hitMask;
+
+        /**
+         * Creates a pending frame.
+         * @param sprite Sprite the frame belongs to
+         * @param index Frame index within the sprite
+         * @param image The newly decoded image
+         * @param hitMask Hit mask built from the new image
+         */
+        private ReloadedFrame(CharacterSprite sprite, int index, Image image, HitMask hitMask) {
+            this.sprite = sprite;
+            this.index = index;
+            this.image = image;
+            this.hitMask = hitMask;
+        }
+    }
+
+    /**
+     * Folder that contains the "images" directory.
+     */
+    private final Path sourceDirectory;
+
+    /**
+     * Sprites to keep up to date.
+     */
+    private final List<CharacterSprite> sprites;
+
+    /**
+     * Receives change events for the sprite directories; null until start() is called.
+     */
+    private WatchService watchService;
+
+    /**
+     * Thread waiting for changes and decoding frames; null until start() is called.
+     */
+    private Thread thread;
+
+    /**
+     * Sprites by the directory their frames are loaded from.
+     */
+    private final Map<Path, List<CharacterSprite>> spritesByDirectory = new HashMap<>();
+
+    /**
+     * Decoded frames handed from this thread to the FX thread.
+     */
+    private final ConcurrentLinkedQueue<ReloadedFrame> reloadedFrames = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Run on the FX thread after frames were swapped in; usually redraws the scene.
+     */
+    private final Runnable afterSwap;
+
+    /**
+     * Creates the watcher; call start() to begin watching.
+     * Sprite paths such as "images/minotaur/" are resolved against sourceDirectory, which should
+     * be the folder the artists edit, not a copy on the build output path.
+     * @param sourceDirectory Folder that contains the "images" directory
+     * @param sprites Sprites to keep up to date
+     * @param afterSwap Run on the FX thread after one or more frames were replaced
+     */
+    public SpriteWatcher(Path sourceDirectory, List<CharacterSprite> sprites, Runnable afterSwap) {
+        this.sourceDirectory = sourceDirectory;
+        this.sprites = List.copyOf(sprites);
+        this.afterSwap = afterSwap;
+    }
+
+    /**
+     * Registers every sprite directory and starts the thread that waits for changes.
+     * The thread is a daemon so it never keeps the application alive.
+     * @throws IOException If a sprite directory cannot be watched
+     * @throws IllegalStateException If the watcher was already started
+     */
+    public void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Sprite watcher already started");
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            for (CharacterSprite sprite : sprites) {
+                Path directory = sourceDirectory.resolve(sprite.getSpritePath()).toAbsolutePath().normalize();
+                if (!spritesByDirectory.containsKey(directory)) {
+                    directory.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    spritesByDirectory.put(directory, new ArrayList<>());
+                }
+                spritesByDirectory.get(directory).add(sprite);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread(this::run, "sprite-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for changes, collects them until the directories settle, and decodes the changed frames.
+     * Runs until shutdown() closes the watch service.
+     */
+    private void run() {
+        try {
+            while (true) {
+                // Changed frame files, each listed once however many events it produced
+                Map<Path, ReloadedFrame> changed = new LinkedHashMap<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collectChanges(key, changed);
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                decode(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shut down
+        }
+    }
+
+    /**
+     * Records which frames a batch of events touched.
+     * Files that are not frames of a watched sprite are ignored.
+     * @param key Key of the directory the events came from
+     * @param changed Changed frames by file, filled in by this method; images are not decoded yet
+     */
+    private void collectChanges(WatchKey key, Map<Path, ReloadedFrame> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;  // Events were lost; the next save of each file will be seen again
+            }
+            String fileName = event.context().toString();
+            for (CharacterSprite sprite : spritesByDirectory.get(directory)) {
+                int index = sprite.frameIndexOf(fileName);
+                if (index >= 0) {
+                    changed.put(directory.resolve(fileName), new ReloadedFrame(sprite, index, null, null));
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Decodes the changed frames and builds their hit masks on this thread,
+     * then asks the FX thread to swap them in.
+     * A file that cannot be decoded, for example because it is still being written,
+     * keeps its old image until its next change.
+     * @param changed Changed frames by file
+     */
+    private void decode(Map<Path, ReloadedFrame> changed) {
+        boolean decodedAny = false;
+        for (Map.Entry<Path, ReloadedFrame> entry : changed.entrySet()) {
+            Image image = new Image(entry.getKey().toUri().toString());
+            if (image.isError()) {
+                System.err.println("Could not reload " + entry.getKey() + ": " + image.getException());
+                continue;
+            }
+            ReloadedFrame frame = entry.getValue();
+            HitMask hitMask = HitMask.fromImage(image, CharacterSprite.HIT_MASK_CELL);
+            reloadedFrames.add(new ReloadedFrame(frame.sprite, frame.index, image, hitMask));
+            decodedAny = true;
+        }
+        if (decodedAny) {
+            Platform.runLater(this::swapFrames);
+        }
+    }
+
+    /**
+     * Swaps every decoded frame into its sprite.
+     * Runs on the FX thread between pulses, so a scene is always drawn with one consistent set of frames.
+     */
+    private void swapFrames() {
+        boolean swapped = false;
+        ReloadedFrame frame;
+        while ((frame = reloadedFrames.poll()) != null) {
+            frame.sprite.replaceFrame(frame.index, frame.image, frame.hitMask);
+            swapped = true;
+        }
+        if (swapped) {
+            afterSwap.run();
+        }
+    }
+
+    /**
+     * Stops watching; the thread ends shortly after. Does nothing if the watcher was never started.
+     */
+    public void shutdown() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
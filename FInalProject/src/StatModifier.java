@@ -0,0 +1,117 @@
+/**
+ * A temporary or lasting change to one of a character's combat stats, such as a buff, a debuff or an aura.
+ * Modifiers stack: every one added to a character counts. For each stat, the additive amounts are
+ * summed onto the base value first and the result is then multiplied by every factor.
+ * Modifiers are immutable, so the same one can be given to many characters and removed again by reference.
+ */
+public final class StatModifier {
+    /**
+     * The stat a modifier changes.
+     */
+    public enum Stat {
+        /** Attack points, read by the combat rules as "attack". */
+        ATTACK,
+        /** Defense points, read by the combat rules as "defense". */
+        DEFENSE
+    }
+
+    /**
+     * How a modifier's amount is applied.
+     */
+    public enum Kind {
+        /** Adds the amount to the stat; negative amounts lower it. */
+        ADD,
+        /** Multiplies the stat by the amount; 1.5 is +50%, 0.5 halves it. */
+        MULTIPLY
+    }
+
+    /**
+     * Expiry time of a modifier that stays until it is removed.
+     */
+    public static final long PERMANENT = Long.MAX_VALUE;
+
+    /**
+     * The stat that is changed.
+     */
+    private final Stat stat;
+
+    /**
+     * Whether the amount is added or multiplied.
+     */
+    private final Kind kind;
+
+    /**
+     * Amount added, or factor applied.
+     */
+    private final double amount;
+
+    /**
+     * Time stamp (in nanoseconds, on the clock given to GameController.tick()) after which
+     * the modifier no longer applies, or PERMANENT.
+     */
+    private final long expiresAt;
+
+    /**
+     * Creates a modifier that lasts until it is removed.
+     * @param stat The stat to change
+     * @param kind Whether the amount is added or multiplied
+     * @param amount Amount to add, or factor to multiply by
+     * @throws IllegalArgumentException If stat or kind is null, or a factor is negative
+     */
+    public StatModifier(Stat stat, Kind kind, double amount) {
+        this(stat, kind, amount, PERMANENT);
+    }
+
+    /**
+     * Creates a modifier that runs out at a given time.
+     * @param stat The stat to change
+     * @param kind Whether the amount is added or multiplied
+     * @param amount Amount to add, or factor to multiply by
+     * @param expiresAt Time stamp in nanoseconds on the game clock when the modifier stops applying, or PERMANENT
+     * @throws IllegalArgumentException If stat or kind is null, or a factor is negative
+     */
+    public StatModifier(Stat stat, Kind kind, double amount, long expiresAt) {
+        if (stat == null || kind == null) {
+            throw new IllegalArgumentException("Modifier needs a stat and a kind");
+        }
+        if (kind == Kind.MULTIPLY && amount < 0) {
+            throw new IllegalArgumentException("Modifier factor cannot be negative: " + amount);
+        }
+        this.stat = stat;
+        this.kind = kind;
+        this.amount = amount;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Gets the stat that is changed.
+     * @return The stat
+     */
+    public Stat getStat() {
+        return stat;
+    }
+
+    /**
+     * Gets whether the amount is added or multiplied.
+     * @return The kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the amount added or the factor applied.
+     * @return The amount
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets when the modifier stops applying.
+     * @return Time stamp in nanoseconds, or PERMANENT
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
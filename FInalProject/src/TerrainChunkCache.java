@@ -0,0 +1,186 @@
+import java.util.Arrays;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Draws the terrain of a TileMap from pre-rendered chunks.
+ * The map is split into square chunks of CHUNK_TILES x CHUNK_TILES tiles. A chunk is
+ * rendered into an image the first time it comes into view and then only copied.
+ * The cache holds a fixed number of chunk images; when the camera moves on and a new chunk is needed,
+ * the least recently drawn chunk is evicted and its image is reused for the new one.
+ * Drawing a frame therefore costs the same few image copies however large the map is,
+ * and steady drawing allocates nothing.
+ */
+public class TerrainChunkCache {
+    /**
+     * Number of tiles along each side of a chunk.
+     * 32 tiles of 10 pixels make 320-pixel chunks, so about three span the canvas.
+     */
+    public static final int CHUNK_TILES = 32;
+
+    /**
+     * The terrain being drawn.
+     */
+    private final TileMap map;
+
+    /**
+     * Width and height of a chunk in world pixels.
+     */
+    private final int chunkPixels;
+
+    /**
+     * Number of chunk columns across the map.
+     */
+    private final int chunkColumns;
+
+    /**
+     * Number of chunk rows down the map.
+     */
+    private final int chunkRows;
+
+    /**
+     * Which chunk each cache slot holds, as row * chunkColumns + column; -1 for an empty slot.
+     */
+    private final int[] slotChunk;
+
+    /**
+     * Value of useCounter when each slot was last drawn, for least-recently-used eviction.
+     */
+    private final long[] slotLastUse;
+
+    /**
+     * Rendered image of each slot's chunk; created the first time the slot is filled.
+     */
+    private final WritableImage[] slotImage;
+
+    /**
+     * One row of chunk pixels, filled tile by tile before it is written into an image.
+     */
+    private final int[] rowPixels;
+
+    /**
+     * Increases with every chunk drawn; tells which slot was used least recently.
+     */
+    private long useCounter = 0;
+
+    /**
+     * Number of chunks rendered so far, counting re-renders after eviction.
+     */
+    private int renderCount = 0;
+
+    /**
+     * Creates an empty cache large enough for the view.
+     * It holds twice as many chunks as can be seen at zoom 1, so panning back and forth
+     * over a short distance finds the chunks still rendered.
+     * @param map The terrain to draw
+     * @param viewportWidth Canvas width in pixels
+     * @param viewportHeight Canvas height in pixels
+     */
+    public TerrainChunkCache(TileMap map, double viewportWidth, double viewportHeight) {
+        this.map = map;
+        this.chunkPixels = CHUNK_TILES * map.getTileSize();
+        this.chunkColumns = (map.getColumns() + CHUNK_TILES - 1) / CHUNK_TILES;
+        this.chunkRows = (map.getRows() + CHUNK_TILES - 1) / CHUNK_TILES;
+
+        // A view that does not line up with the chunks touches one more chunk in each direction
+        int visibleColumns = Math.min(chunkColumns, (int) Math.ceil(viewportWidth / chunkPixels) + 1);
+        int visibleRows = Math.min(chunkRows, (int) Math.ceil(viewportHeight / chunkPixels) + 1);
+        int capacity = Math.min(chunkColumns * chunkRows, 2 * visibleColumns * visibleRows);
+
+        slotChunk = new int[capacity];
+        slotLastUse = new long[capacity];
+        slotImage = new WritableImage[capacity];
+        Arrays.fill(slotChunk, -1);
+        rowPixels = new int[chunkPixels];
+    }
+
+    /**
+     * Draws every chunk that overlaps a part of the world.
+     * The graphics context must already be transformed to world coordinates.
+     * @param gc Graphics context to draw on
+     * @param left World X coordinate of the view's left edge
+     * @param top World Y coordinate of the view's top edge
+     * @param width Width of the view in world pixels
+     * @param height Height of the view in world pixels
+     */
+    public void draw(GraphicsContext gc, double left, double top, double width, double height) {
+        int firstColumn = Math.max(0, (int) Math.floor(left / chunkPixels));
+        int lastColumn = Math.min(chunkColumns - 1, (int) Math.floor((left + width) / chunkPixels));
+        int firstRow = Math.max(0, (int) Math.floor(top / chunkPixels));
+        int lastRow = Math.min(chunkRows - 1, (int) Math.floor((top + height) / chunkPixels));
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                gc.drawImage(getChunk(column, row), (double) column * chunkPixels, (double) row * chunkPixels);
+            }
+        }
+    }
+
+    /**
+     * Gets the rendered image of one chunk, rendering it if it is not cached.
+     * @param column Chunk column
+     * @param row Chunk row
+     * @return The chunk's image
+     */
+    private WritableImage getChunk(int column, int row) {
+        int chunk = row * chunkColumns + column;
+        int leastRecent = 0;
+        useCounter++;
+
+        for (int slot = 0; slot < slotChunk.length; slot++) {
+            if (slotChunk[slot] == chunk) {
+                slotLastUse[slot] = useCounter;
+                return slotImage[slot];
+            }
+            if (slotLastUse[slot] < slotLastUse[leastRecent]) {
+                leastRecent = slot;  // Empty slots have never been used, so they are taken first
+            }
+        }
+
+        // Evict the least recently drawn chunk and reuse its image
+        if (slotImage[leastRecent] == null) {
+            slotImage[leastRecent] = new WritableImage(chunkPixels, chunkPixels);
+        }
+        render(column, row, slotImage[leastRecent].getPixelWriter());
+        slotChunk[leastRecent] = chunk;
+        slotLastUse[leastRecent] = useCounter;
+        return slotImage[leastRecent];
+    }
+
+    /**
+     * Paints the tiles of one chunk into an image, one row of pixels at a time.
+     * Tiles past the edge of the map are left transparent.
+     * @param column Chunk column
+     * @param row Chunk row
+     * @param writer Writer of the image to paint into
+     */
+    private void render(int column, int row, PixelWriter writer) {
+        int tileSize = map.getTileSize();
+        int firstTileColumn = column * CHUNK_TILES;
+        int firstTileRow = row * CHUNK_TILES;
+
+        for (int tileRow = 0; tileRow < CHUNK_TILES; tileRow++) {
+            // Every pixel row inside one row of tiles looks the same
+            for (int tile = 0; tile < CHUNK_TILES; tile++) {
+                int argb = map.getTileArgb(firstTileColumn + tile, firstTileRow + tileRow);
+                Arrays.fill(rowPixels, tile * tileSize, (tile + 1) * tileSize, argb);
+            }
+            for (int y = tileRow * tileSize; y < (tileRow + 1) * tileSize; y++) {
+                writer.setPixels(0, y, chunkPixels, 1, PixelFormat.getIntArgbInstance(), rowPixels, 0, chunkPixels);
+            }
+        }
+        renderCount++;
+    }
+
+    /**
+     * Gets how many chunks have been rendered, including chunks rendered again after eviction.
+     * Stays the same while the camera keeps to chunks that are already cached.
+     * @return Number of chunk renders
+     */
+    public int getRenderCount() {
+        return renderCount;
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The terrain of the battlefield: a grid of square tiles, read from a map file.
+ * The file first sets the tile size and names each tile with one symbol and a color,
+ * then lists the grid row by row after a "map" line. Lines starting with '#' are comments.
+ * Tiles marked "walkable" are ground that characters can walk on; all others are obstacles.
+ * The map decides the size of the battlefield.
+ * A map is never changed after loading, so it can be shared by every GameWorld.
+ */
+public class TileMap {
+    /**
+     * Classpath location of the map the game ships with.
+     */
+    public static final String DEFAULT_RESOURCE = "/maps/battlefield.map";
+
+    /**
+     * Map shipped with the game; loaded the first time it is needed.
+     */
+    private static TileMap defaultMap;
+
+    /**
+     * Width and height of one tile in world pixels.
+     */
+    private final int tileSize;
+
+    /**
+     * Number of tiles in each row.
+     */
+    private final int columns;
+
+    /**
+     * Number of rows.
+     */
+    private final int rows;
+
+    /**
+     * Index into palette of every tile, row by row.
+     */
+    private final byte[] tiles;
+
+    /**
+     * Color of each kind of tile as 32-bit ARGB, ready to be written into an image.
+     */
+    private final int[] palette;
+
+    /**
+     * Whether each kind of tile can be walked on, indexed like palette.
+     */
+    private final boolean[] walkable;
+
+    /**
+     * Creates a map from parsed data.
+     * @param tileSize Tile size in world pixels
+     * @param columns Tiles per row
+     * @param rows Number of rows
+     * @param tiles Palette index of every tile, row by row
+     * @param palette ARGB color of each kind of tile
+     * @param walkable Whether each kind of tile can be walked on
+     */
+    private TileMap(int tileSize, int columns, int rows, byte[] tiles, int[] palette, boolean[] walkable) {
+        this.tileSize = tileSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.tiles = tiles;
+        this.palette = palette;
+        this.walkable = walkable;
+    }
+
+    /**
+     * Gets the map that ships with the game.
+     * @return The default map
+     * @throws IllegalStateException If the bundled map file is missing or broken
+     */
+    public static synchronized TileMap getDefault() {
+        if (defaultMap == null) {
+            InputStream stream = TileMap.class.getResourceAsStream(DEFAULT_RESOURCE);
+            if (stream == null) {
+                throw new IllegalStateException("Missing " + DEFAULT_RESOURCE);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                defaultMap = parse(reader, DEFAULT_RESOURCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return defaultMap;
+    }
+
+    /**
+     * Reads a map file from disk.
+     * @param file Path of the map file
+     * @return The loaded map
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file is not a valid map
+     */
+    public static TileMap load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.toString());
+        }
+    }
+
+    /**
+     * Reads a map line by line.
+     * @param reader Source of the map text
+     * @param source Name of the source, used in error messages
+     * @return The loaded map
+     * @throws IOException If reading fails
+     * @throws IllegalArgumentException If a line is not valid, a symbol is unknown or rows differ in length
+     */
+    public static TileMap parse(BufferedReader reader, String source) throws IOException {
+        int tileSize = 0;
+        Map<java.lang.Character, Integer> symbols = new HashMap<>();
+        List<Integer> colors = new ArrayList<>();
+        List<Boolean> ground = new ArrayList<>();
+        List<String> grid = new ArrayList<>();
+        boolean inGrid = false;
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            // Every line after "map" is a row of the grid; empty lines are skipped
+            if (inGrid) {
+                line = line.strip();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!grid.isEmpty() && line.length() != grid.get(0).length()) {
+                    throw new IllegalArgumentException(source + " line " + lineNumber + ": row has "
+                            + line.length() + " tiles, the first row has " + grid.get(0).length());
+                }
+                for (int i = 0; i < line.length(); i++) {
+                    if (!symbols.containsKey(line.charAt(i))) {
+                        throw new IllegalArgumentException(source + " line " + lineNumber
+                                + ": unknown tile '" + line.charAt(i) + "'");
+                    }
+                }
+                grid.add(line);
+                continue;
+            }
+
+            // Skip comments and empty lines; '#' inside a line is part of a color
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals("map")) {
+                inGrid = true;
+                continue;
+            }
+
+            int equals = line.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException(source + " line " + lineNumber
+                        + ": expected \"name = value\" or \"map\"");
+            }
+            String name = line.substring(0, equals).strip();
+            String value = line.substring(equals + 1).strip();
+
+            try {
+                if (name.equals("tileSize")) {
+                    tileSize = Integer.parseInt(value);
+                    if (tileSize <= 0) {
+                        throw new IllegalArgumentException("tileSize must be positive");
+                    }
+                } else if (name.length() == 1) {
+                    if (symbols.containsKey(name.charAt(0))) {
+                        throw new IllegalArgumentException("tile '" + name + "' is defined twice");
+                    }
+                    if (colors.size() > Byte.MAX_VALUE) {
+                        throw new IllegalArgumentException("more than " + (Byte.MAX_VALUE + 1) + " kinds of tile");
+                    }
+                    // "<color>" or "<color> walkable"
+                    String[] parts = value.split("\\s+");
+                    if (parts.length > 2 || (parts.length == 2 && !parts[1].equals("walkable"))) {
+                        throw new IllegalArgumentException("expected \"<color>\" or \"<color> walkable\"");
+                    }
+                    symbols.put(name.charAt(0), colors.size());
+                    colors.add(toArgb(Color.web(parts[0])));
+                    ground.add(parts.length == 2);
+                } else {
+                    throw new IllegalArgumentException("unknown setting '" + name + "'");
+                }
+            } catch (IllegalArgumentException e) {
+                // Also catches NumberFormatException and bad colors from Color.web
+                throw new IllegalArgumentException(source + " line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (tileSize == 0) {
+            throw new IllegalArgumentException(source + ": no tileSize");
+        }
+        if (grid.isEmpty()) {
+            throw new IllegalArgumentException(source + ": no rows after \"map\"");
+        }
+
+        // Store the grid as palette indices so drawing needs no lookups
+        int columns = grid.get(0).length();
+        byte[] tiles = new byte[columns * grid.size()];
+        for (int row = 0; row < grid.size(); row++) {
+            for (int column = 0; column < columns; column++) {
+                tiles[row * columns + column] = (byte) (int) symbols.get(grid.get(row).charAt(column));
+            }
+        }
+        int[] palette = new int[colors.size()];
+        boolean[] walkable = new boolean[colors.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = colors.get(i);
+            walkable[i] = ground.get(i);
+        }
+        return new TileMap(tileSize, columns, grid.size(), tiles, palette, walkable);
+    }
+
+    /**
+     * Converts a color to the 32-bit ARGB form used by PixelWriter.
+     * @param color The color
+     * @return Alpha, red, green and blue packed into one int
+     */
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Gets the color of one tile.
+     * @param column Tile column, counted from the left
+     * @param row Tile row, counted from the top
+     * @return ARGB color, or 0 (transparent) outside the map
+     */
+    public int getTileArgb(int column, int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return 0;
+        }
+        return palette[tiles[row * columns + column]];
+    }
+
+    /**
+     * Checks if characters can walk on one tile.
+     * @param column Tile column, counted from the left
+     * @param row Tile row, counted from the top
+     * @return true for walkable tiles; false for obstacles and outside the map
+     */
+    public boolean isWalkable(int column, int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return false;
+        }
+        return walkable[tiles[row * columns + column]];
+    }
+
+    /**
+     * Gets the size of one tile.
+     * @return Tile width and height in world pixels
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Gets the number of tiles in each row.
+     * @return Column count
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return Row count
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the width of the whole map.
+     * @return Width in world pixels
+     */
+    public double getWidth() {
+        return (double) columns * tileSize;
+    }
+
+    /**
+     * Gets the height of the whole map.
+     * @return Height in world pixels
+     */
+    public double getHeight() {
+        return (double) rows * tileSize;
+    }
+}
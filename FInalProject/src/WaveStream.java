@@ -0,0 +1,248 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a wave file a few spawns at a time while the battle is played.
+ * A daemon thread parses the file and hands the spawns over through a small queue;
+ * when the queue is full the thread waits until the game has taken some, so however long
+ * the file is, only the next QUEUE_CAPACITY spawns are held in memory and nothing is parsed on
+ * the thread that ticks the game.
+ * Each line of the file is one spawn: "<delay> <type> <hitPoints> <attack> <defense> <speed> <x> <y> [leader]",
+ * where the delay is in seconds after the previous spawn, and "leader" marks an enemy whose aura
+ * raises the attack of every other enemy while it lives. Lines between "repeat <n>" and "end"
+ * are played n times, which keeps survival modes with thousands of spawns short.
+ * Empty lines and lines starting with '#' are skipped.
+ * A line that is not valid ends the stream with a message on standard error; the spawns before it still play.
+ */
+public class WaveStream implements Closeable {
+    /**
+     * Most spawns parsed ahead of the game.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Separator between the fields of a spawn line, compiled once for every line of the file.
+     */
+    private static final Pattern FIELD_SEPARATOR = Pattern.compile("\\s+");
+
+    /**
+     * Spawns parsed but not yet taken by the game, in time order.
+     */
+    private final BlockingQueue<EnemySpawn> upcoming = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Source of the wave text.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * Name of the source, used in error messages.
+     */
+    private final String source;
+
+    /**
+     * Enemy types the game can spawn.
+     */
+    private final Set<String> types;
+
+    /**
+     * Thread parsing the file.
+     */
+    private final Thread readerThread;
+
+    /**
+     * Set by the reading thread once the whole file was read or reading stopped.
+     */
+    private volatile boolean endReached = false;
+
+    /**
+     * Number of spawns parsed so far. Written by the reading thread.
+     */
+    private volatile long spawnsRead = 0;
+
+    /**
+     * Why reading stopped early, or null.
+     */
+    private volatile String error;
+
+    /**
+     * Time of the latest spawn parsed, in nanoseconds after the waves started. Used by the reading thread only.
+     */
+    private long time = 0;
+
+    /**
+     * Opens a wave file and starts reading it.
+     * @param file Path of the wave file
+     * @param types Enemy types the game can spawn
+     * @return The stream
+     * @throws IOException If the file cannot be opened
+     */
+    public static WaveStream open(Path file, Set<String> types) throws IOException {
+        return new WaveStream(Files.newBufferedReader(file, StandardCharsets.UTF_8), file.toString(), types);
+    }
+
+    /**
+     * Starts reading waves from a reader, which is closed when reading ends.
+     * @param reader Source of the wave text
+     * @param source Name of the source, used in error messages
+     * @param types Enemy types the game can spawn
+     */
+    public WaveStream(BufferedReader reader, String source, Set<String> types) {
+        this.reader = reader;
+        this.source = source;
+        this.types = types;
+        readerThread = new Thread(this::readLoop, "wave-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Parses the whole source, waiting whenever the queue is full.
+     */
+    private void readLoop() {
+        List<String> block = null;  // Lines of the repeat block being read
+        int repeats = 0;
+        int blockStart = 0;
+        String line;
+        int lineNumber = 0;
+        try (BufferedReader in = reader) {
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    if (line.startsWith("repeat")) {
+                        if (block != null) {
+                            throw new IllegalArgumentException("repeat blocks cannot be nested");
+                        }
+                        repeats = Integer.parseInt(line.substring("repeat".length()).strip());
+                        if (repeats < 0) {
+                            throw new IllegalArgumentException("repeat count cannot be negative");
+                        }
+                        block = new ArrayList<>();
+                        blockStart = lineNumber;
+                    } else if (line.equals("end")) {
+                        if (block == null) {
+                            throw new IllegalArgumentException("\"end\" without \"repeat\"");
+                        }
+                        for (int i = 0; i < repeats; i++) {
+                            for (int j = 0; j < block.size(); j++) {
+                                upcoming.put(parse(block.get(j)));
+                                spawnsRead++;
+                            }
+                        }
+                        block = null;
+                    } else if (block != null) {
+                        parse(line);  // Checked now so the error names the right line
+                        block.add(line);
+                    } else {
+                        upcoming.put(parse(line));
+                        spawnsRead++;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Also catches NumberFormatException
+                    throw new IllegalArgumentException(source + " line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+            if (block != null) {
+                throw new IllegalArgumentException(source + " line " + blockStart + ": \"repeat\" without \"end\"");
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (IOException | IllegalArgumentException e) {
+            error = e.getMessage();
+            System.err.println("Waves stopped: " + e.getMessage());
+        } finally {
+            endReached = true;
+        }
+    }
+
+    /**
+     * Parses one spawn line, placing it after the previous spawn.
+     * @param line "<delay> <type> <hitPoints> <attack> <defense> <speed> <x> <y> [leader]"
+     * @return The spawn
+     * @throws IllegalArgumentException If the line is not a valid spawn
+     */
+    private EnemySpawn parse(String line) {
+        String[] parts = FIELD_SEPARATOR.split(line);
+        if (parts.length != 8 && (parts.length != 9 || !parts[8].equals("leader"))) {
+            throw new IllegalArgumentException(
+                    "expected \"<delay> <type> <hitPoints> <attack> <defense> <speed> <x> <y> [leader]\"");
+        }
+        double delay = Double.parseDouble(parts[0]);
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay cannot be negative");
+        }
+        if (!types.contains(parts[1])) {
+            throw new IllegalArgumentException("unknown enemy type '" + parts[1] + "'");
+        }
+        int hitPoints = Integer.parseInt(parts[2]);
+        int speed = Integer.parseInt(parts[5]);
+        if (hitPoints <= 0 || speed <= 0) {
+            throw new IllegalArgumentException("hit points and speed must be positive");
+        }
+        time += (long) (delay * 1e9);
+        return new EnemySpawn(time, parts[1], hitPoints, Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                speed, Double.parseDouble(parts[6]), Double.parseDouble(parts[7]), parts.length == 9);
+    }
+
+    /**
+     * Gets the next spawn without taking it.
+     * @return The next spawn, or null if none is parsed yet or the waves are over
+     */
+    public EnemySpawn peek() {
+        return upcoming.peek();
+    }
+
+    /**
+     * Takes the next spawn.
+     * @return The next spawn, or null if none is parsed yet or the waves are over
+     */
+    public EnemySpawn poll() {
+        return upcoming.poll();
+    }
+
+    /**
+     * Checks if every spawn has been taken.
+     * @return true once the source was read to its end, or reading stopped, and the queue is empty
+     */
+    public boolean isFinished() {
+        return endReached && upcoming.isEmpty();
+    }
+
+    /**
+     * Gets the number of spawns parsed so far.
+     * @return Spawns read, including those still queued
+     */
+    public long getSpawnsRead() {
+        return spawnsRead;
+    }
+
+    /**
+     * Gets why reading stopped before the end of the source.
+     * @return The error message, or null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Stops reading. Spawns already queued can still be taken.
+     */
+    @Override
+    public void close() {
+        readerThread.interrupt();
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only copy of the state enemy AI needs, taken on the FX thread once per tick.
+ * Worker threads only read from it while the FX thread keeps changing the live objects.
+ * The instance and its arrays are reused between ticks, so capturing allocates
+ * nothing unless the number of enemies grows past the current capacity.
+ */
+public class WorldSnapshot {
+    /** Player's X coordinate when the snapshot was taken. */
+    private double playerX;
+
+    /** Player's Y coordinate when the snapshot was taken. */
+    private double playerY;
+
+    /** Whether the player was still alive. */
+    private boolean playerAlive;
+
+    /** Index of the enemy whose turn it was, or -1 on the player's turn. */
+    private int activeEnemy;
+
+    /** Number of enemies copied into the arrays below. */
+    private int enemyCount;
+
+    /** X coordinate of each enemy. */
+    private double[] enemyX = new double[8];
+
+    /** Y coordinate of each enemy. */
+    private double[] enemyY = new double[8];
+
+    /** Whether each enemy was alive. */
+    private boolean[] enemyAlive = new boolean[8];
+
+    /** Whether each enemy was in the middle of an attack animation. */
+    private boolean[] enemyAttacking = new boolean[8];
+
+    /**
+     * Copies the current game state into this snapshot.
+     * Must be called on the FX thread while no worker is reading the snapshot.
+     * @param player The player character
+     * @param x Player's X coordinate
+     * @param y Player's Y coordinate
+     * @param activeEnemy Index of the enemy whose turn it is, or -1 on the player's turn
+     * @param enemies All enemy units, in the order their commands will be applied
+     */
+    public void capture(Player player, double x, double y, int activeEnemy, List<EnemyUnit> enemies) {
+        playerX = x;
+        playerY = y;
+        playerAlive = player.isAlive();
+        this.activeEnemy = activeEnemy;
+
+        enemyCount = enemies.size();
+        ensureCapacity(enemyCount);
+        for (int i = 0; i < enemyCount; i++) {
+            EnemyUnit unit = enemies.get(i);
+            enemyX[i] = unit.getX();
+            enemyY[i] = unit.getY();
+            enemyAlive[i] = unit.getEnemy().isAlive();
+            enemyAttacking[i] = unit.isAttacking();
+        }
+    }
+
+    /**
+     * Grows the enemy arrays when more enemies exist than they can hold.
+     * @param count Number of enemies that must fit
+     */
+    private void ensureCapacity(int count) {
+        if (count > enemyX.length) {
+            int size = Math.max(count, enemyX.length * 2);
+            enemyX = Arrays.copyOf(enemyX, size);
+            enemyY = Arrays.copyOf(enemyY, size);
+            enemyAlive = Arrays.copyOf(enemyAlive, size);
+            enemyAttacking = Arrays.copyOf(enemyAttacking, size);
+        }
+    }
+
+    /**
+     * Gets the player's X coordinate.
+     * @return X coordinate in pixels
+     */
+    public double getPlayerX() {
+        return playerX;
+    }
+
+    /**
+     * Gets the player's Y coordinate.
+     * @return Y coordinate in pixels
+     */
+    public double getPlayerY() {
+        return playerY;
+    }
+
+    /**
+     * Checks if the player was alive.
+     * @return true if the player can still be attacked
+     */
+    public boolean isPlayerAlive() {
+        return playerAlive;
+    }
+
+    /**
+     * Checks if it was the player's turn.
+     * @return true on the player's turn, false on an enemy's turn
+     */
+    public boolean isPlayerTurn() {
+        return activeEnemy < 0;
+    }
+
+    /**
+     * Gets the enemy whose turn it was.
+     * @return Index of the acting enemy, or -1 on the player's turn
+     */
+    public int getActiveEnemy() {
+        return activeEnemy;
+    }
+
+    /**
+     * Gets the number of enemies in the snapshot.
+     * @return Enemy count
+     */
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    /**
+     * Gets one enemy's X coordinate.
+     * @param i Enemy index
+     * @return X coordinate in pixels
+     */
+    public double getEnemyX(int i) {
+        return enemyX[i];
+    }
+
+    /**
+     * Gets one enemy's Y coordinate.
+     * @param i Enemy index
+     * @return Y coordinate in pixels
+     */
+    public double getEnemyY(int i) {
+        return enemyY[i];
+    }
+
+    /**
+     * Checks if one enemy was alive.
+     * @param i Enemy index
+     * @return true if alive
+     */
+    public boolean isEnemyAlive(int i) {
+        return enemyAlive[i];
+    }
+
+    /**
+     * Checks if one enemy was attacking.
+     * @param i Enemy index
+     * @return true if its attack animation was playing
+     */
+    public boolean isEnemyAttacking(int i) {
+        return enemyAttacking[i];
+    }
+}